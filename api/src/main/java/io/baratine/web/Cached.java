@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package io.baratine.web;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotation Cached stores the response of a GET route in the server's
+ * response cache, so repeated requests are answered without calling the
+ * service.
+ *
+ * The cache key is the request URI and query, plus the values of the
+ * headers listed in vary(). Only complete 200 responses without cookies
+ * are cached. Cached responses carry an ETag, and a matching
+ * If-None-Match returns 304.
+ *
+ * e.g.
+ * <blockquote><pre>
+ *   &#64;Get("/price/{id}")
+ *   &#64;Cached(value=30, vary="accept-language")
+ *   public void price(&#64;Path("id") String id, Result&lt;Price&gt; result)
+ *   {
+ *     ...
+ *   }
+ * </pre></blockquote>
+ *
+ * Entries can be removed before they expire with {@link WebCache}.
+ *
+ * @see WebCache
+ */
+@Documented
+@Retention(RUNTIME)
+@Target({TYPE, METHOD})
+public @interface Cached
+{
+  /**
+   * Time to live of a cached response.
+   */
+  long value() default 60;
+
+  /**
+   * Unit of the time to live.
+   */
+  TimeUnit unit() default TimeUnit.SECONDS;
+
+  /**
+   * Request headers that select between cached variants of a response.
+   */
+  String[] vary() default {};
+}
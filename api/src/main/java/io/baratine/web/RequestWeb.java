@@ -35,12 +35,14 @@ import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import io.baratine.config.Config;
 import io.baratine.inject.Injector;
 import io.baratine.io.Buffer;
 import io.baratine.io.Buffers;
 import io.baratine.pipe.Credits;
+import io.baratine.pipe.Pipe;
 import io.baratine.service.Result;
 import io.baratine.service.ResultChain;
 import io.baratine.service.ServiceRef;
@@ -305,6 +307,43 @@ public interface RequestWeb extends ResultChain<Object> // OutWeb
     body(type, then(after));
   }
 
+  /**
+   * Streams the request body to a pipe as it arrives instead of buffering
+   * the complete body. Chunks are delivered in order on the service thread,
+   * followed by close() at the end of the body.
+   * <p>
+   * Flow control uses the pipe's credits: the request passes its
+   * {@code Credits} to {@code pipe.credits(Credits)}, and each delivered
+   * chunk uses one credit. When the credits are used up, the connection
+   * stops reading from the client until the handler adds more.
+   *
+   * <blockquote><pre>
+   *   &#64;Post
+   *   public void upload(RequestWeb request)
+   *   {
+   *     request.bodyStream(Pipe.of(new PipeHandler&lt;Buffer&gt;() { ... }));
+   *   }
+   * </pre></blockquote>
+   *
+   * @param pipe receiver for the body chunks
+   */
+  void bodyStream(Pipe<Buffer> pipe);
+
+  /**
+   * Streams a multipart/form-data body part by part. When a part's headers
+   * are parsed, {@code onPart} returns the pipe receiving that part's data,
+   * or null to skip the part. Each part pipe is closed at its boundary and
+   * shares the body credits described in {@link #bodyStream(Pipe)}.
+   * <p>
+   * Parts delivered here are not buffered, so {@code Part.data()} is not
+   * available and {@code Part.size()} is -1.
+   *
+   * @param onPart supplies a pipe for each part
+   * @param result completes after the final boundary, or fails on a
+   *   malformed body
+   */
+  void bodyParts(Function<Part,Pipe<Buffer>> onPart, Result<Void> result);
+
   //
   // response
   //
@@ -370,6 +409,19 @@ public interface RequestWeb extends ResultChain<Object> // OutWeb
    */
   void upgrade(Object service);
 
+  /**
+   * Pushes a critical resource, such as a stylesheet, to the client before
+   * it asks for it. Only HTTP/2 connections with push enabled by the client
+   * can push; otherwise the call is ignored.
+   *
+   * @param path server-relative path of the resource, e.g. "/css/app.css"
+   * @return true if the push was started
+   */
+  default boolean pushResource(String path)
+  {
+    return false;
+  }
+
   /**
    * Completes processing with empty result
    */
@@ -624,6 +676,17 @@ public interface RequestWeb extends ResultChain<Object> // OutWeb
      */
     void ok(RequestWeb out);
 
+    /**
+     * Notifies the filter that the request failed. The error response is
+     * still written through the filter and completed with ok().
+     *
+     * @param out request object
+     * @param exn the failure
+     */
+    default void fail(RequestWeb out, Throwable exn)
+    {
+    }
+
     /**
      * Delegates to RequestWeb.credits() method returning instance of Credits.
      *
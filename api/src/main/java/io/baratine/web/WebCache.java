@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package io.baratine.web;
+
+/**
+ * Invalidation api for the response cache of {@link Cached} routes.
+ *
+ * <blockquote><pre>
+ *   &#64;Inject WebCache _cache;
+ *
+ *   &#64;Post("/price/{id}")
+ *   public void update(&#64;Path("id") String id, &#64;Body Price price,
+ *                      Result&lt;Void&gt; result)
+ *   {
+ *     ...
+ *     _cache.invalidate("/price/" + id);
+ *   }
+ * </pre></blockquote>
+ */
+public interface WebCache
+{
+  /**
+   * Removes the cached responses for a request path, including all
+   * query strings and variants.
+   *
+   * @param path the request path, e.g. "/price/17"
+   */
+  void invalidate(String path);
+
+  /**
+   * Removes the cached responses for all paths starting with a prefix.
+   *
+   * @param prefix the path prefix, e.g. "/price/"
+   */
+  void invalidatePrefix(String prefix);
+
+  /**
+   * Removes all cached responses.
+   */
+  void clear();
+}
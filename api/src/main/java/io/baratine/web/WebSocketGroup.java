@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package io.baratine.web;
+
+/**
+ * Named set of websockets receiving the same messages. A message written
+ * to the group is framed once and shared by every member.
+ *
+ * Members whose connection falls behind are skipped or closed, depending
+ * on the server's slow-consumer policy, so one slow client does not hold
+ * up the rest of the group.
+ *
+ * <blockquote><pre>
+ *   &#64;Inject WebSocketGroups _groups;
+ *
+ *   public void open(WebSocket&lt;String&gt; ws)
+ *   {
+ *     _groups.group("news").join(ws);
+ *   }
+ *
+ *   public void publish(String item)
+ *   {
+ *     _groups.group("news").write(item);
+ *   }
+ * </pre></blockquote>
+ */
+public interface WebSocketGroup
+{
+  /**
+   * The group's name.
+   */
+  String name();
+
+  /**
+   * Adds a server websocket to the group. Closed websockets leave the
+   * group automatically.
+   */
+  void join(WebSocket<?> ws);
+
+  /**
+   * Removes a websocket from the group.
+   */
+  void leave(WebSocket<?> ws);
+
+  /**
+   * Number of websockets in the group.
+   */
+  int size();
+
+  /**
+   * Sends a text message to every member.
+   */
+  void write(String data);
+
+  /**
+   * Sends a binary message to every member.
+   */
+  void write(byte []buffer, int offset, int length);
+}
@@ -34,10 +34,13 @@ import java.util.logging.Logger;
 
 import com.caucho.v5.amp.deliver.Deliver;
 import com.caucho.v5.amp.deliver.Outbox;
+import com.caucho.v5.amp.spi.HeadersAmp;
 import com.caucho.v5.amp.spi.InboxAmp;
 import com.caucho.v5.amp.spi.MessageAmp;
+import com.caucho.v5.amp.spi.OutboxAmp;
 import com.caucho.v5.amp.spi.ShutdownModeAmp;
 import com.caucho.v5.amp.stub.StubAmp;
+import com.caucho.v5.amp.trace.TraceSpan;
 
 import io.baratine.service.ServiceExceptionConnect;
 
@@ -51,6 +54,8 @@ class DeliverInbox implements Deliver<MessageAmp>
   
   private final InboxAmp _inbox;
   private final StubAmp _actor;
+  
+  private final DeliverWatch _watch;
 
   // private OutboxAmp _outbox;
 
@@ -61,6 +66,8 @@ class DeliverInbox implements Deliver<MessageAmp>
   {
     _inbox = inbox;
     _actor = actor;
+    
+    _watch = new DeliverWatch(inbox);
   }
   
   @Override
@@ -100,6 +107,58 @@ class DeliverInbox implements Deliver<MessageAmp>
   {
     //outbox.setMessage(msg);
     
+    _watch.begin(msg);
+    
+    try {
+      TraceSpan span = msg.traceSpan();
+    
+      if (span != null && span.begin()) {
+        deliverTrace(msg, (OutboxAmp) outbox, span);
+      }
+      else if (isTraceContext(msg)) {
+        deliverTrace(msg, (OutboxAmp) outbox, null);
+      }
+      else {
+        invoke(msg);
+      }
+    } finally {
+      _watch.end();
+    }
+  }
+  
+  /**
+   * Delivers a traced message as the outbox's current message, so the
+   * service's own calls are children of its span, or of its context's
+   * span when the message has none of its own.
+   */
+  private void deliverTrace(MessageAmp msg, 
+                            OutboxAmp outbox,
+                            TraceSpan span)
+  {
+    MessageAmp oldMsg = outbox.message();
+    
+    outbox.message(msg);
+    
+    try {
+      invoke(msg);
+    } finally {
+      outbox.message(oldMsg);
+      
+      if (span != null) {
+        span.end();
+      }
+    }
+  }
+  
+  private static boolean isTraceContext(MessageAmp msg)
+  {
+    HeadersAmp headers = msg.getHeaders();
+    
+    return headers != null && headers.get(TraceSpan.CONTEXT) != null;
+  }
+  
+  private void invoke(MessageAmp msg)
+  {
     try {
       msg.invoke(_inbox, _actor);
     } catch (ServiceExceptionConnect e) {
@@ -153,6 +212,8 @@ class DeliverInbox implements Deliver<MessageAmp>
   public void shutdown(ShutdownModeAmp mode)
   {
     _actor.state().shutdown(_actor, mode);
+    
+    _watch.close();
   }
 
   @Override
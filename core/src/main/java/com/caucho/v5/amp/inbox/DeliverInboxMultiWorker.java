@@ -40,6 +40,7 @@ import com.caucho.v5.amp.spi.OutboxAmp;
 import com.caucho.v5.amp.spi.ShutdownModeAmp;
 import com.caucho.v5.amp.stub.StubAmp;
 import com.caucho.v5.amp.stub.StubAmpMultiWorker;
+import com.caucho.v5.amp.trace.TraceSpan;
 
 import io.baratine.service.Result;
 import io.baratine.service.ResultFuture;
@@ -61,6 +62,8 @@ class DeliverInboxMultiWorker implements Deliver<MessageAmp>
 
   private final DeliverInboxState _stateShared;
   private DeliverInboxState _stateSelf;
+  
+  private final DeliverWatch _watch;
   //private MessageInboxDeliver _messageContext;
 
   DeliverInboxMultiWorker(InboxQueue inbox, 
@@ -73,6 +76,8 @@ class DeliverInboxMultiWorker implements Deliver<MessageAmp>
     _stateShared = state;
     
     _stateSelf = new DeliverInboxState();
+    
+    _watch = new DeliverWatch(inbox);
   }
   
   @Override
@@ -102,6 +107,18 @@ class DeliverInboxMultiWorker implements Deliver<MessageAmp>
   public final void deliver(final MessageAmp msg, 
                             Outbox outbox)
       throws Exception
+  {
+    _watch.begin(msg);
+    
+    try {
+      deliverImpl(msg, outbox);
+    } finally {
+      _watch.end();
+    }
+  }
+  
+  private void deliverImpl(final MessageAmp msg, 
+                           Outbox outbox)
   {
     final HeadersAmp headers = msg.getHeaders();
     
@@ -109,6 +126,12 @@ class DeliverInboxMultiWorker implements Deliver<MessageAmp>
       OutboxAmp outboxAmp = (OutboxAmp) outbox;
       
       outboxAmp.message(msg);
+      
+      TraceSpan span = msg.traceSpan();
+      
+      if (span != null && ! span.begin()) {
+        span = null;
+      }
 
       try {
         msg.invoke(_inbox, _actor);
@@ -118,6 +141,10 @@ class DeliverInboxMultiWorker implements Deliver<MessageAmp>
         log.log(Level.WARNING, this + " " + e.toString(), e);
       } finally {
         outboxAmp.message(null);
+        
+        if (span != null) {
+          span.end();
+        }
       }
     }
     else {
@@ -181,6 +208,8 @@ class DeliverInboxMultiWorker implements Deliver<MessageAmp>
     }
 
     _actor.state().shutdown(_actor, mode);
+    
+    _watch.close();
   }
 
   public void onShutdownImpl(ShutdownModeAmp mode)
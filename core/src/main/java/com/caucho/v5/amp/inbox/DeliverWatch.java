@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.amp.inbox;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.caucho.v5.amp.spi.InboxAmp;
+import com.caucho.v5.amp.spi.MessageAmp;
+
+/**
+ * Delivery state of an inbox worker, read by the InboxWatchdog.
+ *
+ * The delivering thread only counts the message and publishes it with
+ * an ordered store, so the watch adds no fence to the delivery loop.
+ */
+final class DeliverWatch
+{
+  private final InboxAmp _inbox;
+
+  private final AtomicReference<MessageAmp> _message = new AtomicReference<>();
+
+  // written by the delivering thread before the message is published
+  private Thread _thread;
+  private long _count;
+
+  // watchdog state
+  private MessageAmp _lastMessage;
+  private long _lastCount;
+  private long _lastTime;
+  private boolean _isSlowReported;
+
+  DeliverWatch(InboxAmp inbox)
+  {
+    _inbox = inbox;
+
+    InboxWatchdog.current().register(this);
+  }
+
+  InboxAmp inbox()
+  {
+    return _inbox;
+  }
+
+  /**
+   * Marks the start of a message's delivery.
+   */
+  void begin(MessageAmp msg)
+  {
+    _thread = Thread.currentThread();
+    _count++;
+
+    _message.lazySet(msg);
+  }
+
+  /**
+   * Marks the end of the current delivery.
+   */
+  void end()
+  {
+    _message.lazySet(null);
+  }
+
+  void close()
+  {
+    InboxWatchdog.current().unregister(this);
+  }
+
+  MessageAmp message()
+  {
+    return _message.get();
+  }
+
+  Thread thread()
+  {
+    return _thread;
+  }
+
+  long count()
+  {
+    return _count;
+  }
+
+  /**
+   * Returns how long the current message has run, measured from the
+   * first check that saw it, or -1 if no message is running.
+   */
+  long runTime(MessageAmp msg, long count, long now)
+  {
+    if (msg == null) {
+      _lastMessage = null;
+      return -1;
+    }
+    else if (msg != _lastMessage || count != _lastCount) {
+      _lastMessage = msg;
+      _lastCount = count;
+      _lastTime = now;
+      _isSlowReported = false;
+    }
+
+    return now - _lastTime;
+  }
+
+  /**
+   * True the first time the current message is reported as slow.
+   */
+  boolean toSlowReported()
+  {
+    boolean isReported = _isSlowReported;
+
+    _isSlowReported = true;
+
+    return ! isReported;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _inbox.getAddress() + "]";
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.amp.inbox;
+
+/**
+ * A slow message or stuck inbox found by the InboxWatchdog, with the
+ * stack of the thread delivering for the inbox.
+ */
+public final class InboxStall
+{
+  private final Kind _kind;
+  private final String _address;
+  private final String _message;
+  private final long _queueSize;
+  private final long _time;
+  private final String _threadName;
+  private final Thread.State _threadState;
+  private final StackTraceElement []_stack;
+
+  InboxStall(Kind kind,
+             String address,
+             Object message,
+             long queueSize,
+             long time,
+             Thread thread)
+  {
+    _kind = kind;
+    _address = address;
+    _message = message != null ? String.valueOf(message) : null;
+    _queueSize = queueSize;
+    _time = time;
+
+    if (thread != null) {
+      _threadName = thread.getName();
+      _threadState = thread.getState();
+      _stack = thread.getStackTrace();
+    }
+    else {
+      _threadName = null;
+      _threadState = null;
+      _stack = new StackTraceElement[0];
+    }
+  }
+
+  public Kind kind()
+  {
+    return _kind;
+  }
+
+  /**
+   * The inbox's service address.
+   */
+  public String address()
+  {
+    return _address;
+  }
+
+  /**
+   * The running message, including its method, or null if no thread is
+   * delivering for the inbox.
+   */
+  public String message()
+  {
+    return _message;
+  }
+
+  public long queueSize()
+  {
+    return _queueSize;
+  }
+
+  /**
+   * Milliseconds the message has run or the inbox has not drained.
+   */
+  public long time()
+  {
+    return _time;
+  }
+
+  public String threadName()
+  {
+    return _threadName;
+  }
+
+  public StackTraceElement []stack()
+  {
+    return _stack;
+  }
+
+  /**
+   * Multi-line report in the format of a thread dump.
+   */
+  public String report()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    if (_kind == Kind.SLOW) {
+      sb.append("slow message in ").append(_address);
+      sb.append(" running ").append(_time).append("ms");
+    }
+    else {
+      sb.append("stuck inbox ").append(_address);
+      sb.append(" not draining for ").append(_time).append("ms");
+    }
+
+    sb.append(" (queue=").append(_queueSize).append(")");
+
+    if (_message != null) {
+      sb.append("\n  message: ").append(_message);
+    }
+
+    if (_threadName != null) {
+      sb.append("\n\"").append(_threadName).append("\" ").append(_threadState);
+
+      for (StackTraceElement elt : _stack) {
+        sb.append("\n\tat ").append(elt);
+      }
+    }
+    else {
+      sb.append("\n  no thread is delivering for the inbox");
+    }
+
+    return sb.toString();
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[" + _kind
+            + "," + _address
+            + "," + _time + "ms]");
+  }
+
+  public enum Kind {
+    /**
+     * A message running longer than the slow time.
+     */
+    SLOW,
+
+    /**
+     * A queue that has not drained for the stuck time.
+     */
+    STUCK;
+  }
+}
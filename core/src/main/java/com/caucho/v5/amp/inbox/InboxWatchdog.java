@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.amp.inbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.amp.spi.InboxAmp;
+import com.caucho.v5.amp.spi.MessageAmp;
+
+/**
+ * Watchdog for slow messages and stuck inboxes.
+ *
+ * Each check compares the inbox workers' state with the previous check:
+ * a worker still delivering the same message is slow once the message
+ * has run for the slow time, and an inbox whose queue is not empty but
+ * has delivered nothing for the stuck time is stuck. Times are measured
+ * from the first check that saw the state, so they are accurate to the
+ * check period. Each incident is reported once, with the stack of the
+ * delivering thread.
+ */
+public final class InboxWatchdog
+{
+  private static final Logger log
+    = Logger.getLogger(InboxWatchdog.class.getName());
+
+  private static final InboxWatchdog _current = new InboxWatchdog();
+
+  // workers of inboxes never shut down are dropped when collected
+  private final Map<DeliverWatch,Boolean> _watchMap
+    = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private IdentityHashMap<InboxAmp,InboxState> _inboxMap
+    = new IdentityHashMap<>();
+
+  private final AtomicReference<WatchdogThread> _thread
+    = new AtomicReference<>();
+
+  private volatile long _slowTime = TimeUnit.SECONDS.toNanos(10);
+  private volatile long _stuckTime = TimeUnit.SECONDS.toNanos(30);
+
+  private final AtomicLong _slowCount = new AtomicLong();
+  private final AtomicLong _stuckCount = new AtomicLong();
+  private volatile int _stalledCount;
+
+  private InboxWatchdog()
+  {
+  }
+
+  public static InboxWatchdog current()
+  {
+    return _current;
+  }
+
+  void register(DeliverWatch watch)
+  {
+    _watchMap.put(watch, Boolean.TRUE);
+  }
+
+  void unregister(DeliverWatch watch)
+  {
+    _watchMap.remove(watch);
+  }
+
+  /**
+   * Time in milliseconds a message may run before it is reported.
+   */
+  public InboxWatchdog slowTime(long time)
+  {
+    _slowTime = TimeUnit.MILLISECONDS.toNanos(Math.max(1, time));
+
+    return this;
+  }
+
+  public long slowTime()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(_slowTime);
+  }
+
+  /**
+   * Time in milliseconds a queue may go without draining before it is
+   * reported.
+   */
+  public InboxWatchdog stuckTime(long time)
+  {
+    _stuckTime = TimeUnit.MILLISECONDS.toNanos(Math.max(1, time));
+
+    return this;
+  }
+
+  public long stuckTime()
+  {
+    return TimeUnit.NANOSECONDS.toMillis(_stuckTime);
+  }
+
+  /**
+   * Total slow messages reported.
+   */
+  public long slowCount()
+  {
+    return _slowCount.get();
+  }
+
+  /**
+   * Total stuck inboxes reported.
+   */
+  public long stuckCount()
+  {
+    return _stuckCount.get();
+  }
+
+  /**
+   * Slow messages and stuck inboxes found by the last check.
+   */
+  public int stalledCount()
+  {
+    return _stalledCount;
+  }
+
+  public boolean isActive()
+  {
+    return _thread.get() != null;
+  }
+
+  /**
+   * Check period in milliseconds of the running thread, or 0 if stopped.
+   */
+  public long period()
+  {
+    WatchdogThread thread = _thread.get();
+
+    return thread != null ? thread._period : 0;
+  }
+
+  /**
+   * Listener of the running thread, or null if stopped.
+   */
+  public Consumer<InboxStall> listener()
+  {
+    WatchdogThread thread = _thread.get();
+
+    return thread != null ? thread._listener : null;
+  }
+
+  /**
+   * Starts checking every period, passing new incidents to the listener.
+   */
+  public void start(long period, Consumer<InboxStall> listener)
+  {
+    Objects.requireNonNull(listener);
+
+    WatchdogThread thread = new WatchdogThread(Math.max(1, period), listener);
+
+    if (_thread.compareAndSet(null, thread)) {
+      thread.start();
+    }
+  }
+
+  public void stop()
+  {
+    WatchdogThread thread = _thread.getAndSet(null);
+
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * Checks the inboxes, returning the incidents not already reported.
+   */
+  public synchronized List<InboxStall> check()
+  {
+    long now = System.nanoTime();
+    long slowTime = _slowTime;
+    long stuckTime = _stuckTime;
+
+    DeliverWatch []watches;
+
+    synchronized (_watchMap) {
+      watches = _watchMap.keySet().toArray(new DeliverWatch[_watchMap.size()]);
+    }
+
+    ArrayList<InboxStall> stalls = new ArrayList<>();
+    IdentityHashMap<InboxAmp,InboxState> inboxMap = new IdentityHashMap<>();
+
+    int stalledCount = 0;
+
+    for (DeliverWatch watch : watches) {
+      MessageAmp msg = watch.message();
+      Thread thread = watch.thread();
+      long count = watch.count();
+
+      InboxAmp inbox = watch.inbox();
+
+      InboxState state = inboxMap.get(inbox);
+
+      if (state == null) {
+        state = _inboxMap.get(inbox);
+
+        if (state == null) {
+          state = new InboxState(now);
+        }
+
+        state._count = 0;
+        state._thread = null;
+        state._message = null;
+
+        inboxMap.put(inbox, state);
+      }
+
+      state._count += count;
+
+      if (msg != null) {
+        state._thread = thread;
+        state._message = msg;
+      }
+
+      long runTime = watch.runTime(msg, count, now);
+
+      if (runTime >= slowTime) {
+        stalledCount++;
+
+        if (watch.toSlowReported()) {
+          _slowCount.incrementAndGet();
+
+          stalls.add(new InboxStall(InboxStall.Kind.SLOW,
+                                    inbox.getAddress(),
+                                    msg,
+                                    inbox.getSize(),
+                                    TimeUnit.NANOSECONDS.toMillis(runTime),
+                                    thread));
+        }
+      }
+    }
+
+    for (Map.Entry<InboxAmp,InboxState> entry : inboxMap.entrySet()) {
+      InboxAmp inbox = entry.getKey();
+      InboxState state = entry.getValue();
+
+      long size = inbox.getSize();
+
+      if (size == 0 || state._count != state._lastCount) {
+        state._lastCount = state._count;
+        state._progressTime = now;
+        state._isStuckReported = false;
+      }
+      else if (now - state._progressTime >= stuckTime) {
+        stalledCount++;
+
+        if (! state._isStuckReported) {
+          state._isStuckReported = true;
+
+          _stuckCount.incrementAndGet();
+
+          long time = now - state._progressTime;
+
+          stalls.add(new InboxStall(InboxStall.Kind.STUCK,
+                                    inbox.getAddress(),
+                                    state._message,
+                                    size,
+                                    TimeUnit.NANOSECONDS.toMillis(time),
+                                    state._thread));
+        }
+      }
+    }
+
+    _inboxMap = inboxMap;
+    _stalledCount = stalledCount;
+
+    return stalls;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[slow=" + slowTime() + "ms"
+            + ",stuck=" + stuckTime() + "ms]");
+  }
+
+  /**
+   * Progress of an inbox across checks.
+   */
+  private static class InboxState
+  {
+    private long _count;
+    private Thread _thread;
+    private MessageAmp _message;
+
+    private long _lastCount;
+    private long _progressTime;
+    private boolean _isStuckReported;
+
+    InboxState(long now)
+    {
+      _lastCount = -1;
+      _progressTime = now;
+    }
+  }
+
+  private class WatchdogThread extends Thread
+  {
+    private final long _period;
+    private final Consumer<InboxStall> _listener;
+
+    WatchdogThread(long period, Consumer<InboxStall> listener)
+    {
+      super("inbox-watchdog");
+
+      setDaemon(true);
+
+      _period = period;
+      _listener = listener;
+    }
+
+    @Override
+    public void run()
+    {
+      try {
+        while (_thread.get() == this) {
+          LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(_period));
+
+          if (_thread.get() != this) {
+            break;
+          }
+
+          for (InboxStall stall : check()) {
+            try {
+              _listener.accept(stall);
+            } catch (Throwable e) {
+              log.log(Level.WARNING, e.toString(), e);
+            }
+          }
+        }
+      } catch (Throwable e) {
+        log.log(Level.WARNING, e.toString(), e);
+      } finally {
+        _thread.compareAndSet(this, null);
+      }
+    }
+  }
+}
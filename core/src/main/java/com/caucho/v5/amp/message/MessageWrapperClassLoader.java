@@ -37,6 +37,7 @@ import com.caucho.v5.amp.spi.InboxAmp;
 import com.caucho.v5.amp.spi.MessageAmp;
 import com.caucho.v5.amp.spi.OutboxAmp;
 import com.caucho.v5.amp.stub.StubAmp;
+import com.caucho.v5.amp.trace.TraceSpan;
 
 /**
  * Message to shut down an instance.
@@ -133,4 +134,10 @@ public class MessageWrapperClassLoader implements MessageAmp
   {
     return getDelegate().getHeaders();
   }
+
+  @Override
+  public TraceSpan traceSpan()
+  {
+    return getDelegate().traceSpan();
+  }
 }
@@ -42,6 +42,8 @@ import com.caucho.v5.amp.spi.InboxAmp;
 import com.caucho.v5.amp.spi.MessageAmp;
 import com.caucho.v5.amp.spi.OutboxAmp;
 import com.caucho.v5.amp.stub.MethodAmp;
+import com.caucho.v5.amp.trace.TraceRecorder;
+import com.caucho.v5.amp.trace.TraceSpan;
 
 /**
  * Handle to an amp instance.
@@ -57,6 +59,7 @@ abstract public class MethodMessageBase implements MessageAmp
   private final ServiceRefAmp _serviceRef;
   private final MethodAmp _method;
   private HeadersAmp _headers;
+  private TraceSpan _traceSpan;
   
   /*
   public MethodMessageBase(ServiceRefAmp serviceRef,
@@ -103,7 +106,7 @@ abstract public class MethodMessageBase implements MessageAmp
       headersCaller = HeadersNull.NULL;
     }
     
-    _headers = inboxTarget.createHeaders(headersCaller, serviceRef, method);
+    _headers = trace(inboxTarget.createHeaders(headersCaller, serviceRef, method));
   }
   
   /*
@@ -144,7 +147,61 @@ abstract public class MethodMessageBase implements MessageAmp
     _method = method;
 
     //_headers = _inboxTarget.createHeaders(headersCaller, serviceRef, method);
-    _headers = headersCaller;
+    _headers = trace(headersCaller);
+  }
+  
+  /**
+   * Starts a span when the caller is traced, replacing the caller's
+   * trace header with the span's. A message sent from a trace context,
+   * like a request's dispatch to its route, runs inside the context's
+   * span and starts none of its own.
+   */
+  private HeadersAmp trace(HeadersAmp headers)
+  {
+    if (headers == null) {
+      return headers;
+    }
+    
+    Object parent = headers.get(TraceSpan.HEADER);
+    
+    if (parent == null) {
+      parent = headers.get(TraceSpan.CONTEXT);
+      
+      if (parent == null || isTraceContext(_outboxCaller)) {
+        return headers;
+      }
+    }
+    
+    TraceSpan span = TraceRecorder.current().child(parent, 
+                                                   _method.name(),
+                                                   serviceName(_serviceRef));
+    
+    if (span == null) {
+      return headers;
+    }
+    
+    _traceSpan = span;
+    
+    return span.headers(headers);
+  }
+  
+  private static boolean isTraceContext(OutboxAmp outbox)
+  {
+    return outbox != null && outbox.message() instanceof TraceMessage;
+  }
+  
+  /**
+   * Local services are named by their path, like "/hello".
+   */
+  private static String serviceName(ServiceRefAmp serviceRef)
+  {
+    String address = serviceRef.address();
+    
+    if (address != null && address.startsWith("local://")) {
+      return address.substring("local://".length());
+    }
+    
+    return address;
   }
   
   /**
@@ -211,6 +268,12 @@ abstract public class MethodMessageBase implements MessageAmp
     return _headers;
   }
   
+  @Override
+  public final TraceSpan traceSpan()
+  {
+    return _traceSpan;
+  }
+  
   protected final ServiceRefAmp serviceRef()
   {
     return _serviceRef;
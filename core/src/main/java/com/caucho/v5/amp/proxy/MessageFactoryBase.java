@@ -46,8 +46,11 @@ import com.caucho.v5.amp.message.StreamCallMessage;
 import com.caucho.v5.amp.pipe.PipeInMessage;
 import com.caucho.v5.amp.pipe.PipeOutMessage;
 import com.caucho.v5.amp.spi.HeadersAmp;
+import com.caucho.v5.amp.spi.MessageAmp;
 import com.caucho.v5.amp.spi.OutboxAmp;
 import com.caucho.v5.amp.stub.MethodAmp;
+import com.caucho.v5.amp.trace.TraceRecorder;
+import com.caucho.v5.amp.trace.TraceSpan;
 
 import io.baratine.pipe.PipeSub;
 import io.baratine.pipe.PipePub;
@@ -81,7 +84,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                    MethodAmp method)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
     
       SendMessage_0 msg
         = new SendMessage_0(outbox, headers, serviceRef, method);
@@ -96,7 +99,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                    Object arg1)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
     
       SendMessage_1 msg
         = new SendMessage_1(outbox, headers, serviceRef, method, arg1);
@@ -111,7 +114,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                    Object []args)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
     
       SendMessage_N msg
         = new SendMessage_N(outbox, headers, serviceRef, method, args);
@@ -127,7 +130,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                               MethodAmp method)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
       QueryWithResultMessage_0<V> msg
         = new QueryWithResultMessage_0<>(outbox,
                                          headers,
@@ -150,7 +153,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                               Object arg1)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
 
       QueryWithResultMessage_1<V> msg
         = new QueryWithResultMessage_1<>(outbox,
@@ -173,7 +176,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                               Object[] args)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
     
       QueryWithResultMessage_N<V> msg
       = new QueryWithResultMessage_N<>(outbox,
@@ -195,7 +198,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                            Object[] args)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
     
       ResultFuture<V> future = new ResultFuture<>();
     
@@ -225,7 +228,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                            Object[] args)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
     
       ResultFuture<V> future = new ResultFuture<>();
 
@@ -255,7 +258,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                               Object []args)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
     
       StreamCallMessage<V> msg
       = new StreamCallMessage<V>(outbox,
@@ -279,7 +282,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                                 Object []args)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
     
       PipeOutMessage<V> msg
         = new PipeOutMessage<V>(outbox,
@@ -302,7 +305,7 @@ public final class MessageFactoryBase implements MessageFactoryAmp
                                 Object []args)
   {
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_manager)) {
-      HeadersAmp headers = HeadersNull.NULL;
+      HeadersAmp headers = headers(outbox);
     
       PipeInMessage<V> msg
         = new PipeInMessage<V>(outbox,
@@ -318,6 +321,38 @@ public final class MessageFactoryBase implements MessageFactoryAmp
     }
   }
   
+  /**
+   * Messages inherit only the caller's trace headers; the debug factory
+   * inherits all of the caller's headers.
+   */
+  private static HeadersAmp headers(OutboxAmp outbox)
+  {
+    if (! TraceRecorder.current().isEnabled()) {
+      return HeadersNull.NULL;
+    }
+    
+    MessageAmp msg = outbox.message();
+    
+    if (msg == null) {
+      return HeadersNull.NULL;
+    }
+    
+    HeadersAmp headersCaller = msg.getHeaders();
+    
+    Object trace = headersCaller.get(TraceSpan.HEADER);
+    
+    if (trace != null) {
+      return HeadersNull.NULL.add(TraceSpan.HEADER, trace);
+    }
+    
+    Object context = headersCaller.get(TraceSpan.CONTEXT);
+    
+    if (context != null) {
+      return HeadersNull.NULL.add(TraceSpan.CONTEXT, context);
+    }
+    
+    return HeadersNull.NULL;
+  }
   /*
   private OutboxAmp getOutbox()
   {
@@ -32,6 +32,7 @@ package com.caucho.v5.amp.spi;
 import com.caucho.v5.amp.ServicesAmp;
 import com.caucho.v5.amp.deliver.MessageDeliver;
 import com.caucho.v5.amp.stub.StubAmp;
+import com.caucho.v5.amp.trace.TraceSpan;
 
 import io.baratine.spi.MessageApi;
 
@@ -51,6 +52,14 @@ public interface MessageAmp extends MessageDeliver<MessageAmp>, MessageApi
   HeadersAmp getHeaders();
 
   void offer(long timeout);
+
+  /**
+   * The message's span when its caller is traced.
+   */
+  default TraceSpan traceSpan()
+  {
+    return null;
+  }
   
   static MessageAmp current()
   {
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.amp.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.amp.trace.TraceSpan.Kind;
+
+/**
+ * Per-node recorder of completed trace spans.
+ *
+ * Spans are kept in a fixed ring, so recording is a counter increment
+ * and an array store, and old spans are overwritten rather than
+ * growing the heap. An optional exporter appends new spans to a file,
+ * one Zipkin v2 JSON span per line.
+ *
+ * Tracing starts at a root span, e.g. an HTTP request, and follows the
+ * trace header through AMP messages. Without a root, messages carry no
+ * header and cost a single header lookup.
+ */
+public final class TraceRecorder
+{
+  private static final Logger log
+    = Logger.getLogger(TraceRecorder.class.getName());
+
+  private static final TraceRecorder _current = new TraceRecorder();
+
+  private final AtomicLong _sequence = new AtomicLong();
+  private final AtomicLong _exportLostCount = new AtomicLong();
+
+  private volatile AtomicReferenceArray<TraceSpan> _ring;
+
+  private volatile boolean _isEnabled;
+  private volatile double _sampleRate = 1.0;
+  private volatile String _serviceName = "baratine";
+
+  private final AtomicReference<ExportThread> _exportThread
+    = new AtomicReference<>();
+
+  private TraceRecorder()
+  {
+    ringSize(4096);
+  }
+
+  public static TraceRecorder current()
+  {
+    return _current;
+  }
+
+  public boolean isEnabled()
+  {
+    return _isEnabled;
+  }
+
+  public TraceRecorder enabled(boolean isEnabled)
+  {
+    _isEnabled = isEnabled;
+
+    return this;
+  }
+
+  /**
+   * Fraction of root spans that start a trace, from 0 to 1.
+   */
+  public double sampleRate()
+  {
+    return _sampleRate;
+  }
+
+  public TraceRecorder sampleRate(double sampleRate)
+  {
+    _sampleRate = Math.max(0, Math.min(1, sampleRate));
+
+    return this;
+  }
+
+  /**
+   * Service name for root spans, e.g. the node's name.
+   */
+  public String serviceName()
+  {
+    return _serviceName;
+  }
+
+  public TraceRecorder serviceName(String serviceName)
+  {
+    _serviceName = serviceName;
+
+    return this;
+  }
+
+  public int ringSize()
+  {
+    return _ring.length();
+  }
+
+  /**
+   * Sets the ring size, rounded up to a power of two, discarding the
+   * recorded spans.
+   */
+  public TraceRecorder ringSize(int size)
+  {
+    int capacity = Integer.highestOneBit(Math.max(16, size) - 1) << 1;
+
+    _ring = new AtomicReferenceArray<>(capacity);
+
+    return this;
+  }
+
+  /**
+   * Total number of spans recorded.
+   */
+  public long recordCount()
+  {
+    return _sequence.get();
+  }
+
+  /**
+   * Starts a new trace, subject to the sample rate.
+   *
+   * @return the root span, or null if the trace is not sampled
+   */
+  public TraceSpan root(String name, Kind kind)
+  {
+    if (! _isEnabled) {
+      return null;
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    if (_sampleRate < 1 && _sampleRate <= random.nextDouble()) {
+      return null;
+    }
+
+    return new TraceSpan(random.nextLong(), nextId(), nextId(), 0,
+                         name, _serviceName, kind);
+  }
+
+  /**
+   * Starts a span continuing a W3C traceparent header from another
+   * system. The caller's sampled flag overrides the sample rate.
+   */
+  public TraceSpan root(String name, Kind kind, String traceparent)
+  {
+    if (! _isEnabled) {
+      return null;
+    }
+    else if (traceparent == null) {
+      return root(name, kind);
+    }
+
+    // version "-" trace-id "-" parent-id "-" flags
+    String value = traceparent.trim();
+
+    if (value.length() < 55
+        || value.charAt(2) != '-'
+        || value.charAt(35) != '-'
+        || value.charAt(52) != '-') {
+      return root(name, kind);
+    }
+
+    try {
+      long traceIdHigh = TraceSpan.parseHex(value, 3, 19);
+      long traceId = TraceSpan.parseHex(value, 19, 35);
+      long parentId = TraceSpan.parseHex(value, 36, 52);
+      long flags = TraceSpan.parseHex(value, 53, 55);
+
+      if ((flags & 0x1) == 0) {
+        return null;
+      }
+
+      return new TraceSpan(traceIdHigh, traceId, nextId(), parentId,
+                           name, _serviceName, kind);
+    } catch (NumberFormatException e) {
+      return root(name, kind);
+    }
+  }
+
+  /**
+   * Creates the span for a message whose caller is traced.
+   *
+   * @param header the caller's trace header
+   * @param name the method name
+   * @param serviceName the service address
+   * @return the child span, or null if tracing is disabled
+   */
+  public TraceSpan child(Object header, String name, String serviceName)
+  {
+    if (! _isEnabled) {
+      return null;
+    }
+
+    return TraceSpan.child(header, name, serviceName, null, nextId());
+  }
+
+  private static long nextId()
+  {
+    long id;
+
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == 0);
+
+    return id;
+  }
+
+  /**
+   * Records a completed span.
+   */
+  void record(TraceSpan span)
+  {
+    AtomicReferenceArray<TraceSpan> ring = _ring;
+
+    long sequence = _sequence.getAndIncrement();
+
+    span.sequence(sequence);
+
+    ring.set((int) (sequence & (ring.length() - 1)), span);
+  }
+
+  /**
+   * The recorded spans, oldest first.
+   */
+  public List<TraceSpan> spans()
+  {
+    AtomicReferenceArray<TraceSpan> ring = _ring;
+
+    long end = _sequence.get();
+    long start = Math.max(0, end - ring.length());
+
+    ArrayList<TraceSpan> spans = new ArrayList<>();
+
+    for (long seq = start; seq < end; seq++) {
+      TraceSpan span = ring.get((int) (seq & (ring.length() - 1)));
+
+      if (span != null && span.sequence() == seq) {
+        spans.add(span);
+      }
+    }
+
+    return spans;
+  }
+
+  /**
+   * Writes the recorded spans as a Zipkin v2 JSON array.
+   */
+  public void writeJson(Appendable out)
+    throws IOException
+  {
+    out.append('[');
+
+    boolean isFirst = true;
+
+    for (TraceSpan span : spans()) {
+      if (! isFirst) {
+        out.append(",\n");
+      }
+      isFirst = false;
+
+      span.writeJson(out);
+    }
+
+    out.append("]\n");
+  }
+
+  /**
+   * Appends new spans to a file every period.
+   */
+  public void export(Path path, long period)
+  {
+    ExportThread thread = new ExportThread(path, Math.max(1, period));
+
+    ExportThread oldThread = _exportThread.getAndSet(thread);
+
+    if (oldThread != null) {
+      oldThread.close();
+    }
+
+    thread.start();
+  }
+
+  /**
+   * Spans overwritten in the ring before the exporter wrote them.
+   */
+  public long exportLostCount()
+  {
+    return _exportLostCount.get();
+  }
+
+  /**
+   * Stops the exporter after writing the remaining spans.
+   */
+  public void close()
+  {
+    ExportThread thread = _exportThread.getAndSet(null);
+
+    if (thread != null) {
+      thread.close();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[enabled=" + _isEnabled
+            + ",sample=" + _sampleRate
+            + ",ring=" + ringSize() + "]");
+  }
+
+  private class ExportThread extends Thread
+  {
+    private final Path _path;
+    private final long _period;
+
+    private volatile boolean _isClosed;
+
+    private long _cursor;
+
+    ExportThread(Path path, long period)
+    {
+      super("trace-export");
+
+      setDaemon(true);
+
+      _path = path;
+      _period = period;
+      _cursor = _sequence.get();
+    }
+
+    void close()
+    {
+      _isClosed = true;
+
+      LockSupport.unpark(this);
+
+      try {
+        join(_period + 1000);
+      } catch (InterruptedException e) {
+        log.log(Level.FINEST, e.toString(), e);
+      }
+    }
+
+    @Override
+    public void run()
+    {
+      try {
+        // the last flush follows the close
+        do {
+          LockSupport.parkNanos(_period * 1000000L);
+
+          flush();
+        } while (! _isClosed);
+      } catch (Throwable e) {
+        log.log(Level.WARNING, e.toString(), e);
+      } finally {
+        _exportThread.compareAndSet(this, null);
+      }
+    }
+
+    private void flush()
+      throws IOException
+    {
+      AtomicReferenceArray<TraceSpan> ring = _ring;
+
+      long end = _sequence.get();
+      long cursor = _cursor;
+
+      if (end <= cursor) {
+        return;
+      }
+
+      long start = Math.max(cursor, end - ring.length());
+      long lostCount = start - cursor;
+
+      try (Writer out = Files.newBufferedWriter(_path,
+                                                StandardCharsets.UTF_8,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.APPEND)) {
+        for (cursor = start; cursor < end; cursor++) {
+          TraceSpan span = ring.get((int) (cursor & (ring.length() - 1)));
+
+          if (span == null || span.sequence() < cursor) {
+            // claimed but not yet stored; retry on the next flush
+            break;
+          }
+          else if (cursor < span.sequence()) {
+            lostCount++;
+            continue;
+          }
+
+          span.writeJson(out);
+          out.write('\n');
+        }
+      } finally {
+        _cursor = cursor;
+        _exportLostCount.addAndGet(lostCount);
+      }
+    }
+  }
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.amp.trace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+import com.caucho.v5.amp.message.HeadersNull;
+import com.caucho.v5.amp.spi.HeadersAmp;
+
+/**
+ * A timed hop of a distributed trace.
+ *
+ * The span's context travels in the "trace.span" message header as
+ * 32 hex digits of trace id, a dash, and 16 hex digits of span id, so it
+ * crosses HAMP and JAMP links like any other string header.
+ *
+ * An AMP span starts when its message is created, begins running when
+ * the inbox delivers it, and ends when the delivery returns, so the
+ * queue wait and run time are reported separately.
+ *
+ * A message carrying the "trace.context" header instead runs inside its
+ * caller's span, like an HTTP request's dispatch to its route, and starts
+ * no span of its own; the calls it makes are children of that span.
+ */
+public final class TraceSpan
+{
+  public static final String HEADER = "trace.span";
+  public static final String CONTEXT = "trace.context";
+
+  private static final int HEADER_LENGTH = 32 + 1 + 16;
+
+  private static final char []HEX = "0123456789abcdef".toCharArray();
+
+  private final long _traceIdHigh;
+  private final long _traceId;
+  private final long _id;
+  private final long _parentId;
+
+  private final String _name;
+  private final String _serviceName;
+  private final Kind _kind;
+
+  private final long _timestamp;
+  private final long _startNanos;
+
+  private long _runNanos;
+  private long _endNanos;
+
+  private ArrayList<String> _tags;
+
+  // ring sequence, written before the span is published
+  private long _sequence = -1;
+
+  TraceSpan(long traceIdHigh,
+            long traceId,
+            long id,
+            long parentId,
+            String name,
+            String serviceName,
+            Kind kind)
+  {
+    _traceIdHigh = traceIdHigh;
+    _traceId = traceId;
+    _id = id;
+    _parentId = parentId;
+
+    _name = name;
+    _serviceName = serviceName;
+    _kind = kind;
+
+    _timestamp = System.currentTimeMillis() * 1000L;
+    _startNanos = System.nanoTime();
+  }
+
+  public long traceIdHigh()
+  {
+    return _traceIdHigh;
+  }
+
+  public long traceId()
+  {
+    return _traceId;
+  }
+
+  public long id()
+  {
+    return _id;
+  }
+
+  public long parentId()
+  {
+    return _parentId;
+  }
+
+  public String name()
+  {
+    return _name;
+  }
+
+  public String serviceName()
+  {
+    return _serviceName;
+  }
+
+  public Kind kind()
+  {
+    return _kind;
+  }
+
+  /**
+   * Start time in epoch microseconds.
+   */
+  public long timestamp()
+  {
+    return _timestamp;
+  }
+
+  /**
+   * Duration in microseconds, or -1 before the span ends.
+   */
+  public long duration()
+  {
+    long endNanos = _endNanos;
+
+    return endNanos > 0 ? (endNanos - _startNanos) / 1000 : -1;
+  }
+
+  /**
+   * Time between the message's creation and its delivery, in microseconds.
+   */
+  public long queueTime()
+  {
+    long runNanos = _runNanos;
+
+    return runNanos > 0 ? (runNanos - _startNanos) / 1000 : -1;
+  }
+
+  /**
+   * Time in the service's delivery, in microseconds.
+   */
+  public long runTime()
+  {
+    long runNanos = _runNanos;
+    long endNanos = _endNanos;
+
+    return runNanos > 0 && endNanos > 0 ? (endNanos - runNanos) / 1000 : -1;
+  }
+
+  public boolean isEnded()
+  {
+    return _endNanos > 0;
+  }
+
+  /**
+   * Adds a tag, e.g. http.status_code.
+   */
+  public TraceSpan tag(String key, String value)
+  {
+    if (_tags == null) {
+      _tags = new ArrayList<>();
+    }
+
+    _tags.add(key);
+    _tags.add(value);
+
+    return this;
+  }
+
+  /**
+   * Marks the start of the delivery.
+   *
+   * @return false if the span was already delivered, as when a query's
+   *   reply returns to the caller's inbox
+   */
+  public boolean begin()
+  {
+    if (_runNanos > 0) {
+      return false;
+    }
+
+    _runNanos = System.nanoTime();
+
+    return true;
+  }
+
+  /**
+   * Ends the span and records it in the current recorder.
+   */
+  public void end()
+  {
+    if (_endNanos > 0) {
+      return;
+    }
+
+    _endNanos = Math.max(System.nanoTime(), _startNanos + 1);
+
+    TraceRecorder.current().record(this);
+  }
+
+  long sequence()
+  {
+    return _sequence;
+  }
+
+  void sequence(long sequence)
+  {
+    _sequence = sequence;
+  }
+
+  /**
+   * The header value for the span's children.
+   */
+  public String header()
+  {
+    char []cbuf = new char[HEADER_LENGTH];
+
+    hex(cbuf, 0, _traceIdHigh);
+    hex(cbuf, 16, _traceId);
+    cbuf[32] = '-';
+    hex(cbuf, 33, _id);
+
+    return new String(cbuf);
+  }
+
+  /**
+   * Returns the headers with this span's context replacing any parent's,
+   * so the headers don't grow with each hop.
+   */
+  public HeadersAmp headers(HeadersAmp headers)
+  {
+    return headers(headers, HEADER);
+  }
+
+  /**
+   * Returns the headers with this span as the context of calls that run
+   * inside it rather than in spans of their own.
+   */
+  public HeadersAmp contextHeaders(HeadersAmp headers)
+  {
+    return headers(headers, CONTEXT);
+  }
+
+  private HeadersAmp headers(HeadersAmp headers, String key)
+  {
+    if (headers.get(HEADER) == null && headers.get(CONTEXT) == null) {
+      return headers.add(key, header());
+    }
+
+    // the headers are an immutable list, newest first
+    ArrayList<Map.Entry<String,Object>> entries = new ArrayList<>();
+
+    for (Map.Entry<String,Object> entry : headers) {
+      if (! HEADER.equals(entry.getKey())
+          && ! CONTEXT.equals(entry.getKey())) {
+        entries.add(entry);
+      }
+    }
+
+    HeadersAmp result = HeadersNull.NULL;
+
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      Map.Entry<String,Object> entry = entries.get(i);
+
+      result = result.add(entry.getKey(), entry.getValue());
+    }
+
+    return result.add(key, header());
+  }
+
+  /**
+   * Creates a child span from a header value.
+   *
+   * @return the child, or null if the header is not a trace context
+   */
+  static TraceSpan child(Object header,
+                         String name,
+                         String serviceName,
+                         Kind kind,
+                         long id)
+  {
+    if (! (header instanceof String)) {
+      return null;
+    }
+
+    String value = (String) header;
+
+    if (value.length() != HEADER_LENGTH || value.charAt(32) != '-') {
+      return null;
+    }
+
+    try {
+      long traceIdHigh = parseHex(value, 0, 16);
+      long traceId = parseHex(value, 16, 32);
+      long parentId = parseHex(value, 33, HEADER_LENGTH);
+
+      return new TraceSpan(traceIdHigh, traceId, id, parentId,
+                           name, serviceName, kind);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  static long parseHex(String value, int offset, int end)
+  {
+    long result = 0;
+
+    for (int i = offset; i < end; i++) {
+      char ch = value.charAt(i);
+
+      int digit;
+
+      if ('0' <= ch && ch <= '9') {
+        digit = ch - '0';
+      }
+      else if ('a' <= ch && ch <= 'f') {
+        digit = ch - 'a' + 10;
+      }
+      else if ('A' <= ch && ch <= 'F') {
+        digit = ch - 'A' + 10;
+      }
+      else {
+        throw new NumberFormatException(value);
+      }
+
+      result = (result << 4) + digit;
+    }
+
+    return result;
+  }
+
+  private static void hex(char []cbuf, int offset, long value)
+  {
+    for (int i = 15; i >= 0; i--) {
+      cbuf[offset + i] = HEX[(int) (value & 0xf)];
+      value >>>= 4;
+    }
+  }
+
+  private static void hex(Appendable out, long value)
+    throws IOException
+  {
+    char []cbuf = new char[16];
+
+    hex(cbuf, 0, value);
+
+    out.append(new String(cbuf));
+  }
+
+  /**
+   * Writes the span as a Zipkin v2 JSON object.
+   */
+  void writeJson(Appendable out)
+    throws IOException
+  {
+    out.append("{\"traceId\":\"");
+    if (_traceIdHigh != 0) {
+      hex(out, _traceIdHigh);
+    }
+    hex(out, _traceId);
+    out.append("\",\"id\":\"");
+    hex(out, _id);
+    out.append('"');
+
+    if (_parentId != 0) {
+      out.append(",\"parentId\":\"");
+      hex(out, _parentId);
+      out.append('"');
+    }
+
+    if (_kind != null) {
+      out.append(",\"kind\":\"").append(_kind.name()).append('"');
+    }
+
+    out.append(",\"name\":");
+    writeString(out, _name);
+
+    out.append(",\"timestamp\":").append(String.valueOf(_timestamp));
+    out.append(",\"duration\":").append(String.valueOf(Math.max(1, duration())));
+
+    out.append(",\"localEndpoint\":{\"serviceName\":");
+    writeString(out, _serviceName);
+    out.append('}');
+
+    long queueTime = queueTime();
+    long runTime = runTime();
+    ArrayList<String> tags = _tags;
+
+    if (queueTime >= 0 || tags != null) {
+      out.append(",\"tags\":{");
+
+      boolean isFirst = true;
+
+      if (queueTime >= 0 && runTime >= 0) {
+        out.append("\"amp.queue.us\":\"").append(String.valueOf(queueTime));
+        out.append("\",\"amp.run.us\":\"").append(String.valueOf(runTime));
+        out.append('"');
+
+        isFirst = false;
+      }
+
+      for (int i = 0; tags != null && i + 1 < tags.size(); i += 2) {
+        if (! isFirst) {
+          out.append(',');
+        }
+        isFirst = false;
+
+        writeString(out, tags.get(i));
+        out.append(':');
+        writeString(out, tags.get(i + 1));
+      }
+
+      out.append('}');
+    }
+
+    out.append('}');
+  }
+
+  private static void writeString(Appendable out, String value)
+    throws IOException
+  {
+    if (value == null) {
+      out.append("null");
+      return;
+    }
+
+    out.append('"');
+
+    for (int i = 0; i < value.length(); i++) {
+      char ch = value.charAt(i);
+
+      switch (ch) {
+      case '"':
+        out.append("\\\"");
+        break;
+      case '\\':
+        out.append("\\\\");
+        break;
+      case '\n':
+        out.append("\\n");
+        break;
+      case '\r':
+        out.append("\\r");
+        break;
+      case '\t':
+        out.append("\\t");
+        break;
+      default:
+        if (ch < 0x20) {
+          out.append(String.format("\\u%04x", (int) ch));
+        }
+        else {
+          out.append(ch);
+        }
+      }
+    }
+
+    out.append('"');
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[" + header()
+            + "," + _serviceName + "." + _name + "]");
+  }
+
+  /**
+   * Zipkin span kinds. AMP hops have no kind, which Zipkin treats as a
+   * local span.
+   */
+  public enum Kind {
+    CLIENT,
+    SERVER,
+    PRODUCER,
+    CONSUMER;
+  }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.util.FreeRing;
+import com.caucho.v5.util.L10N;
+
+/**
+ * Pooled direct byte buffers for channel i/o, in power-of-two size
+ * classes from 4k to 64k.
+ *
+ * Each thread keeps a small magazine per class in front of the shared
+ * free rings, so the common allocate/free pair on one thread doesn't
+ * touch shared state.
+ *
+ * With -Dcaucho.direct.debug, outstanding buffers are tracked with their
+ * allocation trace for leak and double-free detection.
+ */
+public final class DirectBuffers
+{
+  private static final L10N L = new L10N(DirectBuffers.class);
+  private static final Logger log
+    = Logger.getLogger(DirectBuffers.class.getName());
+
+  private static final int SIZE_BITS_MIN = 12;
+  private static final int CLASS_COUNT = 5;
+  private static final int MAGAZINE_SIZE = 2;
+
+  public static final int SIZE_MIN = 1 << SIZE_BITS_MIN;
+  public static final int SIZE_MAX = 1 << (SIZE_BITS_MIN + CLASS_COUNT - 1);
+
+  private static final SizeClass []_classes;
+
+  private static final ThreadLocal<Magazine> _magazineLocal
+    = ThreadLocal.withInitial(Magazine::new);
+
+  private static volatile boolean _isDebug;
+
+  // outstanding buffers with their allocation trace, and freed buffers
+  private static final Map<ByteBuffer,Throwable> _debugMap
+    = Collections.synchronizedMap(new IdentityHashMap<>());
+  private static final Set<ByteBuffer> _debugFreeSet
+    = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+  private DirectBuffers()
+  {
+  }
+
+  /**
+   * Allocates a cleared buffer of at least the given size, up to
+   * SIZE_MAX.
+   */
+  public static ByteBuffer allocate(int size)
+  {
+    return allocateClass(classIndexCeil(size));
+  }
+
+  /**
+   * Allocates a cleared buffer no larger than the given size, except that
+   * the smallest class is SIZE_MIN. Reads use it so the result always
+   * fits the caller's array.
+   */
+  public static ByteBuffer allocateFloor(int size)
+  {
+    return allocateClass(classIndexFloor(size));
+  }
+
+  private static ByteBuffer allocateClass(int index)
+  {
+    SizeClass sizeClass = _classes[index];
+
+    sizeClass.onAllocate();
+
+    ByteBuffer buffer = _magazineLocal.get().allocate(index);
+
+    if (buffer == null) {
+      buffer = sizeClass.allocate();
+    }
+
+    buffer.clear();
+
+    if (_isDebug) {
+      _debugFreeSet.remove(buffer);
+      _debugMap.put(buffer, new IllegalStateException(L.l("direct buffer allocated by {0}",
+                                                           Thread.currentThread())));
+    }
+
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to its size class. The caller must not use the
+   * buffer afterwards.
+   */
+  public static void free(ByteBuffer buffer)
+  {
+    if (buffer == null) {
+      return;
+    }
+
+    int index = classIndex(buffer.capacity());
+
+    if (index < 0) {
+      throw new IllegalArgumentException(L.l("{0} is not a pooled direct buffer",
+                                             buffer));
+    }
+
+    if (_isDebug) {
+      // a buffer allocated before tracking started is in neither set
+      _debugMap.remove(buffer);
+
+      if (! _debugFreeSet.add(buffer)) {
+        throw new IllegalStateException(L.l("direct buffer {0} freed twice",
+                                            buffer));
+      }
+    }
+
+    SizeClass sizeClass = _classes[index];
+
+    sizeClass.onFree();
+
+    if (! _magazineLocal.get().free(index, buffer)
+        && ! sizeClass.free(buffer)
+        && _isDebug) {
+      // a dropped buffer is never allocated again
+      _debugFreeSet.remove(buffer);
+    }
+  }
+
+  //
+  // metrics
+  //
+
+  public static int classCount()
+  {
+    return CLASS_COUNT;
+  }
+
+  public static int classSize(int index)
+  {
+    return _classes[index].size();
+  }
+
+  /**
+   * Total allocations for the class, including reuse.
+   */
+  public static long allocateCount(int index)
+  {
+    return _classes[index].allocateCount();
+  }
+
+  /**
+   * Buffers created because the pool was empty.
+   */
+  public static long createCount(int index)
+  {
+    return _classes[index].createCount();
+  }
+
+  /**
+   * Buffers currently handed out and not yet freed.
+   */
+  public static long outstandingCount(int index)
+  {
+    return _classes[index].outstandingCount();
+  }
+
+  /**
+   * Buffers idle in the shared ring, not counting thread magazines.
+   */
+  public static int poolSize(int index)
+  {
+    return _classes[index].poolSize();
+  }
+
+  public static boolean isDebug()
+  {
+    return _isDebug;
+  }
+
+  /**
+   * Starts or stops tracking, for tests. Buffers allocated before
+   * tracking starts aren't reported.
+   */
+  static void debug(boolean isDebug)
+  {
+    _isDebug = false;
+
+    _debugMap.clear();
+    _debugFreeSet.clear();
+
+    _isDebug = isDebug;
+  }
+
+  /**
+   * Logs the allocation trace of every outstanding buffer in debug mode.
+   *
+   * @return the number of outstanding buffers
+   */
+  public static int logLeaks()
+  {
+    if (! _isDebug) {
+      return 0;
+    }
+
+    ArrayList<Throwable> traces;
+
+    synchronized (_debugMap) {
+      traces = new ArrayList<>(_debugMap.values());
+    }
+
+    for (Throwable trace : traces) {
+      log.log(Level.WARNING, L.l("direct buffer was not freed"), trace);
+    }
+
+    return traces.size();
+  }
+
+  //
+  // size classes
+  //
+
+  private static int classIndexCeil(int size)
+  {
+    for (int i = 0; i < CLASS_COUNT - 1; i++) {
+      if (size <= _classes[i].size()) {
+        return i;
+      }
+    }
+
+    return CLASS_COUNT - 1;
+  }
+
+  private static int classIndexFloor(int size)
+  {
+    for (int i = CLASS_COUNT - 1; i > 0; i--) {
+      if (_classes[i].size() <= size) {
+        return i;
+      }
+    }
+
+    return 0;
+  }
+
+  private static int classIndex(int capacity)
+  {
+    int bits = Integer.numberOfTrailingZeros(capacity);
+
+    if (Integer.bitCount(capacity) != 1
+        || bits < SIZE_BITS_MIN
+        || SIZE_BITS_MIN + CLASS_COUNT <= bits) {
+      return -1;
+    }
+
+    return bits - SIZE_BITS_MIN;
+  }
+
+  private static final class SizeClass
+  {
+    private final int _size;
+    private final FreeRing<ByteBuffer> _freeRing;
+
+    private final AtomicLong _allocateCount = new AtomicLong();
+    private final AtomicLong _createCount = new AtomicLong();
+    private final AtomicLong _freeCount = new AtomicLong();
+
+    SizeClass(int size, int capacity)
+    {
+      _size = size;
+      _freeRing = new FreeRing<>(capacity);
+    }
+
+    int size()
+    {
+      return _size;
+    }
+
+    ByteBuffer allocate()
+    {
+      ByteBuffer buffer = _freeRing.allocate();
+
+      if (buffer == null) {
+        _createCount.incrementAndGet();
+
+        buffer = ByteBuffer.allocateDirect(_size);
+      }
+
+      return buffer;
+    }
+
+    void onAllocate()
+    {
+      _allocateCount.incrementAndGet();
+    }
+
+    void onFree()
+    {
+      _freeCount.incrementAndGet();
+    }
+
+    boolean free(ByteBuffer buffer)
+    {
+      // a full ring leaves the buffer to its cleaner
+      return _freeRing.free(buffer);
+    }
+
+    long allocateCount()
+    {
+      return _allocateCount.get();
+    }
+
+    long createCount()
+    {
+      return _createCount.get();
+    }
+
+    long outstandingCount()
+    {
+      return _allocateCount.get() - _freeCount.get();
+    }
+
+    int poolSize()
+    {
+      return _freeRing.getSize();
+    }
+  }
+
+  /**
+   * Per-thread cache of a few buffers per class.
+   */
+  private static final class Magazine
+  {
+    private final ByteBuffer [][]_buffers
+      = new ByteBuffer[CLASS_COUNT][MAGAZINE_SIZE];
+    private final int []_sizes = new int[CLASS_COUNT];
+
+    ByteBuffer allocate(int index)
+    {
+      int size = _sizes[index];
+
+      if (size == 0) {
+        return null;
+      }
+
+      size--;
+
+      ByteBuffer buffer = _buffers[index][size];
+      _buffers[index][size] = null;
+      _sizes[index] = size;
+
+      return buffer;
+    }
+
+    boolean free(int index, ByteBuffer buffer)
+    {
+      int size = _sizes[index];
+
+      if (size == MAGAZINE_SIZE) {
+        return false;
+      }
+
+      _buffers[index][size] = buffer;
+      _sizes[index] = size + 1;
+
+      return true;
+    }
+  }
+
+  static {
+    _isDebug = System.getProperty("caucho.direct.debug") != null;
+
+    _classes = new SizeClass[CLASS_COUNT];
+
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      int size = SIZE_MIN << i;
+
+      // larger classes keep fewer idle buffers
+      _classes[i] = new SizeClass(size, Math.max(16, 256 >> i));
+    }
+  }
+}
@@ -29,6 +29,9 @@
 
 package io.baratine.client;
 
+import java.util.Collections;
+import java.util.List;
+
 import io.baratine.service.Services;
 import io.baratine.spi.WebServerProvider;
 
@@ -45,10 +48,77 @@ public interface ServiceClient extends Services, AutoCloseable
   
   ServiceClient connect();
   
+  /**
+   * Statistics for each link to the server.
+   */
+  default List<LinkStats> linkStats()
+  {
+    return Collections.emptyList();
+  }
+  
   @Override
   void close();
   
   interface Builder {
+    /**
+     * Number of links to open to the server.
+     */
+    default Builder links(int links)
+    {
+      throw new UnsupportedOperationException(getClass().getName());
+    }
+    
+    /**
+     * Maximum number of outstanding queries on a single link. A query
+     * fails with ServiceExceptionQueueFull when every link is at the
+     * limit.
+     */
+    default Builder credits(int credits)
+    {
+      throw new UnsupportedOperationException(getClass().getName());
+    }
+    
     ServiceClient build();
   }
+  
+  /**
+   * Statistics for a single client link.
+   */
+  interface LinkStats {
+    /**
+     * Index of the link in the client's pool.
+     */
+    int index();
+    
+    /**
+     * True if the link is currently connected.
+     */
+    boolean isUp();
+    
+    /**
+     * Number of queries waiting for a reply.
+     */
+    int outstanding();
+    
+    /**
+     * Number of completed queries.
+     */
+    long queryCount();
+    
+    /**
+     * Number of queries dropped without a reply, e.g. when the link
+     * reconnected.
+     */
+    long expireCount();
+    
+    /**
+     * Average query latency in microseconds.
+     */
+    long latencyAvgMicros();
+    
+    /**
+     * Maximum query latency in microseconds.
+     */
+    long latencyMaxMicros();
+  }
 }
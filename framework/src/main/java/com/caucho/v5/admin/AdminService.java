@@ -29,6 +29,7 @@
 
 package com.caucho.v5.admin;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
@@ -38,6 +39,10 @@ import javax.inject.Inject;
 import com.caucho.v5.amp.ServiceRefAmp;
 import com.caucho.v5.amp.ServicesAmp;
 import com.caucho.v5.amp.spi.RegistryAmp;
+import com.caucho.v5.amp.trace.TraceRecorder;
+import com.caucho.v5.profile.ProfileSampler;
+import com.caucho.v5.profile.ProfileSystem;
+import com.caucho.v5.web.webapp.MetricsWeb;
 
 import io.baratine.config.Config;
 import io.baratine.service.Services;
@@ -56,6 +61,51 @@ public class AdminService implements IncludeWeb, ServiceWeb {
     String url = _config.get("admin.path", "/baratine-admin");
 
     builder.get(url).to(this);
+    builder.get(url + "/profile").to(this::profile);
+    builder.get(url + "/metrics").to(new MetricsWeb());
+    builder.get(url + "/trace").to(this::trace);
+  }
+
+  /**
+   * Continuous cpu profile in collapsed-stack format, for flame graph
+   * tools. The reset=true query starts a new profile.
+   */
+  private void profile(RequestWeb request)
+  {
+    ProfileSystem profileSystem = ProfileSystem.current();
+
+    String collapsed = "";
+
+    if (profileSystem != null) {
+      ProfileSampler sampler = profileSystem.sampler();
+
+      collapsed = sampler.collapsed();
+
+      if ("true".equals(request.query("reset"))) {
+        sampler.reset();
+      }
+    }
+
+    request.type("text/plain; charset=utf-8");
+    request.write(collapsed);
+
+    request.ok();
+  }
+
+  /**
+   * Recent trace spans as a Zipkin v2 JSON array.
+   */
+  private void trace(RequestWeb request)
+    throws IOException
+  {
+    StringBuilder sb = new StringBuilder();
+
+    TraceRecorder.current().writeJson(sb);
+
+    request.type("application/json; charset=utf-8");
+    request.write(sb.toString());
+
+    request.ok();
   }
 
   @Override
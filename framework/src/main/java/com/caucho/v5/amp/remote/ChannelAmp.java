@@ -117,6 +117,14 @@ public interface ChannelAmp extends LookupAmp
     throw new UnsupportedOperationException(getClass().getName());
   }
 
+  /**
+   * Called when a query reply or error, or the end of a stream, arrives
+   * on the channel.
+   */
+  default void onQueryComplete(long qid)
+  {
+  }
+
   /**
    * Close the channel when done
    */
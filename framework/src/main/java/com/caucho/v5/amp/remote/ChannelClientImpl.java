@@ -180,6 +180,16 @@ public class ChannelClientImpl implements ChannelClient
     return true;
   }
   
+  @Override
+  public void onQueryComplete(long qid)
+  {
+    OutAmpManager outManager = _outManager;
+    
+    if (outManager != null) {
+      outManager.onQueryComplete(qid);
+    }
+  }
+  
   /**
    * Mark the link as authenticated. When isLogin is true, the client
    * can access published services.
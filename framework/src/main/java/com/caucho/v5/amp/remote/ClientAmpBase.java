@@ -30,6 +30,7 @@
 package com.caucho.v5.amp.remote;
 
 import java.io.Closeable;
+import java.util.List;
 import java.util.Objects;
 
 import com.caucho.v5.amp.ServicesAmp;
@@ -39,6 +40,8 @@ import com.caucho.v5.amp.service.ServiceRefWrapper;
 import com.caucho.v5.amp.spi.ShutdownModeAmp;
 import com.caucho.v5.baratine.client.ServiceManagerClient;
 
+import io.baratine.client.ServiceClient.LinkStats;
+
 /**
  * Endpoint for receiving hamp message
  */
@@ -46,8 +49,13 @@ abstract public class ClientAmpBase
   extends ServiceManagerAmpWrapper
   implements ServiceManagerClient, Closeable
 {
+  private static final int DEFAULT_CREDITS = 256;
+  
   private final String _uri;
   
+  private final int _links;
+  private final int _credits;
+  
   private ServiceRefAmp _channelServiceRef;
   private OutAmpManager _outManager;
 
@@ -56,6 +64,20 @@ abstract public class ClientAmpBase
   private ServicesAmp _manager;
   
   protected ClientAmpBase(ServicesAmp manager, String uri)
+  {
+    this(manager, uri, 1, 0);
+  }
+  
+  /**
+   * Creates a client with a pool of links to the server.
+   * 
+   * @param links number of links to the server
+   * @param credits maximum outstanding queries per link
+   */
+  protected ClientAmpBase(ServicesAmp manager, 
+                          String uri,
+                          int links,
+                          int credits)
   {
     Objects.requireNonNull(manager);
     
@@ -63,6 +85,9 @@ abstract public class ClientAmpBase
     
     _uri = uri;
     
+    _links = links;
+    _credits = credits;
+    
     // String address = "remote://";
     
     _outManager = createOutManager();
@@ -127,7 +152,14 @@ abstract public class ClientAmpBase
   
   protected OutAmpManager createOutManager()
   {
-    return new ClientChannel();
+    if (_links > 1 || _credits > 0) {
+      int credits = _credits > 0 ? _credits : DEFAULT_CREDITS;
+      
+      return new OutAmpManagerPool(this::getOutFactory, _links, credits);
+    }
+    else {
+      return new ClientChannel();
+    }
   }
   
   protected OutAmpFactory getOutFactory()
@@ -175,6 +207,14 @@ abstract public class ClientAmpBase
   }
   */
   
+  /**
+   * Statistics for the client's links.
+   */
+  public List<LinkStats> linkStats()
+  {
+    return _outManager.linkStats();
+  }
+  
   @Override
   public void close()
   {
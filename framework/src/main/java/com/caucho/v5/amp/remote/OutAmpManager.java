@@ -29,6 +29,11 @@
 
 package com.caucho.v5.amp.remote;
 
+import java.util.Collections;
+import java.util.List;
+
+import io.baratine.client.ServiceClient.LinkStats;
+
 /**
  * Channel for getting a connection. The connection might be dropped
  * and restarted.
@@ -41,5 +46,17 @@ public interface OutAmpManager
   
   OutAmp getOut(ChannelClient registry);
   
+  /**
+   * Called when the reply for a query, or the end of a stream, arrives.
+   */
+  default void onQueryComplete(long qid)
+  {
+  }
+  
+  default List<LinkStats> linkStats()
+  {
+    return Collections.emptyList();
+  }
+  
   void close();
 }
@@ -0,0 +1,893 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.amp.remote;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.amp.ServiceRefAmp;
+import com.caucho.v5.amp.ServicesAmp;
+import com.caucho.v5.amp.spi.HeadersAmp;
+import com.caucho.v5.amp.spi.InboxAmp;
+import com.caucho.v5.amp.spi.ShutdownModeAmp;
+import com.caucho.v5.bartender.pod.PodRef;
+import com.caucho.v5.util.L10N;
+
+import io.baratine.client.ServiceClient.LinkStats;
+import io.baratine.service.ServiceExceptionQueueFull;
+import io.baratine.stream.ResultStream;
+
+/**
+ * Pool of links to a single endpoint.
+ *
+ * Queries are pipelined on each link up to a credit limit, and each call
+ * is written to the link with the fewest outstanding queries. When every
+ * link is out of credits, the query fails with a queue-full exception.
+ * The caller is never blocked, because the pool is called from the
+ * client's outbound inbox.
+ *
+ * Replies, stream results and stream cancels are written on the link that
+ * carried the original query, because the server tracks the query on that
+ * link's channel.
+ */
+public class OutAmpManagerPool implements OutAmpManager
+{
+  private static final Logger log
+    = Logger.getLogger(OutAmpManagerPool.class.getName());
+  private static final L10N L = new L10N(OutAmpManagerPool.class);
+  
+  private static final long QUERY_EXPIRE = 5 * 60 * 1000L;
+  private static final long EXPIRE_INTERVAL = 1000L;
+  
+  private final Supplier<OutAmpFactory> _outFactory;
+  private final LinkOut []_links;
+  private final int _credits;
+  private final long _queryExpire;
+  
+  // client queries holding a credit
+  private final ConcurrentHashMap<Long,QueryPending> _pendingMap
+    = new ConcurrentHashMap<>();
+  
+  // client streams, for routing their cancel
+  private final ConcurrentHashMap<Long,LinkOut> _streamMap
+    = new ConcurrentHashMap<>();
+  
+  // server queries and streams, for routing their reply
+  private final ConcurrentHashMap<String,LinkOut> _replyMap
+    = new ConcurrentHashMap<>();
+  
+  private final OutAmpPool _out = new OutAmpPool();
+  
+  private final AtomicLong _rejectCount = new AtomicLong();
+  private volatile long _expireTime;
+  
+  private volatile ChannelClient _channel;
+  private volatile boolean _isClosed;
+  
+  public OutAmpManagerPool(Supplier<OutAmpFactory> outFactory,
+                           int links,
+                           int credits)
+  {
+    this(outFactory, links, credits, QUERY_EXPIRE);
+  }
+  
+  /**
+   * Pool whose lost queries free their credits after queryExpire
+   * milliseconds.
+   */
+  OutAmpManagerPool(Supplier<OutAmpFactory> outFactory,
+                    int links,
+                    int credits,
+                    long queryExpire)
+  {
+    Objects.requireNonNull(outFactory);
+    
+    if (links <= 0) {
+      throw new IllegalArgumentException(L.l("link count {0} must be positive",
+                                             links));
+    }
+    
+    if (credits <= 0) {
+      throw new IllegalArgumentException(L.l("credits {0} must be positive",
+                                             credits));
+    }
+    
+    _outFactory = outFactory;
+    _credits = credits;
+    _queryExpire = queryExpire;
+    
+    _links = new LinkOut[links];
+    
+    for (int i = 0; i < links; i++) {
+      _links[i] = new LinkOut(i);
+    }
+  }
+
+  @Override
+  public boolean isUp()
+  {
+    return ! _isClosed && _outFactory.get().isUp();
+  }
+
+  @Override
+  public OutAmp getCurrentOut()
+  {
+    for (LinkOut link : _links) {
+      if (link.isUp()) {
+        return _out;
+      }
+    }
+    
+    return null;
+  }
+
+  @Override
+  public OutAmp getOut(ChannelClient channel)
+  {
+    Objects.requireNonNull(channel);
+    
+    _channel = channel;
+    
+    // links opened before the channel was known
+    for (LinkOut link : _links) {
+      link.login();
+    }
+    
+    return _out;
+  }
+  
+  @Override
+  public void onQueryComplete(long qid)
+  {
+    QueryPending pending = _pendingMap.remove(qid);
+    
+    if (pending != null) {
+      pending.complete(System.nanoTime());
+    }
+    else {
+      _streamMap.remove(qid);
+    }
+  }
+  
+  @Override
+  public List<LinkStats> linkStats()
+  {
+    return Collections.unmodifiableList(Arrays.asList(_links));
+  }
+  
+  /**
+   * Number of queries rejected because every link was out of credits.
+   */
+  public long rejectCount()
+  {
+    return _rejectCount.get();
+  }
+  
+  /**
+   * Selects the link for a new query, failing when every link is out of
+   * credits.
+   */
+  private LinkOut selectQueryLink()
+  {
+    LinkOut link = selectLeastOutstanding();
+    
+    if (link.outstanding() < _credits || _isClosed) {
+      return link;
+    }
+    
+    // lost replies might be holding the credits
+    long now = System.currentTimeMillis();
+    
+    if (_expireTime <= now) {
+      _expireTime = now + EXPIRE_INTERVAL;
+      
+      expirePending();
+      
+      link = selectLeastOutstanding();
+      
+      if (link.outstanding() < _credits) {
+        return link;
+      }
+    }
+    
+    _rejectCount.incrementAndGet();
+    
+    if (log.isLoggable(Level.FINE)) {
+      log.fine(L.l("{0} has no free credits with {1} outstanding queries",
+                   this, _pendingMap.size()));
+    }
+    
+    throw new ServiceExceptionQueueFull(L.l("All {0} links to {1} have {2} outstanding queries",
+                                            _links.length, _outFactory.get(),
+                                            _credits));
+  }
+  
+  private LinkOut selectLeastOutstanding()
+  {
+    LinkOut []links = _links;
+    
+    LinkOut best = links[0];
+    int bestCount = best.outstanding();
+    
+    for (int i = 1; i < links.length && bestCount > 0; i++) {
+      LinkOut link = links[i];
+      
+      int count = link.outstanding();
+      
+      if (count < bestCount) {
+        best = link;
+        bestCount = count;
+      }
+    }
+    
+    return best;
+  }
+  
+  /**
+   * Returns the link which carried a server query, falling back to the
+   * least loaded link if the query is unknown.
+   */
+  private LinkOut replyLink(String address, long qid, boolean isComplete)
+  {
+    String key = replyKey(address, qid);
+    
+    LinkOut link;
+    
+    if (isComplete) {
+      link = _replyMap.remove(key);
+    }
+    else {
+      link = _replyMap.get(key);
+    }
+    
+    if (link != null) {
+      return link;
+    }
+    else {
+      return selectLeastOutstanding();
+    }
+  }
+  
+  private static String replyKey(String address, long qid)
+  {
+    return address + "#" + qid;
+  }
+  
+  /**
+   * Frees the credits of queries whose reply was lost, e.g. timed out.
+   */
+  private void expirePending()
+  {
+    long expireNanos = System.nanoTime() - _queryExpire * 1000000L;
+    
+    Iterator<Map.Entry<Long,QueryPending>> iter
+      = _pendingMap.entrySet().iterator();
+    
+    while (iter.hasNext()) {
+      QueryPending pending = iter.next().getValue();
+      
+      if (pending.startTime() < expireNanos) {
+        iter.remove();
+        pending.expire();
+      }
+    }
+  }
+  
+  /**
+   * Drops the queries and routes of a link whose connection closed.
+   */
+  private void failPending(LinkOut link)
+  {
+    Iterator<Map.Entry<Long,QueryPending>> iter
+      = _pendingMap.entrySet().iterator();
+    
+    while (iter.hasNext()) {
+      QueryPending pending = iter.next().getValue();
+      
+      if (pending.link() == link) {
+        iter.remove();
+        pending.expire();
+      }
+    }
+    
+    _streamMap.values().removeIf(v -> v == link);
+    _replyMap.values().removeIf(v -> v == link);
+  }
+  
+  private boolean isAnyUp(LinkOut exclude)
+  {
+    for (LinkOut link : _links) {
+      if (link != exclude && link.isUp()) {
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  @Override
+  public void close()
+  {
+    _isClosed = true;
+    
+    for (LinkOut link : _links) {
+      link.close();
+    }
+    
+    _pendingMap.clear();
+    _streamMap.clear();
+    _replyMap.clear();
+  }
+  
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[links=" + _links.length + ",credits=" + _credits
+            + "," + _outFactory.get() + "]");
+  }
+  
+  /**
+   * A single link in the pool.
+   */
+  private class LinkOut implements LinkStats
+  {
+    private final int _index;
+    private final LinkChannel _linkChannel;
+    
+    private final AtomicInteger _outstanding = new AtomicInteger();
+    private final AtomicLong _queryCount = new AtomicLong();
+    private final AtomicLong _expireCount = new AtomicLong();
+    private final AtomicLong _latencyTotal = new AtomicLong();
+    private final AtomicLong _latencyMax = new AtomicLong();
+    
+    private OutAmp _out;
+    private boolean _isLogin;
+    
+    LinkOut(int index)
+    {
+      _index = index;
+      _linkChannel = new LinkChannel(this);
+    }
+    
+    @Override
+    public int index()
+    {
+      return _index;
+    }
+    
+    @Override
+    public boolean isUp()
+    {
+      OutAmp out = _out;
+      
+      return out != null && out.isUp();
+    }
+    
+    /**
+     * Returns the link's connection, opening a new connection if the
+     * old one has closed.
+     */
+    synchronized OutAmp out()
+    {
+      OutAmp out = _out;
+      
+      if (out == null || ! out.isUp()) {
+        if (out != null) {
+          failPending(this);
+        }
+        
+        out = _outFactory.get().getOut(_linkChannel);
+        
+        _out = out;
+        _isLogin = false;
+        
+        login();
+      }
+      
+      return out;
+    }
+    
+    /**
+     * Logs the connection into the client's channel, once the channel
+     * is known.
+     */
+    synchronized void login()
+    {
+      OutAmp out = _out;
+      ChannelClient channel = _channel;
+      
+      if (out != null && channel != null && ! _isLogin) {
+        _isLogin = true;
+        
+        channel.login(out);
+      }
+    }
+    
+    synchronized OutAmp currentOut()
+    {
+      return _out;
+    }
+    
+    void begin()
+    {
+      _outstanding.incrementAndGet();
+    }
+    
+    void complete(long latency)
+    {
+      _outstanding.decrementAndGet();
+      
+      _queryCount.incrementAndGet();
+      _latencyTotal.addAndGet(latency);
+      
+      long max;
+      
+      while ((max = _latencyMax.get()) < latency
+             && ! _latencyMax.compareAndSet(max, latency)) {
+      }
+    }
+    
+    void expire()
+    {
+      _outstanding.decrementAndGet();
+      _expireCount.incrementAndGet();
+    }
+
+    @Override
+    public int outstanding()
+    {
+      return _outstanding.get();
+    }
+
+    @Override
+    public long queryCount()
+    {
+      return _queryCount.get();
+    }
+
+    @Override
+    public long expireCount()
+    {
+      return _expireCount.get();
+    }
+
+    @Override
+    public long latencyAvgMicros()
+    {
+      long count = _queryCount.get();
+      
+      if (count <= 0) {
+        return 0;
+      }
+      
+      return _latencyTotal.get() / count / 1000;
+    }
+
+    @Override
+    public long latencyMaxMicros()
+    {
+      return _latencyMax.get() / 1000;
+    }
+    
+    void close()
+    {
+      OutAmp out;
+      
+      synchronized (this) {
+        out = _out;
+        _out = null;
+      }
+      
+      if (out != null) {
+        try {
+          out.close();
+        } catch (Exception e) {
+          log.log(Level.FINER, e.toString(), e);
+        }
+      }
+    }
+    
+    @Override
+    public String toString()
+    {
+      return (getClass().getSimpleName()
+              + "[" + _index + ",outstanding=" + outstanding()
+              + ",queries=" + queryCount()
+              + ",expired=" + expireCount()
+              + ",avg=" + latencyAvgMicros() + "us]");
+    }
+  }
+  
+  /**
+   * Query waiting for its reply.
+   */
+  private static class QueryPending
+  {
+    private final LinkOut _link;
+    private final long _startTime;
+    
+    QueryPending(LinkOut link, long startTime)
+    {
+      _link = link;
+      _startTime = startTime;
+    }
+    
+    LinkOut link()
+    {
+      return _link;
+    }
+    
+    long startTime()
+    {
+      return _startTime;
+    }
+    
+    void complete(long now)
+    {
+      _link.complete(now - _startTime);
+    }
+    
+    void expire()
+    {
+      _link.expire();
+    }
+  }
+  
+  /**
+   * Channel view for a single link. It records which link each server
+   * query arrived on, and keeps one link's close from shutting down the
+   * channel while other links are up.
+   */
+  private class LinkChannel implements ChannelClient
+  {
+    private final LinkOut _link;
+    
+    LinkChannel(LinkOut link)
+    {
+      _link = link;
+    }
+    
+    @Override
+    public ServicesAmp services()
+    {
+      return _channel.services();
+    }
+    
+    @Override
+    public InboxAmp getInbox()
+    {
+      return _channel.getInbox();
+    }
+    
+    @Override
+    public ServiceRefAmp service(String address)
+    {
+      return _channel.service(address);
+    }
+    
+    @Override
+    public GatewayReply createGatewayReply(String address)
+    {
+      return new GatewayReplyLink(_link, address,
+                                  _channel.createGatewayReply(address));
+    }
+    
+    @Override
+    public ServiceRefAmp createGatewayRef(String remotePath)
+    {
+      return _channel.createGatewayRef(remotePath);
+    }
+    
+    @Override
+    public GatewayResultStream createGatewayResultStream(String from, long qid)
+    {
+      return _channel.createGatewayResultStream(from, qid);
+    }
+    
+    @Override
+    public GatewayResultStream getGatewayResultStream(String from, long qid)
+    {
+      return _channel.getGatewayResultStream(from, qid);
+    }
+    
+    @Override
+    public GatewayResultStream removeGatewayResultStream(String from, long qid)
+    {
+      return _channel.removeGatewayResultStream(from, qid);
+    }
+    
+    @Override
+    public void onQueryComplete(long qid)
+    {
+      _channel.onQueryComplete(qid);
+    }
+    
+    @Override
+    public void shutdown(ShutdownModeAmp mode)
+    {
+      failPending(_link);
+      
+      if (_isClosed || ! isAnyUp(_link)) {
+        _channel.shutdown(mode);
+      }
+    }
+    
+    @Override
+    public ServiceRefAmp getServiceRefOut()
+    {
+      return _channel.getServiceRefOut();
+    }
+    
+    @Override
+    public ServiceRefAmp getCallerRef()
+    {
+      return _channel.getCallerRef();
+    }
+    
+    @Override
+    public void login(OutAmp out)
+    {
+      _channel.login(out);
+    }
+    
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + _link + "," + _channel + "]";
+    }
+  }
+  
+  /**
+   * Reply gateway for a server query, recording its link before the
+   * reply is queued.
+   */
+  private class GatewayReplyLink implements GatewayReply
+  {
+    private final LinkOut _link;
+    private final String _address;
+    private final GatewayReply _delegate;
+    
+    GatewayReplyLink(LinkOut link, String address, GatewayReply delegate)
+    {
+      _link = link;
+      _address = address;
+      _delegate = delegate;
+    }
+    
+    @Override
+    public boolean isAsync()
+    {
+      return _delegate.isAsync();
+    }
+
+    @Override
+    public void queryOk(HeadersAmp headers, long qid, Object value)
+    {
+      _replyMap.put(replyKey(_address, qid), _link);
+      
+      _delegate.queryOk(headers, qid, value);
+    }
+
+    @Override
+    public void queryFail(HeadersAmp headers, long qid, Throwable exn)
+    {
+      _replyMap.put(replyKey(_address, qid), _link);
+      
+      _delegate.queryFail(headers, qid, exn);
+    }
+    
+    @Override
+    public ResultStream<Object> stream(HeadersAmp headers, long qid)
+    {
+      _replyMap.put(replyKey(_address, qid), _link);
+      
+      return _delegate.stream(headers, qid);
+    }
+    
+    @Override
+    public void streamCancel(long qid)
+    {
+      _replyMap.remove(replyKey(_address, qid));
+      
+      _delegate.streamCancel(qid);
+    }
+    
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + _link + "," + _delegate + "]";
+    }
+  }
+  
+  /**
+   * Output facade which spreads messages across the pool's links.
+   */
+  private class OutAmpPool implements OutAmp
+  {
+    @Override
+    public boolean isUp()
+    {
+      return OutAmpManagerPool.this.isUp();
+    }
+
+    @Override
+    public void send(HeadersAmp headers,
+                     String address,
+                     String methodName,
+                     PodRef podCaller,
+                     Object[] args)
+    {
+      selectLeastOutstanding().out().send(headers, address, methodName,
+                                          podCaller, args);
+    }
+
+    @Override
+    public void query(HeadersAmp headers,
+                      String fromAddress,
+                      long qid,
+                      String address,
+                      String methodName,
+                      PodRef podCaller,
+                      Object[] args)
+    {
+      LinkOut link = selectQueryLink();
+      
+      OutAmp out = link.out();
+      
+      QueryPending pending = new QueryPending(link, System.nanoTime());
+      
+      link.begin();
+      _pendingMap.put(qid, pending);
+      
+      try {
+        out.query(headers, fromAddress, qid, address, methodName,
+                  podCaller, args);
+      } catch (RuntimeException e) {
+        if (_pendingMap.remove(qid) != null) {
+          pending.expire();
+        }
+        
+        throw e;
+      }
+    }
+
+    @Override
+    public void reply(HeadersAmp headers,
+                      String address,
+                      long qid,
+                      Object result)
+    {
+      replyLink(address, qid, true).out().reply(headers, address, qid, result);
+    }
+
+    @Override
+    public void queryError(HeadersAmp headers,
+                           String address,
+                           long qid,
+                           Throwable exn)
+    {
+      replyLink(address, qid, true).out().queryError(headers, address,
+                                                     qid, exn);
+    }
+
+    @Override
+    public void stream(HeadersAmp headers,
+                       String fromAddress,
+                       long qid,
+                       String address,
+                       String methodName,
+                       PodRef podCaller,
+                       ResultStream<?> result,
+                       Object[] args)
+    {
+      LinkOut link = selectLeastOutstanding();
+      
+      _streamMap.put(qid, link);
+      
+      try {
+        link.out().stream(headers, fromAddress, qid,
+                          address, methodName, podCaller,
+                          result, args);
+      } catch (RuntimeException e) {
+        _streamMap.remove(qid);
+        
+        throw e;
+      }
+    }
+
+    @Override
+    public void streamReply(HeadersAmp headers,
+                            String remoteAddress,
+                            long id,
+                            int sequence,
+                            List<Object> values,
+                            Throwable exn,
+                            boolean isComplete)
+    {
+      boolean isEnd = isComplete || exn != null;
+      
+      replyLink(remoteAddress, id, isEnd).out().streamReply(headers,
+                                                            remoteAddress,
+                                                            id, sequence,
+                                                            values, exn,
+                                                            isComplete);
+    }
+
+    @Override
+    public void streamCancel(HeadersAmp headers,
+                             String remoteAddress,
+                             String addressFrom,
+                             long qid)
+    {
+      LinkOut link = _streamMap.remove(qid);
+      
+      if (link == null) {
+        link = selectLeastOutstanding();
+      }
+      
+      link.out().streamCancel(headers, remoteAddress, addressFrom, qid);
+    }
+
+    @Override
+    public void flush()
+    {
+      for (LinkOut link : _links) {
+        OutAmp out = link.currentOut();
+        
+        if (out != null) {
+          out.flush();
+        }
+      }
+    }
+
+    @Override
+    public void close()
+    {
+      OutAmpManagerPool.this.close();
+    }
+    
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + OutAmpManagerPool.this + "]";
+    }
+  }
+}
@@ -42,17 +42,44 @@ public class ServiceClientBuilderImpl implements ServiceClient.Builder
 {
   private String _url;
   
+  private int _links = 1;
+  private int _credits;
+  
   public ServiceClientBuilderImpl(String url)
   {
     Objects.requireNonNull(url);
     
     _url = url;
   }
+  
+  @Override
+  public ServiceClientBuilderImpl links(int links)
+  {
+    if (links <= 0) {
+      throw new IllegalArgumentException(String.valueOf(links));
+    }
+    
+    _links = links;
+    
+    return this;
+  }
+  
+  @Override
+  public ServiceClientBuilderImpl credits(int credits)
+  {
+    if (credits <= 0) {
+      throw new IllegalArgumentException(String.valueOf(credits));
+    }
+    
+    _credits = credits;
+    
+    return this;
+  }
 
   @Override
   public ServiceClient build()
   {
-    ServiceClient client = new BaratineClient(_url);
+    ServiceClient client = new BaratineClient(_url, _links, _credits);
     
     client.connect();
     
@@ -29,12 +29,15 @@
 
 package com.caucho.v5.baratine.client;
 
+import java.util.List;
+
 import com.caucho.v5.amp.ServicesAmp;
 import com.caucho.v5.amp.manager.ServiceManagerAmpWrapper;
 import com.caucho.v5.amp.spi.ShutdownModeAmp;
 import com.caucho.v5.ramp.hamp.ClientHamp;
 
 import io.baratine.client.ServiceClient;
+import io.baratine.client.ServiceClient.LinkStats;
 
 
 /**
@@ -55,6 +58,11 @@ public class BaratineClient extends ServiceManagerAmpWrapper
     _client = new ClientHamp(uri, user, password);
   }
   
+  public BaratineClient(String uri, int links, int credits)
+  {
+    _client = new ClientHamp(uri, null, null, links, credits);
+  }
+  
   @Override
   protected ServicesAmp delegate()
   {
@@ -75,6 +83,12 @@ public class BaratineClient extends ServiceManagerAmpWrapper
     return this;
   }
 
+  @Override
+  public List<LinkStats> linkStats()
+  {
+    return _client.linkStats();
+  }
+
   @Override
   public void shutdown(ShutdownModeAmp mode)
   {
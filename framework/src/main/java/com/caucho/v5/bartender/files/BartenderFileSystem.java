@@ -38,6 +38,7 @@ import com.caucho.v5.amp.spi.ShutdownModeAmp;
 import com.caucho.v5.bartender.BartenderSystem;
 import com.caucho.v5.bartender.proc.ProcKraken;
 import com.caucho.v5.bartender.proc.ProcPods;
+import com.caucho.v5.bartender.proc.ProcProfile;
 import com.caucho.v5.bartender.proc.ProcRoot;
 import com.caucho.v5.bartender.proc.ProcServers;
 import com.caucho.v5.bartender.proc.ProcServices;
@@ -198,6 +199,11 @@ public class BartenderFileSystem extends SubSystemBase
                                              .as(FileServiceBind.class);
     
     bind("/proc/temp-store", procTemp);
+    
+    FileServiceBind procProfile = rampManager.newService(new ProcProfile())
+                                             .as(FileServiceBind.class);
+    
+    bind("/proc/profile", procProfile);
   }
   
   private void bind(String path, FileServiceBind bind)
@@ -59,7 +59,7 @@ import io.baratine.web.WebSocket;
  * Hamp websocket endpoint for sending and receiving hamp message
  */
 public class HampService
-  implements OutAmp, ServiceWebSocket<InputStream,Buffer>
+  implements OutAmp, ServiceWebSocket<Buffer,Buffer>
 {
   private static final Logger log
     = Logger.getLogger(HampService.class.getName());
@@ -136,12 +136,14 @@ public class HampService
     }
     */
     
-    _channel = _channelFactory.create(this);
-    
     _webSocket = session;
     
-    _inHamp = new InHamp(_manager, _channel);
-    _outHamp = new OutHamp();
+    if (_channelFactory != null) {
+      _channel = _channelFactory.create(this);
+    
+      _inHamp = new InHamp(_manager, _channel);
+      _outHamp = new OutHamp();
+    }
     //_remote = _session.getBasicRemote();
     
     //_remote.setBatchingAllowed(true);
@@ -153,8 +155,12 @@ public class HampService
     //return true;
   }
 
+  /**
+   * Each binary frame is a single hamp message. The H3 schema cache
+   * belongs to the InHamp, so definitions from earlier frames are reused.
+   */
   @Override
-  public void next(InputStream is, WebSocket ws)
+  public void next(Buffer buffer, WebSocket ws)
     throws IOException
   {
     _manager.addRemoteMessageRead();
@@ -164,6 +170,9 @@ public class HampService
       
       Objects.requireNonNull(outbox);
       
+      InputStream is = new InputStreamBuffer(buffer);
+      
+      _inHamp.init(is);
       _inHamp.readMessage(is, outbox);
     } catch (Exception e) {
       log.log(Level.FINE, e.toString(), e);
@@ -203,7 +212,7 @@ public class HampService
   {
     WebSocket session = _webSocket;
     
-    return session != null && session.isClosed();
+    return session != null && ! session.isClosed();
   }
 
   @Override
@@ -221,6 +230,7 @@ public class HampService
     
     try (OutputStream os = getSendStream()) {
       _outHamp.send(os, headers, address, methodName, podCaller, args);
+      _outHamp.close();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -248,6 +258,7 @@ public class HampService
                         fromAddress, id, 
                         address, methodName, podCaller,
                         args);
+      _outHamp.close();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -276,6 +287,7 @@ public class HampService
                         fromAddress, id, 
                         address, methodName, podCaller, 
                         result, args);
+      _outHamp.close();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -291,6 +303,7 @@ public class HampService
     
     try (OutputStream os = getSendStream()) {
       _outHamp.queryResult(os, headers, address, qId, result);
+      _outHamp.close();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -306,6 +319,7 @@ public class HampService
     
     try (OutputStream os = getSendStream()) {
       _outHamp.queryError(os, headers, address, qId, exn);
+      _outHamp.close();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -324,6 +338,7 @@ public class HampService
     
     try (OutputStream os = getSendStream()) {
       _outHamp.streamResult(os, headers, address, qId, sequence, results, exn, isComplete);
+      _outHamp.close();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -339,6 +354,7 @@ public class HampService
     
     try (OutputStream os = getSendStream()) {
       _outHamp.streamCancel(os, headers, address, addressFrom, qId);
+      _outHamp.close();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -383,4 +399,54 @@ public class HampService
   {
     return getClass().getSimpleName() + "[" + _webSocket + "]";
   }
+  
+  /**
+   * Reads a websocket binary frame as a stream.
+   */
+  private static class InputStreamBuffer extends InputStream
+  {
+    private final Buffer _buffer;
+    private final byte []_byte = new byte[1];
+    private int _offset;
+    
+    InputStreamBuffer(Buffer buffer)
+    {
+      Objects.requireNonNull(buffer);
+      
+      _buffer = buffer;
+    }
+    
+    @Override
+    public int available()
+    {
+      return _buffer.length() - _offset;
+    }
+    
+    @Override
+    public int read()
+    {
+      if (_buffer.length() <= _offset) {
+        return -1;
+      }
+      
+      _buffer.get(_offset++, _byte, 0, 1);
+      
+      return _byte[0] & 0xff;
+    }
+    
+    @Override
+    public int read(byte []data, int offset, int length)
+    {
+      int sublen = Math.min(length, _buffer.length() - _offset);
+      
+      if (sublen <= 0) {
+        return length == 0 ? 0 : -1;
+      }
+      
+      _buffer.get(_offset, data, offset, sublen);
+      _offset += sublen;
+      
+      return sublen;
+    }
+  }
 }
@@ -41,4 +41,6 @@ public interface AdminService
   void backup(String tag, Result<String> result);
   
   void backupLoad(String tag, Result<String> result);
+  
+  void profile(boolean isReset, Result<String> result);
 }
@@ -39,6 +39,8 @@ import com.caucho.v5.kraken.KrakenSystem;
 import com.caucho.v5.kraken.archive.ArchiveKrakenManager;
 import com.caucho.v5.kraken.table.RestoreKrakenManager;
 import com.caucho.v5.kraken.table.KrakenImpl;
+import com.caucho.v5.profile.ProfileSampler;
+import com.caucho.v5.profile.ProfileSystem;
 import com.caucho.v5.subsystem.RootDirectorySystem;
 import com.caucho.v5.util.L10N;
 import com.caucho.v5.vfs.PathImpl;
@@ -149,6 +151,31 @@ public class AdminServiceImpl implements AdminService
     }
   }
   
+  /**
+   * Returns the continuous profile in collapsed-stack format, optionally
+   * starting a new profile.
+   */
+  @Override
+  public void profile(boolean isReset, Result<String> result)
+  {
+    ProfileSystem profileSystem = ProfileSystem.current();
+    
+    if (profileSystem == null) {
+      result.ok("");
+      return;
+    }
+    
+    ProfileSampler sampler = profileSystem.sampler();
+    
+    String collapsed = sampler.collapsed();
+    
+    if (isReset) {
+      sampler.reset();
+    }
+    
+    result.ok(collapsed);
+  }
+  
   private boolean isValidTag(String tag)
   {
     if (tag == null || tag.isEmpty()) {
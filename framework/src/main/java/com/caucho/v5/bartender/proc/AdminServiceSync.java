@@ -41,4 +41,6 @@ public interface AdminServiceSync extends AdminService
   String backup(String tag);
   
   String backupLoad(String tag);
+  
+  String profile(boolean isReset);
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.bartender.proc;
+
+import java.io.IOException;
+
+import com.caucho.v5.baratine.ServiceApi;
+import com.caucho.v5.io.WriteStream;
+import com.caucho.v5.profile.ProfileSampler;
+import com.caucho.v5.profile.ProfileSystem;
+
+import io.baratine.files.BfsFileSync;
+
+/**
+ * /proc/profile
+ *
+ * The continuous profile in collapsed-stack format, one line per sampled
+ * path with the service address as its root frame, ready for flame graph
+ * tools.
+ */
+@ServiceApi(BfsFileSync.class)
+public class ProcProfile extends ProcFileBase
+{
+  public ProcProfile()
+  {
+    super("/profile");
+  }
+  
+  @Override
+  protected boolean fillRead(WriteStream out)
+    throws IOException
+  {
+    ProfileSystem profileSystem = ProfileSystem.current();
+    
+    if (profileSystem == null) {
+      return true;
+    }
+    
+    ProfileSampler sampler = profileSystem.sampler();
+    
+    out.print(sampler.collapsed());
+    
+    return true;
+  }
+}
@@ -53,6 +53,7 @@ public class ProcRoot extends ProcFileBase
     String []list = new String[] { "servers",
                                    "services",
                                    "pods",
+                                   "profile",
                                    "webapps", };
     
     Arrays.sort(list);
@@ -41,6 +41,7 @@ import com.caucho.v5.cli.server.BfsRmCommand;
 import com.caucho.v5.cli.server.BfsTestCommand;
 import com.caucho.v5.cli.server.BfsTouchCommand;
 import com.caucho.v5.cli.server.KillCommand;
+import com.caucho.v5.cli.server.ProfileCollapsedCommand;
 import com.caucho.v5.cli.server.ProgramInfoDaemon;
 import com.caucho.v5.cli.server.ReportPdfCommand;
 import com.caucho.v5.cli.shell_old.EnvCliOld;
@@ -120,6 +121,7 @@ public class ArgsCliMainBaratine extends ArgsCli
 
     manager.addCommand(new PackageCommand().hide());
     manager.addCommand(new ProfileCommandBaratine().hide());
+    manager.addCommand(new ProfileCollapsedCommand());
 
     manager.addCommand(new ReportPdfCommand().hide());
 
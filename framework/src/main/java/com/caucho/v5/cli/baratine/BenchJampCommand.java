@@ -29,18 +29,24 @@
 
 package com.caucho.v5.cli.baratine;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.caucho.v5.amp.ServiceRefAmp;
 import com.caucho.v5.amp.ServicesAmp;
-import com.caucho.v5.amp.remote.ServiceClientAmp;
 import com.caucho.v5.amp.spi.MethodRefAmp;
 import com.caucho.v5.cli.daemon.ArgsDaemon;
 import com.caucho.v5.cli.server.ServerCommandBase;
 import com.caucho.v5.cli.spi.CommandArgumentException;
 import com.caucho.v5.health.shutdown.ExitCode;
+import com.caucho.v5.ramp.hamp.BaratineClient;
 import com.caucho.v5.util.L10N;
 
 import io.baratine.client.ServiceClient;
@@ -84,6 +90,7 @@ public class BenchJampCommand extends ServerCommandBase<ArgsCli>
     addValueOption("host", "host", "host address").tiny("h");
     addValueOption("pod", "pod", "pod name");
     addValueOption("url", "url", "url").tiny("u");
+    addFlagOption("rpc", "json jamp-rpc over http instead of the hamp websocket");
   }
 
   @Override
@@ -109,8 +116,12 @@ public class BenchJampCommand extends ServerCommandBase<ArgsCli>
 
       String url = args.getArg("url");
       
+      boolean isRpc = args.getArgFlag("rpc");
+
       if (url == null) {
-        url = "http://" + host + ":" + port + "/s/" + pod + "/";
+        String scheme = isRpc ? "http" : "ws";
+        
+        url = scheme + "://" + host + ":" + port + "/s/" + pod + "/";
       }
 
       String address = args.getTail(0);
@@ -138,7 +149,8 @@ public class BenchJampCommand extends ServerCommandBase<ArgsCli>
       }
       
       ProfileContext profile = new ProfileContext(args,
-                                                  url, address, methodName, argList);
+                                                  url, address, methodName, argList,
+                                                  isRpc);
 
       profile.warmup();
       
@@ -158,6 +170,7 @@ public class BenchJampCommand extends ServerCommandBase<ArgsCli>
     private String _address;
     private String _methodName;
     private Object []_methodArgs;
+    private boolean _isRpc;
 
     private CountDownLatch _prepareSignal;
     private CountDownLatch _startSignal;
@@ -169,7 +182,8 @@ public class BenchJampCommand extends ServerCommandBase<ArgsCli>
                    String url,
                    String address,
                    String methodName,
-                   Object []methodArgs)
+                   Object []methodArgs,
+                   boolean isRpc)
     {
       _args = args;
 
@@ -177,6 +191,7 @@ public class BenchJampCommand extends ServerCommandBase<ArgsCli>
       _address = address;
       _methodName = methodName;
       _methodArgs = methodArgs;
+      _isRpc = isRpc;
     }
 
     private void benchmark()
@@ -204,6 +219,7 @@ public class BenchJampCommand extends ServerCommandBase<ArgsCli>
 
       System.out.println("Time: " + delta);
       System.out.println("OPS: " + count / Math.max(time, 1e-6));
+      System.out.println("  Transport: " + (_isRpc ? "jamp-rpc" : "hamp websocket"));
       System.out.println("  Connections: " + conns);
       System.out.println("  Threads: " + threads);
       System.out.println("  Count: " + count);
@@ -251,8 +267,18 @@ public class BenchJampCommand extends ServerCommandBase<ArgsCli>
 
       int threadCount = Math.max(1, count / clients);
 
+      if (_isRpc) {
+        for (int i = 0; i < clients; i++) {
+          _helloClients[i] = new ProfileRpc(this, _url, _address, _methodName,
+                                            _methodArgs, threadCount);
+        }
+        
+        return;
+      }
+
       for (int i = 0; i < conns; i++) {
-        ServiceClientAmp client = ServiceClientAmp.newClient(_url).build();
+        // loopback websocket using the binary hamp subprotocol
+        BaratineClient client = new BaratineClient(_url);
 
         client.connect();
 
@@ -343,6 +369,100 @@ public class BenchJampCommand extends ServerCommandBase<ArgsCli>
     }
   }
 
+  /**
+   * JSON jamp-rpc calls, one POST per call, to measure the JSON
+   * argument parsing path.
+   */
+  private class ProfileRpc implements Runnable {
+    private ProfileContext _context;
+    private URL _url;
+    private byte []_body;
+    private int _count;
+
+    ProfileRpc(ProfileContext context,
+               String url,
+               String address,
+               String methodName,
+               Object []args,
+               int count)
+      throws IOException
+    {
+      _context = context;
+      _url = new URL(url);
+      _count = count;
+
+      if (address.startsWith("remote://")) {
+        address = address.substring("remote://".length());
+      }
+
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("[[\"query\",{},\"/bench\",1,");
+      appendString(sb, address);
+      sb.append(",");
+      appendString(sb, methodName);
+
+      for (Object arg : args) {
+        sb.append(",");
+        appendString(sb, String.valueOf(arg));
+      }
+
+      sb.append("]]");
+
+      _body = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+      new Thread(this).start();
+    }
+
+    private void appendString(StringBuilder sb, String value)
+    {
+      sb.append('"');
+
+      for (int i = 0; i < value.length(); i++) {
+        char ch = value.charAt(i);
+
+        if (ch == '"' || ch == '\\') {
+          sb.append('\\');
+        }
+
+        sb.append(ch);
+      }
+
+      sb.append('"');
+    }
+
+    @Override
+    public void run()
+    {
+      byte []buffer = new byte[4096];
+
+      try {
+        _context.waitForStart();
+
+        for (int i = 0; i < _count; i++) {
+          HttpURLConnection conn = (HttpURLConnection) _url.openConnection();
+
+          conn.setRequestMethod("POST");
+          conn.setDoOutput(true);
+          conn.setRequestProperty("Content-Type", "x-application/jamp-rpc");
+
+          try (OutputStream os = conn.getOutputStream()) {
+            os.write(_body);
+          }
+
+          try (InputStream is = conn.getInputStream()) {
+            while (is.read(buffer) > 0) {
+            }
+          }
+        }
+      } catch (Throwable e) {
+        e.printStackTrace();
+      } finally {
+        _context.onComplete();
+      }
+    }
+  }
+
   public class ProfileAsync implements Result<Object>
   {
     private ProfileContext _context;
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.profile;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.amp.deliver.Outbox;
+import com.caucho.v5.amp.spi.InboxAmp;
+import com.caucho.v5.amp.thread.ThreadAmp;
+import com.caucho.v5.config.ConfigException;
+import com.caucho.v5.util.L10N;
+
+/**
+ * Continuous low-rate stack sampler.
+ *
+ * Unlike the JNI ProfileTask, the sampler uses only the ThreadMXBean, so
+ * it can stay on in production. Each tick samples the runnable threads
+ * and adds their stacks to a bounded trie. A sample is attributed to the
+ * address of the inbox its ThreadAmp is delivering for, or to the
+ * thread's name for other threads, so the root frames of a flame graph
+ * are the services.
+ */
+public class ProfileSampler
+{
+  private static final Logger log
+    = Logger.getLogger(ProfileSampler.class.getName());
+  private static final L10N L = new L10N(ProfileSampler.class);
+
+  private final ThreadMXBean _threadBean;
+  private final ProfileTrie _trie;
+
+  private final AtomicReference<SamplerThread> _samplerThread
+    = new AtomicReference<>();
+
+  private final long _period;
+  private final int _depth;
+
+  private Thread []_threads = new Thread[256];
+  private long []_threadIds = new long[256];
+
+  private volatile long _startTime;
+
+  public ProfileSampler(long period, int depth, int maxNodes)
+  {
+    if (period < 1) {
+      throw new ConfigException(L.l("profile sampler period '{0}ms' is too small.  The period must be at least 1ms.",
+                                    period));
+    }
+
+    _period = period;
+    _depth = Math.max(1, depth);
+    _trie = new ProfileTrie(maxNodes);
+
+    _threadBean = ManagementFactory.getThreadMXBean();
+  }
+
+  public long period()
+  {
+    return _period;
+  }
+
+  public int depth()
+  {
+    return _depth;
+  }
+
+  public boolean isActive()
+  {
+    return _samplerThread.get() != null;
+  }
+
+  public long startTime()
+  {
+    return _startTime;
+  }
+
+  public long sampleCount()
+  {
+    return _trie.sampleCount();
+  }
+
+  /**
+   * Samples dropped or shortened because the trie was full.
+   */
+  public long truncatedCount()
+  {
+    return _trie.truncatedCount();
+  }
+
+  public int nodeCount()
+  {
+    return _trie.nodeCount();
+  }
+
+  public void start()
+  {
+    SamplerThread thread = new SamplerThread();
+
+    if (_samplerThread.compareAndSet(null, thread)) {
+      _startTime = System.currentTimeMillis();
+
+      thread.start();
+    }
+  }
+
+  public void stop()
+  {
+    SamplerThread thread = _samplerThread.getAndSet(null);
+
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * Clears the collected samples.
+   */
+  public void reset()
+  {
+    _trie.clear();
+
+    _startTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Writes the samples in collapsed-stack format.
+   */
+  public void writeCollapsed(Appendable out)
+    throws IOException
+  {
+    _trie.writeCollapsed(out);
+  }
+
+  /**
+   * Returns the samples in collapsed-stack format.
+   */
+  public String collapsed()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    try {
+      writeCollapsed(sb);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Takes one sample of all runnable threads.
+   */
+  void sample()
+  {
+    int count = enumerateThreads();
+
+    Thread []threads = _threads;
+    long []ids = _threadIds;
+
+    if (ids.length != count) {
+      ids = new long[count];
+      System.arraycopy(_threadIds, 0, ids, 0, count);
+    }
+
+    ThreadInfo []infos = _threadBean.getThreadInfo(ids, _depth);
+
+    Thread self = Thread.currentThread();
+
+    for (int i = 0; i < infos.length; i++) {
+      ThreadInfo info = infos[i];
+      Thread thread = threads[i];
+
+      threads[i] = null;
+
+      if (info == null
+          || thread == self
+          || info.getThreadState() != Thread.State.RUNNABLE) {
+        continue;
+      }
+
+      StackTraceElement []stack = info.getStackTrace();
+
+      if (stack.length == 0 || isIdle(stack[0])) {
+        continue;
+      }
+
+      _trie.add(root(thread), stack, _depth);
+    }
+  }
+
+  private int enumerateThreads()
+  {
+    ThreadGroup group = Thread.currentThread().getThreadGroup();
+
+    while (group.getParent() != null) {
+      group = group.getParent();
+    }
+
+    int count;
+
+    while ((count = group.enumerate(_threads, true)) == _threads.length) {
+      _threads = new Thread[2 * _threads.length];
+    }
+
+    if (_threadIds.length < _threads.length) {
+      _threadIds = new long[_threads.length];
+    }
+
+    for (int i = 0; i < count; i++) {
+      _threadIds[i] = _threads[i].getId();
+    }
+
+    return count;
+  }
+
+  /**
+   * Threads blocked in native socket i/o or reference handling report
+   * RUNNABLE but use no cpu.
+   */
+  private boolean isIdle(StackTraceElement top)
+  {
+    if (! top.isNativeMethod()) {
+      return false;
+    }
+
+    String className = top.getClassName();
+
+    return (className.startsWith("sun.nio.ch.")
+            || className.startsWith("java.net.")
+            || className.startsWith("java.lang.ref.")
+            || className.startsWith("com.caucho.v5.jni."));
+  }
+
+  /**
+   * The attribution frame: the service the thread is delivering for.
+   */
+  private String root(Thread thread)
+  {
+    if (thread instanceof ThreadAmp) {
+      Outbox outbox = ((ThreadAmp) thread).outbox();
+
+      Object context = outbox != null ? outbox.context() : null;
+
+      if (context instanceof InboxAmp) {
+        String address = ((InboxAmp) context).getAddress();
+
+        if (address != null) {
+          return address;
+        }
+      }
+    }
+
+    return "[" + threadName(thread.getName()) + "]";
+  }
+
+  /**
+   * Pool threads share a name with a numeric suffix.
+   */
+  private static String threadName(String name)
+  {
+    int end = name.length();
+
+    while (end > 0) {
+      char ch = name.charAt(end - 1);
+
+      if ('0' <= ch && ch <= '9' || ch == '-' || ch == '#' || ch == ' ') {
+        end--;
+      }
+      else {
+        break;
+      }
+    }
+
+    return end > 0 ? name.substring(0, end) : name;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[period=" + _period + "ms"
+            + ",samples=" + _trie.sampleCount() + "]");
+  }
+
+  private class SamplerThread extends Thread
+  {
+    SamplerThread()
+    {
+      super("profile-sampler");
+
+      setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+      try {
+        long period = _period;
+
+        while (_samplerThread.get() == this) {
+          long startSample = System.currentTimeMillis();
+
+          sample();
+
+          // align ticks to the period, skipping any missed ones
+          long expires = startSample + period;
+          expires = expires - expires % period;
+
+          while (System.currentTimeMillis() < expires
+                 && _samplerThread.get() == this) {
+            Thread.interrupted();
+            LockSupport.parkUntil(expires);
+          }
+        }
+      } catch (Throwable e) {
+        log.log(Level.WARNING, e.toString(), e);
+      } finally {
+        _samplerThread.compareAndSet(this, null);
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.profile;
+
+import java.util.Objects;
+
+import com.caucho.v5.amp.spi.ShutdownModeAmp;
+import com.caucho.v5.subsystem.SubSystemBase;
+import com.caucho.v5.subsystem.SystemManager;
+
+import io.baratine.config.Config;
+
+/**
+ * System for the continuous profile sampler.
+ *
+ * Configuration:
+ * <ul>
+ * <li>profile.sampler.enabled - samples while the server runs (true)
+ * <li>profile.sampler.period - sample period in milliseconds (100)
+ * <li>profile.sampler.depth - maximum frames per stack (64)
+ * <li>profile.sampler.max-nodes - bound of the stack trie (65536)
+ * </ul>
+ */
+public class ProfileSystem extends SubSystemBase
+{
+  private final ProfileSampler _sampler;
+  private final boolean _isEnabled;
+
+  public ProfileSystem(Config config)
+  {
+    Objects.requireNonNull(config);
+
+    _isEnabled = config.get("profile.sampler.enabled", boolean.class, true);
+
+    long period = config.get("profile.sampler.period", long.class, 100L);
+    int depth = config.get("profile.sampler.depth", int.class, 64);
+    int maxNodes = config.get("profile.sampler.max-nodes", int.class, 64 * 1024);
+
+    _sampler = new ProfileSampler(period, depth, maxNodes);
+  }
+
+  public static ProfileSystem createAndAddSystem(Config config)
+  {
+    SystemManager system = preCreate(ProfileSystem.class);
+
+    ProfileSystem profileSystem = new ProfileSystem(config);
+    system.addSystem(profileSystem);
+
+    return profileSystem;
+  }
+
+  public static ProfileSystem current()
+  {
+    return SystemManager.getCurrentSystem(ProfileSystem.class);
+  }
+
+  public ProfileSampler sampler()
+  {
+    return _sampler;
+  }
+
+  @Override
+  public void start()
+    throws Exception
+  {
+    super.start();
+
+    if (_isEnabled) {
+      _sampler.start();
+    }
+  }
+
+  @Override
+  public void stop(ShutdownModeAmp mode)
+    throws Exception
+  {
+    _sampler.stop();
+
+    super.stop(mode);
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _sampler + "]";
+  }
+}
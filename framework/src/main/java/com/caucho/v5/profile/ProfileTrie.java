@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.profile;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Bounded trie of sampled stacks, root frame first.
+ *
+ * Nodes live in parallel arrays and frames are interned to ids, so a
+ * long-running profile costs a few words per distinct call path. When
+ * the trie is full, a sample is counted at the deepest path that already
+ * exists, so totals stay correct while detail is lost.
+ */
+class ProfileTrie
+{
+  private static final int ROOT = 0;
+  private static final int NONE = -1;
+
+  private final int _maxNodes;
+
+  private final HashMap<String,Integer> _frameMap = new HashMap<>();
+  private String []_frames = new String[256];
+  private int _frameSize;
+
+  private int []_nodeFrame;
+  private int []_nodeChild;
+  private int []_nodeSibling;
+  private long []_nodeCount;
+  private int _nodeSize;
+
+  private long _sampleCount;
+  private long _truncatedCount;
+
+  ProfileTrie(int maxNodes)
+  {
+    _maxNodes = Math.max(maxNodes, 16);
+
+    clear();
+  }
+
+  /**
+   * Adds a sample.
+   *
+   * @param root the attribution frame, e.g. the service address
+   * @param stack the thread's stack, innermost frame first
+   * @param depth the maximum number of frames to record
+   */
+  synchronized void add(String root, StackTraceElement []stack, int depth)
+  {
+    _sampleCount++;
+
+    int node = child(ROOT, root);
+
+    if (node == NONE) {
+      _truncatedCount++;
+      return;
+    }
+
+    int end = Math.max(0, stack.length - depth);
+
+    for (int i = stack.length - 1; i >= end; i--) {
+      StackTraceElement elt = stack[i];
+
+      int next = child(node, frameName(elt));
+
+      if (next == NONE) {
+        _truncatedCount++;
+        break;
+      }
+
+      node = next;
+    }
+
+    _nodeCount[node]++;
+  }
+
+  /**
+   * Lambda classes are named by address, which would split one call path
+   * into many.
+   */
+  private static String frameName(StackTraceElement elt)
+  {
+    String className = elt.getClassName();
+
+    int p = className.indexOf("$$Lambda$");
+
+    if (p > 0) {
+      className = className.substring(0, p + "$$Lambda".length());
+    }
+
+    return className + "." + elt.getMethodName();
+  }
+
+  synchronized long sampleCount()
+  {
+    return _sampleCount;
+  }
+
+  synchronized long truncatedCount()
+  {
+    return _truncatedCount;
+  }
+
+  synchronized int nodeCount()
+  {
+    return _nodeSize;
+  }
+
+  synchronized void clear()
+  {
+    _frameMap.clear();
+    Arrays.fill(_frames, null);
+    _frameSize = 0;
+
+    int capacity = Math.min(1024, _maxNodes);
+
+    _nodeFrame = new int[capacity];
+    _nodeChild = new int[capacity];
+    _nodeSibling = new int[capacity];
+    _nodeCount = new long[capacity];
+
+    _nodeFrame[ROOT] = NONE;
+    _nodeChild[ROOT] = NONE;
+    _nodeSibling[ROOT] = NONE;
+    _nodeSize = 1;
+
+    _sampleCount = 0;
+    _truncatedCount = 0;
+  }
+
+  /**
+   * Writes the collapsed-stack format used by flame graph tools: one line
+   * per path, frames separated by ';', followed by the sample count.
+   */
+  synchronized void writeCollapsed(Appendable out)
+    throws IOException
+  {
+    int []path = new int[64];
+
+    for (int child = _nodeChild[ROOT]; child != NONE; child = _nodeSibling[child]) {
+      writeCollapsed(out, child, path, 0);
+    }
+  }
+
+  private int []writeCollapsed(Appendable out, int node, int []path, int depth)
+    throws IOException
+  {
+    if (path.length <= depth) {
+      path = Arrays.copyOf(path, 2 * path.length);
+    }
+
+    path[depth] = node;
+
+    if (_nodeCount[node] > 0) {
+      for (int i = 0; i <= depth; i++) {
+        if (i > 0) {
+          out.append(';');
+        }
+
+        out.append(_frames[_nodeFrame[path[i]]]);
+      }
+
+      out.append(' ');
+      out.append(String.valueOf(_nodeCount[node]));
+      out.append('\n');
+    }
+
+    for (int child = _nodeChild[node]; child != NONE; child = _nodeSibling[child]) {
+      path = writeCollapsed(out, child, path, depth + 1);
+    }
+
+    return path;
+  }
+
+  private int frame(String name)
+  {
+    if (_frames.length <= _frameSize) {
+      _frames = Arrays.copyOf(_frames, 2 * _frames.length);
+    }
+
+    // frame names are semicolon-separated in the collapsed output
+    _frames[_frameSize] = name.replace(';', ':').replace(' ', '_');
+    _frameMap.put(name, _frameSize);
+
+    return _frameSize++;
+  }
+
+  /**
+   * Finds or adds the child of a node, returning NONE when the trie is full.
+   */
+  private int child(int parent, String name)
+  {
+    Integer frameId = _frameMap.get(name);
+    int frame = frameId != null ? frameId : NONE;
+
+    int prev = NONE;
+
+    for (int child = frame != NONE ? _nodeChild[parent] : NONE;
+         child != NONE;
+         child = _nodeSibling[child]) {
+      if (_nodeFrame[child] == frame) {
+        if (prev != NONE) {
+          // move to front so hot paths are found first
+          _nodeSibling[prev] = _nodeSibling[child];
+          _nodeSibling[child] = _nodeChild[parent];
+          _nodeChild[parent] = child;
+        }
+
+        return child;
+      }
+
+      prev = child;
+    }
+
+    if (_maxNodes <= _nodeSize) {
+      return NONE;
+    }
+
+    if (frame == NONE) {
+      frame = frame(name);
+    }
+
+    if (_nodeFrame.length <= _nodeSize) {
+      int capacity = Math.min(2 * _nodeFrame.length, _maxNodes);
+
+      _nodeFrame = Arrays.copyOf(_nodeFrame, capacity);
+      _nodeChild = Arrays.copyOf(_nodeChild, capacity);
+      _nodeSibling = Arrays.copyOf(_nodeSibling, capacity);
+      _nodeCount = Arrays.copyOf(_nodeCount, capacity);
+    }
+
+    int node = _nodeSize++;
+
+    _nodeFrame[node] = frame;
+    _nodeChild[node] = NONE;
+    _nodeSibling[node] = _nodeChild[parent];
+    _nodeCount[node] = 0;
+
+    _nodeChild[parent] = node;
+
+    return node;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[nodes=" + _nodeSize + "/" + _maxNodes
+            + ",samples=" + _sampleCount + "]");
+  }
+}
@@ -49,7 +49,19 @@ public class ClientHamp extends ClientAmpBase
   
   public ClientHamp(String uri, String user, String password)
   {
-    super(createRampManager(), uri);
+    this(uri, user, password, 1, 0);
+  }
+  
+  /**
+   * Client with a pool of pipelined links to the server.
+   */
+  public ClientHamp(String uri, 
+                    String user, 
+                    String password,
+                    int links,
+                    int credits)
+  {
+    super(createRampManager(), uri, links, credits);
     
     _connectionFactory
       = new ConnectionHampFactoryClient(delegate(), uri, user, password);
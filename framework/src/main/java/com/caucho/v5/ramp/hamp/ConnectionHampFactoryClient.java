@@ -29,10 +29,12 @@
 
 package com.caucho.v5.ramp.hamp;
 
+import io.baratine.io.Buffer;
 import io.baratine.service.ServiceExceptionConnect;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collections;
 
 import com.caucho.v5.amp.ServicesAmp;
 import com.caucho.v5.amp.remote.ChannelAmp;
@@ -42,6 +44,7 @@ import com.caucho.v5.bartender.hamp.EndpointHampClient;
 import com.caucho.v5.json.ser.JsonFactory;
 import com.caucho.v5.ramp.jamp.SessionContextJamp;
 import com.caucho.v5.util.L10N;
+import com.caucho.v5.websocket.client.WebSocketClientBaratine;
 
 /**
  * Endpoint for receiving hamp message
@@ -50,6 +53,8 @@ public class ConnectionHampFactoryClient implements OutAmpFactory
 {
   private static final L10N L = new L10N(ConnectionHampFactoryClient.class);
   
+  public static final String SUBPROTOCOL = "hamp";
+  
   private final URI _uri;
   private final ServicesAmp _ampManager;
   
@@ -101,13 +106,6 @@ public class ConnectionHampFactoryClient implements OutAmpFactory
   @Override
   public OutAmp getOut(ChannelAmp channel)
   {
-    // EndpointJamp endpoint = new EndpointJamp();
-    
-    if (true) {
-      throw new UnsupportedOperationException();
-    }
-    //WebSocketContainerClient client = new WebSocketContainerClient();
-    
     EndpointHampClient endpoint
       = new EndpointHampClient(_ampManager, null, null,
                                channel);
@@ -115,15 +113,27 @@ public class ConnectionHampFactoryClient implements OutAmpFactory
     endpoint.setAuth(_uid, _password);
 
     try {
-      if (true) {
-        throw new UnsupportedOperationException();
+      WebSocketClientBaratine<Buffer,Buffer> client
+        = new WebSocketClientBaratine<>(_uri.toString(), endpoint);
+      
+      client.setPreferredSubprotocols(Collections.singletonList(SUBPROTOCOL));
+      
+      if (_host != null) {
+        client.setVirtualHost(_host);
+      }
+      
+      client.connect();
+      
+      String protocol = client.getHeader("Sec-WebSocket-Protocol");
+      
+      if (! SUBPROTOCOL.equals(protocol)) {
+        client.close();
+        
+        throw new ServiceExceptionConnect(L.l("HAMP server at {0} did not accept the '{1}' subprotocol (received '{2}')",
+                                              _uri, SUBPROTOCOL, protocol));
       }
-      /*
-      EndpointJampConfigClient cfg
-      = new EndpointJampConfigClient(_ampManager, _channelContext, channel, _jsonFactory, "hamp");
       
-      client.connectToServer(endpoint, _host, cfg, _uri, _uid, _password);
-      */
+      endpoint.setClient(client::close);
 
       // XXX: separate flag needed?
       if (_uid != null || _password != null || isLoginRequired()) {
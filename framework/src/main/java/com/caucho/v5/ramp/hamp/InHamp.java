@@ -63,6 +63,7 @@ import com.caucho.v5.amp.spi.ShutdownModeAmp;
 import com.caucho.v5.h3.H3;
 import com.caucho.v5.h3.InH3;
 import com.caucho.v5.h3.OutFactoryH3;
+import com.caucho.v5.h3.SchemaCacheH3;
 import com.caucho.v5.http.pod.PodContainer;
 import com.caucho.v5.ramp.jamp.InAmpWebSocket;
 import com.caucho.v5.util.Hex;
@@ -107,6 +108,7 @@ public class InHamp implements InAmpWebSocket
   
   private int _dId;
   private OutFactoryH3 _serializer;
+  private SchemaCacheH3 _schema;
   private PodContainer _podContainer;
   private static AtomicInteger _idGen = new AtomicInteger();
 
@@ -123,6 +125,7 @@ public class InHamp implements InAmpWebSocket
     _channelIn = channel;
     
     _serializer = H3.newOutFactory().get();
+    _schema = _serializer.newSchemaCache();
     //_hIn = new Hessian2Input();
     
     //_hIn.setSerializerFactory(_factory);
@@ -179,7 +182,7 @@ public class InHamp implements InAmpWebSocket
   public void init(InputStream is)
   {
     //_hIn.reset();
-    _hIn = _serializer.in(is);
+    _hIn = _serializer.in(is, _schema);
     
     /*
     _is = is;
@@ -257,6 +260,8 @@ public class InHamp implements InAmpWebSocket
     int type;
     
     try {
+      hIn.readSchema();
+      
       type = (int) hIn.readLong();
     } catch (Exception e) {
       log.log(_logLevel, e.getMessage() + " (in " + this + ")");
@@ -296,6 +301,8 @@ public class InHamp implements InAmpWebSocket
       
       long id = hIn.readLong();
       
+      _channelIn.onQueryComplete(id);
+      
       QueryRefAmp queryRef = serviceRef.removeQueryRef(id);
       
       if (queryRef != null) {
@@ -541,6 +548,8 @@ public class InHamp implements InAmpWebSocket
     ServiceRefAmp serviceRef = readToAddress(hIn);
   
     long id = hIn.readLong();
+    
+    _channelIn.onQueryComplete(id);
 
     QueryRefAmp queryRef = serviceRef.removeQueryRef(id);
   
@@ -707,6 +716,10 @@ public class InHamp implements InAmpWebSocket
     Throwable exn = (Throwable) hIn.readObject(Throwable.class);
     boolean isComplete = hIn.readBoolean();
     
+    if (isComplete || exn != null) {
+      _channelIn.onQueryComplete(id);
+    }
+    
     if (log.isLoggable(_logLevel)) {
       log.log(_logLevel, "stream-result-r " + values + "," + isComplete + " (in " + this + ")"
                + "\n  {id:" + id + ", to:" + serviceRef + "," + headers + "}");
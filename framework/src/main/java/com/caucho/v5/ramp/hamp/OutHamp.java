@@ -42,9 +42,11 @@ import java.util.logging.Logger;
 import com.caucho.v5.amp.ErrorAmp;
 import com.caucho.v5.amp.spi.HeadersAmp;
 import com.caucho.v5.bartender.pod.PodRef;
+import com.caucho.v5.h3.ColumnListH3;
 import com.caucho.v5.h3.H3;
 import com.caucho.v5.h3.OutFactoryH3;
 import com.caucho.v5.h3.OutH3;
+import com.caucho.v5.h3.SchemaCacheH3;
 
 import io.baratine.stream.ResultStream;
 
@@ -76,11 +78,18 @@ public class OutHamp
   private String []_fromAddressCacheRing = new String[256];
 
   private OutFactoryH3 _serializer;
+  private SchemaCacheH3 _schema;
 
   public OutHamp()
   {
     _serializer = H3.newOutFactory().get();
     
+    // type definitions are sent once per link, not once per message
+    _schema = _serializer.newSchemaCache();
+    
+    // stream results and findAll keys may be sent as column batches
+    _schema.columns(true);
+    
     //_out = new Hessian2Output();
     //_out.getSerializerFactory().setAllowNonSerializable(true);
     //_out.setUnshared(true);
@@ -102,7 +111,11 @@ public class OutHamp
     
     _out.initPacket(os);
     */
-    _out = _serializer.out(os);
+    _out = _serializer.out(os, _schema);
+    
+    // each message starts with the link schema header, so a peer with
+    // a stale cache fails fast instead of misreading type ids
+    _out.writeSchema();
   }
 
   //
@@ -360,6 +373,10 @@ public class OutHamp
       
       out.writeLong(sequence);
 
+      if (values != null && ! (values instanceof ColumnListH3)) {
+        values = new ColumnListH3<>(values);
+      }
+
       out.writeObject(values);
       out.writeObject(exn);
       out.writeBoolean(isComplete);
@@ -66,6 +66,9 @@ public class InHampWebSocket extends InHamp
     // baratine/2725
     //_channelContext.start(_channelEnv);
     try (OutboxAmp outbox = OutboxAmp.currentOrCreate(getManager())) {
+      // each frame is a new stream, but shares the link's schema cache
+      init(is);
+      
       readMessage(is, outbox);
       //readMessage(is);
     } catch (Exception e) {
@@ -31,9 +31,6 @@ package com.caucho.v5.ramp.jamp;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.lang.reflect.Array;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Objects;
@@ -64,7 +61,6 @@ import com.caucho.v5.util.L10N;
 import com.caucho.v5.vfs.ReadStreamOld;
 
 import io.baratine.service.ServiceException;
-import io.baratine.service.ServiceExceptionIllegalArgument;
 
 /**
  * HmtpReader stream handles client packets received from the server.
@@ -75,8 +71,6 @@ public class InJamp
   private static final Logger log
     = Logger.getLogger(InJamp.class.getName());
   
-  private final Object []NULL_ARGS = new Object[0];
-
   private final ChannelAmp _channelIn;
   private final JsonFactory _jsonFactory;
   
@@ -370,7 +364,8 @@ public class InJamp
     
     OutboxAmp outbox = OutboxAmp.current();
 
-    Object []args = readArgs(jIn, serviceRefAddress, methodName, paramTypes, isVarArgs);
+    Object []args = readArgs(jIn, method, serviceRefAddress, methodName,
+                             paramTypes, isVarArgs);
     SendMessage_N msg = new SendMessage_N(outbox, headers, serviceRef, method.method(), args);
     
     if (log.isLoggable(Level.FINER)) {
@@ -480,14 +475,16 @@ public class InJamp
     } catch (Exception e) {
       //e.printStackTrace();
       
-      readArgs(jIn, address, methodName, new ParameterAmp[0], false);
+      new JampInvoker(null, false, _jsonFactory)
+        .readArgs(jIn, address, methodName, _channelIn);
       
       throw e;
     }
 
     String serviceRefAddress = serviceRef.address();
     
-    Object []args = readArgs(jIn, serviceRefAddress, methodName, paramTypes, isVarArgs);
+    Object []args = readArgs(jIn, method, serviceRefAddress, methodName,
+                             paramTypes, isVarArgs);
 
     // RampQueryRef queryRef = fromActor.getQueryRef(qid);
     long timeout = 120000L;
@@ -739,14 +736,16 @@ public class InJamp
     } catch (Exception e) {
       e.printStackTrace();
 
-      readArgs(jIn, address, methodName, new ParameterAmp[0], false);
+      new JampInvoker(null, false, _jsonFactory)
+        .readArgs(jIn, address, methodName, _channelIn);
 
       throw e;
     }
 
     String serviceRefAddress = serviceRef.address();
 
-    Object []args = readArgs(jIn, serviceRefAddress, methodName, paramTypes, isVarArgs);
+    Object []args = readArgs(jIn, method, serviceRefAddress, methodName,
+                             paramTypes, isVarArgs);
 
     // RampQueryRef queryRef = fromActor.getQueryRef(qid);
     long timeout = 120000L;
@@ -850,170 +849,19 @@ public class InJamp
     }
   }
   
-  private Object []readArgs(JsonReaderImpl jIn, 
+  private Object []readArgs(JsonReaderImpl jIn,
+                            MethodRefAmp method,
                             String address,
-                            String method,
+                            String methodName,
                             ParameterAmp []paramTypes,
                             boolean isVarArgs)
     throws IOException
   {
-    ArrayList<Object> args = null;
-  
-    InJson.Event event;
-    int i = 0;
-
-    while ((event = jIn.peek()) != InJson.Event.END_ARRAY) {
-      
-      if (event == null) {
-        throw new ProtocolExceptionJamp(L.l("JAMP argument parsing failure at end of file for service '{0}' and method '{1}'",
-                                            address, method));
-      }
-
-      if (args == null) {
-        args = new ArrayList<>();
-      }
-      
-      Type type = getType(i, paramTypes, isVarArgs);
-
-      if (isVarArgs && paramTypes.length - 1 <= i) {
-        args.add(readVarArgs(jIn, address, method, type));
-        break;
-      }
-      
-      if (type != null) {
-        Class<?> cl = null;
-        
-        if (type instanceof Class<?>) {
-          cl = (Class<?>) type;
-        }
-        
-        Object value;
-        
-        try {
-          if (cl != null && cl.isInterface()
-              && jIn.peek() == InJson.Event.VALUE_STRING) {
-            // XXX: baratine/2111 - for @Service, need true marshal
-
-            String refAddress = jIn.readString();
-            
-            if (address.startsWith("session:")) {
-              ServiceRefAmp fromService = _channelIn.createGatewayRef(refAddress);
-            
-              if (fromService == null) {
-                value = null;
-              }
-              else if (cl.isAssignableFrom(fromService.getClass())) {
-                value = fromService;
-              }
-              else {
-                value = fromService.as(cl);
-              }
-            }
-            else {
-              throw new ServiceExceptionIllegalArgument(L.l("ServiceRef arg is only allowed for session:, in service '{0}' and method '{1}'",
-                                                            address, method));
-            }
-            /*
-            else {
-              log.warning(L.l("ServiceRef arg is only allowed for session: for service {0} and method {1}",
-                              address, method));
-              
-              value = null;
-            }
-            */
-          }
-          else {
-            value = jIn.readObject(type);
-          }
-        } catch (Exception e) {
-          throw new ProtocolExceptionJamp(L.l("JAMP argument parsing failure for service '{0}' and method '{1}'\n  {2}",
-                                              address, method, e.toString()), e);
-        }
-
-        args.add(value);
-      }
-      else {
-        args.add(jIn.readObject(Object.class));
-      }
-      
-      i++;
-    }
-    
-    jIn.next(); // consume ']'
+    JampInvoker invoker = JampInvoker.of(method.method(),
+                                         paramTypes, isVarArgs,
+                                         _jsonFactory);
     
-    if (args == null) {
-      return NULL_ARGS;
-    }
-    else {
-      Object []argArray = new Object[args.size()];
-      
-      args.toArray(argArray);
-      
-      return argArray;
-    }
-  }
-  
-  private Object readVarArgs(JsonReaderImpl jIn,
-                             String address,
-                             String method,
-                             Type type)
-    throws IOException
-  {
-    ArrayList<Object> varArgs = new ArrayList<>();
-  
-    InJson.Event event;
-
-    while ((event = jIn.peek()) != InJson.Event.END_ARRAY) {
-      Object value;
-        
-      try {
-        value = jIn.readObject(type);
-      } catch (Exception e) {
-        throw new ProtocolExceptionJamp(L.l("JAMP argument parsing failure for service '{0}' and method '{1}'\n  {2}",
-                                            address, method, e.toString()), e);
-      }
-
-      varArgs.add(value);
-    }
-    
-    Class <?> cl = (Class<?>) type;
-
-    Object []args = (Object []) Array.newInstance(cl, varArgs.size());
-    varArgs.toArray(args);
-    
-    return args;
-  }
-
-  private Type getType(int i, ParameterAmp []paramTypes, boolean isVarArgs)
-  {
-    if (paramTypes == null) {
-      return null;
-    }
-    else if (isVarArgs) {
-      if (i < paramTypes.length - 1) {
-        return paramTypes[i].type();
-      }
-      else {
-        Type tailType = paramTypes[paramTypes.length - 1].type();
-        
-        if (tailType instanceof Class<?>) {
-          Class<?> tailClass = (Class<?>) tailType;
-          
-          return (tailClass).getComponentType();
-        }
-        else {
-          return tailType;
-        }
-      }
-    }
-    else {
-      if (i < paramTypes.length) {
-        return paramTypes[i].type();
-      }
-      else {
-        return null;
-      }
-    }
+    return invoker.readArgs(jIn, address, methodName, _channelIn);
   }
   
   private HeadersAmp parseHeaders(JsonReaderImpl jIn)
@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.ramp.jamp;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.caucho.v5.amp.ServiceRefAmp;
+import com.caucho.v5.amp.remote.ChannelAmp;
+import com.caucho.v5.amp.stub.MethodAmp;
+import com.caucho.v5.amp.stub.ParameterAmp;
+import com.caucho.v5.json.io.InJson;
+import com.caucho.v5.json.io.JsonReaderImpl;
+import com.caucho.v5.json.ser.JsonFactory;
+import com.caucho.v5.json.ser.SerializerJson;
+import com.caucho.v5.util.L10N;
+import com.caucho.v5.util.LruCache;
+
+import io.baratine.service.ServiceExceptionIllegalArgument;
+
+/**
+ * Argument reader for a jamp method call.
+ *
+ * The parameter deserializers are resolved once per method, so a call
+ * reads each JSON argument with its own deserializer directly into an
+ * argument array sized for the method.
+ */
+class JampInvoker
+{
+  private static final L10N L = new L10N(JampInvoker.class);
+
+  private static final Object []NULL_ARGS = new Object[0];
+
+  private static final LruCache<MethodAmp,JampInvoker> _invokerCache
+    = new LruCache<>(4096);
+
+  private final JsonFactory _factory;
+
+  private final int _paramLength;
+
+  private final SerializerJson<?> []_params;
+  private final Class<?> []_paramClasses;
+  private final Class<?> []_paramNumbers;
+
+  private final boolean _isVarArgs;
+  private final Class<?> _varArgClass;
+  private final SerializerJson<?> _varArg;
+
+  private final SerializerJson<?> _objectSer;
+
+  JampInvoker(ParameterAmp []paramTypes,
+              boolean isVarArgs,
+              JsonFactory factory)
+  {
+    Objects.requireNonNull(factory);
+
+    _factory = factory;
+
+    _objectSer = factory.serializer((Type) Object.class);
+
+    if (paramTypes == null) {
+      paramTypes = new ParameterAmp[0];
+      isVarArgs = false;
+    }
+
+    _isVarArgs = isVarArgs && paramTypes.length > 0;
+
+    int length = paramTypes.length;
+
+    if (_isVarArgs) {
+      length--;
+
+      Type tailType = paramTypes[length].type();
+
+      if (tailType instanceof Class<?>) {
+        _varArgClass = ((Class<?>) tailType).getComponentType();
+        _varArg = factory.serializer((Type) _varArgClass);
+      }
+      else {
+        _varArgClass = Object.class;
+        _varArg = factory.serializer(tailType);
+      }
+    }
+    else {
+      _varArgClass = null;
+      _varArg = null;
+    }
+
+    _paramLength = length;
+
+    _params = new SerializerJson<?>[length];
+    _paramClasses = new Class<?>[length];
+    _paramNumbers = new Class<?>[length];
+
+    for (int i = 0; i < length; i++) {
+      Type type = paramTypes[i].type();
+
+      if (type instanceof Class<?> && ((Class<?>) type).isInterface()) {
+        // interfaces are usually service refs, which have no serializer
+        _paramClasses[i] = (Class<?>) type;
+      }
+      else {
+        _params[i] = factory.serializer(type);
+        _paramNumbers[i] = numberClass(type);
+      }
+    }
+  }
+
+  /**
+   * Returns the cached invoker for the active method.
+   */
+  static JampInvoker of(MethodAmp method,
+                        ParameterAmp []paramTypes,
+                        boolean isVarArgs,
+                        JsonFactory factory)
+  {
+    JampInvoker invoker = _invokerCache.get(method);
+
+    if (invoker == null || invoker._factory != factory) {
+      invoker = new JampInvoker(paramTypes, isVarArgs, factory);
+
+      _invokerCache.put(method, invoker);
+    }
+
+    return invoker;
+  }
+
+  /**
+   * Reads the JSON arguments up to and including the closing ']'.
+   */
+  Object []readArgs(JsonReaderImpl jIn,
+                    String address,
+                    String method,
+                    ChannelAmp channel)
+    throws IOException
+  {
+    Object []args = null;
+    int i = 0;
+
+    InJson.Event event;
+
+    while ((event = jIn.peek()) != InJson.Event.END_ARRAY) {
+      if (event == null) {
+        throw new ProtocolExceptionJamp(L.l("JAMP argument parsing failure at end of file for service '{0}' and method '{1}'",
+                                            address, method));
+      }
+
+      if (args == null) {
+        args = new Object[Math.max(1, _paramLength + (_isVarArgs ? 1 : 0))];
+      }
+      else if (args.length <= i) {
+        args = Arrays.copyOf(args, 2 * args.length);
+      }
+
+      if (_isVarArgs && _paramLength <= i) {
+        args[i++] = readVarArgs(jIn, address, method);
+        break;
+      }
+      else if (i < _paramLength) {
+        args[i] = readArg(jIn, address, method, channel, i);
+      }
+      else {
+        args[i] = _objectSer.read(jIn);
+      }
+
+      i++;
+    }
+
+    jIn.next(); // consume ']'
+
+    if (args == null) {
+      return NULL_ARGS;
+    }
+    else if (args.length == i) {
+      return args;
+    }
+    else {
+      return Arrays.copyOf(args, i);
+    }
+  }
+
+  private Object readArg(JsonReaderImpl jIn,
+                         String address,
+                         String method,
+                         ChannelAmp channel,
+                         int i)
+    throws IOException
+  {
+    try {
+      Class<?> cl = _paramClasses[i];
+
+      if (cl != null && jIn.peek() == InJson.Event.VALUE_STRING) {
+        // XXX: baratine/2111 - for @Service, need true marshal
+        return readServiceRef(jIn, address, method, channel, cl);
+      }
+      else if (cl != null) {
+        return jIn.readObject(cl);
+      }
+      else if (_paramNumbers[i] != null) {
+        return toPrimitive(_paramNumbers[i], _params[i].read(jIn));
+      }
+      else {
+        return _params[i].read(jIn);
+      }
+    } catch (Exception e) {
+      throw new ProtocolExceptionJamp(L.l("JAMP argument parsing failure for service '{0}' and method '{1}'\n  {2}",
+                                          address, method, e.toString()), e);
+    }
+  }
+
+  private Object readServiceRef(JsonReaderImpl jIn,
+                                String address,
+                                String method,
+                                ChannelAmp channel,
+                                Class<?> cl)
+  {
+    String refAddress = jIn.readString();
+
+    if (! address.startsWith("session:")) {
+      throw new ServiceExceptionIllegalArgument(L.l("ServiceRef arg is only allowed for session:, in service '{0}' and method '{1}'",
+                                                    address, method));
+    }
+
+    ServiceRefAmp fromService = channel.createGatewayRef(refAddress);
+
+    if (fromService == null) {
+      return null;
+    }
+    else if (cl.isAssignableFrom(fromService.getClass())) {
+      return fromService;
+    }
+    else {
+      return fromService.as(cl);
+    }
+  }
+
+  private Object readVarArgs(JsonReaderImpl jIn,
+                             String address,
+                             String method)
+    throws IOException
+  {
+    Object []varArgs = new Object[8];
+    int length = 0;
+
+    while (jIn.peek() != InJson.Event.END_ARRAY) {
+      Object value;
+
+      try {
+        value = _varArg.read(jIn);
+      } catch (Exception e) {
+        throw new ProtocolExceptionJamp(L.l("JAMP argument parsing failure for service '{0}' and method '{1}'\n  {2}",
+                                            address, method, e.toString()), e);
+      }
+
+      if (varArgs.length <= length) {
+        varArgs = Arrays.copyOf(varArgs, 2 * varArgs.length);
+      }
+
+      varArgs[length++] = value;
+    }
+
+    Object args = Array.newInstance(_varArgClass, length);
+
+    if (_varArgClass.isPrimitive()) {
+      for (int i = 0; i < length; i++) {
+        Array.set(args, i, toPrimitive(_varArgClass, varArgs[i]));
+      }
+    }
+    else {
+      System.arraycopy(varArgs, 0, args, 0, length);
+    }
+
+    return args;
+  }
+
+  /**
+   * Returns the primitive type for a primitive or boxed number parameter.
+   */
+  private static Class<?> numberClass(Type type)
+  {
+    if (! (type instanceof Class<?>)) {
+      return null;
+    }
+
+    Class<?> cl = (Class<?>) type;
+
+    if (cl.isPrimitive()) {
+      return cl;
+    }
+    else if (cl == Integer.class) {
+      return int.class;
+    }
+    else if (cl == Long.class) {
+      return long.class;
+    }
+    else if (cl == Double.class) {
+      return double.class;
+    }
+    else if (cl == Float.class) {
+      return float.class;
+    }
+    else if (cl == Short.class) {
+      return short.class;
+    }
+    else if (cl == Byte.class) {
+      return byte.class;
+    }
+    else {
+      return null;
+    }
+  }
+
+  /**
+   * JSON numbers are read as Long or Double, so they're narrowed to the
+   * primitive component type before they're stored.
+   */
+  private static Object toPrimitive(Class<?> cl, Object value)
+  {
+    if (! (value instanceof Number)) {
+      return value;
+    }
+
+    Number number = (Number) value;
+
+    if (cl == int.class) {
+      return number.intValue();
+    }
+    else if (cl == long.class) {
+      return number.longValue();
+    }
+    else if (cl == double.class) {
+      return number.doubleValue();
+    }
+    else if (cl == float.class) {
+      return number.floatValue();
+    }
+    else if (cl == short.class) {
+      return number.shortValue();
+    }
+    else if (cl == byte.class) {
+      return number.byteValue();
+    }
+    else {
+      return value;
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _paramLength
+           + (_isVarArgs ? ",varargs" : "") + "]";
+  }
+}
@@ -33,7 +33,7 @@ import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,8 +45,8 @@ abstract class JampMarshal
   private static final Logger log
     = Logger.getLogger(JampMarshal.class.getName());
 
-  private static final HashMap<Type,JampMarshal> _marshalMap
-    = new HashMap<>();
+  private static final ConcurrentHashMap<Type,JampMarshal> _marshalMap
+    = new ConcurrentHashMap<>();
 
   abstract Object toObject(String stringValue);
 
@@ -57,7 +57,17 @@ abstract class JampMarshal
     if (marshal != null) {
       return marshal;
     }
-
+    
+    marshal = createImpl(type);
+    
+    // valueOf lookups are reflective, so resolve each type only once
+    JampMarshal oldMarshal = _marshalMap.putIfAbsent(type, marshal);
+    
+    return oldMarshal != null ? oldMarshal : marshal;
+  }
+    
+  private static JampMarshal createImpl(Type type)
+  {
     if (type instanceof Class<?>) {
       Class<?> cl = (Class<?>) type;
 
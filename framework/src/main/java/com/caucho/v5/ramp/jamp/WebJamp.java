@@ -38,10 +38,15 @@ import java.util.logging.Logger;
 
 import com.caucho.v5.amp.ServicesAmp;
 import com.caucho.v5.amp.message.HeadersNull;
+import com.caucho.v5.amp.remote.ChannelManagerServiceImpl;
 import com.caucho.v5.amp.remote.ChannelServer;
+import com.caucho.v5.amp.remote.ChannelServerFactory;
+import com.caucho.v5.amp.remote.ChannelServerFactoryImpl;
 import com.caucho.v5.amp.service.ServiceRefHandle;
 import com.caucho.v5.amp.spi.OutboxAmp;
+import com.caucho.v5.bartender.hamp.HampService;
 import com.caucho.v5.json.ser.JsonFactory;
+import com.caucho.v5.ramp.hamp.ConnectionHampFactoryClient;
 import com.caucho.v5.web.webapp.RequestBaratine;
 
 import io.baratine.service.ServiceRef;
@@ -67,6 +72,9 @@ public class WebJamp implements ServiceWeb
   
   private static final String CHANNEL_COOKIE = "Jamp_Channel";
   
+  private static final String SUBPROTOCOL_HAMP
+    = ConnectionHampFactoryClient.SUBPROTOCOL;
+  
   private final JampPodManagerPods _podManager;
   
   private final JsonFactory _jsonFactory;
@@ -74,6 +82,8 @@ public class WebJamp implements ServiceWeb
   private long _rpcTimeout = 60000;
 
   private ServicesAmp _manager;
+  
+  private ChannelServerFactory _channelFactory;
 
   public WebJamp()
   {
@@ -107,6 +117,10 @@ public class WebJamp implements ServiceWeb
         && "POST".equals(method)) {
       doJampRpc(req);
     }
+    else if ("websocket".equalsIgnoreCase(req.header("upgrade"))
+             && isSubprotocol(req, SUBPROTOCOL_HAMP)) {
+      doHampWebSocket(req);
+    }
     else {
       req.header("content-type", "text/plain");
     
@@ -114,6 +128,52 @@ public class WebJamp implements ServiceWeb
     }
   }
 
+  /**
+   * Binary websocket upgrade. Messages use the hamp framing with H3 payloads,
+   * one message per binary frame, and the H3 schema definitions are
+   * shared for the life of the websocket.
+   */
+  private void doHampWebSocket(RequestWeb req)
+  {
+    req.header("Sec-WebSocket-Protocol", SUBPROTOCOL_HAMP);
+    
+    req.upgrade(new HampService(_manager, channelFactory()));
+  }
+  
+  private ChannelServerFactory channelFactory()
+  {
+    ChannelServerFactory channelFactory = _channelFactory;
+    
+    if (channelFactory == null) {
+      ServicesAmp manager = _manager;
+      
+      channelFactory = new ChannelServerFactoryImpl(()->manager,
+                                                    new ChannelManagerServiceImpl(),
+                                                    "");
+      
+      _channelFactory = channelFactory;
+    }
+    
+    return channelFactory;
+  }
+  
+  private boolean isSubprotocol(RequestWeb req, String protocol)
+  {
+    String protocols = req.header("sec-websocket-protocol");
+    
+    if (protocols == null) {
+      return false;
+    }
+    
+    for (String item : protocols.split(",")) {
+      if (protocol.equals(item.trim())) {
+        return true;
+      }
+    }
+    
+    return false;
+  }
+
   private void doJampRpc(RequestWeb req)
   {
     ChannelServer channel = null;
@@ -33,6 +33,7 @@ import com.caucho.v5.bartender.BartenderBuilder;
 import com.caucho.v5.bartender.BartenderSystem;
 import com.caucho.v5.bartender.journal.JournalSystem;
 import com.caucho.v5.kraken.KrakenSystem;
+import com.caucho.v5.profile.ProfileSystem;
 import com.caucho.v5.web.builder.WebServerBuilderBaratine;
 import com.caucho.v5.web.builder.WebServerBuilderImpl;
 import com.caucho.v5.web.builder.WebServerFactory;
@@ -66,6 +67,10 @@ public class WebServerFactoryBaratine implements WebServerFactory
     builder.init(()->{
       JournalSystem.createAndAddSystem();
     });
+
+    builder.init(()->{
+      ProfileSystem.createAndAddSystem(builder.config());
+    });
     
     //builder.serverBuilder(serverBuilder);
     
@@ -35,6 +35,7 @@ import com.caucho.v5.bartender.journal.JournalSystem;
 import com.caucho.v5.cli.args.ArgsBase;
 import com.caucho.v5.kraken.KrakenSystem;
 import com.caucho.v5.oauth.OauthFilter;
+import com.caucho.v5.profile.ProfileSystem;
 import com.caucho.v5.util.TriFunction;
 import com.caucho.v5.web.WebServerImpl;
 import com.caucho.v5.web.cli.ArgsBaratine;
@@ -93,6 +94,10 @@ public class WebServerBuilderBaratine extends WebServerBuilderImpl
       JournalSystem.createAndAddSystem();
     });
 
+    builder.init(()->{
+      ProfileSystem.createAndAddSystem(builder.config());
+    });
+
     //builder.serverBuilder(serverBuilder);
 
     //return new WebServerImpl(builder);
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.h3;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Result batch that may be written column-encoded.
+ *
+ * Stream results and kraken findAll keys are returned in a ColumnListH3.
+ * When the link's schema cache enables columns, a batch of beans of one
+ * class or of equal-length byte arrays is written column by column;
+ * otherwise it's written as a plain list. Either way it reads back as an
+ * ArrayList.
+ */
+@SuppressWarnings("serial")
+public class ColumnListH3<T> extends ArrayList<T>
+{
+  public ColumnListH3()
+  {
+  }
+  
+  public ColumnListH3(Collection<? extends T> values)
+  {
+    super(values);
+  }
+}
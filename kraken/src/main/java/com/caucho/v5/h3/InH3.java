@@ -65,6 +65,23 @@ public interface InH3 extends Closeable
 
   <T> T  readObject(Class<T> class1);
 
+  /**
+   * Reads the link schema header, resetting the shared schema cache when
+   * the peer's cache is new.
+   */
+  default void readSchema()
+  {
+    throw new UnsupportedOperationException(getClass().getName());
+  }
+
+  /**
+   * Scans the next value for the query's paths.
+   */
+  default void query(QueryH3 query, Object []values)
+  {
+    throw new UnsupportedOperationException(getClass().getName());
+  }
+
   default int readInt()
   {
     return (int) readLong();
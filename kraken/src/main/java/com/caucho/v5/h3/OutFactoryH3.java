@@ -45,6 +45,21 @@ public interface OutFactoryH3
   OutH3 out(OutputStream os);
   
   InH3 in(InputStream is);
+  
+  /**
+   * Creates a schema cache to be shared by the streams of a single link.
+   */
+  SchemaCacheH3 newSchemaCache();
+  
+  /**
+   * Output stream using a link's schema cache.
+   */
+  OutH3 out(OutputStream os, SchemaCacheH3 schema);
+  
+  /**
+   * Input stream using a link's schema cache.
+   */
+  InH3 in(InputStream is, SchemaCacheH3 schema);
 
   QueryBuilderH3 newQuery();
 
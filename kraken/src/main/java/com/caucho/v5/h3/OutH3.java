@@ -102,6 +102,41 @@ public interface OutH3 extends Closeable
   
   <T> void writeObject(T object, SerializerH3<T> serializer);
   
+  /**
+   * Returns the stream's type id for a serializer, writing its
+   * definition if the type hasn't been written.
+   */
+  default int typeId(SerializerH3<?> serializer)
+  {
+    throw new UnsupportedOperationException(getClass().getName());
+  }
+  
+  /**
+   * Writes the link schema header, telling the peer which version of the
+   * shared schema cache the following data uses.
+   */
+  default void writeSchema()
+  {
+    throw new UnsupportedOperationException(getClass().getName());
+  }
+  
+  /**
+   * True if the stream tracks object identity (graph mode).
+   */
+  default boolean isGraph()
+  {
+    return false;
+  }
+  
+  /**
+   * True if result batches may be written column-encoded, i.e. the
+   * link's schema cache enables columns.
+   */
+  default boolean isColumns()
+  {
+    return false;
+  }
+  
   default void flush() {}
   
   @Override
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.h3;
+
+/**
+ * Schema cache shared by the H3 streams of a single link.
+ *
+ * A type is assigned its id the first time it's written on the link, and
+ * later streams using the same cache write only the id. Both sides of the
+ * link must share the cache lifetime, i.e. a new connection needs a new
+ * cache.
+ */
+public interface SchemaCacheH3
+{
+  /**
+   * Number of types defined in the cache.
+   */
+  int size();
+
+  /**
+   * Version of the cache, incremented when the cache is cleared.
+   */
+  int version();
+
+  /**
+   * Clears the cache, forcing types to be redefined on the next write.
+   */
+  void clear();
+
+  /**
+   * Allows column-encoded result batches on the link's output. The flag
+   * is sent in each schema header, and the reader rejects column batches
+   * from a writer that didn't send it.
+   */
+  void columns(boolean isColumns);
+
+  /**
+   * True if column batches are allowed, i.e. enabled on the output or
+   * announced by the last schema header read.
+   */
+  boolean isColumns();
+}
@@ -46,7 +46,8 @@ package com.caucho.v5.h3.io;
  * 0xf7 - ref
  * 0xf8 - graph-next
  * 0xf9 - graph-rest
- * 0xfa-fe - reserved
+ * 0xfa - link schema header
+ * 0xfb-fe - reserved
  * 0xff - invalid
  * 
  * object types:
@@ -68,6 +69,15 @@ package com.caucho.v5.h3.io;
  *   uint - type
  *   object - data
  * 
+ * link schema header:
+ *   uint - (version << 2) | columns << 1 | reset
+ *
+ * column batch (DEF_COLUMNS), only valid after a header with the columns
+ * bit:
+ *   uint - kind (1 - bean, 2 - binary)
+ *   bean: uint - type id, uint - size, then each field's column
+ *   binary: uint - size, uint - width, binary - data
+ * 
  * predef types:
  * 1: byte, 2: short, 3: int, 4: double  
  */
@@ -83,7 +93,8 @@ public class ConstH3
   public static final int REF = 0xf7;
   public static final int GRAPH_NEXT = 0xf8;
   public static final int GRAPH_ALL = 0xf9;
-  // 0xfa-0xfe are reserved
+  public static final int SCHEMA = 0xfa;
+  // 0xfb-0xfe are reserved
   public static final int INVALID = 0xff;
   
   public static final int INTEGER = 0x00;
@@ -168,6 +179,7 @@ public class ConstH3
   public static final int DEF_LOCALDATE = 52; //local date
   public static final int DEF_LOCALDATETIME = 53; //local date time
   public static final int DEF_LOCALTIME = 54; //local date time
+  public static final int DEF_COLUMNS = 55; //column-encoded result batch
 
   public static final int DEF_RESERVED = 64;
   
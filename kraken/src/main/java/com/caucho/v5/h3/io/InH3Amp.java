@@ -46,4 +46,12 @@ public interface InH3Amp extends InH3
   void ref(Object obj);
 
   Object ref(long ref);
+  
+  /**
+   * True if the last schema header allowed column batches.
+   */
+  default boolean isColumns()
+  {
+    return false;
+  }
 }
@@ -21,6 +21,7 @@ package com.caucho.v5.h3.io;
 import java.util.ArrayList;
 import java.util.Objects;
 
+import com.caucho.v5.h3.QueryH3;
 import com.caucho.v5.h3.context.ContextH3;
 import com.caucho.v5.h3.query.QueryH3Amp;
 import com.caucho.v5.h3.ser.SerializerH3Amp;
@@ -33,20 +34,37 @@ class InH3Impl implements InH3Amp
   private ContextH3 _context;
   private InRawH3 _in;
   
-  private ArrayList<SerializerH3Amp<?>> _serArray = new ArrayList<>();
+  private SchemaCacheH3Impl _schema;
 
   private boolean _isGraph;
   private ArrayList<Object> _graphList;
   
   InH3Impl(ContextH3 context, InRawH3 in)
+  {
+    this(context, in, new SchemaCacheH3Impl(context));
+  }
+  
+  InH3Impl(ContextH3 context, InRawH3 in, SchemaCacheH3Impl schema)
   {
     Objects.requireNonNull(context);
     Objects.requireNonNull(in);
+    Objects.requireNonNull(schema);
     
     _context = context;
     _in = in;
-    
-    context.initSerializers(_serArray);
+    _schema = schema;
+  }
+
+  @Override
+  public void readSchema()
+  {
+    _schema.readSchema(_in.readSchema());
+  }
+
+  @Override
+  public boolean isColumns()
+  {
+    return _schema.isColumns();
   }
 
   @Override
@@ -134,11 +152,7 @@ class InH3Impl implements InH3Amp
   @Override
   public SerializerH3Amp<?> serializer(int id)
   {
-    SerializerH3Amp<?> ser = _serArray.get(id);
-    
-    Objects.requireNonNull(ser);
-    
-    return ser;
+    return _schema.serializer(id);
   }
 
   @Override
@@ -146,16 +160,13 @@ class InH3Impl implements InH3Amp
   {
     SerializerH3Amp<?> ser = _context.define(info);
 
-    while (_serArray.size() <= id) {
-      _serArray.add(null);
-    }
-    
-    _serArray.add(id, ser);
+    _schema.define(id, ser);
   }
 
-  public void query(QueryH3Amp queryAmp, Object[] values)
+  @Override
+  public void query(QueryH3 query, Object[] values)
   {
-    _in.scan(this, queryAmp.root(), values);
+    _in.scan(this, ((QueryH3Amp) query).root(), values);
   }
 
   @Override
@@ -47,6 +47,8 @@ public interface InRawH3 extends Closeable
   double readDouble();
   
   long readUnsigned();
+  
+  long readSchema();
 
   @Override
   void close();
@@ -124,6 +124,19 @@ public class InRawH3Impl implements InRawH3
     return readLong(0, 0);
   }
   
+  @Override
+  public long readSchema()
+  {
+    int ch = read();
+    
+    if (ch != ConstH3.SCHEMA) {
+      throw error(L.l("Unexpected opcode 0x{0} while reading schema header",
+                      Integer.toHexString(ch)));
+    }
+    
+    return readUnsigned();
+  }
+  
   @Override
   public float readFloat()
   {
@@ -806,6 +819,7 @@ public class InRawH3Impl implements InRawH3
       System.arraycopy(_buffer, offset, tBuffer, tOffset, sublen);
       
       _offset = offset + sublen;
+      tOffset += sublen;
       tLength -= sublen;
       
       if (tLength <= 0) {
@@ -38,6 +38,7 @@ import com.caucho.v5.h3.OutFactoryH3;
 import com.caucho.v5.h3.OutH3;
 import com.caucho.v5.h3.QueryBuilderH3;
 import com.caucho.v5.h3.QueryH3;
+import com.caucho.v5.h3.SchemaCacheH3;
 import com.caucho.v5.h3.context.ContextH3Impl;
 import com.caucho.v5.h3.query.QueryBuilderH3Impl;
 import com.caucho.v5.h3.query.QueryH3Amp;
@@ -69,29 +70,48 @@ public class OutFactoryH3Impl implements OutFactoryH3
     _context.schema(type);
   }
   
+  @Override
+  public SchemaCacheH3 newSchemaCache()
+  {
+    return new SchemaCacheH3Impl(_context);
+  }
+  
   @Override
   public OutH3 out(OutputStream os)
+  {
+    return out(os, newSchemaCache());
+  }
+  
+  @Override
+  public OutH3 out(OutputStream os, SchemaCacheH3 schema)
   {
     Objects.requireNonNull(os);
     
     OutRawH3 outRaw = new OutRawH3Impl(os);
+    SchemaCacheH3Impl schemaImpl = (SchemaCacheH3Impl) schema;
     
     if (_isGraph) {
-      return new OutH3ImplGraph(_context, outRaw);
+      return new OutH3ImplGraph(_context, outRaw, schemaImpl);
     }
     else {
-      return new OutH3Impl(_context, outRaw);
+      return new OutH3Impl(_context, outRaw, schemaImpl);
     }
   }
   
   @Override
   public InH3 in(InputStream is)
+  {
+    return in(is, newSchemaCache());
+  }
+  
+  @Override
+  public InH3 in(InputStream is, SchemaCacheH3 schema)
   {
     Objects.requireNonNull(is);
     
     InRawH3 inRaw = new InRawH3Impl(is);
     
-    return new InH3Impl(_context, inRaw);
+    return new InH3Impl(_context, inRaw, (SchemaCacheH3Impl) schema);
   }
 
   @Override
@@ -32,7 +32,6 @@ package com.caucho.v5.h3.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
-import java.util.HashMap;
 import java.util.Objects;
 
 import com.caucho.v5.h3.OutH3;
@@ -49,18 +48,22 @@ class OutH3Impl implements OutH3
   private ContextH3 _context;
   private OutRawH3 _out;
   
-  private HashMap<SerializerH3<?>,Integer> _objMap = new HashMap<>();
-  private int _typeSequence;
+  private SchemaCacheH3Impl _schema;
   
   OutH3Impl(ContextH3 context, OutRawH3 out)
+  {
+    this(context, out, new SchemaCacheH3Impl(context));
+  }
+  
+  OutH3Impl(ContextH3 context, OutRawH3 out, SchemaCacheH3Impl schema)
   {
     Objects.requireNonNull(context);
     Objects.requireNonNull(out);
+    Objects.requireNonNull(schema);
     
     _context = context;
     _out = out;
-    
-    _typeSequence = _context.typeSequence();
+    _schema = schema;
   }
   
   protected OutRawH3 out()
@@ -176,28 +179,44 @@ class OutH3Impl implements OutH3
       return;
     }
     
-    Integer objIndex = _objMap.get(serializer);
+    int objIndex = typeId(serializer);
+    
+    serializer.writeObject(_out, objIndex, object, this);
+  }
+
+  @Override
+  public int typeId(SerializerH3<?> serializer)
+  {
+    Integer objIndex = _schema.typeId(serializer);
     
     if (objIndex == null) {
-      SerializerH3Amp<T> serializerAmp = (SerializerH3Amp<T>) serializer;
+      SerializerH3Amp<?> serializerAmp = (SerializerH3Amp<?>) serializer;
       
       int typeSequence = serializerAmp.typeSequence();
       
-      if (typeSequence > 0) {
-        objIndex = typeSequence;
-      }
-      else {
-        objIndex = ++_typeSequence;
-      }
-      
-      _objMap.put(serializer, objIndex);
+      objIndex = _schema.nextTypeId(typeSequence);
     
       if (typeSequence == 0) {
         serializer.writeDefinition(_out, objIndex);
       }
+      
+      // registered only after the peer has been sent the definition
+      _schema.defineTypeId(serializer, typeSequence, objIndex);
     }
     
-    serializer.writeObject(_out, objIndex, object, this);
+    return objIndex;
+  }
+  
+  @Override
+  public void writeSchema()
+  {
+    _schema.writeSchema(_out);
+  }
+  
+  @Override
+  public boolean isColumns()
+  {
+    return _schema.isColumns();
   }
   
   public void flush()
@@ -43,13 +43,28 @@ class OutH3ImplGraph extends OutH3Impl
   
   private int _id = 1;
   
-  OutH3ImplGraph(ContextH3 context, OutRawH3 out)
+  OutH3ImplGraph(ContextH3 context, OutRawH3 out, SchemaCacheH3Impl schema)
   {
-    super(context, out);
+    super(context, out, schema);
     
     out.writeGraph();
   }
 
+  @Override
+  public boolean isGraph()
+  {
+    return true;
+  }
+
+  /**
+   * Column batches would lose the identity refs of the rows.
+   */
+  @Override
+  public boolean isColumns()
+  {
+    return false;
+  }
+
   @Override
   public <T> void writeObject(T object)
   {
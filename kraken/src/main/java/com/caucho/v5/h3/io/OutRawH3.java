@@ -72,6 +72,8 @@ public interface OutRawH3 extends Closeable
   void writeGraph();
   
   void writeRef(int ref);
+  
+  void writeSchema(int version, boolean isReset, boolean isColumns);
 
   @Override
   void close();
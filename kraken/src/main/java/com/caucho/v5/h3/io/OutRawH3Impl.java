@@ -190,9 +190,19 @@ public class OutRawH3Impl implements OutRawH3
   @Override
   public void writeUnsigned(long value)
   {
-    int tail = (int) (value & 0x7f);
+    require(10);
     
-    writeLong(0, 8, tail);
+    byte []buffer = _buffer;
+    int offset = _offset;
+    
+    while ((value & ~0x7fL) != 0) {
+      buffer[offset++] = (byte) (0x80 + (value & 0x7f));
+      value >>>= 7;
+    }
+    
+    buffer[offset++] = (byte) value;
+    
+    _offset = offset;
   }
   
   /**
@@ -398,6 +408,20 @@ public class OutRawH3Impl implements OutRawH3
     writeUnsigned(ref);
   }
   
+  /**
+   * write link schema header
+   */
+  @Override
+  public void writeSchema(int version, boolean isReset, boolean isColumns)
+  {
+    require(1);
+    
+    _buffer[_offset++] = (byte) ConstH3.SCHEMA;
+    writeUnsigned(((long) version << 2)
+                  | (isColumns ? 2 : 0)
+                  | (isReset ? 1 : 0));
+  }
+  
   private void writeLong(int op, int bits, long value)
   {
     bits -= 1;
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.h3.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Objects;
+
+import com.caucho.v5.h3.SchemaCacheH3;
+import com.caucho.v5.h3.SerializerH3;
+import com.caucho.v5.h3.context.ContextH3;
+import com.caucho.v5.h3.ser.SerializerH3Amp;
+
+/**
+ * Schema cache for an H3 link.
+ *
+ * The output side maps serializers to type ids, and the input side maps
+ * type ids to the serializers of previously read definitions.
+ */
+class SchemaCacheH3Impl implements SchemaCacheH3
+{
+  private final ContextH3 _context;
+
+  private final HashMap<SerializerH3<?>,Integer> _objMap = new HashMap<>();
+  private int _typeSequence;
+
+  private final ArrayList<SerializerH3Amp<?>> _serArray = new ArrayList<>();
+
+  private int _version;
+  // true once the peer has the reset for the current version
+  private boolean _isSynced;
+  // column batches allowed on the link
+  private boolean _isColumns;
+
+  SchemaCacheH3Impl(ContextH3 context)
+  {
+    Objects.requireNonNull(context);
+
+    _context = context;
+
+    init();
+  }
+
+  private void init()
+  {
+    _objMap.clear();
+    _typeSequence = _context.typeSequence();
+
+    _context.initSerializers(_serArray);
+  }
+
+  @Override
+  public int size()
+  {
+    return _objMap.size();
+  }
+
+  @Override
+  public int version()
+  {
+    return _version;
+  }
+
+  @Override
+  public void columns(boolean isColumns)
+  {
+    _isColumns = isColumns;
+  }
+
+  @Override
+  public boolean isColumns()
+  {
+    return _isColumns;
+  }
+
+  /**
+   * Returns the output type id for a serializer or null if the type
+   * hasn't been written.
+   */
+  Integer typeId(SerializerH3<?> serializer)
+  {
+    return _objMap.get(serializer);
+  }
+
+  /**
+   * Returns the id the next definition of a serializer will use, without
+   * registering it.
+   */
+  int nextTypeId(int typeSequence)
+  {
+    if (typeSequence > 0) {
+      return typeSequence;
+    }
+    else {
+      return _typeSequence + 1;
+    }
+  }
+
+  /**
+   * Registers the output type id for a serializer, after its definition
+   * has been written.
+   */
+  void defineTypeId(SerializerH3<?> serializer, int typeSequence, int id)
+  {
+    if (typeSequence == 0) {
+      _typeSequence = id;
+    }
+
+    _objMap.put(serializer, id);
+  }
+
+  /**
+   * Returns the input serializer for a type id.
+   */
+  SerializerH3Amp<?> serializer(int id)
+  {
+    SerializerH3Amp<?> ser = _serArray.get(id);
+
+    Objects.requireNonNull(ser);
+
+    return ser;
+  }
+
+  /**
+   * Defines the input serializer for a type id.
+   */
+  void define(int id, SerializerH3Amp<?> ser)
+  {
+    while (_serArray.size() <= id) {
+      _serArray.add(null);
+    }
+
+    _serArray.set(id, ser);
+  }
+
+  /**
+   * Writes the link schema header. The first header after the cache is
+   * created or cleared tells the peer to reset its definitions.
+   */
+  void writeSchema(OutRawH3 out)
+  {
+    out.writeSchema(_version, ! _isSynced, _isColumns);
+
+    _isSynced = true;
+  }
+
+  /**
+   * Reads the link schema header, resetting the input definitions when
+   * the peer's cache is new or was cleared.
+   */
+  void readSchema(long header)
+  {
+    int version = (int) (header >> 2);
+    boolean isReset = (header & 1) != 0;
+
+    _isColumns = (header & 2) != 0;
+
+    if (isReset) {
+      init();
+
+      _version = version;
+      _isSynced = true;
+    }
+    else if (! _isSynced || version != _version) {
+      throw new H3ExceptionIn("Schema version " + version
+                              + " does not match link schema " + this);
+    }
+  }
+
+  @Override
+  public void clear()
+  {
+    init();
+
+    _version++;
+    _isSynced = false;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[size=" + size() + ",version=" + _version
+            + ",synced=" + _isSynced
+            + (_isColumns ? ",columns" : "") + "]");
+  }
+}
@@ -49,6 +49,7 @@ import java.util.TreeSet;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
+import com.caucho.v5.h3.ColumnListH3;
 import com.caucho.v5.h3.SerializerH3;
 import com.caucho.v5.h3.context.ContextH3;
 import com.caucho.v5.h3.io.ConstH3;
@@ -212,5 +213,8 @@ public class SerializerFactoryH3Impl implements SerializerFactoryH3
     ser(InetSocketAddress.class, new SerializerH3InetSocketAddress());
     //
     ser(StreamSourceH3.class, new SerializerH3StreamSource<>());
+
+    // result batches, written as columns when the link allows
+    ser(ColumnListH3.class, new SerializerH3Columns());
   }
 }
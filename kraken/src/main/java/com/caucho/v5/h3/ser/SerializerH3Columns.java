@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2001-2016 Caucho Technology, Inc.  All rights reserved.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.h3.ser;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.caucho.v5.h3.ColumnListH3;
+import com.caucho.v5.h3.OutH3;
+import com.caucho.v5.h3.SerializerH3;
+import com.caucho.v5.h3.io.ConstH3;
+import com.caucho.v5.h3.io.H3ExceptionIn;
+import com.caucho.v5.h3.io.InH3Amp;
+import com.caucho.v5.h3.io.InRawH3;
+import com.caucho.v5.h3.io.OutRawH3;
+import com.caucho.v5.h3.query.PathH3Amp;
+import com.caucho.v5.util.L10N;
+
+/**
+ * H3 column-encoded result batch.
+ *
+ * A homogeneous ColumnListH3 of beans is written field by field instead of
+ * row by row, so each column can use delta or dictionary encoding. A list
+ * of equal-length byte arrays, like kraken keys, is written as a single
+ * binary. Other lists, and any list on a stream whose schema cache doesn't
+ * enable columns, are written as a plain list.
+ *
+ * The batch reads back as an ArrayList.
+ */
+class SerializerH3Columns extends SerializerH3Base<ArrayList<Object>>
+{
+  private static final L10N L = new L10N(SerializerH3Columns.class);
+
+  private static final int MIN_SIZE = 4;
+
+  private static final int KIND_BEAN = 1;
+  private static final int KIND_BINARY = 2;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final SerializerH3ListPredef<ArrayList<Object>> _list
+    = new SerializerH3ListPredef(ArrayList.class, ConstH3.DEF_LIST);
+
+  @Override
+  public Type type()
+  {
+    return ColumnListH3.class;
+  }
+
+  @Override
+  public int typeSequence()
+  {
+    return ConstH3.DEF_COLUMNS;
+  }
+
+  @Override
+  public void writeObject(OutRawH3 os, int defIndex,
+                          ArrayList<Object> list, OutH3 out)
+  {
+    if (! writeColumns(os, list, out)) {
+      _list.writeObject(os, ConstH3.DEF_LIST, list, out);
+    }
+  }
+
+  /**
+   * Writes the list as a column batch if the stream allows columns and
+   * all the items share a type.
+   *
+   * @return false if the list must be written as a plain list
+   */
+  private boolean writeColumns(OutRawH3 os, List<?> list, OutH3 out)
+  {
+    int size = list.size();
+
+    if (size < MIN_SIZE || ! out.isColumns()) {
+      return false;
+    }
+
+    Object first = list.get(0);
+
+    if (first == null) {
+      return false;
+    }
+
+    Class<?> type = first.getClass();
+
+    for (int i = 1; i < size; i++) {
+      Object item = list.get(i);
+
+      if (item == null || item.getClass() != type) {
+        return false;
+      }
+    }
+
+    if (type == byte[].class) {
+      return writeBinary(os, list);
+    }
+
+    SerializerH3<?> ser = out.serializer(type);
+
+    if (! (ser instanceof SerializerH3Java)) {
+      return false;
+    }
+
+    // the type definition must precede the batch
+    int typeId = out.typeId(ser);
+
+    os.writeObject(ConstH3.DEF_COLUMNS);
+    os.writeUnsigned(KIND_BEAN);
+    os.writeUnsigned(typeId);
+    os.writeUnsigned(size);
+
+    ((SerializerH3Java<?>) ser).writeColumns(os, list.toArray(), out);
+
+    return true;
+  }
+
+  private boolean writeBinary(OutRawH3 os, List<?> list)
+  {
+    int size = list.size();
+    int width = ((byte[]) list.get(0)).length;
+
+    for (int i = 1; i < size; i++) {
+      if (((byte[]) list.get(i)).length != width) {
+        return false;
+      }
+    }
+
+    if ((long) size * width > Integer.MAX_VALUE) {
+      return false;
+    }
+
+    byte []data = new byte[size * width];
+
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(list.get(i), 0, data, i * width, width);
+    }
+
+    os.writeObject(ConstH3.DEF_COLUMNS);
+    os.writeUnsigned(KIND_BINARY);
+    os.writeUnsigned(size);
+    os.writeUnsigned(width);
+    os.writeBinary(data, 0, data.length);
+
+    return true;
+  }
+
+  @Override
+  public ArrayList<Object> readObject(InRawH3 is, InH3Amp in)
+  {
+    int kind = readKind(is, in);
+
+    switch (kind) {
+    case KIND_BEAN:
+    {
+      SerializerH3Java<?> ser = beanSerializer(is, in);
+      Object []beans = new Object[(int) is.readUnsigned()];
+
+      ser.readColumns(beans, is, in);
+
+      return new ArrayList<>(Arrays.asList(beans));
+    }
+
+    case KIND_BINARY:
+    {
+      int size = (int) is.readUnsigned();
+      int width = (int) is.readUnsigned();
+      byte []data = is.readBinary();
+
+      ArrayList<Object> list = new ArrayList<>(size);
+
+      for (int i = 0; i < size; i++) {
+        list.add(Arrays.copyOfRange(data, i * width, (i + 1) * width));
+      }
+
+      return list;
+    }
+
+    default:
+      throw new H3ExceptionIn(L.l("Unknown column batch kind {0}", kind));
+    }
+  }
+
+  /**
+   * Scans a bean batch's columns. A field matching the path is returned
+   * as the list of its values, one per row.
+   */
+  @Override
+  public void scan(InRawH3 is, PathH3Amp path, InH3Amp in, Object []values)
+  {
+    int kind = readKind(is, in);
+
+    switch (kind) {
+    case KIND_BEAN:
+    {
+      SerializerH3Java<?> ser = beanSerializer(is, in);
+      int size = (int) is.readUnsigned();
+
+      ser.scanColumns(size, is, path, in, values);
+      break;
+    }
+
+    case KIND_BINARY:
+      // a binary batch has no fields
+      is.readUnsigned();
+      is.readUnsigned();
+      is.skip(in);
+      break;
+
+    default:
+      throw new H3ExceptionIn(L.l("Unknown column batch kind {0}", kind));
+    }
+  }
+
+  @Override
+  public void skip(InRawH3 is, InH3Amp in)
+  {
+    int kind = readKind(is, in);
+
+    switch (kind) {
+    case KIND_BEAN:
+    {
+      SerializerH3Java<?> ser = beanSerializer(is, in);
+      int size = (int) is.readUnsigned();
+
+      ser.skipColumns(size, is, in);
+      break;
+    }
+
+    case KIND_BINARY:
+      is.readUnsigned();
+      is.readUnsigned();
+      is.skip(in);
+      break;
+
+    default:
+      throw new H3ExceptionIn(L.l("Unknown column batch kind {0}", kind));
+    }
+  }
+
+  private int readKind(InRawH3 is, InH3Amp in)
+  {
+    if (! in.isColumns()) {
+      throw new H3ExceptionIn(L.l("Column batch on a stream whose schema header doesn't allow columns"));
+    }
+
+    return (int) is.readUnsigned();
+  }
+
+  private SerializerH3Java<?> beanSerializer(InRawH3 is, InH3Amp in)
+  {
+    int typeId = (int) is.readUnsigned();
+
+    SerializerH3Amp<?> ser = in.serializer(typeId);
+
+    if (! (ser instanceof SerializerH3Java)) {
+      throw new H3ExceptionIn(L.l("Column batch requires a bean type at {0}: {1}",
+                                  typeId, ser));
+    }
+
+    return (SerializerH3Java<?>) ser;
+  }
+}
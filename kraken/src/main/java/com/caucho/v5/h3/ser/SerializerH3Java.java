@@ -25,6 +25,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
@@ -253,6 +254,80 @@ public class SerializerH3Java<T> extends SerializerH3Base<T>
     }
   }
 
+  /**
+   * Writes a batch of beans column by column, so each field's values
+   * are adjacent and can be delta or dictionary encoded.
+   */
+  void writeColumns(OutRawH3 os, Object []beans, OutH3 out)
+  {
+    for (FieldSerBase field : _fields) {
+      field.writeColumn(os, beans, out);
+    }
+  }
+
+  /**
+   * Reads a column-encoded batch into the beans array.
+   */
+  void readColumns(Object []beans, InRawH3 is, InH3Amp in)
+  {
+    for (int i = 0; i < beans.length; i++) {
+      beans[i] = newInstance();
+    }
+
+    for (FieldSerBase field : _fields) {
+      field.readColumn(beans, is, in);
+    }
+  }
+
+  /**
+   * Scans a column-encoded batch, returning each field matching the path
+   * as the list of its column values.
+   */
+  void scanColumns(int size, InRawH3 is, PathH3Amp path,
+                   InH3Amp in, Object []values)
+  {
+    Object []beans = null;
+
+    for (FieldSerBase field : _fields) {
+      PathH3Amp subPath = path.field(field.name());
+
+      if (subPath == null) {
+        for (int i = 0; i < size; i++) {
+          is.skip(in);
+        }
+
+        continue;
+      }
+
+      if (beans == null) {
+        beans = new Object[size];
+
+        for (int i = 0; i < size; i++) {
+          beans[i] = newInstance();
+        }
+      }
+
+      field.readColumn(beans, is, in);
+
+      ArrayList<Object> column = new ArrayList<>(size);
+
+      for (Object bean : beans) {
+        column.add(field.get(bean));
+      }
+
+      values[subPath.index()] = column;
+    }
+  }
+
+  void skipColumns(int size, InRawH3 is, InH3Amp in)
+  {
+    int count = size * _fields.length;
+
+    for (int i = 0; i < count; i++) {
+      is.skip(in);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private T newInstance()
   {
@@ -297,6 +372,29 @@ public class SerializerH3Java<T> extends SerializerH3Base<T>
       is.skip(in);
     }
     
+    Object get(Object bean)
+    {
+      try {
+        return _field.get(bean);
+      } catch (Exception e) {
+        throw error(e);
+      }
+    }
+    
+    void writeColumn(OutRawH3 os, Object []beans, OutH3 out)
+    {
+      for (Object bean : beans) {
+        write(os, bean, out);
+      }
+    }
+    
+    void readColumn(Object []beans, InRawH3 is, InH3Amp in)
+    {
+      for (Object bean : beans) {
+        read(bean, is, in);
+      }
+    }
+    
     IllegalStateException error(Throwable exn)
     {
       return new IllegalStateException(L.l("{0}.{1}: {2}", 
@@ -363,6 +461,68 @@ public class SerializerH3Java<T> extends SerializerH3Base<T>
     {
       return is.readString();
     }
+    
+    /**
+     * Repeated strings in a column are written as their dictionary index.
+     */
+    @Override
+    void writeColumn(OutRawH3 os, Object []beans, OutH3 out)
+    {
+      try {
+        HashMap<String,Integer> dictionary = new HashMap<>();
+        
+        for (Object bean : beans) {
+          String value = (String) _fieldGet.invokeExact(bean);
+          
+          if (value == null) {
+            os.writeNull();
+            continue;
+          }
+          
+          Integer index = dictionary.get(value);
+          
+          if (index != null) {
+            os.writeLong(index);
+          }
+          else {
+            dictionary.put(value, dictionary.size());
+            
+            os.writeString(value);
+          }
+        }
+      } catch (Throwable e) {
+        throw error(e);
+      }
+    }
+    
+    @Override
+    void readColumn(Object []beans, InRawH3 is, InH3Amp in)
+    {
+      try {
+        ArrayList<String> dictionary = new ArrayList<>();
+        
+        for (Object bean : beans) {
+          Object item = is.readObject(in);
+          String value;
+          
+          if (item instanceof String) {
+            value = (String) item;
+            
+            dictionary.add(value);
+          }
+          else if (item != null) {
+            value = dictionary.get(((Number) item).intValue());
+          }
+          else {
+            value = null;
+          }
+          
+          _fieldSet.invokeExact(bean, value);
+        }
+      } catch (Throwable e) {
+        throw error(e);
+      }
+    }
   }
   
   /**
@@ -461,6 +621,43 @@ public class SerializerH3Java<T> extends SerializerH3Base<T>
     {
       return (short) is.readLong();
     }
+    
+    /**
+     * Column values are written as deltas from the previous row.
+     */
+    @Override
+    void writeColumn(OutRawH3 os, Object []beans, OutH3 out)
+    {
+      try {
+        long prev = 0;
+        
+        for (Object bean : beans) {
+          short value = (short) _fieldGet.invokeExact(bean);
+          
+          os.writeLong(value - prev);
+          
+          prev = value;
+        }
+      } catch (Throwable e) {
+        throw error(e);
+      }
+    }
+    
+    @Override
+    void readColumn(Object []beans, InRawH3 is, InH3Amp in)
+    {
+      try {
+        long value = 0;
+        
+        for (Object bean : beans) {
+          value += is.readLong();
+          
+          _fieldSet.invokeExact(bean, (short) value);
+        }
+      } catch (Throwable e) {
+        throw error(e);
+      }
+    }
   }
   
   /**
@@ -510,6 +707,43 @@ public class SerializerH3Java<T> extends SerializerH3Base<T>
     {
       return (int) is.readLong();
     }
+    
+    /**
+     * Column values are written as deltas from the previous row.
+     */
+    @Override
+    void writeColumn(OutRawH3 os, Object []beans, OutH3 out)
+    {
+      try {
+        long prev = 0;
+        
+        for (Object bean : beans) {
+          int value = (int) _fieldGet.invokeExact(bean);
+          
+          os.writeLong(value - prev);
+          
+          prev = value;
+        }
+      } catch (Throwable e) {
+        throw error(e);
+      }
+    }
+    
+    @Override
+    void readColumn(Object []beans, InRawH3 is, InH3Amp in)
+    {
+      try {
+        long value = 0;
+        
+        for (Object bean : beans) {
+          value += is.readLong();
+          
+          _fieldSet.invokeExact(bean, (int) value);
+        }
+      } catch (Throwable e) {
+        throw error(e);
+      }
+    }
   }
   
   /**
@@ -559,6 +793,43 @@ public class SerializerH3Java<T> extends SerializerH3Base<T>
     {
       return is.readLong();
     }
+    
+    /**
+     * Column values are written as deltas from the previous row.
+     */
+    @Override
+    void writeColumn(OutRawH3 os, Object []beans, OutH3 out)
+    {
+      try {
+        long prev = 0;
+        
+        for (Object bean : beans) {
+          long value = (long) _fieldGet.invokeExact(bean);
+          
+          os.writeLong(value - prev);
+          
+          prev = value;
+        }
+      } catch (Throwable e) {
+        throw error(e);
+      }
+    }
+    
+    @Override
+    void readColumn(Object []beans, InRawH3 is, InH3Amp in)
+    {
+      try {
+        long value = 0;
+        
+        for (Object bean : beans) {
+          value += is.readLong();
+          
+          _fieldSet.invokeExact(bean, value);
+        }
+      } catch (Throwable e) {
+        throw error(e);
+      }
+    }
   }
   
   /**
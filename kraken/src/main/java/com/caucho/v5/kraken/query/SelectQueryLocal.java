@@ -33,6 +33,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Objects;
 
+import com.caucho.v5.h3.ColumnListH3;
 import com.caucho.v5.kelp.RowCursor;
 import com.caucho.v5.kelp.TableKelp;
 import com.caucho.v5.kelp.query.EnvKelp;
@@ -460,7 +461,8 @@ public class SelectQueryLocal extends SelectQueryBase
       return null;
     }
     
-    ArrayList<byte[]> keys = new ArrayList<>();
+    // column batch, so remote findAll keys are sent as one binary
+    ArrayList<byte[]> keys = new ColumnListH3<>();
     
     for (RowCursor cursor : rowIter) {
       keys.add(cursor.getKey());
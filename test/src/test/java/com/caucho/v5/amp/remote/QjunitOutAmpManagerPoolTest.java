@@ -0,0 +1,546 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.amp.remote;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.caucho.v5.amp.ServiceRefAmp;
+import com.caucho.v5.amp.ServicesAmp;
+import com.caucho.v5.amp.message.HeadersNull;
+import com.caucho.v5.amp.spi.HeadersAmp;
+import com.caucho.v5.bartender.pod.PodRef;
+
+import io.baratine.client.ServiceClient.LinkStats;
+import io.baratine.service.ServiceExceptionQueueFull;
+import io.baratine.stream.ResultStream;
+
+/**
+ * Link pool over loopback connections, whose replies come back through
+ * the link's channel the way a HAMP reader delivers them.
+ */
+public class QjunitOutAmpManagerPoolTest
+{
+  private static final HeadersAmp HEADERS = HeadersNull.NULL;
+
+  /**
+   * Each query goes to the link with the fewest outstanding queries.
+   */
+  @Test
+  public void testSpread()
+  {
+    Q_loopback loopback = new Q_loopback(3, 4);
+
+    for (long qid = 1; qid <= 6; qid++) {
+      loopback.query(qid);
+    }
+
+    Assert.assertEquals(3, loopback.links().size());
+
+    for (Q_link link : loopback.links()) {
+      Assert.assertEquals(2, link.queries().size());
+    }
+
+    Assert.assertEquals("[1, 4]", loopback.link(0).queries().toString());
+    Assert.assertEquals("[2, 5]", loopback.link(1).queries().toString());
+
+    // a reply frees its link's slot for the next query
+    loopback.link(1).reply(2);
+    loopback.query(7);
+
+    Assert.assertEquals("[2, 5, 7]", loopback.link(1).queries().toString());
+  }
+
+  /**
+   * A query fails without blocking when every link is out of credits.
+   */
+  @Test
+  public void testCredits()
+  {
+    Q_loopback loopback = new Q_loopback(2, 2);
+
+    for (long qid = 1; qid <= 4; qid++) {
+      loopback.query(qid);
+    }
+
+    try {
+      loopback.query(5);
+      Assert.fail();
+    } catch (ServiceExceptionQueueFull e) {
+    }
+
+    Assert.assertEquals(1, loopback.pool().rejectCount());
+
+    loopback.link(1).reply(2);
+    loopback.query(6);
+
+    Assert.assertEquals("[2, 4, 6]", loopback.link(1).queries().toString());
+  }
+
+  /**
+   * Lost replies give their credits back once they expire, and a late
+   * reply is ignored.
+   */
+  @Test
+  public void testExpire()
+    throws Exception
+  {
+    Q_loopback loopback = new Q_loopback(1, 1, 0);
+
+    loopback.query(1);
+
+    Thread.sleep(2);
+
+    loopback.query(2);
+
+    LinkStats stats = loopback.pool().linkStats().get(0);
+
+    Assert.assertEquals(1, stats.expireCount());
+    Assert.assertEquals(1, stats.outstanding());
+
+    loopback.link(0).reply(1);
+
+    Assert.assertEquals(1, stats.outstanding());
+    Assert.assertEquals(0, stats.queryCount());
+
+    loopback.link(0).reply(2);
+
+    Assert.assertEquals(0, stats.outstanding());
+    Assert.assertEquals(1, stats.queryCount());
+  }
+
+  /**
+   * Replies and stream results go back on the link their server query
+   * arrived on, until the reply completes.
+   */
+  @Test
+  public void testReplyRoute()
+  {
+    Q_loopback loopback = new Q_loopback(2, 4);
+
+    loopback.query(1);
+    loopback.query(2);
+    loopback.link(0).reply(1);
+    loopback.link(1).reply(2);
+
+    GatewayReply gateway
+      = loopback.link(1).channel().createGatewayReply("/caller");
+
+    // link 0 is the least loaded, but the query came in on link 1
+    gateway.queryOk(HEADERS, 7, "ok");
+
+    Assert.assertEquals("[reply:7]", loopback.link(1).replies().toString());
+    Assert.assertEquals("[]", loopback.link(0).replies().toString());
+
+    gateway.stream(HEADERS, 8);
+
+    loopback.out().streamReply(HEADERS, "/caller", 8, 0,
+                               new ArrayList<>(), null, false);
+    loopback.out().streamReply(HEADERS, "/caller", 8, 1,
+                               new ArrayList<>(), null, true);
+
+    Assert.assertEquals("[reply:7, stream:8, stream:8]",
+                        loopback.link(1).replies().toString());
+
+    // the route is dropped with the completed stream
+    loopback.out().streamReply(HEADERS, "/caller", 8, 2,
+                               new ArrayList<>(), null, true);
+
+    Assert.assertEquals("[stream:8]", loopback.link(0).replies().toString());
+  }
+
+  /**
+   * A closed link drops its queries and reply routes, then reconnects and
+   * logs in on its next use.
+   */
+  @Test
+  public void testLinkClose()
+  {
+    Q_loopback loopback = new Q_loopback(2, 4);
+
+    loopback.query(1);
+    loopback.query(2);
+
+    Assert.assertEquals(2, loopback.logins().size());
+
+    loopback.link(0).channel().createGatewayReply("/caller")
+                              .stream(HEADERS, 9);
+
+    loopback.link(0).close();
+
+    loopback.query(3);
+
+    Assert.assertEquals(3, loopback.links().size());
+    Assert.assertEquals(3, loopback.logins().size());
+    Assert.assertEquals("[3]", loopback.link(2).queries().toString());
+
+    LinkStats stats = loopback.pool().linkStats().get(0);
+
+    Assert.assertEquals(1, stats.expireCount());
+    Assert.assertEquals(1, stats.outstanding());
+
+    // the old route is gone, so the reply takes the least loaded link
+    loopback.link(1).reply(2);
+
+    loopback.out().streamReply(HEADERS, "/caller", 9, 0,
+                               new ArrayList<>(), null, true);
+
+    Assert.assertEquals("[stream:9]", loopback.link(1).replies().toString());
+  }
+
+  /**
+   * Link statistics count completed queries and their latency.
+   */
+  @Test
+  public void testLinkStats()
+  {
+    Q_loopback loopback = new Q_loopback(2, 4);
+
+    loopback.query(1);
+    loopback.query(2);
+    loopback.query(3);
+
+    List<LinkStats> statsList = loopback.pool().linkStats();
+
+    Assert.assertEquals(2, statsList.size());
+    Assert.assertEquals(0, statsList.get(0).index());
+    Assert.assertEquals(1, statsList.get(1).index());
+    Assert.assertEquals(2, statsList.get(0).outstanding());
+    Assert.assertEquals(1, statsList.get(1).outstanding());
+
+    loopback.link(0).reply(1);
+    loopback.link(0).reply(3);
+
+    LinkStats stats = statsList.get(0);
+
+    Assert.assertEquals(0, stats.outstanding());
+    Assert.assertEquals(2, stats.queryCount());
+    Assert.assertEquals(0, stats.expireCount());
+    Assert.assertTrue(stats.latencyAvgMicros() >= 0);
+    Assert.assertTrue(stats.latencyMaxMicros() >= stats.latencyAvgMicros());
+
+    try {
+      statsList.clear();
+      Assert.fail();
+    } catch (UnsupportedOperationException e) {
+    }
+  }
+
+  /**
+   * Pool connected to loopback links.
+   */
+  private static class Q_loopback implements OutAmpFactory
+  {
+    private final OutAmpManagerPool _pool;
+    private final Q_channel _channel;
+    private final OutAmp _out;
+
+    private final ArrayList<Q_link> _links = new ArrayList<>();
+
+    Q_loopback(int links, int credits)
+    {
+      this(links, credits, 60 * 1000L);
+    }
+
+    Q_loopback(int links, int credits, long queryExpire)
+    {
+      _pool = new OutAmpManagerPool(() -> this, links, credits, queryExpire);
+      _channel = new Q_channel(this);
+      _out = _pool.getOut(_channel);
+    }
+
+    OutAmpManagerPool pool()
+    {
+      return _pool;
+    }
+
+    OutAmp out()
+    {
+      return _out;
+    }
+
+    List<Q_link> links()
+    {
+      return _links;
+    }
+
+    Q_link link(int index)
+    {
+      return _links.get(index);
+    }
+
+    List<OutAmp> logins()
+    {
+      return _channel.logins();
+    }
+
+    void query(long qid)
+    {
+      _out.query(HEADERS, "/caller", qid, "/service", "test",
+                 null, new Object[0]);
+    }
+
+    @Override
+    public boolean isUp()
+    {
+      return true;
+    }
+
+    @Override
+    public OutAmp getOut(ChannelAmp channel)
+    {
+      Q_link link = new Q_link(channel);
+
+      _links.add(link);
+
+      return link;
+    }
+  }
+
+  /**
+   * The client's channel.
+   */
+  private static class Q_channel implements ChannelClient
+  {
+    private final Q_loopback _loopback;
+    private final ArrayList<OutAmp> _logins = new ArrayList<>();
+
+    Q_channel(Q_loopback loopback)
+    {
+      _loopback = loopback;
+    }
+
+    List<OutAmp> logins()
+    {
+      return _logins;
+    }
+
+    @Override
+    public ServicesAmp services()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ServiceRefAmp service(String address)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public GatewayReply createGatewayReply(String address)
+    {
+      return new Q_gatewayReply(_loopback, address);
+    }
+
+    @Override
+    public void onQueryComplete(long qid)
+    {
+      _loopback.pool().onQueryComplete(qid);
+    }
+
+    @Override
+    public void login(OutAmp out)
+    {
+      _logins.add(out);
+    }
+  }
+
+  /**
+   * Writes a server query's reply on the pool's output.
+   */
+  private static class Q_gatewayReply implements GatewayReply
+  {
+    private final Q_loopback _loopback;
+    private final String _address;
+
+    Q_gatewayReply(Q_loopback loopback, String address)
+    {
+      _loopback = loopback;
+      _address = address;
+    }
+
+    @Override
+    public boolean isAsync()
+    {
+      return false;
+    }
+
+    @Override
+    public void queryOk(HeadersAmp headers, long qid, Object value)
+    {
+      _loopback.out().reply(headers, _address, qid, value);
+    }
+
+    @Override
+    public void queryFail(HeadersAmp headers, long qid, Throwable exn)
+    {
+      _loopback.out().queryError(headers, _address, qid, exn);
+    }
+
+    @Override
+    public ResultStream<Object> stream(HeadersAmp headers, long qid)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Loopback connection, recording what the pool writes to it.
+   */
+  private static class Q_link implements OutAmp
+  {
+    private final ChannelAmp _channel;
+
+    private final ArrayList<Long> _queries = new ArrayList<>();
+    private final ArrayList<String> _replies = new ArrayList<>();
+
+    private boolean _isUp = true;
+
+    Q_link(ChannelAmp channel)
+    {
+      _channel = channel;
+    }
+
+    ChannelAmp channel()
+    {
+      return _channel;
+    }
+
+    List<Long> queries()
+    {
+      return _queries;
+    }
+
+    List<String> replies()
+    {
+      return _replies;
+    }
+
+    /**
+     * Reply from the server, read on this link.
+     */
+    void reply(long qid)
+    {
+      _channel.onQueryComplete(qid);
+    }
+
+    @Override
+    public boolean isUp()
+    {
+      return _isUp;
+    }
+
+    @Override
+    public void send(HeadersAmp headers,
+                     String address,
+                     String methodName,
+                     PodRef podCaller,
+                     Object[] args)
+    {
+    }
+
+    @Override
+    public void query(HeadersAmp headers,
+                      String fromAddress,
+                      long qid,
+                      String address,
+                      String methodName,
+                      PodRef podCaller,
+                      Object[] args)
+    {
+      _queries.add(qid);
+    }
+
+    @Override
+    public void reply(HeadersAmp headers,
+                      String address,
+                      long qid,
+                      Object result)
+    {
+      _replies.add("reply:" + qid);
+    }
+
+    @Override
+    public void queryError(HeadersAmp headers,
+                           String address,
+                           long qid,
+                           Throwable exn)
+    {
+      _replies.add("error:" + qid);
+    }
+
+    @Override
+    public void stream(HeadersAmp headers,
+                       String fromAddress,
+                       long qid,
+                       String address,
+                       String methodName,
+                       PodRef podCaller,
+                       ResultStream<?> result,
+                       Object[] args)
+    {
+    }
+
+    @Override
+    public void streamReply(HeadersAmp headers,
+                            String remoteAddress,
+                            long id,
+                            int sequence,
+                            List<Object> values,
+                            Throwable exn,
+                            boolean isComplete)
+    {
+      _replies.add("stream:" + id);
+    }
+
+    @Override
+    public void streamCancel(HeadersAmp headers,
+                             String remoteAddress,
+                             String addressFrom,
+                             long qid)
+    {
+    }
+
+    @Override
+    public void flush()
+    {
+    }
+
+    @Override
+    public void close()
+    {
+      _isUp = false;
+    }
+  }
+}
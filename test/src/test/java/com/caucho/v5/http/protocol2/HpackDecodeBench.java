@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Alex Rojkov
+ */
+
+package com.caucho.v5.http.protocol2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.caucho.v5.io.ReadStream;
+import com.caucho.v5.io.TempBuffer;
+import com.caucho.v5.io.WriteStream;
+
+/**
+ * Benchmark of HPACK header block decoding.
+ *
+ * A browser-like request block is encoded once with OutHeaderHuffman and
+ * decoded repeatedly from a looping stream. Run with the block count as
+ * an optional argument.
+ */
+public class HpackDecodeBench
+{
+  private static final int ROUNDS = 5;
+
+  private static final String [][]HEADERS = {
+    { ":method", "GET" },
+    { ":scheme", "https" },
+    { ":path", "/api/v1/users/12345/profile?fields=name,email" },
+    { ":authority", "www.example.com" },
+    { "user-agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0" },
+    { "accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8" },
+    { "accept-encoding", "gzip, deflate, br" },
+    { "accept-language", "en-US,en;q=0.9" },
+    { "cache-control", "no-cache" },
+    { "cookie", "session=a8f5f167f44f4964e6c998dee827110c; theme=dark" },
+    { "referer", "https://www.example.com/home" },
+    { "x-requested-with", "XMLHttpRequest" },
+  };
+
+  public static void main(String []args)
+    throws IOException
+  {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+    byte []block = encode();
+
+    InHeader in = new InHeader(new ReadStream(new LoopInputStream(block)));
+
+    BenchRequest request = new BenchRequest();
+
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+
+      for (int i = 0; i < count; i++) {
+        in.readHeaders(request, block.length, Http2Constants.END_HEADERS);
+      }
+
+      long time = System.nanoTime() - start;
+
+      System.out.printf("%d bytes %.0f ns/block (%d)%n",
+                        block.length, time / (double) count,
+                        request._length);
+    }
+  }
+
+  /**
+   * Encodes the headers as a single block without dynamic table
+   * references, so every decode sees the same block.
+   */
+  private static byte []encode()
+    throws IOException
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    WriteStream os = new WriteStream(bos);
+
+    OutHeader out = new OutHeaderHuffman(os);
+
+    out.openHeaders(1, FlagsHttp.CONT_STREAM);
+
+    for (String []header : HEADERS) {
+      out.headerUnique(header[0], header[1]);
+    }
+
+    out.closeHeaders();
+    os.flush();
+
+    byte []frame = bos.toByteArray();
+
+    // strip the 9-byte frame header
+    byte []block = new byte[frame.length - 9];
+    System.arraycopy(frame, 9, block, 0, block.length);
+
+    return block;
+  }
+
+  private static class LoopInputStream extends InputStream
+  {
+    private final byte []_data;
+    private int _offset;
+
+    LoopInputStream(byte []data)
+    {
+      _data = data;
+    }
+
+    @Override
+    public int read()
+    {
+      if (_data.length <= _offset) {
+        _offset = 0;
+      }
+
+      return _data[_offset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte []buffer, int offset, int length)
+    {
+      for (int i = 0; i < length; i++) {
+        buffer[offset + i] = (byte) read();
+      }
+
+      return length;
+    }
+  }
+
+  private static class BenchRequest implements InRequest
+  {
+    private long _length;
+
+    @Override
+    public void header(String key, String value)
+    {
+      _length += value.length();
+    }
+
+    @Override
+    public ChannelHttp2 channel()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChannelOutHttp2 getChannelOut()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChannelInHttp2 getChannelIn()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void data(TempBuffer tBuf)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void dispatch()
+    {
+    }
+
+    @Override
+    public void closeRead()
+    {
+    }
+
+    @Override
+    public void closeReset()
+    {
+    }
+
+    @Override
+    public void closeChannel()
+    {
+    }
+  }
+}
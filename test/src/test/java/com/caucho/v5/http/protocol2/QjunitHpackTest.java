@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Alex Rojkov
+ */
+
+package com.caucho.v5.http.protocol2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.caucho.v5.io.ReadStream;
+import com.caucho.v5.io.TempBuffer;
+import com.caucho.v5.io.WriteStream;
+
+/**
+ * HPACK decoding against the RFC 7541 examples and the OutHeader encoders.
+ */
+public class QjunitHpackTest
+{
+  private static final String []C3 = {
+    "8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d",
+    "8286 84be 5808 6e6f 2d63 6163 6865",
+    "8287 85bf 400a 6375 7374 6f6d 2d6b 6579 0c63 7573 746f 6d2d 7661 6c75 65",
+  };
+
+  private static final String []C4 = {
+    "8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff",
+    "8286 84be 5886 a8eb 1064 9cbf",
+    "8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf",
+  };
+
+  private static final String [][]EXPECT = {
+    { ":method: GET", ":scheme: http", ":path: /",
+      ":authority: www.example.com" },
+    { ":method: GET", ":scheme: http", ":path: /",
+      ":authority: www.example.com", "cache-control: no-cache" },
+    { ":method: GET", ":scheme: https", ":path: /index.html",
+      ":authority: www.example.com", "custom-key: custom-value" },
+  };
+
+  /**
+   * RFC 7541 C.3: requests without Huffman coding.
+   */
+  @Test
+  public void testRequestPlain()
+    throws IOException
+  {
+    checkBlocks(C3);
+  }
+
+  /**
+   * RFC 7541 C.4: requests with Huffman coding.
+   */
+  @Test
+  public void testRequestHuffman()
+    throws IOException
+  {
+    checkBlocks(C4);
+  }
+
+  /**
+   * Plain encoder round trip, with enough entries to evict and wrap
+   * the dynamic table ring.
+   */
+  @Test
+  public void testRoundTripPlain()
+    throws IOException
+  {
+    roundTrip(false);
+  }
+
+  /**
+   * Huffman encoder round trip, with eviction and ring wrap.
+   */
+  @Test
+  public void testRoundTripHuffman()
+    throws IOException
+  {
+    roundTrip(true);
+  }
+
+  /**
+   * A size update up to the advertised size is allowed.
+   */
+  @Test
+  public void testTableSizeUpdate()
+    throws IOException
+  {
+    // size 0, then size 4096, then ":method: GET"
+    byte []data = hex("20 3fe11f 82");
+
+    Q_Request req = new Q_Request();
+
+    InHeader in = new InHeader(readStream(data));
+
+    Assert.assertTrue(in.readHeaders(req, data.length,
+                                     Http2Constants.END_HEADERS));
+
+    Assert.assertEquals(Arrays.asList(":method: GET"), req.headers());
+  }
+
+  /**
+   * A size update above SETTINGS_HEADER_TABLE_SIZE is a compression error.
+   */
+  @Test
+  public void testTableSizeUpdateTooLarge()
+    throws IOException
+  {
+    // size 4097
+    byte []data = hex("3fe21f 82");
+
+    InHeader in = new InHeader(readStream(data));
+
+    try {
+      in.readHeaders(new Q_Request(), data.length, Http2Constants.END_HEADERS);
+
+      Assert.fail("expected compression error");
+    } catch (Http2ProtocolException e) {
+      Assert.assertEquals(Http2Constants.COMPRESSION_ERROR, e.errorCode());
+    }
+
+    // a smaller advertised size lowers the limit
+    // size 1025
+    data = hex("3fe207 82");
+
+    in = new InHeader(readStream(data));
+    in.tableCapacityMax(1024);
+
+    try {
+      in.readHeaders(new Q_Request(), data.length, Http2Constants.END_HEADERS);
+
+      Assert.fail("expected compression error");
+    } catch (Http2ProtocolException e) {
+      Assert.assertEquals(Http2Constants.COMPRESSION_ERROR, e.errorCode());
+    }
+  }
+
+  /**
+   * Huffman padding must be the EOS prefix (all ones); zero bits are
+   * rejected.
+   */
+  @Test
+  public void testHuffmanInvalidPadding()
+    throws IOException
+  {
+    byte []data = hex("4082 0000 01 61");
+
+    InHeader in = new InHeader(readStream(data));
+
+    try {
+      in.readHeaders(new Q_Request(), data.length, Http2Constants.END_HEADERS);
+
+      Assert.fail("expected protocol error");
+    } catch (Http2ProtocolException e) {
+    }
+  }
+
+  private void checkBlocks(String []blocks)
+    throws IOException
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    for (String block : blocks) {
+      bos.write(hex(block));
+    }
+
+    InHeader in = new InHeader(readStream(bos.toByteArray()));
+
+    for (int i = 0; i < blocks.length; i++) {
+      Q_Request req = new Q_Request();
+
+      Assert.assertTrue(in.readHeaders(req, hex(blocks[i]).length,
+                                       Http2Constants.END_HEADERS));
+
+      Assert.assertEquals(Arrays.asList(EXPECT[i]), req.headers());
+    }
+  }
+
+  private void roundTrip(boolean isHuffman)
+    throws IOException
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    WriteStream os = new WriteStream(bos);
+
+    OutHeader out = isHuffman ? new OutHeaderHuffman(os) : new OutHeader(os);
+
+    List<List<String>> expectList = new ArrayList<>();
+    Random random = new Random(1);
+
+    char []longValue = new char[200];
+    Arrays.fill(longValue, 'z');
+
+    int blocks = 300;
+
+    for (int i = 0; i < blocks; i++) {
+      out.openHeaders(1, FlagsHttp.CONT_STREAM);
+
+      List<String> expect = new ArrayList<>();
+
+      out.header(":method", "GET");
+      expect.add(":method: GET");
+
+      String path = "/p" + random.nextInt(50);
+      out.header(":path", path);
+      expect.add(":path: " + path);
+
+      for (int j = 0; j < 6; j++) {
+        String key = "x-h" + random.nextInt(40);
+        String value = "v" + random.nextInt(100);
+
+        if (random.nextInt(10) == 0) {
+          value = value + new String(longValue);
+        }
+
+        out.header(key, value);
+        expect.add(key + ": " + value);
+      }
+
+      out.closeHeaders();
+      // OutHeader frames the block in the stream buffer, so flush
+      // before opening the next one
+      os.flush();
+
+      expectList.add(expect);
+    }
+
+    ReadStream is = readStream(bos.toByteArray());
+    InHeader in = new InHeader(is);
+
+    for (int i = 0; i < blocks; i++) {
+      // frame header: length(3), type(1), flags(1), stream(4)
+      int length = (is.read() << 16) + (is.read() << 8) + is.read();
+      Assert.assertEquals(Http2Constants.FRAME_HEADERS, is.read());
+      int flags = is.read();
+      is.skip(4);
+
+      Q_Request req = new Q_Request();
+
+      Assert.assertTrue(in.readHeaders(req, length,
+                                       flags & ~Http2Constants.END_STREAM));
+
+      Assert.assertEquals("block " + i, expectList.get(i), req.headers());
+    }
+  }
+
+  private static ReadStream readStream(byte []data)
+  {
+    return new ReadStream(new ByteArrayInputStream(data));
+  }
+
+  private static byte []hex(String value)
+  {
+    value = value.replace(" ", "");
+
+    byte []data = new byte[value.length() / 2];
+
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+    }
+
+    return data;
+  }
+
+  private static class Q_Request implements InRequest
+  {
+    private final ArrayList<String> _headers = new ArrayList<>();
+
+    List<String> headers()
+    {
+      return _headers;
+    }
+
+    @Override
+    public void header(String key, String value)
+    {
+      _headers.add(key + ": " + value);
+    }
+
+    @Override
+    public ChannelHttp2 channel()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChannelOutHttp2 getChannelOut()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ChannelInHttp2 getChannelIn()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void data(TempBuffer tBuf)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void dispatch()
+    {
+    }
+
+    @Override
+    public void closeRead()
+    {
+    }
+
+    @Override
+    public void closeReset()
+    {
+    }
+
+    @Override
+    public void closeChannel()
+    {
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.http.protocol2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.caucho.v5.io.Q_socketChannel;
+import com.caucho.v5.io.SocketChannelStream;
+import com.caucho.v5.io.TempBuffer;
+import com.caucho.v5.io.WriteStream;
+
+/**
+ * HTTP/2 DATA frames: the RFC 7540 9-byte header, written in place before
+ * the payload or copied ahead of it.
+ */
+public class QjunitOutHttp2Test
+{
+  /**
+   * A payload after a reserved 9-byte gap gets its header in the gap and
+   * goes out as one write.
+   */
+  @Test
+  public void testDataInPlace()
+    throws IOException
+  {
+    int length = 2 * TempBuffer.SIZE;
+
+    byte []payload = data(length);
+    byte []buffer = new byte[ChannelOutHttp2.FRAME_LENGTH + length];
+    System.arraycopy(payload, 0, buffer, 9, length);
+
+    Q_socketChannel channel = new Q_socketChannel(Integer.MAX_VALUE);
+    OutHttp2 out = out(new WriteStream(new SocketChannelStream(channel)));
+
+    out.writeData(5, buffer, 9, length, 0);
+    out.flush();
+
+    Assert.assertEquals(9, ChannelOutHttp2.FRAME_LENGTH);
+
+    // the header is written into the reserved bytes
+    Assert.assertArrayEquals(header(length, 0, 5),
+                             Arrays.copyOf(buffer, 9));
+
+    Assert.assertArrayEquals(frame(header(length, 0, 5), payload),
+                             channel.output());
+    Assert.assertEquals(1, channel.writeCount());
+  }
+
+  /**
+   * Without room before the payload, the same header is written first.
+   */
+  @Test
+  public void testDataCopied()
+    throws IOException
+  {
+    byte []payload = data(100);
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    OutHttp2 out = out(new WriteStream(bos));
+
+    byte []buffer = new byte[4 + payload.length];
+    System.arraycopy(payload, 0, buffer, 4, payload.length);
+
+    out.writeData(3, buffer, 4, payload.length, Http2Constants.END_STREAM);
+    out.flush();
+
+    Assert.assertArrayEquals(frame(header(100, Http2Constants.END_STREAM, 3),
+                                   payload),
+                             bos.toByteArray());
+  }
+
+  /**
+   * The length is a 24-bit field, and the stream id skips the reserved
+   * bit.
+   */
+  @Test
+  public void testDataLength24()
+    throws IOException
+  {
+    int length = 0x012345;
+
+    byte []buffer = new byte[9 + length];
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    OutHttp2 out = out(new WriteStream(bos));
+
+    out.writeData(0x7fffffff, buffer, 9, length, 0);
+    out.flush();
+
+    byte []frame = bos.toByteArray();
+
+    Assert.assertEquals(9 + length, frame.length);
+    Assert.assertArrayEquals(new byte[] { 0x01, 0x23, 0x45, 0, 0,
+                                          0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff },
+                             Arrays.copyOf(frame, 9));
+  }
+
+  /**
+   * A whole TempBuffer shares one gathering write with its header.
+   */
+  @Test
+  public void testDataBuffer()
+    throws IOException
+  {
+    byte []payload = data(TempBuffer.SIZE - 1);
+
+    TempBuffer buffer = TempBuffer.create();
+    buffer.write(payload, 0, payload.length);
+
+    Q_socketChannel channel = new Q_socketChannel(Integer.MAX_VALUE);
+    OutHttp2 out = out(new WriteStream(new SocketChannelStream(channel)));
+
+    out.writeData(9, buffer, payload.length, 0);
+    out.flush();
+
+    Assert.assertArrayEquals(frame(header(payload.length, 0, 9), payload),
+                             channel.output());
+    Assert.assertEquals(1, channel.gatherCount());
+    Assert.assertEquals(1, channel.writeCount());
+
+    // a frame of part of the buffer copies that part
+    TempBuffer partial = TempBuffer.create();
+    partial.write(payload, 0, payload.length);
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    out = out(new WriteStream(bos));
+
+    out.writeData(11, partial, 1000, 0);
+    out.flush();
+
+    Assert.assertArrayEquals(frame(header(1000, 0, 11),
+                                   Arrays.copyOf(payload, 1000)),
+                             bos.toByteArray());
+    Assert.assertEquals(payload.length - 1000, partial.length());
+  }
+
+  private static OutHttp2 out(WriteStream os)
+  {
+    ConnectionHttp2Int conn = new ConnectionHttp2Int(PeerHttp.SERVER);
+
+    conn.init(os);
+
+    return conn.outHttp();
+  }
+
+  private static byte []header(int length, int flags, int streamId)
+  {
+    return new byte[] {
+      (byte) (length >> 16), (byte) (length >> 8), (byte) length,
+      Http2Constants.FRAME_DATA,
+      (byte) flags,
+      (byte) (streamId >> 24), (byte) (streamId >> 16),
+      (byte) (streamId >> 8), (byte) streamId
+    };
+  }
+
+  private static byte []frame(byte []header, byte []payload)
+  {
+    byte []frame = Arrays.copyOf(header, header.length + payload.length);
+
+    System.arraycopy(payload, 0, frame, header.length, payload.length);
+
+    return frame;
+  }
+
+  private static byte []data(int length)
+  {
+    byte []data = new byte[length];
+
+    new Random(length).nextBytes(data);
+
+    return data;
+  }
+}
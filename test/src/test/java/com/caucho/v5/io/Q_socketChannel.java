@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * In-memory socket channel that accepts at most a fixed number of bytes
+ * per write, like a socket with a full send buffer.
+ */
+public class Q_socketChannel extends SocketChannel
+{
+  private final int _writeMax;
+
+  private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+
+  private int _writeCount;
+  private int _gatherCount;
+
+  private byte []_in = new byte[0];
+  private int _inOffset;
+
+  public Q_socketChannel(int writeMax)
+  {
+    super(SelectorProvider.provider());
+
+    _writeMax = writeMax;
+  }
+
+  /**
+   * The bytes written so far.
+   */
+  public byte []output()
+  {
+    return _out.toByteArray();
+  }
+
+  /**
+   * Calls to write, including retries after a partial write.
+   */
+  public int writeCount()
+  {
+    return _writeCount;
+  }
+
+  /**
+   * Calls to the gathering write.
+   */
+  public int gatherCount()
+  {
+    return _gatherCount;
+  }
+
+  /**
+   * Bytes returned by later reads.
+   */
+  public void input(byte []data)
+  {
+    _in = data;
+    _inOffset = 0;
+  }
+
+  @Override
+  public int write(ByteBuffer src)
+  {
+    _writeCount++;
+
+    int sublen = Math.min(_writeMax, src.remaining());
+
+    for (int i = 0; i < sublen; i++) {
+      _out.write(src.get());
+    }
+
+    return sublen;
+  }
+
+  @Override
+  public long write(ByteBuffer []srcs, int offset, int length)
+  {
+    _writeCount++;
+    _gatherCount++;
+
+    long total = 0;
+
+    for (int i = offset; i < offset + length && total < _writeMax; i++) {
+      ByteBuffer src = srcs[i];
+
+      while (src.hasRemaining() && total < _writeMax) {
+        _out.write(src.get());
+        total++;
+      }
+    }
+
+    return total;
+  }
+
+  @Override
+  public int read(ByteBuffer dst)
+  {
+    if (_in.length <= _inOffset) {
+      return -1;
+    }
+
+    int sublen = Math.min(dst.remaining(), _in.length - _inOffset);
+
+    dst.put(_in, _inOffset, sublen);
+    _inOffset += sublen;
+
+    return sublen;
+  }
+
+  @Override
+  public long read(ByteBuffer []dsts, int offset, int length)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SocketChannel bind(SocketAddress local)
+  {
+    return this;
+  }
+
+  @Override
+  public <T> SocketChannel setOption(SocketOption<T> name, T value)
+  {
+    return this;
+  }
+
+  @Override
+  public <T> T getOption(SocketOption<T> name)
+  {
+    return null;
+  }
+
+  @Override
+  public Set<SocketOption<?>> supportedOptions()
+  {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public SocketChannel shutdownInput()
+  {
+    return this;
+  }
+
+  @Override
+  public SocketChannel shutdownOutput()
+  {
+    return this;
+  }
+
+  @Override
+  public Socket socket()
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean isConnected()
+  {
+    return isOpen();
+  }
+
+  @Override
+  public boolean isConnectionPending()
+  {
+    return false;
+  }
+
+  @Override
+  public boolean connect(SocketAddress remote)
+  {
+    return true;
+  }
+
+  @Override
+  public boolean finishConnect()
+  {
+    return true;
+  }
+
+  @Override
+  public SocketAddress getRemoteAddress()
+  {
+    return null;
+  }
+
+  @Override
+  public SocketAddress getLocalAddress()
+  {
+    return null;
+  }
+
+  @Override
+  protected void implCloseSelectableChannel()
+    throws IOException
+  {
+  }
+
+  @Override
+  protected void implConfigureBlocking(boolean block)
+    throws IOException
+  {
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _out.size() + "]";
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.io;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Size classes, reuse and debug tracking of the direct buffer pool.
+ */
+public class QjunitDirectBuffersTest
+{
+  @After
+  public void after()
+  {
+    DirectBuffers.debug(false);
+  }
+
+  @Test
+  public void testSizeClass()
+  {
+    Assert.assertEquals(4096, DirectBuffers.SIZE_MIN);
+    Assert.assertEquals(65536, DirectBuffers.SIZE_MAX);
+
+    assertCapacity(4096, DirectBuffers.allocate(1));
+    assertCapacity(4096, DirectBuffers.allocate(4096));
+    assertCapacity(8192, DirectBuffers.allocate(4097));
+    assertCapacity(65536, DirectBuffers.allocate(1 << 20));
+
+    // reads never get a buffer larger than the request, past the minimum
+    assertCapacity(4096, DirectBuffers.allocateFloor(100));
+    assertCapacity(8192, DirectBuffers.allocateFloor(16383));
+    assertCapacity(16384, DirectBuffers.allocateFloor(16384));
+    assertCapacity(65536, DirectBuffers.allocateFloor(1 << 20));
+  }
+
+  /**
+   * A freed buffer is reused by the next allocation on the same thread.
+   */
+  @Test
+  public void testReuse()
+  {
+    int index = 2;
+    int size = DirectBuffers.classSize(index);
+
+    long allocateCount = DirectBuffers.allocateCount(index);
+    long outstanding = DirectBuffers.outstandingCount(index);
+
+    ByteBuffer buffer = DirectBuffers.allocate(size);
+
+    Assert.assertTrue(buffer.isDirect());
+    Assert.assertEquals(outstanding + 1, DirectBuffers.outstandingCount(index));
+
+    buffer.put((byte) 1);
+    DirectBuffers.free(buffer);
+
+    Assert.assertEquals(outstanding, DirectBuffers.outstandingCount(index));
+
+    long createCount = DirectBuffers.createCount(index);
+
+    ByteBuffer reuse = DirectBuffers.allocate(size);
+
+    Assert.assertSame(buffer, reuse);
+    Assert.assertEquals(0, reuse.position());
+    Assert.assertEquals(size, reuse.limit());
+    Assert.assertEquals(createCount, DirectBuffers.createCount(index));
+    Assert.assertEquals(allocateCount + 2, DirectBuffers.allocateCount(index));
+
+    DirectBuffers.free(reuse);
+  }
+
+  @Test
+  public void testNotPooled()
+  {
+    DirectBuffers.free(null);
+
+    try {
+      DirectBuffers.free(ByteBuffer.allocateDirect(5000));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+    }
+
+    try {
+      DirectBuffers.free(ByteBuffer.allocateDirect(2048));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * With tracking, a second free of the same buffer is rejected and
+   * doesn't reach the pool.
+   */
+  @Test
+  public void testDoubleFree()
+  {
+    // allocated before tracking starts, so its free isn't checked
+    ByteBuffer early = DirectBuffers.allocate(4096);
+
+    DirectBuffers.debug(true);
+
+    DirectBuffers.free(early);
+
+    ByteBuffer buffer = DirectBuffers.allocate(4096);
+    DirectBuffers.free(buffer);
+
+    long outstanding = DirectBuffers.outstandingCount(0);
+
+    try {
+      DirectBuffers.free(buffer);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+    }
+
+    Assert.assertEquals(outstanding, DirectBuffers.outstandingCount(0));
+
+    // after it's allocated again, it can be freed again
+    ByteBuffer again = DirectBuffers.allocate(4096);
+
+    Assert.assertSame(buffer, again);
+
+    DirectBuffers.free(again);
+  }
+
+  /**
+   * logLeaks reports each outstanding buffer with its allocation trace.
+   */
+  @Test
+  public void testLeak()
+  {
+    Q_handler handler = new Q_handler();
+    Logger log = Logger.getLogger(DirectBuffers.class.getName());
+
+    log.addHandler(handler);
+
+    try {
+      Assert.assertEquals(0, DirectBuffers.logLeaks());
+
+      DirectBuffers.debug(true);
+
+      ByteBuffer leak = DirectBuffers.allocate(10000);
+      ByteBuffer freed = DirectBuffers.allocate(10000);
+
+      DirectBuffers.free(freed);
+
+      Assert.assertEquals(1, DirectBuffers.logLeaks());
+      Assert.assertEquals(1, handler.records().size());
+
+      LogRecord record = handler.records().get(0);
+
+      StringWriter trace = new StringWriter();
+      record.getThrown().printStackTrace(new PrintWriter(trace));
+
+      Assert.assertTrue(trace.toString(),
+                        trace.toString().contains("testLeak"));
+
+      DirectBuffers.free(leak);
+
+      Assert.assertEquals(0, DirectBuffers.logLeaks());
+    } finally {
+      log.removeHandler(handler);
+    }
+  }
+
+  private static void assertCapacity(int capacity, ByteBuffer buffer)
+  {
+    Assert.assertEquals(capacity, buffer.capacity());
+    Assert.assertEquals(capacity, buffer.remaining());
+
+    DirectBuffers.free(buffer);
+  }
+
+  private static class Q_handler extends Handler
+  {
+    private final ArrayList<LogRecord> _records = new ArrayList<>();
+
+    ArrayList<LogRecord> records()
+    {
+      return _records;
+    }
+
+    @Override
+    public void publish(LogRecord record)
+    {
+      _records.add(record);
+    }
+
+    @Override
+    public void flush()
+    {
+    }
+
+    @Override
+    public void close()
+    {
+    }
+  }
+}
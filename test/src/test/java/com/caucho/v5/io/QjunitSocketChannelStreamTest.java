@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.baratine.io.Buffer;
+
+/**
+ * Socket channel writes with partial writes and gathered segments, using
+ * pooled direct buffers.
+ */
+public class QjunitSocketChannelStreamTest
+{
+  private long _outstanding;
+
+  @Before
+  public void before()
+  {
+    _outstanding = outstanding();
+  }
+
+  @After
+  public void after()
+  {
+    // every pooled segment is returned after the write
+    Assert.assertEquals(_outstanding, outstanding());
+  }
+
+  /**
+   * A write the channel takes in small pieces is retried until it's
+   * complete.
+   */
+  @Test
+  public void testPartialWrite()
+    throws IOException
+  {
+    byte []data = data(100000);
+
+    Q_socketChannel channel = new Q_socketChannel(1000);
+    SocketChannelStream s = new SocketChannelStream(channel);
+
+    s.write(data, 0, data.length, false);
+
+    Assert.assertArrayEquals(data, channel.output());
+    // a 64k segment takes 66 writes and the remaining 34464 bytes take 35
+    Assert.assertEquals(66 + 35, channel.writeCount());
+    Assert.assertEquals(data.length, s.getTotalWriteBytes());
+
+    channel = new Q_socketChannel(777);
+    s = new SocketChannelStream(channel);
+
+    TempBuffer buffer = TempBuffer.create();
+    buffer.write(data, 0, buffer.capacity());
+
+    s.write(buffer, false);
+
+    Assert.assertArrayEquals(Arrays.copyOf(data, buffer.capacity()),
+                             channel.output());
+  }
+
+  /**
+   * A direct buffer is also retried after a partial write.
+   */
+  @Test
+  public void testPartialWriteDirect()
+    throws IOException
+  {
+    byte []data = data(5000);
+
+    Q_socketChannel channel = new Q_socketChannel(999);
+    SocketChannelStream s = new SocketChannelStream(channel);
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+    direct.put(data);
+    direct.flip();
+
+    s.write(new Q_direct(direct), false);
+
+    Assert.assertArrayEquals(data, channel.output());
+    Assert.assertEquals(6, channel.writeCount());
+  }
+
+  /**
+   * Two arrays go out in one gathering write, which is retried after a
+   * partial write.
+   */
+  @Test
+  public void testGatherArrays()
+    throws IOException
+  {
+    byte []head = data(300);
+    byte []body = data(20000);
+
+    Q_socketChannel channel = new Q_socketChannel(Integer.MAX_VALUE);
+    SocketChannelStream s = new SocketChannelStream(channel);
+
+    Assert.assertTrue(s.write(head, 0, head.length,
+                              body, 0, body.length, false));
+
+    Assert.assertArrayEquals(concat(head, body), channel.output());
+    Assert.assertEquals(1, channel.gatherCount());
+    Assert.assertEquals(1, channel.writeCount());
+
+    channel = new Q_socketChannel(4999);
+    s = new SocketChannelStream(channel);
+
+    Assert.assertTrue(s.write(head, 0, head.length,
+                              body, 0, body.length, false));
+
+    Assert.assertArrayEquals(concat(head, body), channel.output());
+    Assert.assertEquals(5, channel.gatherCount());
+    Assert.assertEquals(head.length + body.length, s.getTotalWriteBytes());
+  }
+
+  /**
+   * A TempBuffer chain larger than one pooled buffer and longer than one
+   * gathering write follows the leading bytes in order.
+   */
+  @Test
+  public void testGatherChain()
+    throws IOException
+  {
+    byte []head = data(200);
+
+    for (int writeMax : new int[] { Integer.MAX_VALUE, 3001 }) {
+      ByteArrayOutputStream expect = new ByteArrayOutputStream();
+      expect.write(head, 0, head.length);
+
+      // more segments than a single gathering write holds
+      TempBuffer chain = chain(20, expect);
+
+      Assert.assertTrue(expect.size() > DirectBuffers.SIZE_MAX);
+
+      Q_socketChannel channel = new Q_socketChannel(writeMax);
+      SocketChannelStream s = new SocketChannelStream(channel);
+
+      Assert.assertTrue(s.write(head, 0, head.length, chain, false));
+
+      Assert.assertArrayEquals(expect.toByteArray(), channel.output());
+      Assert.assertTrue(channel.gatherCount() >= 2);
+      Assert.assertEquals(expect.size(), s.getTotalWriteBytes());
+    }
+
+    // a chain written alone is gathered too
+    ByteArrayOutputStream expect = new ByteArrayOutputStream();
+    TempBuffer chain = chain(3, expect);
+
+    Q_socketChannel channel = new Q_socketChannel(Integer.MAX_VALUE);
+    SocketChannelStream s = new SocketChannelStream(channel);
+
+    s.write(chain, false);
+
+    Assert.assertArrayEquals(expect.toByteArray(), channel.output());
+    Assert.assertEquals(1, channel.gatherCount());
+  }
+
+  /**
+   * WriteStream sends buffered bytes and a large array in one gathering
+   * write.
+   */
+  @Test
+  public void testWriteStreamGather()
+    throws IOException
+  {
+    byte []head = data(100);
+    byte []body = data(3 * TempBuffer.SIZE);
+
+    Q_socketChannel channel = new Q_socketChannel(Integer.MAX_VALUE);
+    WriteStream os = new WriteStream(new SocketChannelStream(channel));
+
+    os.write(head, 0, head.length);
+    os.write(body, 0, body.length);
+    os.flush();
+
+    Assert.assertArrayEquals(concat(head, body), channel.output());
+    Assert.assertEquals(1, channel.writeCount());
+    Assert.assertEquals(head.length + body.length, os.position());
+  }
+
+  /**
+   * A read borrows a pooled buffer no larger than the caller's array.
+   */
+  @Test
+  public void testRead()
+    throws IOException
+  {
+    byte []data = data(10000);
+
+    Q_socketChannel channel = new Q_socketChannel(Integer.MAX_VALUE);
+    channel.input(data);
+
+    SocketChannelStream s = new SocketChannelStream(channel);
+
+    byte []buffer = new byte[6000];
+
+    Assert.assertEquals(DirectBuffers.SIZE_MIN, s.read(buffer, 0, buffer.length));
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bos.write(buffer, 0, DirectBuffers.SIZE_MIN);
+
+    int sublen;
+
+    while ((sublen = s.read(buffer, 0, buffer.length)) > 0) {
+      bos.write(buffer, 0, sublen);
+    }
+
+    Assert.assertArrayEquals(data, bos.toByteArray());
+    Assert.assertEquals(data.length, s.getTotalReadBytes());
+  }
+
+  private static TempBuffer chain(int count, ByteArrayOutputStream expect)
+  {
+    TempBuffer head = null;
+    TempBuffer tail = null;
+
+    for (int i = 0; i < count; i++) {
+      TempBuffer buffer = TempBuffer.create();
+
+      // odd lengths, so segments don't line up with the pool sizes
+      byte []data = data(buffer.capacity() - 7 * i - 1);
+
+      buffer.write(data, 0, data.length);
+      expect.write(data, 0, data.length);
+
+      if (tail == null) {
+        head = buffer;
+      }
+      else {
+        tail.next(buffer);
+      }
+
+      tail = buffer;
+    }
+
+    return head;
+  }
+
+  private static byte []data(int length)
+  {
+    byte []data = new byte[length];
+
+    new Random(length).nextBytes(data);
+
+    return data;
+  }
+
+  private static byte []concat(byte []a, byte []b)
+  {
+    byte []data = Arrays.copyOf(a, a.length + b.length);
+
+    System.arraycopy(b, 0, data, a.length, b.length);
+
+    return data;
+  }
+
+  private static long outstanding()
+  {
+    long count = 0;
+
+    for (int i = 0; i < DirectBuffers.classCount(); i++) {
+      count += DirectBuffers.outstandingCount(i);
+    }
+
+    return count;
+  }
+
+  /**
+   * Buffer over a direct ByteBuffer.
+   */
+  private static class Q_direct implements Buffer
+  {
+    private final ByteBuffer _direct;
+
+    Q_direct(ByteBuffer direct)
+    {
+      _direct = direct;
+    }
+
+    @Override
+    public int length()
+    {
+      return _direct.remaining();
+    }
+
+    @Override
+    public boolean isDirect()
+    {
+      return true;
+    }
+
+    @Override
+    public ByteBuffer direct()
+    {
+      return _direct;
+    }
+
+    @Override
+    public Buffer set(int pos, byte []buffer, int offset, int length)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Buffer set(int pos, Buffer buffer, int offset, int length)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Buffer write(byte []buffer, int offset, int length)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Buffer write(InputStream is)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Buffer get(int pos, byte []buffer, int offset, int length)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read(byte []buffer, int offset, int length)
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
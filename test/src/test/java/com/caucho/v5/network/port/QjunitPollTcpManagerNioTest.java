@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.network.port;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.caucho.v5.io.SocketBar;
+import com.caucho.v5.io.SocketChannelWrapperBar;
+import com.caucho.v5.network.port.PollTcpManager.PollResult;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Keepalive connections spread over the nio selector threads, woken
+ * when data arrives and registered again for the next request.
+ */
+public class QjunitPollTcpManagerNioTest
+{
+  private static final int SELECTORS = 4;
+
+  private PollTcpManagerNio _manager;
+  private ServerSocketChannel _ss;
+
+  private final List<Q_conn> _conns = new ArrayList<>();
+
+  @Before
+  public void before()
+    throws IOException
+  {
+    // the manager is a singleton, so the first call sets the selector count
+    _manager = PollTcpManagerNio.create(SELECTORS);
+
+    _ss = ServerSocketChannel.open();
+    _ss.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+  @After
+  public void after()
+    throws IOException
+  {
+    for (Q_conn conn : _conns) {
+      _manager.closePoll(conn);
+      conn.close();
+    }
+
+    _ss.close();
+  }
+
+  /**
+   * N connections are spread over all M selectors.
+   */
+  @Test
+  public void testSpread()
+    throws Exception
+  {
+    Assert.assertEquals(SELECTORS, _manager.selectorCount());
+
+    int n = 64;
+
+    int selectCount = _manager.getSelectCount();
+
+    for (int i = 0; i < n; i++) {
+      Assert.assertEquals(PollResult.START, _manager.startPoll(conn()));
+    }
+
+    List<PollSelectorStats> stats = awaitRegistered(n);
+
+    Assert.assertEquals(SELECTORS, stats.size());
+
+    for (PollSelectorStats stat : stats) {
+      Assert.assertTrue(String.valueOf(stats), stat.getRegisterCount() > 0);
+    }
+
+    Assert.assertEquals(selectCount + n, _manager.getSelectCount());
+  }
+
+  /**
+   * Data on a registered connection wakes it on its selector thread.
+   */
+  @Test
+  public void testWake()
+    throws Exception
+  {
+    int n = 32;
+
+    long wakeCount = wakeCount();
+    int selectCount = _manager.getSelectCount();
+
+    for (int i = 0; i < n; i++) {
+      _manager.startPoll(conn());
+    }
+
+    awaitRegistered(n);
+
+    for (Q_conn conn : _conns) {
+      conn.send();
+    }
+
+    for (Q_conn conn : _conns) {
+      Assert.assertTrue(conn.toString(), conn.awaitRead(1));
+      Assert.assertTrue(conn.thread().startsWith("baratine-nio-select-"));
+      Assert.assertEquals(0, conn.timeoutCount());
+    }
+
+    awaitRegistered(0);
+
+    Assert.assertEquals(selectCount, _manager.getSelectCount());
+    Assert.assertEquals(wakeCount + n, wakeCount());
+  }
+
+  /**
+   * A woken connection registers again after reading its data, and the
+   * next request wakes it again.
+   */
+  @Test
+  public void testRegisterAfterData()
+    throws Exception
+  {
+    int n = 16;
+
+    for (int i = 0; i < n; i++) {
+      _manager.startPoll(conn());
+    }
+
+    for (int round = 1; round <= 3; round++) {
+      awaitRegistered(n);
+
+      for (Q_conn conn : _conns) {
+        conn.send();
+      }
+
+      for (Q_conn conn : _conns) {
+        Assert.assertTrue(conn + " round " + round, conn.awaitRead(round));
+
+        conn.drain();
+
+        Assert.assertEquals(PollResult.START, _manager.startPoll(conn));
+      }
+    }
+
+    awaitRegistered(n);
+
+    for (Q_conn conn : _conns) {
+      Assert.assertEquals(3, conn.readCount());
+    }
+  }
+
+  /**
+   * An expired connection is woken as a keepalive timeout instead of a read.
+   */
+  @Test
+  public void testKeepaliveTimeout()
+    throws Exception
+  {
+    long timeoutCount = timeoutCount();
+
+    Q_conn conn = conn();
+    conn.expire(0);
+
+    _manager.startPoll(conn);
+
+    awaitRegistered(1);
+
+    conn.send();
+
+    Assert.assertTrue(conn.awaitTimeout());
+    Assert.assertEquals(0, conn.readCount());
+    Assert.assertEquals(timeoutCount + 1, timeoutCount());
+  }
+
+  /**
+   * A closed poll is removed from its selector without waking it.
+   */
+  @Test
+  public void testClosePoll()
+    throws Exception
+  {
+    Q_conn conn = conn();
+
+    _manager.startPoll(conn);
+
+    awaitRegistered(1);
+
+    _manager.closePoll(conn);
+
+    awaitRegistered(0);
+
+    conn.send();
+
+    Assert.assertFalse(conn.awaitRead(1, 100));
+  }
+
+  private Q_conn conn()
+    throws IOException
+  {
+    SocketChannel client = SocketChannel.open(_ss.getLocalAddress());
+    SocketChannel server = _ss.accept();
+
+    server.configureBlocking(false);
+
+    Q_conn conn = new Q_conn(client, server);
+
+    _conns.add(conn);
+
+    return conn;
+  }
+
+  private List<PollSelectorStats> awaitRegistered(int count)
+    throws InterruptedException
+  {
+    long expires = System.currentTimeMillis() + 10000;
+
+    List<PollSelectorStats> stats;
+
+    do {
+      stats = _manager.selectorStats();
+
+      int sum = 0;
+
+      for (PollSelectorStats stat : stats) {
+        sum += stat.getRegisterCount();
+      }
+
+      if (sum == count) {
+        return stats;
+      }
+
+      Thread.sleep(10);
+    } while (System.currentTimeMillis() < expires);
+
+    Assert.fail("expected " + count + " registered " + stats);
+
+    return stats;
+  }
+
+  private long wakeCount()
+  {
+    long count = 0;
+
+    for (PollSelectorStats stat : _manager.selectorStats()) {
+      count += stat.getLifetimeWakeCount();
+    }
+
+    return count;
+  }
+
+  private long timeoutCount()
+  {
+    long count = 0;
+
+    for (PollSelectorStats stat : _manager.selectorStats()) {
+      count += stat.getLifetimeTimeoutCount();
+    }
+
+    return count;
+  }
+
+  /**
+   * Keepalive connection over the server side of a loopback pair.
+   */
+  private static class Q_conn implements PollController
+  {
+    private final SocketChannel _client;
+    private final SocketChannel _server;
+    private final SocketChannelWrapperBar _socket;
+
+    private volatile long _expireTime = Long.MAX_VALUE / 2;
+
+    private final Object _lock = new Object();
+    private int _readCount;
+    private int _timeoutCount;
+    private volatile String _thread;
+
+    Q_conn(SocketChannel client, SocketChannel server)
+    {
+      _client = client;
+      _server = server;
+      _socket = new SocketChannelWrapperBar(server);
+    }
+
+    void expire(long time)
+    {
+      _expireTime = time;
+    }
+
+    void send()
+      throws IOException
+    {
+      _client.write(ByteBuffer.wrap(new byte[] { 'x' }));
+    }
+
+    void drain()
+      throws IOException
+    {
+      ByteBuffer buffer = ByteBuffer.allocate(16);
+
+      while (_server.read(buffer) > 0) {
+        buffer.clear();
+      }
+    }
+
+    int readCount()
+    {
+      synchronized (_lock) {
+        return _readCount;
+      }
+    }
+
+    int timeoutCount()
+    {
+      synchronized (_lock) {
+        return _timeoutCount;
+      }
+    }
+
+    String thread()
+    {
+      return _thread;
+    }
+
+    boolean awaitRead(int count)
+      throws InterruptedException
+    {
+      return awaitRead(count, 10000);
+    }
+
+    boolean awaitRead(int count, long timeout)
+      throws InterruptedException
+    {
+      long expires = System.currentTimeMillis() + timeout;
+
+      synchronized (_lock) {
+        long delta;
+
+        while (_readCount < count
+               && (delta = expires - System.currentTimeMillis()) > 0) {
+          _lock.wait(delta);
+        }
+
+        return count <= _readCount;
+      }
+    }
+
+    boolean awaitTimeout()
+      throws InterruptedException
+    {
+      long expires = System.currentTimeMillis() + 10000;
+
+      synchronized (_lock) {
+        long delta;
+
+        while (_timeoutCount == 0
+               && (delta = expires - System.currentTimeMillis()) > 0) {
+          _lock.wait(delta);
+        }
+
+        return _timeoutCount > 0;
+      }
+    }
+
+    void close()
+      throws IOException
+    {
+      _client.close();
+      _server.close();
+    }
+
+    @Override
+    public SocketBar getSocket()
+    {
+      return _socket;
+    }
+
+    @Override
+    public PortSocket getPort()
+    {
+      return null;
+    }
+
+    @Override
+    public long getIdleStartTime()
+    {
+      return 0;
+    }
+
+    @Override
+    public long getIdleExpireTime()
+    {
+      return _expireTime;
+    }
+
+    @Override
+    public boolean enableKeepaliveIfNew(PollTcpManager selectManager)
+    {
+      return false;
+    }
+
+    @Override
+    public boolean toKeepaliveStart()
+    {
+      return true;
+    }
+
+    @Override
+    public void toKeepaliveClose()
+    {
+    }
+
+    @Override
+    public int fillWithTimeout(long timeout)
+    {
+      return 0;
+    }
+
+    @Override
+    public void onPollRead()
+    {
+      _thread = Thread.currentThread().getName();
+
+      synchronized (_lock) {
+        _readCount++;
+        _lock.notifyAll();
+      }
+    }
+
+    @Override
+    public void onKeepaliveTimeout()
+    {
+      synchronized (_lock) {
+        _timeoutCount++;
+        _lock.notifyAll();
+      }
+    }
+
+    @Override
+    public void onPollReadClose()
+    {
+    }
+
+    @Override
+    public boolean isKeepaliveRegistered()
+    {
+      return false;
+    }
+
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + _server + "]";
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.ramp.jamp;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.caucho.v5.amp.ServiceRefAmp;
+import com.caucho.v5.amp.ServicesAmp;
+import com.caucho.v5.amp.remote.ChannelAmp;
+import com.caucho.v5.amp.stub.MethodAmp;
+import com.caucho.v5.json.io.InJson;
+import com.caucho.v5.json.io.JsonReaderImpl;
+import com.caucho.v5.json.ser.JsonFactory;
+
+/**
+ * Jamp argument readers cached per service method.
+ */
+public class QjunitJampInvokerTest
+{
+  private static ServicesAmp _services;
+  private static JsonFactory _factory;
+
+  @BeforeClass
+  public static void before()
+  {
+    _services = ServicesAmp.newManager().start();
+    _factory = new JsonFactory();
+  }
+
+  @AfterClass
+  public static void after()
+  {
+    _services.close();
+  }
+
+  /**
+   * Each argument is read with its parameter's deserializer, and extra
+   * arguments as plain JSON values.
+   */
+  @Test
+  public void testArgs()
+    throws IOException
+  {
+    MethodAmp method = method(new Q_service(), "add");
+
+    Object []args = readArgs(method, "3, \"x\", 4]");
+
+    // numbers are narrowed to the parameter type, extras stay JSON values
+    Assert.assertEquals(Arrays.asList(3, "x", 4L), Arrays.asList(args));
+
+    Assert.assertEquals(0, readArgs(method, "]").length);
+  }
+
+  /**
+   * The trailing arguments are collected into the varargs array,
+   * including primitive arrays.
+   */
+  @Test
+  public void testVarArgs()
+    throws IOException
+  {
+    MethodAmp sum = method(new Q_service(), "sum");
+
+    Assert.assertTrue(sum.isVarArgs());
+
+    Object []args = readArgs(sum, "\"total\", 1, 2, 3]");
+
+    Assert.assertEquals(2, args.length);
+    Assert.assertEquals("total", args[0]);
+    Assert.assertArrayEquals(new int[] { 1, 2, 3 }, (int []) args[1]);
+
+    MethodAmp join = method(new Q_service(), "join");
+
+    args = readArgs(join, "\"a\", \"b\"]");
+
+    Assert.assertEquals(1, args.length);
+    Assert.assertArrayEquals(new String[] { "a", "b" }, (String []) args[0]);
+  }
+
+  /**
+   * An interface argument given as a string is a service reference from
+   * the client's session.
+   */
+  @Test
+  public void testServiceRef()
+    throws IOException
+  {
+    MethodAmp method = method(new Q_service(), "subscribe");
+
+    Q_channel channel = new Q_channel();
+
+    Object []args = readArgs(method, "session://client", "\"/listener\"]",
+                             channel);
+
+    Assert.assertEquals("/listener", channel.gatewayAddress());
+    Assert.assertTrue(args[0] instanceof Q_listener);
+
+    // only a session may pass its own services
+    try {
+      readArgs(method, "/service", "\"/listener\"]", channel);
+      Assert.fail();
+    } catch (ProtocolExceptionJamp e) {
+    }
+  }
+
+  /**
+   * Methods of different services with the same name have their own
+   * cached readers.
+   */
+  @Test
+  public void testOverloadedName()
+    throws IOException
+  {
+    MethodAmp helloString = method(new Q_service(), "hello");
+    MethodAmp helloInt = method(new Q_serviceInt(), "hello");
+
+    Assert.assertEquals(helloString.name(), helloInt.name());
+
+    JampInvoker invokerString = invoker(helloString);
+    JampInvoker invokerInt = invoker(helloInt);
+
+    Assert.assertNotSame(invokerString, invokerInt);
+    Assert.assertSame(invokerString, invoker(helloString));
+    Assert.assertSame(invokerInt, invoker(helloInt));
+
+    Assert.assertEquals("12", readArgs(helloString, "\"12\"]")[0]);
+    Assert.assertEquals(12, readArgs(helloInt, "12]")[0]);
+  }
+
+  private static MethodAmp method(Object bean, String name)
+  {
+    return _services.newService(bean).ref().methodByName(name).method();
+  }
+
+  private static JampInvoker invoker(MethodAmp method)
+  {
+    return JampInvoker.of(method, method.parameters(), method.isVarArgs(),
+                          _factory);
+  }
+
+  private static Object []readArgs(MethodAmp method, String json)
+    throws IOException
+  {
+    return readArgs(method, "/service", json, new Q_channel());
+  }
+
+  private static Object []readArgs(MethodAmp method,
+                                   String address,
+                                   String json,
+                                   ChannelAmp channel)
+    throws IOException
+  {
+    JsonReaderImpl jIn = new JsonReaderImpl(new StringReader("[" + json),
+                                            _factory);
+
+    Assert.assertEquals(InJson.Event.START_ARRAY, jIn.next());
+
+    Object []args = invoker(method).readArgs(jIn, address, method.name(),
+                                             channel);
+
+    Assert.assertNull(jIn.peek());
+
+    return args;
+  }
+
+  public interface Q_listener
+  {
+    void onEvent(String event);
+  }
+
+  public static class Q_listenerImpl implements Q_listener
+  {
+    @Override
+    public void onEvent(String event)
+    {
+    }
+  }
+
+  public static class Q_service
+  {
+    public int add(int a, String b)
+    {
+      return a + b.length();
+    }
+
+    public String sum(String label, int ...values)
+    {
+      return label;
+    }
+
+    public String join(String ...values)
+    {
+      return String.join(",", values);
+    }
+
+    public void subscribe(Q_listener listener)
+    {
+    }
+
+    public String hello(String value)
+    {
+      return value;
+    }
+  }
+
+  public static class Q_serviceInt
+  {
+    public int hello(int value)
+    {
+      return value;
+    }
+  }
+
+  /**
+   * Session channel whose gateway references are local services.
+   */
+  private static class Q_channel implements ChannelAmp
+  {
+    private String _gatewayAddress;
+
+    String gatewayAddress()
+    {
+      return _gatewayAddress;
+    }
+
+    @Override
+    public ServicesAmp services()
+    {
+      return _services;
+    }
+
+    @Override
+    public ServiceRefAmp service(String address)
+    {
+      return _services.service(address);
+    }
+
+    @Override
+    public ServiceRefAmp createGatewayRef(String remotePath)
+    {
+      _gatewayAddress = remotePath;
+
+      return _services.newService(new Q_listenerImpl()).ref();
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Alex Rojkov
+ */
+
+package com.caucho.v5.web.webapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * RouteTree must pick the same routes, path, path info and path parameters
+ * as the linear RouteMap scan it replaced.
+ */
+public class QjunitRouteTreeTest
+{
+  @Test
+  public void testLiteral()
+  {
+    RouteMap []routes = routes("", "/", "/a", "/a/b", "/a/b/c", "/b");
+
+    check(routes, "", "/", "/a", "/a/", "/a/b", "/a/b/", "/a/b/c",
+          "/a/c", "/b", "/b/c", "/c", "a");
+  }
+
+  @Test
+  public void testParam()
+  {
+    RouteMap []routes = routes("/user/{id}",
+                               "/user/{id}/order/{order}",
+                               "/user/{id}/name",
+                               "/item/{id}/{id2}");
+
+    check(routes, "/user", "/user/", "/user/12", "/user/12/",
+          "/user/12/name", "/user/12/order/7", "/user/12/order/",
+          "/item/a/b", "/item/a", "/item//b");
+  }
+
+  @Test
+  public void testWildcard()
+  {
+    RouteMap []routes = routes("/a/*",
+                               "/a/*/x",
+                               "/files/**",
+                               "/**");
+
+    check(routes, "", "/", "/a", "/a/", "/a/b", "/a/b/x", "/a/b/y",
+          "/files", "/files/", "/files/x/y", "/filesx", "/z/y");
+  }
+
+  @Test
+  public void testOverlap()
+  {
+    // earlier routes win; same-pattern routes are returned together
+    RouteMap []routes = routes("/a/{id}",
+                               "/a/b",
+                               "/a/{id}",
+                               "/a/b",
+                               "/*/b",
+                               "/a/**",
+                               "/**");
+
+    check(routes, "/a", "/a/b", "/a/c", "/c/b", "/a/b/c", "/a/c/d", "/x");
+  }
+
+  @Test
+  public void testRegexpFallback()
+  {
+    // mixed segments and inner ** keep the regexp, in route order
+    RouteMap []routes = routes("/b/*.html",
+                               "/c/**/d",
+                               "/b/{name}",
+                               "/c/**");
+
+    check(routes, "/b/foo.html", "/b/foo", "/c/d", "/c/e/f/d",
+          "/c/e", "/c");
+  }
+
+  @Test
+  public void testManyServices()
+  {
+    ArrayList<String> patterns = new ArrayList<>();
+
+    for (int i = 0; i < 100; i++) {
+      patterns.add("/svc" + i + "/items/{id}");
+      patterns.add("/svc" + i + "/items/{id}");
+      patterns.add("/svc" + i + "/list");
+    }
+
+    patterns.add("/**");
+
+    RouteMap []routes = routes(patterns.toArray(new String[0]));
+
+    check(routes, "/svc0/items/7", "/svc99/items/9", "/svc5/list",
+          "/svc5/list/", "/svc5/items", "/svc5/items/", "/svc100/list");
+  }
+
+  /**
+   * A '.' in a literal segment matches only a dot in the tree, while the
+   * RouteMap regexp treated it as any character.
+   */
+  @Test
+  public void testDot()
+  {
+    RouteTree tree = new RouteTree(routes("/a.html"));
+
+    Assert.assertNotNull(tree.route(new InvocationBaratine(), "/a.html"));
+    Assert.assertNull(tree.route(new InvocationBaratine(), "/axhtml"));
+  }
+
+  private void check(RouteMap []routes, String ...uris)
+  {
+    RouteTree tree = new RouteTree(routes);
+
+    for (String uri : uris) {
+      InvocationBaratine invLinear = new InvocationBaratine();
+      InvocationBaratine invTree = new InvocationBaratine();
+
+      Assert.assertEquals(uri,
+                          state(invLinear, linear(routes, invLinear, uri)),
+                          state(invTree, tree.route(invTree, uri)));
+    }
+  }
+
+  /**
+   * The linear scan InvocationRouterWebApp used before RouteTree.
+   */
+  private RouteBaratine []linear(RouteMap []routes,
+                                 InvocationBaratine invocation,
+                                 String uri)
+  {
+    String matchPattern = null;
+
+    for (RouteMap routeMap : routes) {
+      if (routeMap.match(invocation, uri)) {
+        matchPattern = routeMap.pattern();
+        break;
+      }
+    }
+
+    if (matchPattern == null) {
+      return null;
+    }
+
+    ArrayList<RouteBaratine> routeList = new ArrayList<>();
+
+    for (RouteMap routeMap : routes) {
+      if (matchPattern.equals(routeMap.pattern())) {
+        routeList.add(routeMap.route());
+      }
+    }
+
+    return routeList.toArray(new RouteBaratine[routeList.size()]);
+  }
+
+  private String state(InvocationBaratine invocation, RouteBaratine []routes)
+  {
+    if (routes == null) {
+      return "null";
+    }
+
+    return (Arrays.toString(routes)
+            + " path=" + invocation.path()
+            + " pathInfo=" + invocation.pathInfo()
+            + " params=" + new TreeMap<>(invocation.pathMap()));
+  }
+
+  private RouteMap []routes(String ...patterns)
+  {
+    RouteMap []routes = new RouteMap[patterns.length];
+
+    for (int i = 0; i < patterns.length; i++) {
+      routes[i] = new RouteMap(patterns[i], new Q_route(i + ":" + patterns[i]));
+    }
+
+    return routes;
+  }
+
+  static class Q_route implements RouteBaratine
+  {
+    private final String _name;
+
+    Q_route(String name)
+    {
+      _name = name;
+    }
+
+    @Override
+    public boolean service(RequestBaratine request)
+    {
+      return true;
+    }
+
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + _name + "]";
+    }
+  }
+}
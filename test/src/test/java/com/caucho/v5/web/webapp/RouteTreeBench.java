@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Alex Rojkov
+ */
+
+package com.caucho.v5.web.webapp;
+
+import java.util.ArrayList;
+
+/**
+ * Benchmark of RouteTree against the linear RouteMap scan.
+ *
+ * Run with the number of services as an optional argument. Each service
+ * has GET and POST item routes and a list route, followed by a few
+ * wildcard routes.
+ */
+public class RouteTreeBench
+{
+  private static final int ITERATIONS = 20000;
+  private static final int ROUNDS = 3;
+
+  public static void main(String []args)
+  {
+    int services = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+
+    ArrayList<RouteMap> routeList = new ArrayList<>();
+
+    for (int i = 0; i < services; i++) {
+      routeList.add(route("/svc" + i + "/items/{id}"));
+      routeList.add(route("/svc" + i + "/items/{id}"));
+      routeList.add(route("/svc" + i + "/list"));
+    }
+
+    routeList.add(route("/b/*.html"));
+    routeList.add(route("/files/**"));
+
+    RouteMap []routes = new RouteMap[routeList.size()];
+    routeList.toArray(routes);
+
+    RouteTree tree = new RouteTree(routes);
+
+    String []uris = new String[] {
+      "/svc" + (services / 2) + "/items/42",
+      "/svc" + (services - 1) + "/list",
+      "/files/a/b",
+      "/not/found"
+    };
+
+    System.out.println("routes: " + routes.length);
+
+    for (int round = 0; round < ROUNDS; round++) {
+      boolean isReport = round == ROUNDS - 1;
+
+      for (String uri : uris) {
+        InvocationBaratine invocation = new InvocationBaratine();
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+          linear(routes, invocation, uri);
+        }
+
+        long mid = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+          tree.route(invocation, uri);
+        }
+
+        long end = System.nanoTime();
+
+        if (isReport) {
+          System.out.printf("%-24s linear %8.0fns  tree %6.0fns%n",
+                            uri,
+                            (mid - start) / (double) ITERATIONS,
+                            (end - mid) / (double) ITERATIONS);
+        }
+      }
+    }
+  }
+
+  /**
+   * The linear scan InvocationRouterWebApp used before RouteTree.
+   */
+  private static RouteBaratine []linear(RouteMap []routes,
+                                        InvocationBaratine invocation,
+                                        String uri)
+  {
+    String matchPattern = null;
+
+    for (RouteMap routeMap : routes) {
+      if (routeMap.match(invocation, uri)) {
+        matchPattern = routeMap.pattern();
+        break;
+      }
+    }
+
+    if (matchPattern == null) {
+      return null;
+    }
+
+    ArrayList<RouteBaratine> routeList = new ArrayList<>();
+
+    for (RouteMap routeMap : routes) {
+      if (matchPattern.equals(routeMap.pattern())) {
+        routeList.add(routeMap.route());
+      }
+    }
+
+    return routeList.toArray(new RouteBaratine[routeList.size()]);
+  }
+
+  private static RouteMap route(String pattern)
+  {
+    return new RouteMap(pattern, request->true);
+  }
+}
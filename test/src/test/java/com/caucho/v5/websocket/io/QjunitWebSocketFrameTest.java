@@ -0,0 +1,599 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.websocket.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.caucho.v5.config.Configs;
+import com.caucho.v5.http.websocket.WebSocketBase;
+import com.caucho.v5.http.websocket.WebSocketManager;
+import com.caucho.v5.io.ReadStream;
+
+import io.baratine.config.Config;
+import io.baratine.io.Buffer;
+
+/**
+ * Websocket frames written by the server and by a masking client, read back
+ * through FrameIn, with and without permessage-deflate.
+ */
+public class QjunitWebSocketFrameTest
+{
+  private static final byte []MASK = new byte[] { 0x37, (byte) 0xfa, 0x21, 0x3d };
+
+  private static final String TEXT
+    = "the quick brown fox jumps over the lazy dog, "
+      + "the quick brown fox jumps over the lazy dog, "
+      + "the quick brown fox jumps over the lazy dog.";
+
+  @Test
+  public void testNegotiate()
+  {
+    Config config = Configs.config().get();
+
+    PerMessageDeflate deflate
+      = PerMessageDeflate.negotiate("permessage-deflate; client_max_window_bits",
+                                    config);
+
+    Assert.assertEquals("permessage-deflate", deflate.header());
+    Assert.assertFalse(deflate.isServerNoContextTakeover());
+
+    deflate = PerMessageDeflate.negotiate("permessage-deflate; "
+                                          + "server_no_context_takeover; "
+                                          + "client_no_context_takeover",
+                                          config);
+
+    Assert.assertEquals("permessage-deflate; server_no_context_takeover; "
+                        + "client_no_context_takeover",
+                        deflate.header());
+    Assert.assertTrue(deflate.isServerNoContextTakeover());
+
+    // a smaller server window can't be honored, so the next offer is used
+    deflate = PerMessageDeflate.negotiate("permessage-deflate; server_max_window_bits=10, "
+                                          + "permessage-deflate; server_max_window_bits=15",
+                                          config);
+
+    Assert.assertEquals("permessage-deflate", deflate.header());
+
+    Assert.assertNull(PerMessageDeflate.negotiate("permessage-deflate; server_max_window_bits=10",
+                                                  config));
+    Assert.assertNull(PerMessageDeflate.negotiate("x-webkit-deflate-frame",
+                                                  config));
+    Assert.assertNull(PerMessageDeflate.negotiate(null, config));
+
+    // the server can require fresh contexts
+    Config noContext
+      = Configs.config()
+               .add("server.websocket.deflate.server-context-takeover", "false")
+               .get();
+
+    deflate = PerMessageDeflate.negotiate("permessage-deflate", noContext);
+
+    Assert.assertEquals("permessage-deflate; server_no_context_takeover",
+                        deflate.header());
+
+    Config disabled
+      = Configs.config().add("server.websocket.deflate", "false").get();
+
+    Assert.assertNull(PerMessageDeflate.negotiate("permessage-deflate",
+                                                  disabled));
+  }
+
+  /**
+   * With context takeover, a repeated message compresses against the
+   * previous one.
+   */
+  @Test
+  public void testDeflateContextTakeover()
+    throws IOException
+  {
+    Q_socket socket = new Q_socket("permessage-deflate");
+
+    socket.write(TEXT);
+    socket.write(TEXT);
+
+    ArrayList<byte[]> frames = socket.frames();
+
+    Assert.assertEquals(2, frames.size());
+
+    for (byte []frame : frames) {
+      Assert.assertEquals(0xc1, frame[0] & 0xff);
+    }
+
+    Assert.assertTrue(frames.get(1).length < frames.get(0).length);
+
+    FrameIn fIn = frameIn(socket.bytes(), "permessage-deflate");
+
+    Assert.assertEquals(TEXT, readText(fIn));
+    Assert.assertEquals(TEXT, readText(fIn));
+    Assert.assertFalse(fIn.readFrameHeader());
+  }
+
+  /**
+   * Without context takeover, every message is compressed alone.
+   */
+  @Test
+  public void testDeflateNoContextTakeover()
+    throws IOException
+  {
+    String ext = ("permessage-deflate; server_no_context_takeover; "
+                  + "client_no_context_takeover");
+
+    Q_socket socket = new Q_socket(ext);
+
+    socket.write(TEXT);
+    socket.write(TEXT);
+
+    // short messages are sent uncompressed
+    socket.write("short");
+
+    ArrayList<byte[]> frames = socket.frames();
+
+    Assert.assertEquals(3, frames.size());
+    Assert.assertArrayEquals(frames.get(0), frames.get(1));
+    Assert.assertEquals(0x81, frames.get(2)[0] & 0xff);
+
+    // the shared prepared frame matches a socket's own compression
+    FramePrepared prepared = FramePrepared.text(TEXT);
+
+    socket.write(prepared);
+
+    Assert.assertArrayEquals(frames.get(0), socket.frames().get(3));
+
+    FrameIn fIn = frameIn(socket.bytes(), ext);
+
+    Assert.assertEquals(TEXT, readText(fIn));
+    Assert.assertEquals(TEXT, readText(fIn));
+
+    Assert.assertEquals("short", readText(fIn));
+    Assert.assertEquals(TEXT, readText(fIn));
+  }
+
+  /**
+   * A compressed message written in parts is inflated across its
+   * continuation frames.
+   */
+  @Test
+  public void testDeflateFragmented()
+    throws IOException
+  {
+    Q_socket socket = new Q_socket("permessage-deflate");
+
+    socket.writePart(TEXT);
+    socket.writePart("");
+    socket.write(TEXT);
+
+    ArrayList<byte[]> frames = socket.frames();
+
+    Assert.assertEquals(0x41, frames.get(0)[0] & 0xff);
+    Assert.assertEquals(0x80, frames.get(frames.size() - 1)[0] & 0xff);
+
+    FrameIn fIn = frameIn(socket.bytes(), "permessage-deflate");
+
+    Assert.assertEquals(TEXT + TEXT, readText(fIn));
+  }
+
+  /**
+   * The word-at-a-time unmask matches the byte loop for every alignment,
+   * odd length and mask phase.
+   */
+  @Test
+  public void testUnmask()
+  {
+    Random random = new Random(17);
+
+    for (int offset = 0; offset < 10; offset++) {
+      for (int length = 0; length < 41; length++) {
+        for (int maskOffset = 0; maskOffset < 4; maskOffset++) {
+          byte []data = new byte[offset + length + 9];
+          random.nextBytes(data);
+
+          byte []expect = data.clone();
+          int expectOffset = unmaskBytes(expect, offset, length, maskOffset);
+
+          byte []array = data.clone();
+
+          Assert.assertEquals(expectOffset,
+                              WebSocketMask.unmask(array, offset, length,
+                                                   MASK, maskOffset));
+          Assert.assertArrayEquals(expect, array);
+
+          ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+          direct.put(data);
+          direct.position(3);
+
+          Assert.assertEquals(expectOffset,
+                              WebSocketMask.unmask(direct, offset, length,
+                                                   MASK, maskOffset));
+          Assert.assertEquals(3, direct.position());
+          Assert.assertArrayEquals(expect, toArray(direct));
+
+          ByteBuffer little = ByteBuffer.wrap(data.clone());
+          little.order(ByteOrder.LITTLE_ENDIAN);
+
+          WebSocketMask.unmask(little, offset, length, MASK, maskOffset);
+
+          Assert.assertArrayEquals(expect, little.array());
+        }
+      }
+    }
+  }
+
+  /**
+   * A masked client message split into odd-length continuation frames,
+   * with a ping between them, read frame by frame.
+   */
+  @Test
+  public void testFragmented()
+    throws IOException
+  {
+    byte []data = new byte[1001];
+    new Random(3).nextBytes(data);
+
+    Q_listener listener = new Q_listener();
+    FrameIn fIn = frameIn(fragments(data), null, listener);
+
+    ByteArrayOutputStream message = new ByteArrayOutputStream();
+    ArrayList<Integer> ops = new ArrayList<>();
+
+    while (fIn.readFrameHeader()) {
+      ops.add(fIn.getFrameOpcode());
+
+      if (fIn.getFrameOpcode() == WebSocketConstants.OP_PING) {
+        Assert.assertEquals('p', fIn.readBinary());
+        continue;
+      }
+
+      byte []buffer = new byte[64];
+      int sublen;
+
+      while (fIn.length() > 0
+             && (sublen = fIn.readBinary(buffer, 0, buffer.length)) > 0) {
+        message.write(buffer, 0, sublen);
+      }
+
+      if (fIn.isFinal()) {
+        break;
+      }
+    }
+
+    Assert.assertEquals(Arrays.asList(WebSocketConstants.OP_BINARY,
+                                      WebSocketConstants.OP_PING,
+                                      WebSocketConstants.OP_CONT,
+                                      WebSocketConstants.OP_CONT,
+                                      WebSocketConstants.OP_CONT),
+                        ops);
+    Assert.assertArrayEquals(data, message.toByteArray());
+
+    Assert.assertEquals("h\u00e9llo, w\u00f6rld", readText(fIn));
+    Assert.assertNull(listener.closeReason());
+  }
+
+  /**
+   * A fragmented message read as a stream crosses its continuation
+   * frames, passing the interleaved ping to the listener.
+   */
+  @Test
+  public void testFragmentedStream()
+    throws IOException
+  {
+    byte []data = new byte[1001];
+    new Random(5).nextBytes(data);
+
+    Q_listener listener = new Q_listener();
+    FrameIn fIn = frameIn(fragments(data), null, listener);
+
+    Assert.assertTrue(fIn.readFrameHeader());
+
+    ByteArrayOutputStream message = new ByteArrayOutputStream();
+    byte []buffer = new byte[64];
+    int sublen;
+
+    while ((sublen = fIn.readBinary(buffer, 0, buffer.length)) > 0) {
+      message.write(buffer, 0, sublen);
+    }
+
+    Assert.assertArrayEquals(data, message.toByteArray());
+    Assert.assertEquals("p", listener.ping());
+
+    StringBuilder sb = new StringBuilder();
+    int ch;
+
+    Assert.assertTrue(fIn.readFrameHeader());
+
+    while ((ch = fIn.readText()) >= 0) {
+      sb.append((char) ch);
+    }
+
+    Assert.assertEquals("h\u00e9llo, w\u00f6rld", sb.toString());
+    Assert.assertNull(listener.closeReason());
+  }
+
+  /**
+   * A fragmented binary message with a ping and an empty continuation,
+   * followed by a fragmented text message.
+   */
+  private static byte []fragments(byte []data)
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    writeFrame(bos, WebSocketConstants.OP_BINARY, data, 0, 13);
+    writeFrame(bos, WebSocketConstants.FLAG_FIN | WebSocketConstants.OP_PING,
+               new byte[] { 'p' }, 0, 1);
+    writeFrame(bos, WebSocketConstants.OP_CONT, data, 13, 0);
+    writeFrame(bos, WebSocketConstants.OP_CONT, data, 13, 501);
+    writeFrame(bos, WebSocketConstants.FLAG_FIN | WebSocketConstants.OP_CONT,
+               data, 514, data.length - 514);
+
+    byte []text = "h\u00e9llo, w\u00f6rld".getBytes(StandardCharsets.UTF_8);
+
+    // splits the text between the bytes of the first two-byte character
+    writeFrame(bos, WebSocketConstants.OP_TEXT, text, 0, 3);
+    writeFrame(bos, WebSocketConstants.FLAG_FIN | WebSocketConstants.OP_CONT,
+               text, 3, text.length - 3);
+
+    return bos.toByteArray();
+  }
+
+  /**
+   * A payload of exactly 64k needs the 8-byte length, and a masked one
+   * is unmasked across many buffer refills.
+   */
+  @Test
+  public void test64k()
+    throws IOException
+  {
+    byte []data = new byte[65536];
+    new Random(64).nextBytes(data);
+
+    byte []frame = frameBytes(FramePrepared.binary(data, 0, data.length)
+                                           .buffer(null));
+
+    Assert.assertEquals(10 + data.length, frame.length);
+    Assert.assertEquals(0x82, frame[0] & 0xff);
+    Assert.assertEquals(0x7f, frame[1]);
+    Assert.assertArrayEquals(new byte[] { 0, 0, 0, 0, 0, 1, 0, 0 },
+                             Arrays.copyOfRange(frame, 2, 10));
+
+    Assert.assertArrayEquals(data, readBinary(frameIn(frame, null)));
+
+    // 0xffff still fits the 16-bit length
+    byte []frameShort = frameBytes(FramePrepared.binary(data, 0, 0xffff)
+                                                .buffer(null));
+
+    Assert.assertEquals(0x7e, frameShort[1]);
+    Assert.assertEquals(4 + 0xffff, frameShort.length);
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    writeFrame(bos, WebSocketConstants.FLAG_FIN | WebSocketConstants.OP_BINARY,
+               data, 0, data.length);
+
+    Assert.assertArrayEquals(data, readBinary(frameIn(bos.toByteArray(), null)));
+  }
+
+  private static String readText(FrameIn fIn)
+    throws IOException
+  {
+    StringBuilder sb = new StringBuilder();
+
+    while (fIn.readFrameHeader()) {
+      if (fIn.readText(sb)) {
+        return sb.toString();
+      }
+    }
+
+    Assert.fail("unterminated message: " + sb);
+
+    return null;
+  }
+
+  private static byte []readBinary(FrameIn fIn)
+    throws IOException
+  {
+    Assert.assertTrue(fIn.readFrameHeader());
+    Assert.assertTrue(fIn.isFinal());
+
+    byte []data = new byte[(int) fIn.length()];
+    int offset = 0;
+    int sublen;
+
+    while (offset < data.length
+           && (sublen = fIn.readBinary(data, offset, data.length - offset)) > 0) {
+      offset += sublen;
+    }
+
+    Assert.assertEquals(data.length, offset);
+    Assert.assertEquals(0, fIn.length());
+
+    return data;
+  }
+
+  private static FrameIn frameIn(byte []data, String ext)
+  {
+    return frameIn(data, ext, new Q_listener());
+  }
+
+  private static FrameIn frameIn(byte []data, String ext,
+                                 FrameListener listener)
+  {
+    FrameIn fIn = new FrameIn();
+
+    fIn.init(listener, new ReadStream(new ByteArrayInputStream(data)));
+
+    if (ext != null) {
+      fIn.deflate(PerMessageDeflate.negotiate(ext, Configs.config().get()));
+    }
+
+    return fIn;
+  }
+
+  /**
+   * Writes a client frame, masked with the byte loop.
+   */
+  private static void writeFrame(ByteArrayOutputStream bos, int code,
+                                 byte []data, int offset, int length)
+  {
+    bos.write(code);
+
+    if (length <= 0x7d) {
+      bos.write(0x80 | length);
+    }
+    else if (length <= 0xffff) {
+      bos.write(0x80 | 0x7e);
+      bos.write(length >> 8);
+      bos.write(length);
+    }
+    else {
+      bos.write(0x80 | 0x7f);
+
+      for (int i = 7; i >= 0; i--) {
+        bos.write(i < 4 ? length >> (8 * i) : 0);
+      }
+    }
+
+    bos.write(MASK, 0, MASK.length);
+
+    for (int i = 0; i < length; i++) {
+      bos.write(data[offset + i] ^ MASK[i & 0x3]);
+    }
+  }
+
+  private static int unmaskBytes(byte []buffer, int offset, int length,
+                                 int maskOffset)
+  {
+    for (int i = 0; i < length; i++) {
+      buffer[offset + i] ^= MASK[(maskOffset + i) & 0x3];
+    }
+
+    return (maskOffset + length) & 0x3;
+  }
+
+  private static byte []toArray(ByteBuffer buffer)
+  {
+    byte []data = new byte[buffer.capacity()];
+
+    for (int i = 0; i < data.length; i++) {
+      data[i] = buffer.get(i);
+    }
+
+    return data;
+  }
+
+  private static byte []frameBytes(Buffer buffer)
+    throws IOException
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    buffer.read(bos);
+
+    return bos.toByteArray();
+  }
+
+  private static class Q_listener extends FrameListenerBase
+  {
+    private String _ping;
+    private CloseReason _closeReason;
+
+    String ping()
+    {
+      return _ping;
+    }
+
+    CloseReason closeReason()
+    {
+      return _closeReason;
+    }
+
+    @Override
+    public void onPing(byte []buffer, int offset, int length)
+    {
+      _ping = new String(buffer, offset, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void onClose(CloseReason reason)
+    {
+      _closeReason = reason;
+    }
+  }
+
+  /**
+   * Server websocket that records the frames it sends.
+   */
+  private static class Q_socket extends WebSocketBase<Object,Object>
+  {
+    private final ArrayList<byte[]> _frames = new ArrayList<>();
+
+    Q_socket(String ext)
+    {
+      super(new WebSocketManager());
+
+      frameInput(new FrameIn());
+      deflate(PerMessageDeflate.negotiate(ext, Configs.config().get()));
+    }
+
+    ArrayList<byte[]> frames()
+    {
+      return _frames;
+    }
+
+    byte []bytes()
+    {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+      for (byte []frame : _frames) {
+        bos.write(frame, 0, frame.length);
+      }
+
+      return bos.toByteArray();
+    }
+
+    @Override
+    public void send(Buffer buffer)
+    {
+      try {
+        _frames.add(frameBytes(buffer));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
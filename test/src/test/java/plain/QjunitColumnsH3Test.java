@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Alex Rojkov
+ */
+
+package plain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.caucho.v5.h3.ColumnListH3;
+import com.caucho.v5.h3.H3;
+import com.caucho.v5.h3.InH3;
+import com.caucho.v5.h3.OutFactoryH3;
+import com.caucho.v5.h3.OutH3;
+import com.caucho.v5.h3.QueryBuilderH3;
+import com.caucho.v5.h3.QueryBuilderH3.PathBuilderH3;
+import com.caucho.v5.h3.QueryH3;
+import com.caucho.v5.h3.SchemaCacheH3;
+import com.caucho.v5.h3.io.H3Exception;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Column-encoded result batches, and the H3 length encodings they rely on.
+ */
+public class QjunitColumnsH3Test
+{
+  private OutFactoryH3 _factory = H3.newOutFactory().get();
+
+  @Test
+  public void testBeanBatch() throws Exception
+  {
+    ColumnListH3<Q_row> rows = new ColumnListH3<>();
+
+    // more than 63 rows needs a multi-byte size
+    for (int i = 0; i < 200; i++) {
+      rows.add(new Q_row("name-" + (i % 3), 1000 + i, 1000L * i, (short) -i));
+    }
+
+    byte []data = write(columns(true), rows);
+
+    Assert.assertEquals(rows.toString(), read(columns(false), data).toString());
+
+    // the columns are smaller than the rows
+    Assert.assertTrue(data.length < write(columns(false), rows).length);
+  }
+
+  @Test
+  public void testDeltaEdges() throws Exception
+  {
+    ColumnListH3<Q_row> rows = new ColumnListH3<>();
+
+    // deltas across the full range wrap and must unwrap on read
+    rows.add(new Q_row("a", Integer.MAX_VALUE, Long.MAX_VALUE, Short.MAX_VALUE));
+    rows.add(new Q_row("b", Integer.MIN_VALUE, Long.MIN_VALUE, Short.MIN_VALUE));
+    rows.add(new Q_row("c", 0, 0, (short) 0));
+    rows.add(new Q_row("d", Integer.MAX_VALUE, Long.MIN_VALUE, Short.MAX_VALUE));
+    rows.add(new Q_row("e", -1, Long.MAX_VALUE, (short) -1));
+
+    Assert.assertEquals(rows.toString(),
+                        read(columns(false), write(columns(true), rows)).toString());
+  }
+
+  @Test
+  public void testDictionaryEdges() throws Exception
+  {
+    ColumnListH3<Q_row> rows = new ColumnListH3<>();
+
+    // nulls, empty strings and repeats interleaved
+    rows.add(new Q_row(null, 1, 1, (short) 1));
+    rows.add(new Q_row("", 2, 2, (short) 2));
+    rows.add(new Q_row("x", 3, 3, (short) 3));
+    rows.add(new Q_row(null, 4, 4, (short) 4));
+    rows.add(new Q_row("", 5, 5, (short) 5));
+    rows.add(new Q_row("x", 6, 6, (short) 6));
+    rows.add(new Q_row("y", 7, 7, (short) 7));
+    rows.add(new Q_row("x", 8, 8, (short) 8));
+
+    Assert.assertEquals(rows.toString(),
+                        read(columns(false), write(columns(true), rows)).toString());
+  }
+
+  @Test
+  public void testBinaryBatch() throws Exception
+  {
+    Random random = new Random(1);
+    ColumnListH3<byte[]> keys = new ColumnListH3<>();
+
+    // the batch binary is larger than the read buffer
+    for (int i = 0; i < 4096; i++) {
+      byte []key = new byte[32];
+      random.nextBytes(key);
+      keys.add(key);
+    }
+
+    byte []data = write(columns(true), keys);
+
+    // one binary instead of a binary per key
+    Assert.assertTrue(data.length < write(columns(false), keys).length);
+
+    List<?> result = (List<?>) read(columns(false), data);
+
+    Assert.assertEquals(keys.size(), result.size());
+
+    for (int i = 0; i < keys.size(); i++) {
+      Assert.assertTrue(Arrays.equals(keys.get(i), (byte []) result.get(i)));
+    }
+  }
+
+  @Test
+  public void testFallback() throws Exception
+  {
+    ColumnListH3<Object> mixed = new ColumnListH3<>();
+    mixed.add(new Q_row("a", 1, 1, (short) 1));
+    mixed.add("b");
+    mixed.add(new Q_row("c", 3, 3, (short) 3));
+    mixed.add(null);
+
+    Assert.assertEquals(mixed.toString(),
+                        read(columns(false), write(columns(true), mixed)).toString());
+
+    ColumnListH3<byte[]> keys = new ColumnListH3<>();
+    keys.add(new byte[] { 1 });
+    keys.add(new byte[] { 2, 3 });
+    keys.add(new byte[] { 4 });
+    keys.add(new byte[] { 5, 6, 7 });
+
+    List<?> result = (List<?>) read(columns(false), write(columns(true), keys));
+
+    for (int i = 0; i < keys.size(); i++) {
+      Assert.assertTrue(Arrays.equals(keys.get(i), (byte []) result.get(i)));
+    }
+  }
+
+  @Test
+  public void testColumnsDisabled() throws Exception
+  {
+    ColumnListH3<Q_row> rows = new ColumnListH3<>();
+    ArrayList<Q_row> list = new ArrayList<>();
+
+    for (int i = 0; i < 8; i++) {
+      Q_row row = new Q_row("a", i, i, (short) i);
+
+      rows.add(row);
+      list.add(row);
+    }
+
+    // without the link flag a batch is written as a plain list
+    Assert.assertTrue(Arrays.equals(write(columns(false), list),
+                                    write(columns(false), rows)));
+
+    Object value = read(columns(false), write(columns(false), rows));
+
+    Assert.assertEquals(ArrayList.class, value.getClass());
+    Assert.assertEquals(list.toString(), value.toString());
+  }
+
+  @Test
+  public void testRejectWithoutFlag() throws Exception
+  {
+    ColumnListH3<Q_row> rows = new ColumnListH3<>();
+
+    for (int i = 0; i < 8; i++) {
+      rows.add(new Q_row("a", i, i, (short) i));
+    }
+
+    byte []data = write(columns(true), rows);
+
+    // schema header: version 0, columns, reset
+    Assert.assertEquals((byte) 0xfa, data[0]);
+    Assert.assertEquals(3, data[1]);
+
+    data[1] = 1;
+
+    try {
+      read(columns(false), data);
+      Assert.fail();
+    } catch (H3Exception e) {
+    }
+  }
+
+  @Test
+  public void testScan() throws Exception
+  {
+    ColumnListH3<Q_row> rows = new ColumnListH3<>();
+
+    for (int i = 0; i < 8; i++) {
+      rows.add(new Q_row("n" + (i % 2), i * 3, i, (short) i));
+    }
+
+    QueryBuilderH3 builder = _factory.newQuery();
+
+    PathBuilderH3 namePath = builder.field("_name");
+    namePath.build();
+
+    PathBuilderH3 idPath = builder.field("_id");
+    idPath.build();
+
+    QueryH3 query = builder.build();
+
+    Object []values = new Object[query.count()];
+
+    try (InH3 in = _factory.in(new ByteArrayInputStream(write(columns(true), rows)),
+                               columns(false))) {
+      in.readSchema();
+      in.query(query, values);
+    }
+
+    Assert.assertEquals("[n0, n1, n0, n1, n0, n1, n0, n1]",
+                        String.valueOf(values[namePath.index()]));
+    Assert.assertEquals("[0, 3, 6, 9, 12, 15, 18, 21]",
+                        String.valueOf(values[idPath.index()]));
+  }
+
+  @Test
+  public void testLongList() throws Exception
+  {
+    ArrayList<Integer> list = new ArrayList<>();
+
+    // chunk sizes above 127
+    for (int i = 0; i < 1000; i++) {
+      list.add(i);
+    }
+
+    Assert.assertEquals(list, read(columns(false), write(columns(false), list)));
+  }
+
+  @Test
+  public void testLargeBinary() throws Exception
+  {
+    byte []data = new byte[100000];
+
+    new Random(2).nextBytes(data);
+
+    // the binary spans several read buffer refills
+    Object value = read(columns(false), write(columns(false), data));
+
+    Assert.assertTrue(Arrays.equals(data, (byte []) value));
+  }
+
+  private SchemaCacheH3 columns(boolean isColumns)
+  {
+    SchemaCacheH3 schema = _factory.newSchemaCache();
+
+    schema.columns(isColumns);
+
+    return schema;
+  }
+
+  private byte []write(SchemaCacheH3 schema, Object value)
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    try (OutH3 out = _factory.out(bos, schema)) {
+      out.writeSchema();
+      out.writeObject(value);
+    }
+
+    return bos.toByteArray();
+  }
+
+  private Object read(SchemaCacheH3 schema, byte []data)
+  {
+    try (InH3 in = _factory.in(new ByteArrayInputStream(data), schema)) {
+      in.readSchema();
+
+      return in.readObject();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static class Q_row
+  {
+    private String _name;
+    private int _id;
+    private long _time;
+    private short _flags;
+
+    public Q_row()
+    {
+    }
+
+    public Q_row(String name, int id, long time, short flags)
+    {
+      _name = name;
+      _id = id;
+      _time = time;
+      _flags = flags;
+    }
+
+    @Override
+    public String toString()
+    {
+      return (getClass().getSimpleName()
+              + "[" + _name + "," + _id + "," + _time + "," + _flags + "]");
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Alex Rojkov
+ */
+package plain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.inject.Inject;
+
+import com.caucho.junit.RunnerBaratine;
+import com.caucho.junit.ServiceTest;
+import com.caucho.v5.amp.inbox.InboxStall;
+import com.caucho.v5.amp.inbox.InboxWatchdog;
+import io.baratine.service.Result;
+import io.baratine.service.Service;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Slow message and stuck inbox reports for a service blocked in a
+ * sleep.
+ */
+@RunWith(RunnerBaratine.class)
+@ServiceTest(QjunitInboxWatchdogTest.Q_blockServiceImpl.class)
+public class QjunitInboxWatchdogTest
+{
+  @Inject
+  @Service("/block")
+  private Q_blockService _block;
+
+  private long _slowTime;
+  private long _stuckTime;
+  private long _period;
+  private Consumer<InboxStall> _listener;
+
+  /**
+   * The watchdog is global, so save its settings for other tests.
+   */
+  @Before
+  public void before()
+  {
+    InboxWatchdog watchdog = InboxWatchdog.current();
+
+    _slowTime = watchdog.slowTime();
+    _stuckTime = watchdog.stuckTime();
+    _period = watchdog.period();
+    _listener = watchdog.listener();
+  }
+
+  @After
+  public void after()
+  {
+    InboxWatchdog watchdog = InboxWatchdog.current();
+
+    watchdog.slowTime(_slowTime).stuckTime(_stuckTime);
+
+    if (_listener != null) {
+      watchdog.start(_period, _listener);
+    }
+  }
+
+  @Test
+  public void testStall() throws Exception
+  {
+    InboxWatchdog watchdog = InboxWatchdog.current();
+
+    // checks from the test only
+    watchdog.stop();
+
+    watchdog.slowTime(100).stuckTime(200);
+    watchdog.check();
+
+    long slowCount = watchdog.slowCount();
+    long stuckCount = watchdog.stuckCount();
+
+    for (int i = 0; i < 3; i++) {
+      _block.block(1000, Result.ignore());
+    }
+
+    List<InboxStall> stalls = new ArrayList<>();
+
+    for (int i = 0; i < 8; i++) {
+      Thread.sleep(50);
+
+      for (InboxStall stall : watchdog.check()) {
+        if ("/block".equals(stall.address())) {
+          stalls.add(stall);
+        }
+      }
+    }
+
+    Assert.assertEquals(2, stalls.size());
+
+    InboxStall slow = stalls.get(0);
+
+    Assert.assertEquals(InboxStall.Kind.SLOW, slow.kind());
+    Assert.assertTrue(slow.message(), slow.message().contains("block"));
+    Assert.assertTrue(slow.report(), slow.report().contains("Thread.sleep"));
+
+    InboxStall stuck = stalls.get(1);
+
+    Assert.assertEquals(InboxStall.Kind.STUCK, stuck.kind());
+    Assert.assertTrue(stuck.report(), stuck.queueSize() > 0);
+
+    Assert.assertEquals(slowCount + 1, watchdog.slowCount());
+    Assert.assertEquals(stuckCount + 1, watchdog.stuckCount());
+  }
+
+  public interface Q_blockService
+  {
+    void block(long time, Result<Boolean> result);
+  }
+
+  @Service("/block")
+  public static class Q_blockServiceImpl
+  {
+    public void block(long time, Result<Boolean> result)
+      throws InterruptedException
+    {
+      Thread.sleep(time);
+
+      result.ok(true);
+    }
+  }
+}
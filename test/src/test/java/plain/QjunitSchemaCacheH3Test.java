@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Alex Rojkov
+ */
+package plain;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.caucho.v5.h3.H3;
+import com.caucho.v5.h3.InH3;
+import com.caucho.v5.h3.OutFactoryH3;
+import com.caucho.v5.h3.OutH3;
+import com.caucho.v5.h3.SchemaCacheH3;
+import com.caucho.v5.h3.io.H3Exception;
+import com.caucho.v5.io.TempBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Link schema cache: definitions shared across messages, and the reset
+ * handshake when one side of the link reconnects.
+ */
+public class QjunitSchemaCacheH3Test
+{
+  private OutFactoryH3 _factory = H3.newOutFactory().get();
+
+  @Test
+  public void testShared() throws Exception
+  {
+    SchemaCacheH3 outSchema = _factory.newSchemaCache();
+    SchemaCacheH3 inSchema = _factory.newSchemaCache();
+
+    byte []msg1 = write(outSchema, new Q_bean("a", 1));
+    byte []msg2 = write(outSchema, new Q_bean("b", 2));
+
+    // the second message carries only the type id
+    Assert.assertTrue(msg2.length < msg1.length);
+
+    Assert.assertEquals("Q_bean[a,1]", read(inSchema, msg1));
+    Assert.assertEquals("Q_bean[b,2]", read(inSchema, msg2));
+  }
+
+  @Test
+  public void testReconnectSender() throws Exception
+  {
+    SchemaCacheH3 outSchema = _factory.newSchemaCache();
+    SchemaCacheH3 inSchema = _factory.newSchemaCache();
+
+    Assert.assertEquals("Q_bean[a,1]",
+                        read(inSchema, write(outSchema, new Q_bean("a", 1))));
+
+    // new sender cache: the reset clears the receiver's definitions
+    outSchema = _factory.newSchemaCache();
+
+    Assert.assertEquals("Q_bean[b,2]",
+                        read(inSchema, write(outSchema, new Q_bean("b", 2))));
+    Assert.assertEquals("Q_bean[c,3]",
+                        read(inSchema, write(outSchema, new Q_bean("c", 3))));
+  }
+
+  @Test
+  public void testReconnectReceiver() throws Exception
+  {
+    SchemaCacheH3 outSchema = _factory.newSchemaCache();
+    SchemaCacheH3 inSchema = _factory.newSchemaCache();
+
+    Assert.assertEquals("Q_bean[a,1]",
+                        read(inSchema, write(outSchema, new Q_bean("a", 1))));
+
+    // new receiver cache: the stale sender is rejected, not misread
+    inSchema = _factory.newSchemaCache();
+
+    try {
+      read(inSchema, write(outSchema, new Q_bean("b", 2)));
+      Assert.fail();
+    } catch (H3Exception e) {
+    }
+
+    // clearing the sender resets the link
+    outSchema.clear();
+
+    Assert.assertEquals(1, outSchema.version());
+    Assert.assertEquals("Q_bean[c,3]",
+                        read(inSchema, write(outSchema, new Q_bean("c", 3))));
+    Assert.assertEquals(1, inSchema.version());
+  }
+
+  @Test
+  public void testDefinitionWriteFailure() throws Exception
+  {
+    SchemaCacheH3 outSchema = _factory.newSchemaCache();
+    SchemaCacheH3 inSchema = _factory.newSchemaCache();
+
+    Assert.assertEquals("1",
+                        read(inSchema, write(outSchema, Integer.valueOf(1))));
+
+    int size = outSchema.size();
+
+    OutH3 out = _factory.out(new Q_failStream(), outSchema);
+
+    out.writeSchema();
+
+    // fill the buffer so the definition's write fails part-way
+    int length = TempBuffer.create().buffer().length;
+
+    for (int i = 0; i < length - 3; i++) {
+      out.writeLong(0);
+    }
+
+    try {
+      out.writeObject(new Q_bean("a", 1));
+      Assert.fail();
+    } catch (H3Exception e) {
+    }
+
+    Assert.assertEquals(size, outSchema.size());
+
+    // the definition is written again on the next message
+    Assert.assertEquals("Q_bean[b,2]",
+                        read(inSchema, write(outSchema, new Q_bean("b", 2))));
+    Assert.assertEquals(size + 1, outSchema.size());
+  }
+
+  private byte []write(SchemaCacheH3 schema, Object value)
+  {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    try (OutH3 out = _factory.out(bos, schema)) {
+      out.writeSchema();
+      out.writeObject(value);
+    }
+
+    return bos.toByteArray();
+  }
+
+  private String read(SchemaCacheH3 schema, byte []data)
+  {
+    try (InH3 in = _factory.in(new ByteArrayInputStream(data), schema)) {
+      in.readSchema();
+
+      return String.valueOf(in.readObject());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static class Q_bean
+  {
+    private String _name;
+    private int _value;
+
+    public Q_bean()
+    {
+    }
+
+    public Q_bean(String name, int value)
+    {
+      _name = name;
+      _value = value;
+    }
+
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + _name + "," + _value + "]";
+    }
+  }
+
+  private static class Q_failStream extends OutputStream
+  {
+    @Override
+    public void write(int ch) throws IOException
+    {
+      throw new IOException("closed");
+    }
+
+    @Override
+    public void write(byte []buffer, int offset, int length)
+      throws IOException
+    {
+      throw new IOException("closed");
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import com.caucho.junit.Http;
+import com.caucho.junit.ServiceTest;
+import com.caucho.junit.WebRunnerBaratine;
+import io.baratine.io.Buffer;
+import io.baratine.pipe.Credits;
+import io.baratine.pipe.Pipe;
+import io.baratine.service.Result;
+import io.baratine.service.Service;
+import io.baratine.web.Post;
+import io.baratine.web.RequestWeb;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Request bodies streamed to a pipe with credits, including a multipart
+ * body streamed part by part.
+ */
+@RunWith(WebRunnerBaratine.class)
+@ServiceTest(QwebRunBodyStreamTest.Q_streamService.class)
+@Http(port = 8088)
+public class QwebRunBodyStreamTest
+{
+  @Test
+  public void testStreamLength() throws IOException
+  {
+    String body = data(256 * 1024);
+
+    try (Socket s = new Socket("localhost", 8088)) {
+      RawHttp.send(s, "POST /stream HTTP/1.1\r\n"
+              + "Host: localhost\r\n"
+              + "Content-Length: " + body.length() + "\r\n"
+              + "\r\n"
+              + body);
+
+      Assert.assertEquals("stream:" + body.length() + ":" + body.hashCode(),
+                          RawHttp.readBody(s.getInputStream()));
+    }
+  }
+
+  @Test
+  public void testStreamChunked() throws IOException
+  {
+    StringBuilder sb = new StringBuilder();
+    StringBuilder body = new StringBuilder();
+
+    sb.append("POST /stream HTTP/1.1\r\n");
+    sb.append("Host: localhost\r\n");
+    sb.append("Transfer-Encoding: chunked\r\n");
+    sb.append("\r\n");
+
+    for (int i = 0; i < 64; i++) {
+      String chunk = data(1000 + i);
+
+      body.append(chunk);
+
+      sb.append(Integer.toHexString(chunk.length())).append("\r\n");
+      sb.append(chunk).append("\r\n");
+    }
+
+    sb.append("0\r\n\r\n");
+
+    try (Socket s = new Socket("localhost", 8088)) {
+      RawHttp.send(s, sb.toString());
+
+      Assert.assertEquals("stream:" + body.length() + ":" + body.toString().hashCode(),
+                          RawHttp.readBody(s.getInputStream()));
+    }
+  }
+
+  @Test
+  public void testParts() throws IOException
+  {
+    String file = data(100 * 1024);
+
+    String body = "--XyZ\r\n"
+                  + "Content-Disposition: form-data; name=\"title\"\r\n"
+                  + "\r\n"
+                  + "hello\r\n"
+                  + "--XyZ\r\n"
+                  + "Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n"
+                  + "Content-Type: text/plain\r\n"
+                  + "\r\n"
+                  + file + "\r\n"
+                  + "--XyZ--\r\n";
+
+    try (Socket s = new Socket("localhost", 8088)) {
+      RawHttp.send(s, "POST /parts HTTP/1.1\r\n"
+              + "Host: localhost\r\n"
+              + "Content-Type: multipart/form-data; boundary=XyZ\r\n"
+              + "Content-Length: " + body.length() + "\r\n"
+              + "\r\n"
+              + body);
+
+      Assert.assertEquals("title:5,file[a.txt]:" + file.length() + ",",
+                          RawHttp.readBody(s.getInputStream()));
+    }
+  }
+
+  private static String data(int length)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+
+    return sb.toString();
+  }
+
+  @Service
+  public static class Q_streamService
+  {
+    /**
+     * Takes over the credits, allowing a single chunk in flight.
+     */
+    @Post
+    public void stream(RequestWeb request)
+    {
+      request.bodyStream(new Pipe<Buffer>() {
+        private Credits _credits;
+        private ByteArrayOutputStream _body = new ByteArrayOutputStream();
+
+        @Override
+        public void credits(Credits credits)
+        {
+          _credits = credits;
+          _credits.set(1);
+        }
+
+        @Override
+        public void next(Buffer buffer)
+        {
+          byte []data = new byte[buffer.length()];
+          buffer.read(data, 0, data.length);
+          buffer.free();
+
+          _body.write(data, 0, data.length);
+
+          _credits.add(1);
+        }
+
+        @Override
+        public void close()
+        {
+          String body = new String(_body.toByteArray(), StandardCharsets.UTF_8);
+
+          request.ok("stream:" + body.length() + ":" + body.hashCode());
+        }
+
+        @Override
+        public void fail(Throwable exn)
+        {
+          request.fail(exn);
+        }
+      });
+    }
+
+    @Post
+    public void parts(RequestWeb request)
+    {
+      StringBuilder sb = new StringBuilder();
+
+      request.bodyParts(part -> {
+        long []length = new long[1];
+
+        return Pipe.of((Buffer buffer, Throwable exn, boolean isClose) -> {
+          if (buffer != null) {
+            length[0] += buffer.length();
+            buffer.free();
+          }
+          else if (isClose) {
+            sb.append(part.name());
+
+            if (part.getFileName() != null) {
+              sb.append("[" + part.getFileName() + "]");
+            }
+
+            sb.append(":" + length[0] + ",");
+          }
+        });
+      }, Result.of(x -> request.ok(sb.toString()), request::fail));
+    }
+  }
+}
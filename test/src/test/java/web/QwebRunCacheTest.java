@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package web;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import javax.inject.Inject;
+
+import com.caucho.junit.Http;
+import com.caucho.junit.ServiceTest;
+import com.caucho.junit.WebRunnerBaratine;
+import io.baratine.service.Result;
+import io.baratine.service.Service;
+import io.baratine.web.Cached;
+import io.baratine.web.Get;
+import io.baratine.web.Post;
+import io.baratine.web.WebCache;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import web.RawHttp.Response;
+
+/**
+ * Responses of @Cached routes, with ETag validation and invalidation.
+ */
+@RunWith(WebRunnerBaratine.class)
+@ServiceTest(QwebRunCacheTest.Q_cacheService.class)
+@Http(port = 8089)
+public class QwebRunCacheTest
+{
+  @Test
+  public void testCache() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8089)) {
+      Response first = request(s, "GET /count?a=1", "");
+      Response second = request(s, "GET /count?a=1", "");
+
+      Assert.assertEquals(200, first.status());
+      Assert.assertEquals(first.body(), second.body());
+      Assert.assertNotNull(first.header("etag"));
+      Assert.assertEquals(first.header("etag"), second.header("etag"));
+
+      Response other = request(s, "GET /count?a=2", "");
+
+      Assert.assertFalse(first.body().equals(other.body()));
+
+      Response lang = request(s, "GET /count?a=1",
+                              "Accept-Language: fr\r\n");
+
+      Assert.assertFalse(first.body().equals(lang.body()));
+    }
+  }
+
+  @Test
+  public void testNotModified() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8089)) {
+      Response first = request(s, "GET /count?b=1", "");
+
+      Response notModified = request(s, "GET /count?b=1",
+                                     "If-None-Match: "
+                                     + first.header("etag") + "\r\n");
+
+      Assert.assertEquals(304, notModified.status());
+      Assert.assertEquals("", notModified.body());
+    }
+  }
+
+  @Test
+  public void testInvalidate() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8089)) {
+      Response first = request(s, "GET /count?c=1", "");
+
+      request(s, "POST /invalidate", "Content-Length: 0\r\n");
+
+      Response second = request(s, "GET /count?c=1", "");
+
+      Assert.assertFalse(first.body().equals(second.body()));
+    }
+  }
+
+  private static Response request(Socket s, String request, String headers)
+    throws IOException
+  {
+    RawHttp.send(s, request + " HTTP/1.1\r\n"
+                    + "Host: localhost\r\n"
+                    + headers
+                    + "\r\n");
+
+    return RawHttp.readResponse(s.getInputStream());
+  }
+
+  @Service
+  public static class Q_cacheService
+  {
+    @Inject
+    private WebCache _cache;
+
+    private int _count;
+
+    @Get
+    @Cached(value = 60, vary = "accept-language")
+    public void count(Result<String> result)
+    {
+      result.ok("count-" + _count++);
+    }
+
+    @Post
+    public void invalidate(Result<String> result)
+    {
+      _cache.invalidate("/count");
+
+      result.ok("ok");
+    }
+  }
+}
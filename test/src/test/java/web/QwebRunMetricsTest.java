@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import com.caucho.junit.Http;
+import com.caucho.junit.ServiceTest;
+import com.caucho.junit.WebRunnerBaratine;
+import com.caucho.v5.health.meter.MetricRegistry;
+import com.caucho.v5.web.webapp.MetricsWeb;
+import io.baratine.service.Service;
+import io.baratine.web.Get;
+import io.baratine.web.RequestWeb;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Scrape of tagged counters, histograms and port metrics in text
+ * exposition format.
+ */
+@RunWith(WebRunnerBaratine.class)
+@ServiceTest(QwebRunMetricsTest.Q_metricsService.class)
+@Http(port = 8090)
+public class QwebRunMetricsTest
+{
+  @Test
+  public void testScrape() throws IOException
+  {
+    MetricRegistry registry = MetricRegistry.current();
+
+    registry.counter("q_metrics_total", "Test counter",
+                     "service", "/q", "method", "get").add(3);
+    registry.histogram("q_metrics_seconds", "Test histogram",
+                       "service", "/q").observe(0.02);
+
+    String text = scrape();
+
+    Assert.assertTrue(text, text.startsWith("HTTP/1.1 200"));
+    Assert.assertTrue(text, text.contains("text/plain; version=0.0.4"));
+
+    Assert.assertTrue(text, text.contains("# TYPE q_metrics_total counter\n"));
+    Assert.assertTrue(text, text.contains("q_metrics_total{method=\"get\",service=\"/q\"} 3\n"));
+
+    Assert.assertTrue(text, text.contains("q_metrics_seconds_bucket{service=\"/q\",le=\"0.01\"} 0\n"));
+    Assert.assertTrue(text, text.contains("q_metrics_seconds_bucket{service=\"/q\",le=\"0.025\"} 1\n"));
+    Assert.assertTrue(text, text.contains("q_metrics_seconds_count{service=\"/q\"} 1\n"));
+
+    Assert.assertTrue(text, text.contains("baratine_port_connections{port=\"8090\"} "));
+  }
+
+  private static String scrape() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8090)) {
+      OutputStream os = s.getOutputStream();
+
+      os.write(("GET /metrics HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Connection: close\r\n"
+                + "\r\n").getBytes(StandardCharsets.UTF_8));
+      os.flush();
+
+      InputStream is = s.getInputStream();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+      int ch;
+
+      while ((ch = is.read()) >= 0) {
+        bos.write(ch);
+      }
+
+      return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Service
+  public static class Q_metricsService
+  {
+    private final MetricsWeb _metrics = new MetricsWeb();
+
+    @Get("/metrics")
+    public void metrics(RequestWeb request)
+    {
+      _metrics.service(request);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+import com.caucho.junit.Http;
+import com.caucho.junit.ServiceTest;
+import com.caucho.junit.WebRunnerBaratine;
+import io.baratine.service.Result;
+import io.baratine.service.Service;
+import io.baratine.web.Body;
+import io.baratine.web.Get;
+import io.baratine.web.Post;
+import io.baratine.web.Query;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Pipelined HTTP/1.1 requests sent in a single write must be answered
+ * in order, including requests with content-length and chunked bodies.
+ */
+@RunWith(WebRunnerBaratine.class)
+@ServiceTest(QwebRunPipelineTest.Q_basicService.class)
+@Http(port = 8087)
+public class QwebRunPipelineTest
+{
+  @Test
+  public void testPipelineGet() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8087)) {
+      RawHttp.send(s, get("a") + get("b") + get("c"));
+
+      InputStream is = s.getInputStream();
+
+      Assert.assertEquals("get:a", RawHttp.readBody(is));
+      Assert.assertEquals("get:b", RawHttp.readBody(is));
+      Assert.assertEquals("get:c", RawHttp.readBody(is));
+    }
+  }
+
+  @Test
+  public void testPipelineMixedBodies() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8087)) {
+      RawHttp.send(s, get("a")
+              + postLength("hello")
+              + postChunked("chunked", "-body")
+              + get("b")
+              + postLength("world")
+              + postChunked("x"));
+
+      InputStream is = s.getInputStream();
+
+      Assert.assertEquals("get:a", RawHttp.readBody(is));
+      Assert.assertEquals("post:hello", RawHttp.readBody(is));
+      Assert.assertEquals("post:chunked-body", RawHttp.readBody(is));
+      Assert.assertEquals("get:b", RawHttp.readBody(is));
+      Assert.assertEquals("post:world", RawHttp.readBody(is));
+      Assert.assertEquals("post:x", RawHttp.readBody(is));
+    }
+  }
+
+  @Test
+  public void testPipelineSplitWrite() throws Exception
+  {
+    try (Socket s = new Socket("localhost", 8087)) {
+      String requests = get("a") + postLength("split") + get("b");
+      int split = requests.length() / 2;
+
+      RawHttp.send(s, requests.substring(0, split));
+
+      Thread.sleep(50);
+
+      RawHttp.send(s, requests.substring(split));
+
+      InputStream is = s.getInputStream();
+
+      Assert.assertEquals("get:a", RawHttp.readBody(is));
+      Assert.assertEquals("post:split", RawHttp.readBody(is));
+      Assert.assertEquals("get:b", RawHttp.readBody(is));
+    }
+  }
+
+  private static String get(String value)
+  {
+    return "GET /get?v=" + value + " HTTP/1.1\r\n"
+           + "Host: localhost\r\n"
+           + "\r\n";
+  }
+
+  private static String postLength(String body)
+  {
+    return "POST /post HTTP/1.1\r\n"
+           + "Host: localhost\r\n"
+           + "Content-Type: text/plain\r\n"
+           + "Content-Length: " + body.length() + "\r\n"
+           + "\r\n"
+           + body;
+  }
+
+  private static String postChunked(String ...chunks)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("POST /post HTTP/1.1\r\n");
+    sb.append("Host: localhost\r\n");
+    sb.append("Content-Type: text/plain\r\n");
+    sb.append("Transfer-Encoding: chunked\r\n");
+    sb.append("\r\n");
+
+    for (String chunk : chunks) {
+      sb.append(Integer.toHexString(chunk.length())).append("\r\n");
+      sb.append(chunk).append("\r\n");
+    }
+
+    sb.append("0\r\n\r\n");
+
+    return sb.toString();
+  }
+
+  @Service
+  public static class Q_basicService
+  {
+    @Get
+    public void get(@Query("v") String value, Result<String> result)
+    {
+      result.ok("get:" + value);
+    }
+
+    @Post
+    public void post(@Body String body, Result<String> result)
+    {
+      result.ok("post:" + body);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package web;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import com.caucho.junit.Http;
+import com.caucho.junit.WebRunnerBaratine;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import web.RawHttp.Response;
+
+/**
+ * Static files from the default classpath:/public root, with conditional,
+ * range and precompressed requests.
+ *
+ * The app.js.gz and app.js.br fixtures are placeholders. The server sends
+ * precompressed variants unmodified, so their contents don't matter.
+ */
+@RunWith(WebRunnerBaratine.class)
+@Http(port = 8092)
+public class QwebRunStaticFileTest
+{
+  @Test
+  public void testFile() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8092)) {
+      Response response = request(s, "GET /qstatic/hello.txt", "");
+
+      Assert.assertEquals(200, response.status());
+      Assert.assertEquals("hello, static world\n", response.body());
+      Assert.assertEquals("bytes", response.header("accept-ranges"));
+      Assert.assertNull(response.header("vary"));
+    }
+  }
+
+  @Test
+  public void testNotFound() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8092)) {
+      Response response = request(s, "GET /qstatic/missing.txt", "");
+
+      Assert.assertEquals(404, response.status());
+    }
+  }
+
+  @Test
+  public void testNotModified() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8092)) {
+      Response first = request(s, "GET /qstatic/hello.txt", "");
+
+      String etag = first.header("etag");
+
+      Assert.assertNotNull(etag);
+
+      Response notModified = request(s, "GET /qstatic/hello.txt",
+                                     "If-None-Match: \"x\", " + etag + "\r\n");
+
+      Assert.assertEquals(304, notModified.status());
+      Assert.assertEquals(etag, notModified.header("etag"));
+
+      Response weak = request(s, "GET /qstatic/hello.txt",
+                              "If-None-Match: W/" + etag + "\r\n");
+
+      Assert.assertEquals(304, weak.status());
+
+      Response other = request(s, "GET /qstatic/hello.txt",
+                               "If-None-Match: \"x\"\r\n");
+
+      Assert.assertEquals(200, other.status());
+      Assert.assertEquals(first.body(), other.body());
+    }
+  }
+
+  @Test
+  public void testRange() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8092)) {
+      Response response = request(s, "GET /qstatic/hello.txt",
+                                  "Range: bytes=0-4\r\n");
+
+      Assert.assertEquals(206, response.status());
+      Assert.assertEquals("bytes 0-4/20", response.header("content-range"));
+      Assert.assertEquals("hello", response.body());
+
+      response = request(s, "GET /qstatic/hello.txt",
+                         "Range: bytes=-6\r\n");
+
+      Assert.assertEquals(206, response.status());
+      Assert.assertEquals("bytes 14-19/20", response.header("content-range"));
+      Assert.assertEquals("world\n", response.body());
+
+      response = request(s, "GET /qstatic/hello.txt",
+                         "Range: bytes=20-\r\n");
+
+      Assert.assertEquals(416, response.status());
+      Assert.assertEquals("bytes */20", response.header("content-range"));
+    }
+  }
+
+  @Test
+  public void testVariant() throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8092)) {
+      Response identity = request(s, "GET /qstatic/app.js", "");
+
+      Assert.assertEquals(200, identity.status());
+      Assert.assertEquals("var app = \"identity\";\n", identity.body());
+      Assert.assertEquals("accept-encoding", identity.header("vary"));
+      Assert.assertNull(identity.header("content-encoding"));
+
+      Response gzip = request(s, "GET /qstatic/app.js",
+                              "Accept-Encoding: gzip, deflate\r\n");
+
+      Assert.assertEquals(200, gzip.status());
+      Assert.assertEquals("gzip", gzip.header("content-encoding"));
+      Assert.assertEquals("gzip-variant", gzip.body());
+
+      Response brotli = request(s, "GET /qstatic/app.js",
+                                "Accept-Encoding: gzip, br\r\n");
+
+      Assert.assertEquals("br", brotli.header("content-encoding"));
+      Assert.assertEquals("br-variant", brotli.body());
+
+      // each variant has its own ETag
+      Assert.assertFalse(identity.header("etag").equals(gzip.header("etag")));
+      Assert.assertFalse(gzip.header("etag").equals(brotli.header("etag")));
+
+      // ranges apply to the identity encoding
+      Response range = request(s, "GET /qstatic/app.js",
+                               "Accept-Encoding: gzip\r\n"
+                               + "Range: bytes=0-2\r\n");
+
+      Assert.assertEquals(206, range.status());
+      Assert.assertNull(range.header("content-encoding"));
+      Assert.assertEquals("var", range.body());
+    }
+  }
+
+  private static Response request(Socket s, String request, String headers)
+    throws IOException
+  {
+    RawHttp.send(s, request + " HTTP/1.1\r\n"
+                    + "Host: localhost\r\n"
+                    + headers
+                    + "\r\n");
+
+    return RawHttp.readResponse(s.getInputStream());
+  }
+}
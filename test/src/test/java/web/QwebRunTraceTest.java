@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+package web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import javax.inject.Inject;
+
+import com.caucho.junit.Http;
+import com.caucho.junit.ServiceTest;
+import com.caucho.junit.WebRunnerBaratine;
+import com.caucho.v5.amp.trace.TraceRecorder;
+import com.caucho.v5.amp.trace.TraceSpan;
+import io.baratine.service.Result;
+import io.baratine.service.Service;
+import io.baratine.web.Get;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Spans of an HTTP request and the service call it makes, continuing the
+ * caller's traceparent.
+ */
+@RunWith(WebRunnerBaratine.class)
+@ServiceTest(QwebRunTraceTest.Q_traceService.class)
+@ServiceTest(QwebRunTraceTest.Q_helloServiceImpl.class)
+@Http(port = 8091)
+public class QwebRunTraceTest
+{
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+  private static final String PARENT_ID = "00f067aa0ba902b7";
+
+  @Test
+  public void testTrace() throws Exception
+  {
+    TraceRecorder recorder = TraceRecorder.current();
+
+    recorder.enabled(true);
+
+    try {
+      String text = request("traceparent: 00-" + TRACE_ID + "-" + PARENT_ID
+                            + "-01\r\n");
+
+      Assert.assertTrue(text, text.startsWith("HTTP/1.1 200"));
+      Assert.assertTrue(text, text.contains("hello-trace"));
+
+      TraceSpan http = null;
+      TraceSpan hello = null;
+
+      for (int i = 0; i < 50 && (http == null || hello == null); i++) {
+        Thread.sleep(10);
+
+        for (TraceSpan span : recorder.spans()) {
+          if (span.traceId() != Long.parseUnsignedLong(TRACE_ID.substring(16), 16)) {
+            continue;
+          }
+
+          if (span.kind() == TraceSpan.Kind.SERVER) {
+            http = span;
+          }
+          else if ("hello".equals(span.name())) {
+            hello = span;
+          }
+        }
+      }
+
+      Assert.assertNotNull(http);
+      Assert.assertNotNull(hello);
+
+      Assert.assertEquals(Long.parseUnsignedLong(PARENT_ID, 16), http.parentId());
+      Assert.assertEquals(http.id(), hello.parentId());
+      Assert.assertEquals("/hello", hello.serviceName());
+      Assert.assertTrue(hello.queueTime() >= 0);
+      Assert.assertTrue(hello.runTime() >= 0);
+    } finally {
+      recorder.enabled(false);
+    }
+  }
+
+  @Test
+  public void testNotSampled() throws Exception
+  {
+    TraceRecorder recorder = TraceRecorder.current();
+
+    recorder.enabled(true);
+
+    try {
+      long count = recorder.recordCount();
+
+      String text = request("traceparent: 00-" + TRACE_ID + "-" + PARENT_ID
+                            + "-00\r\n");
+
+      Assert.assertTrue(text, text.contains("hello-trace"));
+
+      Thread.sleep(100);
+
+      Assert.assertEquals(count, recorder.recordCount());
+    } finally {
+      recorder.enabled(false);
+    }
+  }
+
+  private static String request(String headers) throws IOException
+  {
+    try (Socket s = new Socket("localhost", 8091)) {
+      OutputStream os = s.getOutputStream();
+
+      os.write(("GET /trace HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + headers
+                + "Connection: close\r\n"
+                + "\r\n").getBytes(StandardCharsets.UTF_8));
+      os.flush();
+
+      InputStream is = s.getInputStream();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+      int ch;
+
+      while ((ch = is.read()) >= 0) {
+        bos.write(ch);
+      }
+
+      return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  public interface Q_helloService
+  {
+    void hello(String name, Result<String> result);
+  }
+
+  @Service("/hello")
+  public static class Q_helloServiceImpl implements Q_helloService
+  {
+    @Override
+    public void hello(String name, Result<String> result)
+    {
+      result.ok("hello-" + name);
+    }
+  }
+
+  @Service
+  public static class Q_traceService
+  {
+    @Inject
+    @Service("/hello")
+    private Q_helloService _hello;
+
+    @Get("/trace")
+    public void trace(Result<String> result)
+    {
+      _hello.hello("trace", result);
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Alex Rojkov
+ */
+
+package web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+
+/**
+ * Raw-socket HTTP/1.1 helper for tests where the framing is the point,
+ * like pipelined requests, chunked request bodies and conditional
+ * requests on a kept-alive connection.
+ */
+class RawHttp
+{
+  private RawHttp()
+  {
+  }
+
+  static void send(Socket s, String data) throws IOException
+  {
+    OutputStream os = s.getOutputStream();
+
+    os.write(data.getBytes(StandardCharsets.UTF_8));
+    os.flush();
+  }
+
+  /**
+   * Reads one 200 response, returning its body.
+   */
+  static String readBody(InputStream is) throws IOException
+  {
+    Response response = readResponse(is);
+
+    Assert.assertEquals(response.body(), 200, response.status());
+
+    return response.body();
+  }
+
+  /**
+   * Reads one response, de-chunking the body.
+   */
+  static Response readResponse(InputStream is) throws IOException
+  {
+    String status = readLine(is);
+
+    Assert.assertTrue(status, status.startsWith("HTTP/1.1 "));
+
+    Map<String,String> headers = new HashMap<>();
+
+    String line;
+
+    while (! (line = readLine(is)).isEmpty()) {
+      int p = line.indexOf(':');
+
+      headers.put(line.substring(0, p).trim().toLowerCase(),
+                  line.substring(p + 1).trim());
+    }
+
+    int code = Integer.parseInt(status.substring(9, 12));
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    if (code == 204 || code == 304) {
+    }
+    else if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+      int length;
+
+      while ((length = Integer.parseInt(readLine(is).trim(), 16)) > 0) {
+        read(is, body, length);
+        readLine(is);
+      }
+
+      readLine(is);
+    }
+    else {
+      read(is, body, Integer.parseInt(headers.get("content-length")));
+    }
+
+    return new Response(code, headers,
+                        new String(body.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private static void read(InputStream is, ByteArrayOutputStream os, int length)
+    throws IOException
+  {
+    for (int i = 0; i < length; i++) {
+      int ch = is.read();
+
+      Assert.assertTrue(ch >= 0);
+
+      os.write(ch);
+    }
+  }
+
+  private static String readLine(InputStream is) throws IOException
+  {
+    StringBuilder sb = new StringBuilder();
+
+    int ch;
+
+    while ((ch = is.read()) >= 0 && ch != '\n') {
+      if (ch != '\r') {
+        sb.append((char) ch);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  static class Response
+  {
+    private final int _status;
+    private final Map<String,String> _headers;
+    private final String _body;
+
+    Response(int status, Map<String,String> headers, String body)
+    {
+      _status = status;
+      _headers = headers;
+      _body = body;
+    }
+
+    int status()
+    {
+      return _status;
+    }
+
+    /**
+     * Returns the header value, with a lower-case key.
+     */
+    String header(String key)
+    {
+      return _headers.get(key);
+    }
+
+    String body()
+    {
+      return _body;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.health.inbox;
+
+import java.util.Objects;
+import java.util.logging.Logger;
+
+import com.caucho.v5.amp.inbox.InboxStall;
+import com.caucho.v5.amp.inbox.InboxWatchdog;
+import com.caucho.v5.amp.spi.ShutdownModeAmp;
+import com.caucho.v5.health.meter.MetricRegistry;
+import com.caucho.v5.health.warning.WarningSystem;
+import com.caucho.v5.subsystem.SubSystemBase;
+import com.caucho.v5.subsystem.SystemManager;
+
+import io.baratine.config.Config;
+
+/**
+ * System for the slow-message and stuck-inbox watchdog.
+ *
+ * Incidents are sent to the WarningSystem with the delivering thread's
+ * stack, and counted in the baratine_inbox_* metrics.
+ *
+ * Configuration:
+ * <ul>
+ * <li>inbox.watchdog.enabled - checks while the server runs (true)
+ * <li>inbox.watchdog.period - milliseconds between checks (1000)
+ * <li>inbox.watchdog.slow-time - milliseconds a message may run (10000)
+ * <li>inbox.watchdog.stuck-time - milliseconds a queue may go without
+ *     draining (30000)
+ * </ul>
+ */
+public class InboxWatchdogSystem extends SubSystemBase
+{
+  private static final Logger log
+    = Logger.getLogger(InboxWatchdogSystem.class.getName());
+
+  private final InboxWatchdog _watchdog;
+
+  private final boolean _isEnabled;
+  private final long _period;
+
+  public InboxWatchdogSystem(Config config)
+  {
+    Objects.requireNonNull(config);
+
+    _watchdog = InboxWatchdog.current();
+
+    _isEnabled = config.get("inbox.watchdog.enabled", boolean.class, true);
+    _period = config.get("inbox.watchdog.period", long.class, 1000L);
+
+    _watchdog.slowTime(config.get("inbox.watchdog.slow-time",
+                                  long.class, 10000L));
+    _watchdog.stuckTime(config.get("inbox.watchdog.stuck-time",
+                                   long.class, 30000L));
+  }
+
+  public static InboxWatchdogSystem createAndAddSystem(Config config)
+  {
+    SystemManager system = preCreate(InboxWatchdogSystem.class);
+
+    InboxWatchdogSystem watchdogSystem = new InboxWatchdogSystem(config);
+    system.addSystem(watchdogSystem);
+
+    return watchdogSystem;
+  }
+
+  public static InboxWatchdogSystem current()
+  {
+    return SystemManager.getCurrentSystem(InboxWatchdogSystem.class);
+  }
+
+  public InboxWatchdog watchdog()
+  {
+    return _watchdog;
+  }
+
+  @Override
+  public void start()
+    throws Exception
+  {
+    super.start();
+
+    MetricRegistry registry = MetricRegistry.current();
+
+    registry.counter("baratine_inbox_slow_total",
+                     "Messages that ran longer than the slow time",
+                     _watchdog::slowCount);
+    registry.counter("baratine_inbox_stuck_total",
+                     "Inboxes whose queue did not drain for the stuck time",
+                     _watchdog::stuckCount);
+    registry.gauge("baratine_inbox_stalled",
+                   "Slow messages and stuck inboxes at the last check",
+                   _watchdog::stalledCount);
+
+    if (_isEnabled) {
+      _watchdog.start(_period, this::onStall);
+    }
+  }
+
+  private void onStall(InboxStall stall)
+  {
+    WarningSystem warning = WarningSystem.getCurrent();
+
+    if (warning != null) {
+      warning.sendWarning(this, stall.report());
+    }
+    else {
+      log.warning(stall.report());
+    }
+  }
+
+  @Override
+  public void stop(ShutdownModeAmp mode)
+    throws Exception
+  {
+    _watchdog.stop();
+
+    MetricRegistry registry = MetricRegistry.current();
+
+    registry.remove("baratine_inbox_slow_total");
+    registry.remove("baratine_inbox_stuck_total");
+    registry.remove("baratine_inbox_stalled");
+
+    super.stop(mode);
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _watchdog + "]";
+  }
+}
@@ -77,6 +77,14 @@ public final class CountMeter extends MeterBase implements CountSensor {
   {
     return _value;
   }
+
+  /**
+   * Returns the count since the meter was created.
+   */
+  public final long total()
+  {
+    return _totalCount.get();
+  }
   
   /**
    * Listeners
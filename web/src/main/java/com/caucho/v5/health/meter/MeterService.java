@@ -28,6 +28,7 @@
 
 package com.caucho.v5.health.meter;
 
+import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.caucho.v5.subsystem.SubSystemBase;
@@ -74,6 +75,14 @@ public class MeterService extends SubSystemBase {
     return _meterMap.get(name);
   }
 
+  /**
+   * Returns the registered meters.
+   */
+  public Collection<MeterBase> meters()
+  {
+    return _meterMap.values();
+  }
+
   public static AverageTimeMeter createAverageTimeMeter(String name)
   {
     return create().createAverageTimeMeterImpl(name);
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.health.meter;
+
+/**
+ * A single tagged series of a metric family.
+ *
+ * Each metric renders its exposition line prefix when it is created,
+ * so a scrape only appends cached strings and numbers.
+ */
+abstract public class Metric
+{
+  private final String _name;
+  private final MetricTags _tags;
+
+  protected Metric(String name, MetricTags tags)
+  {
+    _name = name;
+    _tags = tags;
+  }
+
+  public final String name()
+  {
+    return _name;
+  }
+
+  public final MetricTags tags()
+  {
+    return _tags;
+  }
+
+  /**
+   * Returns the line prefix for a sample, e.g.
+   * {@code requests_total{port="8080"} }.
+   */
+  static String line(String name, String labels)
+  {
+    if (labels.isEmpty()) {
+      return name + " ";
+    }
+    else {
+      return name + "{" + labels + "} ";
+    }
+  }
+
+  /**
+   * Writes the metric's samples in text exposition format.
+   */
+  abstract void writeText(StringBuilder sb);
+
+  static void appendValue(StringBuilder sb, double value)
+  {
+    if (value == (long) value && Math.abs(value) < 1e15) {
+      sb.append((long) value);
+    }
+    else if (Double.isNaN(value)) {
+      sb.append("NaN");
+    }
+    else if (Double.isInfinite(value)) {
+      sb.append(value > 0 ? "+Inf" : "-Inf");
+    }
+    else {
+      sb.append(value);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _name + _tags.labels() + "]";
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.health.meter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter. The count is striped across cells, so concurrent
+ * increments from many threads do not contend on a single word.
+ */
+public final class MetricCounter extends Metric
+{
+  private final LongAdder _count = new LongAdder();
+
+  private final String _line;
+
+  MetricCounter(String name, MetricTags tags)
+  {
+    super(name, tags);
+
+    _line = line(name, tags.labels());
+  }
+
+  public void inc()
+  {
+    _count.increment();
+  }
+
+  public void add(long delta)
+  {
+    _count.add(delta);
+  }
+
+  public long get()
+  {
+    return _count.sum();
+  }
+
+  @Override
+  void writeText(StringBuilder sb)
+  {
+    sb.append(_line).append(_count.sum()).append('\n');
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.health.meter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Metrics sharing a name, help and type, one per set of tags.
+ */
+class MetricFamily
+{
+  private final String _name;
+  private final String _type;
+  private final String _header;
+
+  private final ConcurrentHashMap<MetricTags,Metric> _metricMap
+    = new ConcurrentHashMap<>();
+
+  MetricFamily(String name, String help, String type)
+  {
+    _name = name;
+    _type = type;
+
+    StringBuilder sb = new StringBuilder();
+
+    if (help != null && ! help.isEmpty()) {
+      sb.append("# HELP ").append(name).append(' ');
+      sb.append(help.replace("\\", "\\\\").replace("\n", "\\n"));
+      sb.append('\n');
+    }
+
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+
+    _header = sb.toString();
+  }
+
+  String name()
+  {
+    return _name;
+  }
+
+  String type()
+  {
+    return _type;
+  }
+
+  boolean isEmpty()
+  {
+    return _metricMap.isEmpty();
+  }
+
+  Metric metric(MetricTags tags, Function<MetricTags,Metric> factory)
+  {
+    Metric metric = _metricMap.get(tags);
+
+    if (metric == null) {
+      metric = _metricMap.computeIfAbsent(tags, factory);
+    }
+
+    return metric;
+  }
+
+  Metric remove(MetricTags tags)
+  {
+    return _metricMap.remove(tags);
+  }
+
+  void writeText(StringBuilder sb)
+  {
+    if (_metricMap.isEmpty()) {
+      return;
+    }
+
+    sb.append(_header);
+
+    for (Metric metric : _metricMap.values()) {
+      metric.writeText(sb);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _name + "," + _type + "]";
+  }
+}
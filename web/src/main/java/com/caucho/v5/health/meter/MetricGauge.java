@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.health.meter;
+
+import java.util.Objects;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metric whose value is read from a callback at scrape time, either a
+ * gauge or a counter maintained elsewhere, e.g. a PortStats total.
+ */
+public final class MetricGauge extends Metric
+{
+  private final DoubleSupplier _value;
+
+  private final String _line;
+
+  MetricGauge(String name, MetricTags tags, DoubleSupplier value)
+  {
+    super(name, tags);
+
+    Objects.requireNonNull(value);
+
+    _value = value;
+    _line = line(name, tags.labels());
+  }
+
+  public double get()
+  {
+    return _value.getAsDouble();
+  }
+
+  @Override
+  void writeText(StringBuilder sb)
+  {
+    sb.append(_line);
+    appendValue(sb, _value.getAsDouble());
+    sb.append('\n');
+  }
+}
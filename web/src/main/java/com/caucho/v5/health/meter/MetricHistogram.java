@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.health.meter;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.caucho.v5.util.L10N;
+
+/**
+ * Histogram with fixed bucket bounds. Each bucket is a striped counter,
+ * so observing a value is a binary search and an uncontended add.
+ */
+public final class MetricHistogram extends Metric
+{
+  private static final L10N L = new L10N(MetricHistogram.class);
+
+  /**
+   * Default bounds for latencies in seconds.
+   */
+  public static final double []BOUNDS_SECONDS = new double[] {
+    0.001, 0.0025, 0.005, 0.01, 0.025, 0.05,
+    0.1, 0.25, 0.5, 1, 2.5, 5, 10
+  };
+
+  private final double []_bounds;
+  private final LongAdder []_buckets;
+  private final DoubleAdder _sum = new DoubleAdder();
+
+  private final String []_bucketLines;
+  private final String _sumLine;
+  private final String _countLine;
+
+  MetricHistogram(String name, MetricTags tags, double []bounds)
+  {
+    super(name, tags);
+
+    for (int i = 1; i < bounds.length; i++) {
+      if (bounds[i] <= bounds[i - 1]) {
+        throw new IllegalArgumentException(L.l("histogram '{0}' bounds {1} must be increasing",
+                                               name, Arrays.toString(bounds)));
+      }
+    }
+
+    _bounds = bounds.clone();
+
+    _buckets = new LongAdder[bounds.length + 1];
+
+    for (int i = 0; i < _buckets.length; i++) {
+      _buckets[i] = new LongAdder();
+    }
+
+    String labels = tags.labels();
+    String sep = labels.isEmpty() ? "" : ",";
+
+    _bucketLines = new String[_buckets.length];
+
+    for (int i = 0; i < _buckets.length; i++) {
+      StringBuilder le = new StringBuilder();
+
+      if (i < bounds.length) {
+        appendValue(le, bounds[i]);
+      }
+      else {
+        le.append("+Inf");
+      }
+
+      _bucketLines[i] = line(name + "_bucket",
+                             labels + sep + "le=\"" + le + "\"");
+    }
+
+    _sumLine = line(name + "_sum", labels);
+    _countLine = line(name + "_count", labels);
+  }
+
+  public void observe(double value)
+  {
+    int i = Arrays.binarySearch(_bounds, value);
+
+    if (i < 0) {
+      i = -(i + 1);
+    }
+
+    _buckets[i].increment();
+    _sum.add(value);
+  }
+
+  /**
+   * Observes a time in nanoseconds, in seconds.
+   */
+  public void observeNanos(long nanos)
+  {
+    observe(nanos * 1e-9);
+  }
+
+  public long count()
+  {
+    long count = 0;
+
+    for (LongAdder bucket : _buckets) {
+      count += bucket.sum();
+    }
+
+    return count;
+  }
+
+  public double sum()
+  {
+    return _sum.sum();
+  }
+
+  @Override
+  void writeText(StringBuilder sb)
+  {
+    long count = 0;
+
+    for (int i = 0; i < _buckets.length; i++) {
+      count += _buckets[i].sum();
+
+      sb.append(_bucketLines[i]).append(count).append('\n');
+    }
+
+    sb.append(_sumLine);
+    appendValue(sb, _sum.sum());
+    sb.append('\n');
+
+    sb.append(_countLine).append(count).append('\n');
+  }
+}
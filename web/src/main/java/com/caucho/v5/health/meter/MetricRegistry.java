@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.health.meter;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import com.caucho.v5.util.L10N;
+
+/**
+ * Registry of dimensional metrics, rendered in the Prometheus text
+ * exposition format.
+ *
+ * Metrics are families of counters, gauges and histograms keyed by
+ * {@link MetricTags}. Counters and histograms use striped adders, so the
+ * hot path never takes a lock, and every sample line's name and labels
+ * are rendered when the metric is created, so a scrape of many series
+ * only appends cached strings and numbers.
+ *
+ * The meters of the {@link MeterService} are bridged into the export:
+ * a {@link CountMeter} as a counter of its total, any other meter as a
+ * gauge of its last calculated value.
+ */
+public final class MetricRegistry
+{
+  private static final L10N L = new L10N(MetricRegistry.class);
+
+  private static final String COUNTER = "counter";
+  private static final String GAUGE = "gauge";
+  private static final String HISTOGRAM = "histogram";
+
+  private static final MetricRegistry _current = new MetricRegistry();
+
+  private final ConcurrentSkipListMap<String,MetricFamily> _familyMap
+    = new ConcurrentSkipListMap<>();
+
+  private final Map<MeterBase,String []> _meterLineMap
+    = new IdentityHashMap<>();
+  private final HashSet<String> _meterNameSet = new HashSet<>();
+
+  private volatile int _lastSize = 4096;
+
+  public MetricRegistry()
+  {
+  }
+
+  public static MetricRegistry current()
+  {
+    return _current;
+  }
+
+  /**
+   * Metric and tag names follow {@code [a-zA-Z_:][a-zA-Z0-9_:]*}.
+   */
+  public static boolean isValidName(String name)
+  {
+    if (name == null || name.isEmpty()) {
+      return false;
+    }
+
+    for (int i = 0; i < name.length(); i++) {
+      char ch = name.charAt(i);
+
+      if ('a' <= ch && ch <= 'z'
+          || 'A' <= ch && ch <= 'Z'
+          || ch == '_' || ch == ':'
+          || i > 0 && '0' <= ch && ch <= '9') {
+        continue;
+      }
+
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the counter for the name and tags, creating it if needed.
+   */
+  public MetricCounter counter(String name, String help, String ...tags)
+  {
+    return (MetricCounter) family(name, help, COUNTER)
+      .metric(MetricTags.of(tags), t->new MetricCounter(name, t));
+  }
+
+  /**
+   * Registers a counter whose total is maintained elsewhere.
+   */
+  public MetricGauge counter(String name, String help,
+                             LongSupplier total, String ...tags)
+  {
+    return (MetricGauge) family(name, help, COUNTER)
+      .metric(MetricTags.of(tags),
+              t->new MetricGauge(name, t, ()->total.getAsLong()));
+  }
+
+  /**
+   * Registers a gauge read at scrape time.
+   */
+  public MetricGauge gauge(String name, String help,
+                           DoubleSupplier value, String ...tags)
+  {
+    return (MetricGauge) family(name, help, GAUGE)
+      .metric(MetricTags.of(tags), t->new MetricGauge(name, t, value));
+  }
+
+  /**
+   * Returns the histogram for the name and tags, with bounds for
+   * latencies in seconds.
+   */
+  public MetricHistogram histogram(String name, String help, String ...tags)
+  {
+    return histogram(name, help, MetricHistogram.BOUNDS_SECONDS, tags);
+  }
+
+  public MetricHistogram histogram(String name, String help,
+                                   double []bounds, String ...tags)
+  {
+    return (MetricHistogram) family(name, help, HISTOGRAM)
+      .metric(MetricTags.of(tags), t->new MetricHistogram(name, t, bounds));
+  }
+
+  /**
+   * Removes the metric for the name and tags, e.g. when a port closes.
+   */
+  public boolean remove(String name, String ...tags)
+  {
+    MetricFamily family = _familyMap.get(name);
+
+    return family != null && family.remove(MetricTags.of(tags)) != null;
+  }
+
+  private MetricFamily family(String name, String help, String type)
+  {
+    MetricFamily family = _familyMap.get(name);
+
+    if (family == null) {
+      if (! isValidName(name)) {
+        throw new IllegalArgumentException(L.l("'{0}' is an invalid metric name",
+                                               name));
+      }
+
+      family = _familyMap.computeIfAbsent(name,
+                                          n->new MetricFamily(n, help, type));
+    }
+
+    if (! type.equals(family.type())) {
+      throw new IllegalStateException(L.l("metric '{0}' is a {1} and cannot be registered as a {2}",
+                                          name, family.type(), type));
+    }
+
+    return family;
+  }
+
+  /**
+   * Returns the metrics in text exposition format.
+   */
+  public String text()
+  {
+    StringBuilder sb = new StringBuilder(_lastSize + _lastSize / 8);
+
+    writeText(sb);
+
+    _lastSize = sb.length();
+
+    return sb.toString();
+  }
+
+  public void writeText(StringBuilder sb)
+  {
+    for (MetricFamily family : _familyMap.values()) {
+      family.writeText(sb);
+    }
+
+    writeMeters(sb);
+  }
+
+  /**
+   * Bridges the MeterService meters, e.g. "Caucho|Port|Keepalive Count"
+   * as caucho_port_keepalive_count.
+   */
+  private void writeMeters(StringBuilder sb)
+  {
+    MeterService meterService = MeterService.getCurrent();
+
+    if (meterService == null) {
+      return;
+    }
+
+    for (MeterBase meter : meterService.meters()) {
+      String []lines = meterLines(meter);
+
+      if (lines == null) {
+        continue;
+      }
+
+      sb.append(lines[0]);
+      sb.append(lines[1]);
+
+      if (meter instanceof CountMeter) {
+        sb.append(((CountMeter) meter).total());
+      }
+      else {
+        Metric.appendValue(sb, meter.calculate());
+      }
+
+      sb.append('\n');
+    }
+  }
+
+  private String []meterLines(MeterBase meter)
+  {
+    synchronized (_meterLineMap) {
+      String []lines = _meterLineMap.get(meter);
+
+      if (lines == null) {
+        lines = createMeterLines(meter);
+
+        _meterLineMap.put(meter, lines);
+      }
+
+      return lines.length > 0 ? lines : null;
+    }
+  }
+
+  private String []createMeterLines(MeterBase meter)
+  {
+    String name = meterName(meter.getName());
+    String type = GAUGE;
+
+    if (meter instanceof CountMeter) {
+      name = name + "_total";
+      type = COUNTER;
+    }
+
+    // registered metrics and the first meter of a name take precedence
+    if (name.isEmpty()
+        || _familyMap.containsKey(name)
+        || ! _meterNameSet.add(name)) {
+      return new String[0];
+    }
+
+    String header = ("# HELP " + name + " " + meter.getName() + "\n"
+                     + "# TYPE " + name + " " + type + "\n");
+
+    return new String[] { header, Metric.line(name, "") };
+  }
+
+  /**
+   * Converts a meter name to a metric name.
+   */
+  static String meterName(String meterName)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    boolean isSeparator = false;
+
+    for (int i = 0; i < meterName.length(); i++) {
+      char ch = meterName.charAt(i);
+
+      if ('a' <= ch && ch <= 'z' || '0' <= ch && ch <= '9') {
+      }
+      else if ('A' <= ch && ch <= 'Z') {
+        ch = Character.toLowerCase(ch);
+      }
+      else {
+        isSeparator = true;
+        continue;
+      }
+
+      if (isSeparator && sb.length() > 0) {
+        sb.append('_');
+      }
+      else if (sb.length() == 0 && '0' <= ch && ch <= '9') {
+        sb.append('_');
+      }
+
+      isSeparator = false;
+      sb.append(ch);
+    }
+
+    return sb.toString();
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _familyMap.keySet() + "]";
+  }
+}
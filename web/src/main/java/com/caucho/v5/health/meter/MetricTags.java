@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.health.meter;
+
+import java.util.Arrays;
+
+import com.caucho.v5.util.L10N;
+
+/**
+ * Immutable set of metric tags, e.g. service, pod, method or port.
+ *
+ * The tags are sorted by key and rendered once as exposition-format
+ * labels, so rendering a metric only appends the cached string.
+ */
+public final class MetricTags
+{
+  private static final L10N L = new L10N(MetricTags.class);
+
+  public static final MetricTags EMPTY = new MetricTags(new String[0]);
+
+  private final String []_keyValues;
+  private final int _hashCode;
+  private final String _labels;
+
+  private MetricTags(String []keyValues)
+  {
+    _keyValues = keyValues;
+    _hashCode = Arrays.hashCode(keyValues);
+    _labels = renderLabels(keyValues);
+  }
+
+  /**
+   * Creates tags from key, value pairs.
+   */
+  public static MetricTags of(String ...keyValues)
+  {
+    if (keyValues == null || keyValues.length == 0) {
+      return EMPTY;
+    }
+
+    if (keyValues.length % 2 != 0) {
+      throw new IllegalArgumentException(L.l("metric tags {0} must be key, value pairs",
+                                             Arrays.asList(keyValues)));
+    }
+
+    String []tags = keyValues.clone();
+
+    for (int i = 0; i < tags.length; i += 2) {
+      if (! MetricRegistry.isValidName(tags[i]) || tags[i].indexOf(':') >= 0) {
+        throw new IllegalArgumentException(L.l("'{0}' is an invalid metric tag name",
+                                               tags[i]));
+      }
+
+      if (tags[i + 1] == null) {
+        tags[i + 1] = "";
+      }
+    }
+
+    // insertion sort by key; tag lists are short
+    for (int i = 2; i < tags.length; i += 2) {
+      for (int j = i; j > 0 && tags[j - 2].compareTo(tags[j]) > 0; j -= 2) {
+        swap(tags, j - 2, j);
+        swap(tags, j - 1, j + 1);
+      }
+    }
+
+    for (int i = 2; i < tags.length; i += 2) {
+      if (tags[i - 2].equals(tags[i])) {
+        throw new IllegalArgumentException(L.l("metric tag '{0}' is duplicated",
+                                               tags[i]));
+      }
+    }
+
+    return new MetricTags(tags);
+  }
+
+  private static void swap(String []tags, int a, int b)
+  {
+    String tmp = tags[a];
+    tags[a] = tags[b];
+    tags[b] = tmp;
+  }
+
+  public int size()
+  {
+    return _keyValues.length / 2;
+  }
+
+  public String key(int i)
+  {
+    return _keyValues[2 * i];
+  }
+
+  public String value(int i)
+  {
+    return _keyValues[2 * i + 1];
+  }
+
+  /**
+   * The labels in exposition format without braces, e.g.
+   * {@code port="8080",service="/auction"}.
+   */
+  public String labels()
+  {
+    return _labels;
+  }
+
+  private static String renderLabels(String []keyValues)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < keyValues.length; i += 2) {
+      if (i > 0) {
+        sb.append(',');
+      }
+
+      sb.append(keyValues[i]);
+      sb.append("=\"");
+      escape(sb, keyValues[i + 1]);
+      sb.append('"');
+    }
+
+    return sb.toString();
+  }
+
+  static void escape(StringBuilder sb, String value)
+  {
+    for (int i = 0; i < value.length(); i++) {
+      char ch = value.charAt(i);
+
+      switch (ch) {
+      case '\\':
+        sb.append("\\\\");
+        break;
+
+      case '"':
+        sb.append("\\\"");
+        break;
+
+      case '\n':
+        sb.append("\\n");
+        break;
+
+      default:
+        sb.append(ch);
+        break;
+      }
+    }
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return _hashCode;
+  }
+
+  @Override
+  public boolean equals(Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    else if (! (o instanceof MetricTags)) {
+      return false;
+    }
+
+    MetricTags tags = (MetricTags) o;
+
+    return Arrays.equals(_keyValues, tags._keyValues);
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "{" + _labels + "}";
+  }
+}
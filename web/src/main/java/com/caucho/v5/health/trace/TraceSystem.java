@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.health.trace;
+
+import java.nio.file.Paths;
+import java.util.Objects;
+
+import com.caucho.v5.amp.spi.ShutdownModeAmp;
+import com.caucho.v5.amp.trace.TraceRecorder;
+import com.caucho.v5.subsystem.SubSystemBase;
+import com.caucho.v5.subsystem.SystemManager;
+
+import io.baratine.config.Config;
+
+/**
+ * System for the node's trace recorder.
+ *
+ * Configuration:
+ * <ul>
+ * <li>trace.enabled - starts traces at HTTP requests (false)
+ * <li>trace.sample-rate - fraction of requests traced (1.0)
+ * <li>trace.ring-size - spans kept in memory (4096)
+ * <li>trace.service-name - service name of HTTP spans (baratine)
+ * <li>trace.path - file the spans are appended to, one Zipkin v2 JSON
+ *     span per line (none)
+ * <li>trace.export-period - milliseconds between appends (1000)
+ * </ul>
+ */
+public class TraceSystem extends SubSystemBase
+{
+  private final TraceRecorder _recorder;
+
+  private final boolean _isEnabled;
+  private final String _path;
+  private final long _exportPeriod;
+
+  public TraceSystem(Config config)
+  {
+    Objects.requireNonNull(config);
+
+    _recorder = TraceRecorder.current();
+
+    _isEnabled = config.get("trace.enabled", boolean.class, false);
+
+    _recorder.sampleRate(config.get("trace.sample-rate", double.class, 1.0));
+    _recorder.ringSize(config.get("trace.ring-size", int.class, 4096));
+    _recorder.serviceName(config.get("trace.service-name", "baratine"));
+
+    _path = config.get("trace.path", "");
+    _exportPeriod = config.get("trace.export-period", long.class, 1000L);
+  }
+
+  public static TraceSystem createAndAddSystem(Config config)
+  {
+    SystemManager system = preCreate(TraceSystem.class);
+
+    TraceSystem traceSystem = new TraceSystem(config);
+    system.addSystem(traceSystem);
+
+    return traceSystem;
+  }
+
+  public static TraceSystem current()
+  {
+    return SystemManager.getCurrentSystem(TraceSystem.class);
+  }
+
+  public TraceRecorder recorder()
+  {
+    return _recorder;
+  }
+
+  @Override
+  public void start()
+    throws Exception
+  {
+    super.start();
+
+    _recorder.enabled(_isEnabled);
+
+    if (_isEnabled && ! _path.isEmpty()) {
+      _recorder.export(Paths.get(_path), _exportPeriod);
+    }
+  }
+
+  @Override
+  public void stop(ShutdownModeAmp mode)
+    throws Exception
+  {
+    _recorder.enabled(false);
+    _recorder.close();
+
+    super.stop(mode);
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _recorder + "]";
+  }
+}
@@ -33,6 +33,7 @@ import java.io.IOException;
 
 import com.caucho.v5.amp.spi.ShutdownModeAmp;
 import com.caucho.v5.http.dispatch.InvocationManager;
+import com.caucho.v5.http.log.AccessLog;
 import com.caucho.v5.http.protocol.ConnectionHttp;
 import com.caucho.v5.http.protocol.HttpBufferStore;
 import com.caucho.v5.network.port.ConnectionProtocol;
@@ -59,6 +60,11 @@ public interface HttpContainer
 
   int getAccessLogBufferSize();
 
+  /**
+   * Returns the access log, or null if requests are not logged.
+   */
+  AccessLog accessLog();
+
   boolean isSendfileEnabled();
 
   long getSendfileMinLength();
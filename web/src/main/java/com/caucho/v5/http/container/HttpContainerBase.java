@@ -41,6 +41,7 @@ import com.caucho.v5.http.dispatch.InvocationDecoder;
 import com.caucho.v5.http.dispatch.InvocationManager;
 import com.caucho.v5.http.dispatch.InvocationManagerBuilder;
 import com.caucho.v5.http.protocol.ConnectionHttp;
+import com.caucho.v5.http.log.AccessLog;
 import com.caucho.v5.http.protocol.HttpBufferStore;
 import com.caucho.v5.io.ClientDisconnectException;
 import com.caucho.v5.io.TempBuffer;
@@ -81,6 +82,7 @@ public class HttpContainerBase<I extends Invocation> implements HttpContainer
     = new FreeList<>(256);
   
   private int _accessLogBufferSize;
+  private AccessLog _accessLog;
 
   // stats
   
@@ -125,6 +127,7 @@ public class HttpContainerBase<I extends Invocation> implements HttpContainer
       _lifecycle = new Lifecycle(log, toString(), Level.FINE);
 
       _accessLogBufferSize = builder.getAccessLogBufferSize();
+      _accessLog = builder.getAccessLog();
 
       _invocationManager = createInvocationManager(builder);
       Objects.requireNonNull(_invocationManager);
@@ -247,6 +250,12 @@ public class HttpContainerBase<I extends Invocation> implements HttpContainer
     return _accessLogBufferSize;
   }
 
+  @Override
+  public AccessLog accessLog()
+  {
+    return _accessLog;
+  }
+
   /*
   public HttpCacheBase getHttpCache()
   {
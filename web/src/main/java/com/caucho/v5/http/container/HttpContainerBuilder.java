@@ -35,6 +35,7 @@ import com.caucho.v5.bartender.ServerBartender;
 import com.caucho.v5.config.ConfigException;
 import com.caucho.v5.config.types.BytesType;
 import com.caucho.v5.http.log.AccessLog;
+import com.caucho.v5.http.log.AccessLogAsync;
 import com.caucho.v5.loader.EnvironmentClassLoader;
 import com.caucho.v5.subsystem.SystemManager;
 import com.caucho.v5.util.L10N;
@@ -246,6 +247,23 @@ public class HttpContainerBuilder // implements EnvironmentBean // , XmlSchemaBe
     _accessLog = accessLog;
   }
 
+  /**
+   * Returns the access log. Without an explicit log, a server.access-log
+   * path in the config creates an asynchronous access log.
+   */
+  public AccessLog getAccessLog()
+  {
+    if (_accessLog == null && _config != null) {
+      Path path = _config.get("server.access-log", Path.class, (Path) null);
+
+      if (path != null) {
+        _accessLog = AccessLogAsync.create(path, _config);
+      }
+    }
+
+    return _accessLog;
+  }
+
   /**
    * Sets the access log.
    */
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.http.log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.amp.deliver.Deliver;
+import com.caucho.v5.amp.deliver.Outbox;
+import com.caucho.v5.amp.deliver.QueueDeliver;
+import com.caucho.v5.config.ConfigException;
+import com.caucho.v5.http.protocol.RequestHttpBase;
+import com.caucho.v5.http.protocol.RequestHttpWeb;
+import com.caucho.v5.log.impl.RolloverLogBase;
+import com.caucho.v5.util.CurrentTime;
+import com.caucho.v5.util.FreeRing;
+import com.caucho.v5.util.L10N;
+import com.caucho.v5.web.webapp.RequestBaratine;
+
+import io.baratine.config.Config;
+
+/**
+ * Access log that keeps formatting off the request thread.
+ *
+ * The request thread copies the raw request fields into a preallocated
+ * entry and queues it. A single writer formats the entries with the
+ * configured pattern and writes them through the rollover log.
+ */
+public class AccessLogAsync extends AccessLogBase
+{
+  private static final L10N L = new L10N(AccessLogAsync.class);
+  private static final Logger log
+    = Logger.getLogger(AccessLogAsync.class.getName());
+
+  private static final int RING_SIZE_DEFAULT = 4096;
+
+  // how long BLOCK waits for a free entry before dropping
+  private static final long BLOCK_TIMEOUT = 10L;
+
+  private String _format = AccessLogPattern.COMBINED;
+  private int _ringSize = RING_SIZE_DEFAULT;
+  private DropPolicy _dropPolicy = DropPolicy.DROP;
+
+  private final RolloverAccess _rollover = new RolloverAccess();
+
+  private AccessLogPattern _pattern;
+  private String []_headerKeys;
+
+  private FreeRing<AccessLogEntry> _freeRing;
+  private QueueDeliver<AccessLogEntry> _queue;
+
+  private final AtomicLong _logCount = new AtomicLong();
+  private final AtomicLong _dropCount = new AtomicLong();
+
+  public AccessLogAsync()
+  {
+  }
+
+  /**
+   * Creates an access log configured by the server.access-log keys.
+   */
+  public static AccessLogAsync create(Path path, Config config)
+  {
+    Objects.requireNonNull(path);
+    Objects.requireNonNull(config);
+
+    AccessLogAsync accessLog = new AccessLogAsync();
+
+    accessLog.setPath(path);
+    accessLog.setFormat(config.get("server.access-log.format",
+                                   AccessLogPattern.COMBINED));
+    accessLog.setRingSize(config.get("server.access-log.ring-size",
+                                     int.class, RING_SIZE_DEFAULT));
+
+    String policy = config.get("server.access-log.drop-policy", "drop");
+
+    try {
+      accessLog.setDropPolicy(DropPolicy.valueOf(policy.toUpperCase(Locale.ENGLISH)));
+    } catch (IllegalArgumentException e) {
+      throw new ConfigException(L.l("'{0}' is an unknown access log drop-policy. Valid values are 'drop' and 'block'.",
+                                    policy));
+    }
+
+    accessLog.setRolloverSizeBytes(config.get("server.access-log.rollover-size",
+                                              long.class, -1L));
+
+    try {
+      accessLog.init();
+    } catch (IOException e) {
+      throw new ConfigException(e.toString(), e);
+    }
+
+    return accessLog;
+  }
+
+  /**
+   * Sets the Apache-style log format.
+   */
+  public void setFormat(String format)
+  {
+    Objects.requireNonNull(format);
+
+    _format = format;
+  }
+
+  public String getFormat()
+  {
+    return _format;
+  }
+
+  /**
+   * Sets the number of preallocated entries waiting for the writer.
+   */
+  public void setRingSize(int size)
+  {
+    if (size <= 0) {
+      throw new ConfigException(L.l("access log ring-size must be positive: {0}",
+                                    size));
+    }
+
+    _ringSize = size;
+  }
+
+  public int getRingSize()
+  {
+    return _ringSize;
+  }
+
+  /**
+   * Sets what a request does when all entries are waiting for the writer.
+   */
+  public void setDropPolicy(DropPolicy policy)
+  {
+    Objects.requireNonNull(policy);
+
+    _dropPolicy = policy;
+  }
+
+  public DropPolicy getDropPolicy()
+  {
+    return _dropPolicy;
+  }
+
+  public void setRolloverSizeBytes(long size)
+  {
+    _rollover.setRolloverSizeBytes(size);
+  }
+
+  public void setRolloverPeriod(Duration period)
+  {
+    _rollover.setRolloverPeriod(period);
+  }
+
+  public void setArchiveFormat(String format)
+  {
+    _rollover.setArchiveFormat(format);
+  }
+
+  /**
+   * Number of requests logged.
+   */
+  public long getLogCount()
+  {
+    return _logCount.get();
+  }
+
+  /**
+   * Number of requests dropped because the writer fell behind.
+   */
+  public long getDropCount()
+  {
+    return _dropCount.get();
+  }
+
+  @Override
+  public void init()
+    throws IOException
+  {
+    super.init();
+
+    Path path = getPath();
+
+    if (path == null) {
+      throw new ConfigException(L.l("access log requires a path"));
+    }
+
+    if (! Files.exists(path)) {
+      Files.createDirectories(path.toAbsolutePath().getParent());
+      Files.createFile(path);
+    }
+
+    _pattern = new AccessLogPattern(_format);
+    _headerKeys = _pattern.headerKeys();
+
+    _freeRing = new FreeRing<>(_ringSize);
+
+    for (int i = 0; i < _ringSize; i++) {
+      _freeRing.free(new AccessLogEntry(_headerKeys.length));
+    }
+
+    _queue = QueueDeliver.<AccessLogEntry>newQueue()
+                         .size(_ringSize)
+                         .build(new AccessLogWriterTask());
+
+    _rollover.setPath(path);
+
+    if (getPathFormat() != null) {
+      _rollover.setPathFormat(getPathFormat());
+    }
+
+    _rollover.init();
+  }
+
+  /**
+   * Records the request's raw fields. Formatting and I/O are left to
+   * the writer.
+   */
+  @Override
+  public void log(RequestBaratine request)
+  {
+    QueueDeliver<AccessLogEntry> queue = _queue;
+
+    if (queue == null) {
+      return;
+    }
+
+    AccessLogEntry entry = allocateEntry();
+
+    if (entry == null) {
+      _dropCount.incrementAndGet();
+      return;
+    }
+
+    long now = CurrentTime.currentTime();
+
+    entry._endTime = now;
+    entry._startTime = now;
+    entry._status = 200;
+    entry._length = 0;
+
+    if (request instanceof RequestHttpWeb) {
+      RequestHttpBase requestHttp = ((RequestHttpWeb) request).requestHttp();
+
+      if (requestHttp != null) {
+        long startTime = requestHttp.getStartTime();
+
+        if (startTime > 0 && startTime <= now) {
+          entry._startTime = startTime;
+        }
+
+        entry._status = requestHttp.status();
+        entry._length = requestHttp.contentLengthSent();
+      }
+    }
+
+    entry._method = request.method();
+    entry._uri = request.uri();
+    entry._uriRaw = request.uriRaw();
+    entry._protocol = request.version();
+    entry._remote = request.ipRemote();
+
+    String []headerKeys = _headerKeys;
+
+    for (int i = 0; i < headerKeys.length; i++) {
+      entry._headers[i] = request.header(headerKeys[i]);
+    }
+
+    _logCount.incrementAndGet();
+
+    queue.offer(entry);
+    queue.wake();
+  }
+
+  private AccessLogEntry allocateEntry()
+  {
+    AccessLogEntry entry = _freeRing.allocate();
+
+    if (entry != null || _dropPolicy != DropPolicy.BLOCK) {
+      return entry;
+    }
+
+    long expire = CurrentTime.getCurrentTimeActual() + BLOCK_TIMEOUT;
+
+    do {
+      _queue.wake();
+
+      LockSupport.parkNanos(250 * 1000L);
+
+      entry = _freeRing.allocate();
+    } while (entry == null && CurrentTime.getCurrentTimeActual() < expire);
+
+    return entry;
+  }
+
+  private void freeEntry(AccessLogEntry entry)
+  {
+    entry.clear();
+
+    _freeRing.free(entry);
+  }
+
+  @Override
+  public void flush()
+  {
+    QueueDeliver<AccessLogEntry> queue = _queue;
+
+    if (queue == null) {
+      return;
+    }
+
+    long expire = CurrentTime.getCurrentTimeActual() + 100;
+
+    while (! queue.isEmpty()
+           && CurrentTime.getCurrentTimeActual() < expire) {
+      queue.wake();
+
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    try {
+      super.close();
+    } finally {
+      QueueDeliver<AccessLogEntry> queue = _queue;
+      _queue = null;
+
+      if (queue != null) {
+        queue.close();
+      }
+
+      _rollover.close();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[" + getPath()
+            + ",logged=" + _logCount.get()
+            + ",dropped=" + _dropCount.get() + "]");
+  }
+
+  /**
+   * Behavior when every entry is waiting for the writer.
+   */
+  public enum DropPolicy
+  {
+    /**
+     * Drop the request's log entry.
+     */
+    DROP,
+
+    /**
+     * Wait briefly for the writer to free an entry, then drop.
+     */
+    BLOCK;
+  }
+
+  private static class RolloverAccess extends RolloverLogBase
+  {
+    void flushLog()
+      throws IOException
+    {
+      flushStream();
+    }
+  }
+
+  /**
+   * Formats queued entries on the writer thread.
+   */
+  private class AccessLogWriterTask implements Deliver<AccessLogEntry>
+  {
+    private final StringBuilder _sb = new StringBuilder();
+    private byte []_buffer = new byte[BUFFER_SIZE];
+    private int _length;
+
+    @Override
+    public void deliver(AccessLogEntry entry, Outbox outbox)
+    {
+      try {
+        StringBuilder sb = _sb;
+        sb.setLength(0);
+
+        _pattern.format(entry, sb);
+        sb.append('\n');
+
+        append(sb);
+      } catch (Throwable e) {
+        log.log(Level.WARNING, e.toString(), e);
+      } finally {
+        freeEntry(entry);
+      }
+    }
+
+    /**
+     * Encodes the line as UTF-8 into the write buffer.
+     */
+    private void append(StringBuilder sb)
+      throws IOException
+    {
+      int len = sb.length();
+
+      if (_buffer.length - _length < 3 * len) {
+        writeBuffer();
+
+        if (_buffer.length < 3 * len) {
+          _buffer = new byte[3 * len];
+        }
+      }
+
+      byte []buffer = _buffer;
+      int offset = _length;
+
+      for (int i = 0; i < len; i++) {
+        char ch = sb.charAt(i);
+
+        if (ch < 0x80) {
+          buffer[offset++] = (byte) ch;
+        }
+        else if (ch < 0x800) {
+          buffer[offset++] = (byte) (0xc0 | (ch >> 6));
+          buffer[offset++] = (byte) (0x80 | (ch & 0x3f));
+        }
+        else if (Character.isSurrogate(ch)) {
+          buffer[offset++] = '?';
+        }
+        else {
+          buffer[offset++] = (byte) (0xe0 | (ch >> 12));
+          buffer[offset++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+          buffer[offset++] = (byte) (0x80 | (ch & 0x3f));
+        }
+      }
+
+      _length = offset;
+    }
+
+    private void writeBuffer()
+      throws IOException
+    {
+      if (_length > 0) {
+        _rollover.write(_buffer, 0, _length);
+        _length = 0;
+      }
+    }
+
+    @Override
+    public void afterBatch()
+    {
+      try {
+        writeBuffer();
+
+        _rollover.flushLog();
+      } catch (IOException e) {
+        log.log(Level.FINE, e.toString(), e);
+      }
+    }
+
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + getPath() + "]";
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.http.log;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Raw fields of a completed request, recorded by the request thread and
+ * formatted later by the access log writer.
+ *
+ * Entries are preallocated and recycled, so recording a request only
+ * copies primitives and references to strings the request already holds.
+ */
+final class AccessLogEntry
+{
+  long _startTime;
+  long _endTime;
+
+  int _status;
+  long _length;
+
+  String _method;
+  String _uri;
+  String _uriRaw;
+  String _protocol;
+
+  InetSocketAddress _remote;
+
+  final String []_headers;
+
+  AccessLogEntry(int headerCount)
+  {
+    _headers = new String[headerCount];
+  }
+
+  void clear()
+  {
+    _method = null;
+    _uri = null;
+    _uriRaw = null;
+    _protocol = null;
+    _remote = null;
+
+    for (int i = 0; i < _headers.length; i++) {
+      _headers[i] = null;
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _method + " " + _uri + "]";
+  }
+}
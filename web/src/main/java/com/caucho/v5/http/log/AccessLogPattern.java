@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.http.log;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import com.caucho.v5.config.ConfigException;
+import com.caucho.v5.util.L10N;
+
+/**
+ * Apache-style access log format, e.g. the combined format
+ * {@code %h %l %u %t "%r" %s %b "%{Referer}i" "%{User-Agent}i"}.
+ *
+ * Formatting is done by the log writer thread, not the request thread.
+ */
+class AccessLogPattern
+{
+  private static final L10N L = new L10N(AccessLogPattern.class);
+
+  static final String COMBINED
+    = "%h %l %u %t \"%r\" %s %b \"%{Referer}i\" \"%{User-Agent}i\"";
+
+  private final Segment []_segments;
+  private final String []_headerKeys;
+
+  // %t is cached per second, used only by the writer thread
+  private final DateTimeFormatter _timeFormat
+    = DateTimeFormatter.ofPattern("'['dd/MMM/yyyy:HH:mm:ss Z']'", Locale.US)
+                       .withZone(ZoneId.systemDefault());
+  private long _timeSecond = -1;
+  private String _timeString;
+
+  AccessLogPattern(String format)
+  {
+    ArrayList<Segment> segments = new ArrayList<>();
+    ArrayList<String> headerKeys = new ArrayList<>();
+
+    StringBuilder text = new StringBuilder();
+
+    int len = format.length();
+
+    for (int i = 0; i < len; i++) {
+      char ch = format.charAt(i);
+
+      if (ch != '%' || i + 1 == len) {
+        text.append(ch);
+        continue;
+      }
+
+      ch = format.charAt(++i);
+
+      String arg = null;
+
+      if (ch == '{') {
+        int tail = format.indexOf('}', i);
+
+        if (tail < 0 || tail + 1 == len) {
+          throw new ConfigException(L.l("unterminated '%{' in access log format '{0}'",
+                                        format));
+        }
+
+        arg = format.substring(i + 1, tail);
+        i = tail + 1;
+        ch = format.charAt(i);
+      }
+
+      if (ch == '%') {
+        text.append('%');
+        continue;
+      }
+
+      if (text.length() > 0) {
+        segments.add(new TextSegment(text.toString()));
+        text.setLength(0);
+      }
+
+      if (ch == 'i') {
+        if (arg == null) {
+          throw new ConfigException(L.l("'%i' requires a header name in access log format '{0}'",
+                                        format));
+        }
+
+        segments.add(new HeaderSegment(headerKeys.size()));
+        headerKeys.add(arg);
+      }
+      else {
+        segments.add(new CodeSegment(ch, format));
+      }
+    }
+
+    if (text.length() > 0) {
+      segments.add(new TextSegment(text.toString()));
+    }
+
+    _segments = segments.toArray(new Segment[segments.size()]);
+    _headerKeys = headerKeys.toArray(new String[headerKeys.size()]);
+  }
+
+  /**
+   * Request headers the format needs recorded.
+   */
+  String []headerKeys()
+  {
+    return _headerKeys;
+  }
+
+  void format(AccessLogEntry entry, StringBuilder sb)
+  {
+    for (Segment segment : _segments) {
+      segment.format(this, entry, sb);
+    }
+  }
+
+  private String time(long now)
+  {
+    long second = now / 1000;
+
+    if (second != _timeSecond) {
+      _timeString = _timeFormat.format(Instant.ofEpochMilli(now));
+      _timeSecond = second;
+    }
+
+    return _timeString;
+  }
+
+  private static void value(StringBuilder sb, String value)
+  {
+    if (value == null) {
+      sb.append('-');
+    }
+    else {
+      sb.append(value);
+    }
+  }
+
+  abstract static class Segment
+  {
+    abstract void format(AccessLogPattern pattern,
+                         AccessLogEntry entry,
+                         StringBuilder sb);
+  }
+
+  private static class TextSegment extends Segment
+  {
+    private final String _text;
+
+    TextSegment(String text)
+    {
+      _text = text;
+    }
+
+    @Override
+    void format(AccessLogPattern pattern,
+                AccessLogEntry entry,
+                StringBuilder sb)
+    {
+      sb.append(_text);
+    }
+  }
+
+  private static class HeaderSegment extends Segment
+  {
+    private final int _index;
+
+    HeaderSegment(int index)
+    {
+      _index = index;
+    }
+
+    @Override
+    void format(AccessLogPattern pattern,
+                AccessLogEntry entry,
+                StringBuilder sb)
+    {
+      value(sb, entry._headers[_index]);
+    }
+  }
+
+  private static class CodeSegment extends Segment
+  {
+    private final char _code;
+
+    CodeSegment(char code, String format)
+    {
+      switch (code) {
+      case 'a': case 'h': case 'l': case 'u': case 't': case 'r':
+      case 's': case 'b': case 'B': case 'D': case 'T': case 'm':
+      case 'U': case 'H':
+        break;
+
+      default:
+        throw new ConfigException(L.l("unknown '%{0}' in access log format '{1}'",
+                                      code, format));
+      }
+
+      _code = code;
+    }
+
+    @Override
+    void format(AccessLogPattern pattern,
+                AccessLogEntry entry,
+                StringBuilder sb)
+    {
+      switch (_code) {
+      case 'a':
+      case 'h': {
+        InetSocketAddress remote = entry._remote;
+
+        if (remote != null && remote.getAddress() != null) {
+          sb.append(remote.getAddress().getHostAddress());
+        }
+        else {
+          sb.append('-');
+        }
+        break;
+      }
+
+      case 'l':
+      case 'u':
+        sb.append('-');
+        break;
+
+      case 't':
+        sb.append(pattern.time(entry._startTime));
+        break;
+
+      case 'r':
+        value(sb, entry._method);
+        sb.append(' ');
+        value(sb, entry._uriRaw);
+        sb.append(' ');
+        value(sb, entry._protocol);
+        break;
+
+      case 's':
+        sb.append(entry._status);
+        break;
+
+      case 'b':
+        if (entry._length > 0) {
+          sb.append(entry._length);
+        }
+        else {
+          sb.append('-');
+        }
+        break;
+
+      case 'B':
+        sb.append(Math.max(0, entry._length));
+        break;
+
+      case 'D':
+        sb.append(1000 * (entry._endTime - entry._startTime));
+        break;
+
+      case 'T':
+        sb.append((entry._endTime - entry._startTime) / 1000);
+        break;
+
+      case 'm':
+        value(sb, entry._method);
+        break;
+
+      case 'U':
+        value(sb, entry._uri);
+        break;
+
+      case 'H':
+        value(sb, entry._protocol);
+        break;
+
+      default:
+        break;
+      }
+    }
+  }
+}
@@ -38,6 +38,7 @@ import java.util.logging.Logger;
 
 import com.caucho.v5.amp.ServicesAmp;
 import com.caucho.v5.health.shutdown.ShutdownSystem;
+import com.caucho.v5.io.ReadStream;
 import com.caucho.v5.network.port.ConnectionProtocol;
 import com.caucho.v5.network.port.ConnectionTcp;
 import com.caucho.v5.network.port.StateConnection;
@@ -66,6 +67,8 @@ public class ConnectionHttp implements ConnectionProtocol
   private AtomicLong _sequenceClose = new AtomicLong();
 
   private AtomicBoolean _isClosePending = new AtomicBoolean();
+  
+  private final AtomicBoolean _isPipelined = new AtomicBoolean();
 
   /**
    * Creates a new HttpRequest.  New connections reuse the request.
@@ -238,6 +241,8 @@ public class ConnectionHttp implements ConnectionProtocol
 
       StateConnection next = request.service();
       
+      updatePipeline();
+      
       if (next != StateConnection.CLOSE) {
         return next;
       }
@@ -258,12 +263,65 @@ public class ConnectionHttp implements ConnectionProtocol
     return StateConnection.CLOSE;
   }
 
+  /**
+   * Pipelined requests already in the read buffer defer the response
+   * flush, so the responses for a pipelined batch go out in one write.
+   * When the buffer drains, the writer is asked to flush.
+   */
+  private void updatePipeline()
+  {
+    if (isRequestBuffered(connTcp().readStream())) {
+      _isPipelined.set(true);
+    }
+    else {
+      endPipeline();
+    }
+  }
+  
+  private void endPipeline()
+  {
+    if (_isPipelined.compareAndSet(true, false)) {
+      outProxy().flush();
+    }
+  }
+  
+  /**
+   * True if a complete request head is already buffered. A partial
+   * request might wait on the client, so it doesn't hold the flush.
+   */
+  private static boolean isRequestBuffered(ReadStream is)
+  {
+    byte []buffer = is.buffer();
+    int end = is.length();
+    
+    for (int i = is.offset() + 3; i < end; i++) {
+      if (buffer[i] == '\n'
+          && buffer[i - 1] == '\r'
+          && buffer[i - 2] == '\n'
+          && buffer[i - 3] == '\r') {
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  /**
+   * True while the reader has pipelined requests in its buffer.
+   */
+  boolean isPipelined()
+  {
+    return _isPipelined.get();
+  }
+
   /**
    * Called by reader thread on reader end of file.
    */
   @Override
   public StateConnection onCloseRead()
   {
+    endPipeline();
+    
     ConnectionProtocol request = request();
     
     if (request != null) {
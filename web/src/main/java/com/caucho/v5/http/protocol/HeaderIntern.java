@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.http.protocol;
+
+/**
+ * Shared intern table for header names and short header values.
+ *
+ * Parsers look up a header directly from their char buffer, so a repeated
+ * name like "accept-encoding" doesn't allocate a new String per request.
+ * The table is lossy: a colliding string replaces the old slot. Races
+ * are harmless because a slot only ever holds a complete immutable String.
+ */
+public final class HeaderIntern
+{
+  private static final int SIZE = 4096;
+  private static final int MASK = SIZE - 1;
+  
+  private static final int LENGTH_MAX = 64;
+  
+  private static final String []_table = new String[SIZE];
+  
+  private static final String []COMMON = {
+    "Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language",
+    "Authorization", "Cache-Control", "Connection", "Content-Encoding",
+    "Content-Length", "Content-Type", "Cookie", "Date", "Expect", "Host",
+    "If-Match", "If-Modified-Since", "If-None-Match", "If-Range",
+    "Keep-Alive", "Origin", "Pragma", "Range", "Referer",
+    "Sec-WebSocket-Extensions", "Sec-WebSocket-Key",
+    "Sec-WebSocket-Protocol", "Sec-WebSocket-Version", "TE",
+    "Transfer-Encoding", "Upgrade", "User-Agent", "Via",
+    "X-Forwarded-For", "X-Forwarded-Proto", "X-Requested-With",
+    
+    "origin", "pragma", "upgrade", "x-forwarded-for", "x-forwarded-proto",
+    "x-requested-with", "sec-websocket-key", "sec-websocket-version",
+    "sec-websocket-protocol", "sec-websocket-extensions", "te",
+    
+    "*/*", "close", "keep-alive", "no-cache", "max-age=0", "trailers",
+    "gzip", "gzip, deflate", "gzip, deflate, br", "websocket",
+    "text/html", "text/plain", "application/json",
+    "application/x-www-form-urlencoded",
+  };
+  
+  private HeaderIntern()
+  {
+  }
+  
+  /**
+   * Returns the shared string for the chars.
+   */
+  public static String intern(char []buffer, int offset, int length)
+  {
+    if (LENGTH_MAX < length) {
+      return new String(buffer, offset, length);
+    }
+    
+    int hash = 0;
+    
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + buffer[offset + i];
+    }
+    
+    int index = (hash ^ (hash >>> 12)) & MASK;
+    
+    String value = _table[index];
+    
+    if (value != null
+        && value.length() == length
+        && value.hashCode() == hash
+        && isMatch(value, buffer, offset, length)) {
+      return value;
+    }
+    
+    value = new String(buffer, offset, length);
+    
+    _table[index] = value;
+    
+    return value;
+  }
+  
+  /**
+   * Returns the shared string equal to the value, adding the value if
+   * it's not in the table.
+   */
+  public static String intern(String value)
+  {
+    int length = value.length();
+    
+    if (LENGTH_MAX < length) {
+      return value;
+    }
+    
+    int hash = value.hashCode();
+    int index = (hash ^ (hash >>> 12)) & MASK;
+    
+    String oldValue = _table[index];
+    
+    if (value.equals(oldValue)) {
+      return oldValue;
+    }
+    
+    _table[index] = value;
+    
+    return value;
+  }
+  
+  private static boolean isMatch(String value,
+                                 char []buffer, int offset, int length)
+  {
+    for (int i = 0; i < length; i++) {
+      if (value.charAt(i) != buffer[offset + i]) {
+        return false;
+      }
+    }
+    
+    return true;
+  }
+  
+  static {
+    for (String value : COMMON) {
+      intern(value);
+    }
+  }
+}
@@ -264,6 +264,42 @@ public abstract class OutHttpApp
     tBuf.free();
   }
 
+  /**
+   * Writes a buffer to the connection without copying it into the
+   * response buffer, like a file region the socket can send directly.
+   * The stream takes ownership of the buffer.
+   */
+  public void writeDirect(Buffer data)
+  {
+    Objects.requireNonNull(data);
+    
+    if (isClosed() || isHead()) {
+      data.free();
+      return;
+    }
+    
+    // flushes pending data and the headers
+    flush(false);
+    
+    if (! isDirectEnabled()) {
+      write(data);
+      data.free();
+      return;
+    }
+    
+    _contentLength += data.length();
+    
+    flush(data, false);
+  }
+  
+  /**
+   * True if the stream can pass unframed buffers to the connection.
+   */
+  protected boolean isDirectEnabled()
+  {
+    return false;
+  }
+
   /**
    * Returns the next byte buffer.
    */
@@ -485,6 +521,9 @@ public abstract class OutHttpApp
       boolean isCommitted() { return true; }
       boolean isClosed() { return true; }
       boolean isClosing() { return true; }
+      
+      // a bodiless response like a 304 writes its headers after close
+      State toHead() { return this; }
     };
     
     boolean isHead() { return false; }
@@ -89,6 +89,12 @@ public class OutHttpApp1
     return _isChunked;
   }
   
+  @Override
+  protected boolean isDirectEnabled()
+  {
+    return ! _isChunked;
+  }
+  
   @Override
   public void upgrade()
   {
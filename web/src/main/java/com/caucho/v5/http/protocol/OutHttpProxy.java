@@ -46,6 +46,11 @@ public interface OutHttpProxy
    */
   void write(OutHttpTcp outHttp, Buffer data, boolean isEnd);
   
+  /**
+   * Flushes responses held back while pipelined requests were pending.
+   */
+  void flush();
+  
   /**
    * Disconnect the connection
    */
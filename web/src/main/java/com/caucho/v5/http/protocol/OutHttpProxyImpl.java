@@ -137,6 +137,14 @@ class OutHttpProxyImpl implements OutHttpProxy
     } while (isEnd);
   }
 
+  /**
+   * The flush itself is in afterBatch.
+   */
+  @Override
+  public void flush()
+  {
+  }
+
   @Override
   public void disconnect(OutHttpTcp out)
   {
@@ -156,6 +164,11 @@ class OutHttpProxyImpl implements OutHttpProxy
   @AfterBatch
   public void afterBatch()
   {
+    if (! isClose() && connHttp().isPipelined()) {
+      // more requests are already read; their responses share the write
+      return;
+    }
+    
     try {
       if (isClose()) {
         conn().writeStream().close();
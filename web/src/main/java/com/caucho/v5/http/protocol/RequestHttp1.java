@@ -1845,6 +1845,8 @@ public class RequestHttp1 extends RequestHttpBase
   @Override
   public void closeWrite()
   {
+    logAccess();
+    
     super.closeWrite();
     
     _state = _state.toFree();
@@ -53,6 +53,7 @@ import com.caucho.v5.http.container.HttpContainer;
 import com.caucho.v5.http.dispatch.Invocation;
 import com.caucho.v5.http.dispatch.InvocationDecoder;
 import com.caucho.v5.http.dispatch.InvocationManager;
+import com.caucho.v5.http.log.AccessLog;
 import com.caucho.v5.http.log.LogBuffer;
 import com.caucho.v5.io.IoUtil;
 import com.caucho.v5.io.OutputStreamWithBuffer;
@@ -64,8 +65,8 @@ import com.caucho.v5.util.CaseInsensitiveIntMap;
 import com.caucho.v5.util.CharBuffer;
 import com.caucho.v5.util.CharSegment;
 import com.caucho.v5.util.ClockCurrent;
+import com.caucho.v5.util.CurrentTime;
 import com.caucho.v5.util.L10N;
-import com.caucho.v5.util.LruCache;
 import com.caucho.v5.web.CookieWeb;
 import com.caucho.v5.web.webapp.InvocationBaratine;
 import com.caucho.v5.web.webapp.RequestBaratine;
@@ -176,9 +177,6 @@ public abstract class RequestHttpBase implements OutHttpTcp, RequestOut
   private static final ConcurrentHashMap<String,ContentType> _contentTypeMap
   = new ConcurrentHashMap<>();
   
-  private static final LruCache<CharBuffer,String> _nameCache
-    = new LruCache<>(1024);
-  
   private static final int HEADER_CACHE_CONTROL = 1;
   private static final int HEADER_CONTENT_TYPE = HEADER_CACHE_CONTROL + 1;
   private static final int HEADER_CONTENT_LENGTH = HEADER_CONTENT_TYPE + 1;
@@ -366,7 +364,7 @@ public abstract class RequestHttpBase implements OutHttpTcp, RequestOut
     //_request = request;
     //_requestFacade = getHttp().createFacade(this);
     
-    _startTime = -1;
+    _startTime = CurrentTime.currentTime();
     _expireTime = -1;
     
     _isUpgrade = false;
@@ -404,6 +402,14 @@ public abstract class RequestHttpBase implements OutHttpTcp, RequestOut
     return connHttp().outProxy();
   }
   
+  /**
+   * Pushes a resource to the client. Only HTTP/2 supports push.
+   */
+  public boolean push(String path)
+  {
+    return false;
+  }
+  
   public ProtocolHttp protocolHttp()
   {
     return _protocolHttp;
@@ -465,6 +471,29 @@ public abstract class RequestHttpBase implements OutHttpTcp, RequestOut
   public void closeWrite()
   {
   }
+  
+  /**
+   * Records the completed request in the container's access log.
+   */
+  protected void logAccess()
+  {
+    HttpContainer http = http();
+    RequestBaratine request = _request;
+    
+    if (http == null || request == null) {
+      return;
+    }
+    
+    AccessLog accessLog = http.accessLog();
+    
+    if (accessLog != null) {
+      try {
+        accessLog.log(request);
+      } catch (Exception e) {
+        log.log(Level.FINER, e.toString(), e);
+      }
+    }
+  }
 
   public Invocation parseInvocation()
     throws IOException
@@ -1309,17 +1338,7 @@ public abstract class RequestHttpBase implements OutHttpTcp, RequestOut
   
   private String toName(CharBuffer cb)
   {
-    String value = _nameCache.get(cb);
-    
-    if (value == null) {
-      value = cb.toString();
-      
-      cb = new CharBuffer(value);
-      
-      _nameCache.put(cb, value);
-    }
-    
-    return value;
+    return HeaderIntern.intern(cb.buffer(), 0, cb.length());
   }
 
   /**
@@ -1764,7 +1783,7 @@ public abstract class RequestHttpBase implements OutHttpTcp, RequestOut
     _statusMessage = message;
   }
   
-  protected int status()
+  public int status()
   {
     return _statusCode;
   }
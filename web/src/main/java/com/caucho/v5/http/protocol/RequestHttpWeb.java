@@ -273,6 +273,11 @@ public class RequestHttpWeb implements ConnectionProtocol
   private StateConnection readBody()
   {
     try {
+      if (! isBodyReadable()) {
+        // suspended until the body consumer wakes the connection
+        return StateConnection.IDLE;
+      }
+      
       _requestHttp.readBodyChunk();
       
       /*
@@ -310,6 +315,14 @@ public class RequestHttpWeb implements ConnectionProtocol
   protected void onBodyChunk(TempBuffer tBuf)
   {
   }
+  
+  /**
+   * False when a streaming body consumer has no credits for more data.
+   */
+  protected boolean isBodyReadable()
+  {
+    return true;
+  }
 
   public void onBodyComplete()
   {
@@ -41,7 +41,7 @@ import com.caucho.v5.io.TempBuffer;
  */
 public class ChannelOutHttp2
 {
-  static final int FRAME_LENGTH = 8;
+  static final int FRAME_LENGTH = 9;
   
   private static final byte[] BYTE_EMPTY = new byte[0];
   
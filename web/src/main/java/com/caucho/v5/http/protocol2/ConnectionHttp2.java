@@ -34,15 +34,19 @@ import java.util.Objects;
 
 import com.caucho.v5.http.container.HttpContainer;
 import com.caucho.v5.http.protocol.ConnectionHttp;
+import com.caucho.v5.http.protocol.OutHttpTcp;
 import com.caucho.v5.http.protocol.ProtocolHttp;
 import com.caucho.v5.http.protocol.RequestHttp1;
 import com.caucho.v5.http.protocol.RequestHttpWeb;
 import com.caucho.v5.io.SocketBar;
+import com.caucho.v5.io.WriteStream;
 import com.caucho.v5.network.port.ConnectionTcp;
 import com.caucho.v5.network.port.StateConnection;
 import com.caucho.v5.util.FreeRing;
 import com.caucho.v5.web.webapp.RequestBaratineImpl;
 
+import io.baratine.io.Buffer;
+
 
 /**
  * Duplex connection handler for HTTP.
@@ -58,6 +62,8 @@ public class ConnectionHttp2 extends ConnectionHttp
   private FreeRing<RequestHttp2> _freeRequest = new FreeRing<>(8);
   //private ConnectionHttp _connHttp;
   private boolean _isHuffman;
+  
+  private final WriteScheduled _writeScheduled = new WriteScheduled();
 
   public ConnectionHttp2(ProtocolHttp protocolHttp,
                          HttpContainer httpContainer,
@@ -223,9 +229,50 @@ public class ConnectionHttp2 extends ConnectionHttp
   }
   */
   
+  /**
+   * Resumes blocked DATA frames from the writer thread after the peer
+   * opens its window.
+   */
+  @Override
+  public void onWindowUpdate()
+  {
+    outProxy().write(_writeScheduled, null, false);
+  }
+  
   @Override
   public void onGoAway()
   {
     // try { Thread.sleep(1000); } catch (Exception e) {}
   }
+  
+  /**
+   * Writes the scheduler's pending DATA frames.
+   */
+  private class WriteScheduled implements OutHttpTcp
+  {
+    @Override
+    public boolean canWrite(long sequence)
+    {
+      return true;
+    }
+    
+    @Override
+    public boolean write(WriteStream os, Buffer data, boolean isEnd)
+    {
+      try {
+        getOut().scheduler().write(os);
+        
+        os.flush();
+        
+        return false;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    
+    @Override
+    public void disconnect(WriteStream os)
+    {
+    }
+  }
 }
@@ -31,33 +31,45 @@ package com.caucho.v5.http.protocol2;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.Arrays;
+
+import com.caucho.v5.http.protocol.HeaderIntern;
+import com.caucho.v5.util.L10N;
 
 /**
  * Header compression/decompression common methods and structures.
  */
 class HeaderCommon
 {
-  private static final HashMap<String,TableEntry> _tableKeyStatic;
-  private static final HashMap<TableEntry,TableEntry> _tableEntryStatic;
+  private static final L10N L = new L10N(HeaderCommon.class);
+  
+  /**
+   * Index of the first dynamic table entry.
+   */
+  static final int STATIC_TAIL = 62;
+  
+  private static final int STATIC_HASH_BITS = 9;
+  
   private static final TableEntry []_staticEntryArray;
+  
+  // perfect hashes of the static table by (key, value) and by key
+  private static final int _staticEntryMul;
+  private static final byte []_staticEntryHash;
+  private static final int _staticKeyMul;
+  private static final byte []_staticKeyHash;
 
   private static final HuffmanCode []_huffmanEncoding;
-  private static final char [][]_huffmanDecodeTable;
-
-  private static HuffmanProgram _huffmanDecodeProgram;
-
-  protected Map<String,TableEntry> getTableKeyStatic()
-  {
-    return _tableKeyStatic;
-  }
-
-  protected Map<TableEntry,TableEntry> tableEntryStatic()
-  {
-    return _tableEntryStatic;
-  }
+  
+  private static final int HUFFMAN_EOS = 256;
+  
+  private static final int HUFFMAN_EMIT = 0x1;
+  private static final int HUFFMAN_ACCEPT = 0x2;
+  private static final int HUFFMAN_FAIL = 0x4;
+  
+  // 4-bit decode state machine, indexed by (state << 4) | nibble
+  private static final byte []_huffmanState;
+  private static final byte []_huffmanSymbol;
+  private static final byte []_huffmanFlags;
 
   protected TableEntry []getEntryArrayStatic()
   {
@@ -68,23 +80,101 @@ class HeaderCommon
   {
     return _huffmanEncoding;
   }
+  
+  /**
+   * Returns the static table index for the key and value, or 0.
+   */
+  protected static int staticIndex(String key, String value)
+  {
+    int hash = key.hashCode() * 31 + value.hashCode();
+    
+    int index = _staticEntryHash[(hash * _staticEntryMul) 
+                                 >>> (32 - STATIC_HASH_BITS)];
+    
+    if (index > 0) {
+      TableEntry entry = _staticEntryArray[index];
+      
+      if (entry.key().equals(key) && entry.getValue().equals(value)) {
+        return index;
+      }
+    }
+    
+    return 0;
+  }
+  
+  /**
+   * Returns the first static table index for the key, or 0.
+   */
+  protected static int staticKeyIndex(String key)
+  {
+    int index = _staticKeyHash[(key.hashCode() * _staticKeyMul) 
+                               >>> (32 - STATIC_HASH_BITS)];
+    
+    if (index > 0 && _staticEntryArray[index].key().equals(key)) {
+      return index;
+    }
+    
+    return 0;
+  }
 
   protected int read()
     throws IOException
   {
     return -1;
   }
+  
+  /**
+   * Writes a string length prefix with the huffman flag in opcode.
+   */
+  protected static int writeStringLength(byte []buffer, int offset,
+                                         int opcode, int length)
+  {
+    if (length < 0x7f) {
+      buffer[offset++] = (byte) (opcode + length);
+      
+      return offset;
+    }
+    
+    buffer[offset++] = (byte) (opcode + 0x7f);
+    
+    length -= 0x7f;
+    
+    while (length >= 0x80) {
+      buffer[offset++] = (byte) (0x80 | (length & 0x7f));
+      length >>= 7;
+    }
+    
+    buffer[offset++] = (byte) length;
+    
+    return offset;
+  }
+  
+  /**
+   * Returns the huffman encoded length in bytes.
+   */
+  protected static int huffmanLength(String value, HuffmanCode []table)
+  {
+    int strlen = value.length();
+    long bits = 0;
+    
+    for (int i = 0; i < strlen; i++) {
+      bits += table[value.charAt(i)].getLength();
+    }
+    
+    return (int) ((bits + 7) >> 3);
+  }
 
-  protected static int huffmanEncode(byte []buffer, int head, String value,
+  protected static int huffmanEncode(byte []buffer, int offset, String value,
                                      HuffmanCode []table)
   {
     int strlen = value.length();
+    
+    offset = writeStringLength(buffer, offset, 0x80, 
+                               huffmanLength(value, table));
 
     long data = 0;
     int bits = 0;
 
-    int offset = head;
-
     for (int i = 0; i < strlen; i++) {
       int ch = value.charAt(i);
 
@@ -97,21 +187,17 @@ class HeaderCommon
       bits += length;
 
       while (bits >= 8) {
-        buffer[++offset] = (byte) (data >> (bits - 8));
+        buffer[offset++] = (byte) (data >> (bits - 8));
         bits -= 8;
       }
     }
 
     if (bits > 0) {
-      buffer[++offset] = (byte) ((data << (8 - bits))
-                                | (0xff >> bits));
+      buffer[offset++] = (byte) ((data << (8 - bits))
+                                 | (0xff >> bits));
     }
 
-    int len = offset - head;
-
-    buffer[head] = (byte) (0x80 + len);
-
-    return offset + 1;
+    return offset;
   }
 
   private static void addTableStatic(ArrayList<TableEntry> list,
@@ -120,218 +206,84 @@ class HeaderCommon
   {
     int id = list.size();
 
-    TableEntryStatic entry = new TableEntryStatic(id, key, value);
-
-    _tableKeyStatic.put(key, entry);
-    _tableEntryStatic.put(entry, entry);
-
-    list.add(entry);
+    list.add(new TableEntry(id,
+                            HeaderIntern.intern(key),
+                            HeaderIntern.intern(value)));
   }
 
+  /**
+   * Decodes a huffman string of length bytes into chars, consuming
+   * a nibble at a time through the state machine.
+   */
   protected int huffmanDecode(int length, char []chars)
     throws IOException
   {
-    long chunk = 0;
-    int bits = 0;
+    byte []stateTable = _huffmanState;
+    byte []symbolTable = _huffmanSymbol;
+    byte []flagsTable = _huffmanFlags;
+    
+    int state = 0;
+    int flags = HUFFMAN_ACCEPT;
     int offset = 0;
-    char [][]charTable = _huffmanDecodeTable;
-    HuffmanProgram topProgram = _huffmanDecodeProgram;
-    int tailBits = 0;
-
-    while (true) {
-      while (bits <= 56) {
-        if (length > 0) {
-          int d = read();
-          
-          // System.out.println("  HC: 0x" + Integer.toHexString(d));
-
-          chunk = (chunk << 8) | d;
-          length--;
-
-          bits += 8;
-        }
-        else if (bits <= 0) {
-          return offset;
-        } 
-        else {
-          //int rest = (64 - bits) & ~0x7;
-          int rest = 8;
-
-          //chunk = (chunk << rest) | ((1L << rest) - 1);
-          chunk = (chunk << rest) | 0xff;
-          bits += rest;
-          tailBits += rest;
-          
-          break;
-        }
+    
+    for (; length > 0; length--) {
+      int d = read();
+      
+      if (d < 0) {
+        throw new Http2ProtocolException(L.l("Unexpected end of header"));
       }
-
-      int top = (int) ((chunk >> (bits - 8)) & 0xff);
-      int index;
-
-      if (true) {
-        //System.out.println("  TOP: 0x" + Integer.toHexString(top));
-        HuffmanProgram ptr = topProgram.getChild(top);
-
-        int bitOff = 16;
-
-        while (ptr != null && ! ptr.isFinal()) {
-          int t1 = (int) ((chunk >> (bits - bitOff)) & 0xff);
-
-          ptr = ptr.getChild(t1);
-          bitOff += 8;
+      
+      for (int shift = 4; shift >= 0; shift -= 4) {
+        int i = (state << 4) | ((d >> shift) & 0xf);
+        
+        flags = flagsTable[i];
+        
+        if ((flags & HUFFMAN_FAIL) != 0) {
+          throw new Http2ProtocolException(L.l("Invalid huffman string"));
         }
-
-        if (ptr == null || bits - tailBits < ptr.getLength()) {
-          return offset;
+        
+        if ((flags & HUFFMAN_EMIT) != 0) {
+          chars[offset++] = (char) (symbolTable[i] & 0xff);
         }
-
-        chars[offset++] = (char) ptr.getChar();
-        bits -= ptr.getLength();
-        continue;
+        
+        state = stateTable[i] & 0xff;
       }
-
-      switch (top) {
-      case 0x00: case 0x01: case 0x02: case 0x03:
-      case 0x04: case 0x05: case 0x06: case 0x07:
-      case 0x08: case 0x09: case 0x0a: case 0x0b:
-      case 0x0c: case 0x0d: case 0x0e: case 0x0f:
-
-      case 0x10: case 0x11: case 0x12: case 0x13:
-      case 0x14: case 0x15: case 0x16: case 0x17:
-      case 0x18: case 0x19: case 0x1a: case 0x1b:
-      case 0x1c: case 0x1d: case 0x1e: case 0x1f:
-        // [4] '/', 'e'
-        index = (int) (top >> 4);
-        bits -= 4;
-
-        chars[offset++] = charTable[4][index];
-        break;
-
-      case 0x20: case 0x21: case 0x22: case 0x23:
-      case 0x24: case 0x25: case 0x26: case 0x27:
-      case 0x28: case 0x29: case 0x2a: case 0x2b:
-      case 0x2c: case 0x2d: case 0x2e: case 0x2f:
-
-      case 0x30: case 0x31: case 0x32: case 0x33:
-      case 0x34: case 0x35: case 0x36: case 0x37:
-      case 0x38: case 0x39: case 0x3a: case 0x3b:
-      case 0x3c: case 0x3d: case 0x3e: case 0x3f:
-
-      case 0x40: case 0x41: case 0x42: case 0x43:
-      case 0x44: case 0x45: case 0x46: case 0x47:
-      case 0x48: case 0x49: case 0x4a: case 0x4b:
-      case 0x4c: case 0x4d: case 0x4e: case 0x4f:
-
-      case 0x50: case 0x51: case 0x52: case 0x53:
-      case 0x54: case 0x55: case 0x56: case 0x57:
-      case 0x58: case 0x59: case 0x5a: case 0x5b:
-      case 0x5c: case 0x5d: case 0x5e: case 0x5f:
-
-      case 0x60: case 0x61: case 0x62: case 0x63:
-      case 0x64: case 0x65: case 0x66: case 0x67:
-      case 0x68: case 0x69: case 0x6a: case 0x6b:
-      case 0x6c: case 0x6d: case 0x6e: case 0x6f:
-
-      case 0x70: case 0x71: case 0x72: case 0x73:
-      case 0x74: case 0x75: case 0x76: case 0x77:
-      case 0x78: case 0x79: case 0x7a: case 0x7b:
-      case 0x7c: case 0x7d: case 0x7e: case 0x7f:
-
-      case 0x80: case 0x81: case 0x82: case 0x83:
-      case 0x84: case 0x85: case 0x86: case 0x87:
-      case 0x88: case 0x89: case 0x8a: case 0x8b:
-      case 0x8c: case 0x8d: case 0x8e: case 0x8f:
-        // [5] '.', '0', '1', '2',
-        index = (int) ((top - 0x20) >> 3);
-        bits -= 5;
-
-        chars[offset++] = charTable[5][index];
-        break;
-
-      case 0x90: case 0x91: case 0x92: case 0x93:
-      case 0x94: case 0x95: case 0x96: case 0x97:
-      case 0x98: case 0x99: case 0x9a: case 0x9b:
-      case 0x9c: case 0x9d: case 0x9e: case 0x9f:
-
-      case 0xa0: case 0xa1: case 0xa2: case 0xa3:
-      case 0xa4: case 0xa5: case 0xa6: case 0xa7:
-      case 0xa8: case 0xa9: case 0xaa: case 0xab:
-      case 0xac: case 0xad: case 0xae: case 0xaf:
-
-      case 0xb0: case 0xb1: case 0xb2: case 0xb3:
-      case 0xb4: case 0xb5: case 0xb6: case 0xb7:
-      case 0xb8: case 0xb9: case 0xba: case 0xbb:
-      case 0xbc: case 0xbd: case 0xbe: case 0xbf:
-
-      case 0xc0: case 0xc1: case 0xc2: case 0xc3:
-      case 0xc4: case 0xc5: case 0xc6: case 0xc7:
-      case 0xc8: case 0xc9: case 0xca: case 0xcb:
-      case 0xcc: case 0xcd: case 0xce: case 0xcf:
-
-      case 0xd0: case 0xd1: case 0xd2: case 0xd3:
-      case 0xd4: case 0xd5: case 0xd6: case 0xd7:
-      case 0xd8: case 0xd9: case 0xda: case 0xdb:
-        // [6] '%' ... 'w'
-        index = (int) ((top - 0x90) >> 2);
-        bits -= 6;
-
-        chars[offset++] = charTable[6][index];
-        break;
-
-      case 0xdc: case 0xdd: case 0xde: case 0xdf:
-
-      case 0xe0: case 0xe1: case 0xe2: case 0xe3:
-      case 0xe4: case 0xe5: case 0xe6: case 0xe7:
-        // [7]
-        index = (int) ((top - 0xdc) >> 1);
-        bits -= 7;
-
-        chars[offset++] = charTable[7][index];
-        break;
-
-      case 0xe8: case 0xe9: case 0xea: case 0xeb:
-      case 0xec: case 0xed: case 0xee: case 0xef:
-
-      case 0xf0: case 0xf1: case 0xf2: case 0xf3:
-      case 0xf4: case 0xf5:
-        // [8]
-        index = (int) (top - 0xe8);
-        bits -= 8;
-
-        chars[offset++] = charTable[8][index];
-        break;
-
-      case 0xf6: case 0xf7: case 0xf8: case 0xf9:
-      case 0xfa: case 0xfb: case 0xfc: case 0xfd:
-        // [9]
-
-      case 0xfe:
-        // [9-10]
-
-      case 0xff:
-        // [10 - 27]
-
-      {
-        HuffmanProgram ptr = topProgram.getChild(top);
-
-        int bitOff = 16;
-
-        while (ptr != null && ! ptr.isFinal()) {
-          int t1 = (int) ((chunk >> (bits - bitOff)) & 0xff);
-
-          ptr = ptr.getChild(t1);
-          bitOff += 8;
+    }
+    
+    if ((flags & HUFFMAN_ACCEPT) == 0) {
+      throw new Http2ProtocolException(L.l("Invalid huffman padding"));
+    }
+    
+    return offset;
+  }
+  
+  /**
+   * Finds a multiplier giving a collision-free hash table for the values.
+   */
+  private static int perfectHash(int []hashes, boolean []isEntry,
+                                 byte []table)
+  {
+    for (int mul = 0x9e3779b1; ; mul += 2) {
+      Arrays.fill(table, (byte) 0);
+      
+      boolean isValid = true;
+      
+      for (int i = 1; i < hashes.length && isValid; i++) {
+        if (! isEntry[i]) {
+          continue;
         }
-
-        if (ptr == null || bits - tailBits < ptr.getLength()) {
-          return offset;
+        
+        int slot = (hashes[i] * mul) >>> (32 - STATIC_HASH_BITS);
+        
+        if (table[slot] != 0) {
+          isValid = false;
         }
-
-        chars[offset++] = (char) ptr.getChar();
-        bits -= ptr.getLength();
-        break;
+        
+        table[slot] = (byte) i;
       }
+      
+      if (isValid) {
+        return mul;
       }
     }
   }
@@ -342,23 +294,11 @@ class HeaderCommon
     private String _value;
 
     private int _hashCode;
-    
-    //private long _reference;
-    
-    // used for static
-    private TableEntry _next;
 
     public TableEntry()
     {
     }
 
-    public TableEntry(TableEntry next)
-    {
-      update(0, next.key(), next.getValue());
-      
-      _next = next;
-    }
-
     public TableEntry(long sequence, String key, String value)
     {
       update(sequence, key, value);
@@ -374,28 +314,6 @@ class HeaderCommon
       _sequence = sequence;
     }
 
-    /*
-    public final void setReference(long reference)
-    {
-      _reference = reference;
-    }
-
-    public final long reference()
-    {
-      return _reference;
-    }
-    */
-
-    public boolean isStatic()
-    {
-      return false;
-    }
-    
-    public TableEntry getNext()
-    {
-      return _next;
-    }
-
     public void update(long sequence, String key, String value)
     {
       _sequence = sequence;
@@ -442,37 +360,19 @@ class HeaderCommon
     }
   }
 
-  private static class TableEntryStatic extends TableEntry
-  {
-    public TableEntryStatic(long sequence, String key, String value)
-    {
-      super(sequence, key, value);
-    }
 
-    @Override
-    public boolean isStatic()
-    {
-      return true;
-    }
-  }
-
-  abstract private static class HuffmanProgram {
+  static final class HuffmanCode {
     private final int _ch;
     private final int _code;
     private final int _length;
-
-    HuffmanProgram(int ch, int code, int length)
+    
+    HuffmanCode(int ch, int code, int length)
     {
       _ch = ch;
       _code = code;
       _length = length;
     }
 
-    public boolean isFinal()
-    {
-      return false;
-    }
-
     final int getChar()
     {
       return _ch;
@@ -488,82 +388,6 @@ class HeaderCommon
       return _length;
     }
 
-    HuffmanProgram getChild(int i)
-    {
-      throw new UnsupportedOperationException(getClass().getName());
-    }
-
-    HuffmanProgram addPartial(int code)
-    {
-      throw new UnsupportedOperationException(getClass().getName());
-    }
-
-    void addFinal(int code, HuffmanCode entry)
-    {
-      throw new UnsupportedOperationException(getClass().getName());
-    }
-  }
-
-  private static final class HuffmanPartial extends HuffmanProgram {
-    private HuffmanProgram []_children = new HuffmanProgram[256];
-
-    HuffmanPartial()
-    {
-      super(0, 0, 1);
-    }
-
-    @Override
-    HuffmanProgram getChild(int i)
-    {
-      return _children[i];
-    }
-
-    @Override
-    HuffmanProgram addPartial(int code)
-    {
-      code = code & 0xff;
-
-      HuffmanProgram child = _children[code];
-
-      if (child == null) {
-        child = new HuffmanPartial();
-        _children[code] = child;
-      }
-      else if (child.isFinal()) {
-        throw new IllegalStateException("0x" + Integer.toHexString(code) + " " + String.valueOf(child));
-      }
-
-      return child;
-    }
-
-    @Override
-    void addFinal(int code, HuffmanCode entry)
-    {
-      code = code & 0xff;
-
-      HuffmanProgram child = _children[code];
-
-      if (child == null) {
-        _children[code] = entry;
-      }
-      else {
-        throw new IllegalStateException("0x" + Integer.toHexString(code) + " " + String.valueOf(child));
-      }
-    }
-  }
-
-  static final class HuffmanCode extends HuffmanProgram {
-    HuffmanCode(int ch, int code, int length)
-    {
-      super(ch, code, length);
-    }
-
-    @Override
-    public final boolean isFinal()
-    {
-      return true;
-    }
-
     @Override
     public String toString()
     {
@@ -574,83 +398,118 @@ class HeaderCommon
     }
   }
 
+  /**
+   * Builds the encoding table and the decode state machine.
+   *
+   * The decoder walks the code tree a nibble at a time. Each of the 256
+   * internal tree nodes is a state, and each (state, nibble) transition
+   * records the next state, the emitted symbol if a leaf was reached, and
+   * whether ending in the next state is valid padding.
+   */
   static class HuffmanBuilder {
-    private ArrayList<ArrayList<Character>> _decoder = new ArrayList<>();
-    private HuffmanPartial _top = new HuffmanPartial();
-    private HuffmanCode []_encode = new HuffmanCode[256];
+    private HuffmanCode []_encode = new HuffmanCode[HUFFMAN_EOS + 1];
+    
+    // children of internal nodes, leaves encoded as -1 - symbol
+    private int [][]_tree = new int[256][];
+    private int _nodeCount = 1;
+    
+    HuffmanBuilder()
+    {
+      _tree[0] = new int[] { 0, 0 };
+    }
 
     void add(int ch, int code, int length)
     {
-      try {
-        HuffmanCode entry = new HuffmanCode(ch, code, length);
-        _encode[ch] = entry;
-
-        while (_decoder.size() <= length) {
-          _decoder.add(new ArrayList<Character>());
-        }
-
-        ArrayList<Character> charList = _decoder.get(length);
-        charList.add((char) ch);
-
-        HuffmanProgram ptr = _top;
-        int codePtr = code;
-
-        while (length > 8) {
-          int op = codePtr >> (length - 8);
-
-          ptr = ptr.addPartial(op);
-          length -= 8;
+      _encode[ch] = new HuffmanCode(ch, code, length);
+      
+      int node = 0;
+      
+      for (int i = length - 1; i > 0; i--) {
+        int bit = (code >> i) & 1;
+        
+        int child = _tree[node][bit];
+        
+        if (child == 0) {
+          child = _nodeCount++;
+          _tree[child] = new int[] { 0, 0 };
+          _tree[node][bit] = child;
         }
-
-        codePtr = (codePtr << (8 - length)) & 0xff;
-
-        int sublen = (1 << (8 - length));
-
-        for (int i = 0; i < sublen; i++) {
-          ptr.addFinal(codePtr + i, entry);
+        else if (child < 0) {
+          throw new IllegalStateException(L.l("Huffman prefix conflict for 0x{0}",
+                                              Integer.toHexString(ch)));
         }
-      } catch (Exception e) {
-        System.out.println("BAD: " + (char) ch + " " + ch + " " + e);
-        try { Thread.sleep(5000); } catch (Exception e1) {}
-        throw new IllegalStateException("ch=" + ch + " (0x" + Integer.toHexString(ch) + ")"
-                                        + ",code=0x" + Integer.toHexString(code)
-                                        + ",len=" + length + ": " + e.getMessage(),
-                                        e);
+        
+        node = child;
       }
+      
+      _tree[node][code & 1] = -1 - ch;
     }
 
-    public HuffmanCode[] getEncoder()
-    {
-      return _encode;
-    }
-
-    public HuffmanProgram getDecodeProgram()
+    HuffmanCode[] getEncoder()
     {
-      return _top;
+      HuffmanCode []encode = new HuffmanCode[256];
+      
+      System.arraycopy(_encode, 0, encode, 0, encode.length);
+      
+      return encode;
     }
-
-    public char[][] getDecodeTable()
+    
+    void buildDecoder(byte []stateTable, byte []symbolTable, byte []flagsTable)
     {
-      char [][] table = new char[_decoder.size()][];
-
-      for (int i = 0; i < _decoder.size(); i++) {
-        ArrayList<Character> charList = _decoder.get(i);
-
-        table[i] = new char[charList.size()];
-
-        for (int j = 0; j < charList.size(); j++) {
-          table[i][j] = charList.get(j);
+      if (_nodeCount != 256) {
+        throw new IllegalStateException(L.l("Incomplete huffman tree {0}",
+                                            _nodeCount));
+      }
+      
+      // valid padding is a prefix of EOS (all ones) shorter than 8 bits
+      boolean []isAccept = new boolean[_nodeCount];
+      
+      int node = 0;
+      
+      for (int i = 0; i < 8 && node >= 0; i++) {
+        isAccept[node] = true;
+        node = _tree[node][1];
+      }
+      
+      for (int state = 0; state < _nodeCount; state++) {
+        for (int nibble = 0; nibble < 16; nibble++) {
+          int ptr = state;
+          int symbol = -1;
+          int flags = 0;
+          
+          for (int i = 3; i >= 0; i--) {
+            int child = _tree[ptr][(nibble >> i) & 1];
+            
+            if (child >= 0) {
+              ptr = child;
+            }
+            else if (-1 - child == HUFFMAN_EOS) {
+              flags |= HUFFMAN_FAIL;
+              ptr = 0;
+              break;
+            }
+            else {
+              symbol = -1 - child;
+              flags |= HUFFMAN_EMIT;
+              ptr = 0;
+            }
+          }
+          
+          if (isAccept[ptr] && (flags & HUFFMAN_FAIL) == 0) {
+            flags |= HUFFMAN_ACCEPT;
+          }
+          
+          int index = (state << 4) | nibble;
+          
+          stateTable[index] = (byte) ptr;
+          symbolTable[index] = (byte) symbol;
+          flagsTable[index] = (byte) flags;
         }
       }
-
-      return table;
     }
   }
 
   static {
-    _tableKeyStatic = new HashMap<>();
-    _tableEntryStatic = new HashMap<>();
-
     ArrayList<TableEntry> list = new ArrayList<>();
 
     // 00
@@ -738,15 +597,70 @@ class HeaderCommon
     _staticEntryArray = new TableEntry[list.size()];
     list.toArray(_staticEntryArray);
     
-    if (_staticEntryArray.length != 62) {
-      System.out.println("INVALID STATIC:" + _staticEntryArray);
+    if (_staticEntryArray.length != STATIC_TAIL) {
+      throw new IllegalStateException(L.l("Invalid static table size {0}",
+                                          _staticEntryArray.length));
+    }
+    
+    int []entryHashes = new int[STATIC_TAIL];
+    boolean []isEntry = new boolean[STATIC_TAIL];
+    int []keyHashes = new int[STATIC_TAIL];
+    boolean []isKey = new boolean[STATIC_TAIL];
+    
+    for (int i = 1; i < STATIC_TAIL; i++) {
+      TableEntry entry = _staticEntryArray[i];
+      
+      entryHashes[i] = (entry.key().hashCode() * 31
+                        + entry.getValue().hashCode());
+      isEntry[i] = true;
+      
+      keyHashes[i] = entry.key().hashCode();
+      // only the first entry for a key, e.g. ":method" is "GET"
+      isKey[i] = (i == 1 
+                  || ! entry.key().equals(_staticEntryArray[i - 1].key()));
     }
+    
+    _staticEntryHash = new byte[1 << STATIC_HASH_BITS];
+    _staticEntryMul = perfectHash(entryHashes, isEntry, _staticEntryHash);
+    
+    _staticKeyHash = new byte[1 << STATIC_HASH_BITS];
+    _staticKeyMul = perfectHash(keyHashes, isKey, _staticKeyHash);
 
     HuffmanBuilder builder = new HuffmanBuilder();
 
-    for (int i = 0; i <= 31; i++) {
-      builder.add(i, 0x3ffffba + i, 26);
-    }
+    // RFC 7541 Appendix B
+    builder.add(0x00, 0x1ff8, 13);
+    builder.add(0x01, 0x7fffd8, 23);
+    builder.add(0x02, 0xfffffe2, 28);
+    builder.add(0x03, 0xfffffe3, 28);
+    builder.add(0x04, 0xfffffe4, 28);
+    builder.add(0x05, 0xfffffe5, 28);
+    builder.add(0x06, 0xfffffe6, 28);
+    builder.add(0x07, 0xfffffe7, 28);
+    builder.add(0x08, 0xfffffe8, 28);
+    builder.add(0x09, 0xffffea, 24);
+    builder.add(0x0a, 0x3ffffffc, 30);
+    builder.add(0x0b, 0xfffffe9, 28);
+    builder.add(0x0c, 0xfffffea, 28);
+    builder.add(0x0d, 0x3ffffffd, 30);
+    builder.add(0x0e, 0xfffffeb, 28);
+    builder.add(0x0f, 0xfffffec, 28);
+    builder.add(0x10, 0xfffffed, 28);
+    builder.add(0x11, 0xfffffee, 28);
+    builder.add(0x12, 0xfffffef, 28);
+    builder.add(0x13, 0xffffff0, 28);
+    builder.add(0x14, 0xffffff1, 28);
+    builder.add(0x15, 0xffffff2, 28);
+    builder.add(0x16, 0x3ffffffe, 30);
+    builder.add(0x17, 0xffffff3, 28);
+    builder.add(0x18, 0xffffff4, 28);
+    builder.add(0x19, 0xffffff5, 28);
+    builder.add(0x1a, 0xffffff6, 28);
+    builder.add(0x1b, 0xffffff7, 28);
+    builder.add(0x1c, 0xffffff8, 28);
+    builder.add(0x1d, 0xffffff9, 28);
+    builder.add(0x1e, 0xffffffa, 28);
+    builder.add(0x1f, 0xffffffb, 28);
 
     builder.add(0x20, 0x0014, 6);  // ' '
     builder.add(0x21, 0x03f8, 10); // '!'
@@ -849,16 +763,152 @@ class HeaderCommon
     builder.add(0x7d, 0x3ffd, 14); // '}'
     builder.add(0x7e, 0x1ffd, 13); // '~'
 
-    for (int i = 127; i <= 163; i++) {
-      builder.add(i, 0x3ffffdb + i - 127, 26);
-    }
-
-    for (int i = 164; i < 256; i++) {
-      builder.add(i, 0x1ffff80 + i - 164, 25);
-    }
+    builder.add(0x7f, 0xffffffc, 28);
+
+    builder.add(0x80, 0xfffe6, 20);
+    builder.add(0x81, 0x3fffd2, 22);
+    builder.add(0x82, 0xfffe7, 20);
+    builder.add(0x83, 0xfffe8, 20);
+    builder.add(0x84, 0x3fffd3, 22);
+    builder.add(0x85, 0x3fffd4, 22);
+    builder.add(0x86, 0x3fffd5, 22);
+    builder.add(0x87, 0x7fffd9, 23);
+    builder.add(0x88, 0x3fffd6, 22);
+    builder.add(0x89, 0x7fffda, 23);
+    builder.add(0x8a, 0x7fffdb, 23);
+    builder.add(0x8b, 0x7fffdc, 23);
+    builder.add(0x8c, 0x7fffdd, 23);
+    builder.add(0x8d, 0x7fffde, 23);
+    builder.add(0x8e, 0xffffeb, 24);
+    builder.add(0x8f, 0x7fffdf, 23);
+
+    builder.add(0x90, 0xffffec, 24);
+    builder.add(0x91, 0xffffed, 24);
+    builder.add(0x92, 0x3fffd7, 22);
+    builder.add(0x93, 0x7fffe0, 23);
+    builder.add(0x94, 0xffffee, 24);
+    builder.add(0x95, 0x7fffe1, 23);
+    builder.add(0x96, 0x7fffe2, 23);
+    builder.add(0x97, 0x7fffe3, 23);
+    builder.add(0x98, 0x7fffe4, 23);
+    builder.add(0x99, 0x1fffdc, 21);
+    builder.add(0x9a, 0x3fffd8, 22);
+    builder.add(0x9b, 0x7fffe5, 23);
+    builder.add(0x9c, 0x3fffd9, 22);
+    builder.add(0x9d, 0x7fffe6, 23);
+    builder.add(0x9e, 0x7fffe7, 23);
+    builder.add(0x9f, 0xffffef, 24);
+
+    builder.add(0xa0, 0x3fffda, 22);
+    builder.add(0xa1, 0x1fffdd, 21);
+    builder.add(0xa2, 0xfffe9, 20);
+    builder.add(0xa3, 0x3fffdb, 22);
+    builder.add(0xa4, 0x3fffdc, 22);
+    builder.add(0xa5, 0x7fffe8, 23);
+    builder.add(0xa6, 0x7fffe9, 23);
+    builder.add(0xa7, 0x1fffde, 21);
+    builder.add(0xa8, 0x7fffea, 23);
+    builder.add(0xa9, 0x3fffdd, 22);
+    builder.add(0xaa, 0x3fffde, 22);
+    builder.add(0xab, 0xfffff0, 24);
+    builder.add(0xac, 0x1fffdf, 21);
+    builder.add(0xad, 0x3fffdf, 22);
+    builder.add(0xae, 0x7fffeb, 23);
+    builder.add(0xaf, 0x7fffec, 23);
+
+    builder.add(0xb0, 0x1fffe0, 21);
+    builder.add(0xb1, 0x1fffe1, 21);
+    builder.add(0xb2, 0x3fffe0, 22);
+    builder.add(0xb3, 0x1fffe2, 21);
+    builder.add(0xb4, 0x7fffed, 23);
+    builder.add(0xb5, 0x3fffe1, 22);
+    builder.add(0xb6, 0x7fffee, 23);
+    builder.add(0xb7, 0x7fffef, 23);
+    builder.add(0xb8, 0xfffea, 20);
+    builder.add(0xb9, 0x3fffe2, 22);
+    builder.add(0xba, 0x3fffe3, 22);
+    builder.add(0xbb, 0x3fffe4, 22);
+    builder.add(0xbc, 0x7ffff0, 23);
+    builder.add(0xbd, 0x3fffe5, 22);
+    builder.add(0xbe, 0x3fffe6, 22);
+    builder.add(0xbf, 0x7ffff1, 23);
+
+    builder.add(0xc0, 0x3ffffe0, 26);
+    builder.add(0xc1, 0x3ffffe1, 26);
+    builder.add(0xc2, 0xfffeb, 20);
+    builder.add(0xc3, 0x7fff1, 19);
+    builder.add(0xc4, 0x3fffe7, 22);
+    builder.add(0xc5, 0x7ffff2, 23);
+    builder.add(0xc6, 0x3fffe8, 22);
+    builder.add(0xc7, 0x1ffffec, 25);
+    builder.add(0xc8, 0x3ffffe2, 26);
+    builder.add(0xc9, 0x3ffffe3, 26);
+    builder.add(0xca, 0x3ffffe4, 26);
+    builder.add(0xcb, 0x7ffffde, 27);
+    builder.add(0xcc, 0x7ffffdf, 27);
+    builder.add(0xcd, 0x3ffffe5, 26);
+    builder.add(0xce, 0xfffff1, 24);
+    builder.add(0xcf, 0x1ffffed, 25);
+
+    builder.add(0xd0, 0x7fff2, 19);
+    builder.add(0xd1, 0x1fffe3, 21);
+    builder.add(0xd2, 0x3ffffe6, 26);
+    builder.add(0xd3, 0x7ffffe0, 27);
+    builder.add(0xd4, 0x7ffffe1, 27);
+    builder.add(0xd5, 0x3ffffe7, 26);
+    builder.add(0xd6, 0x7ffffe2, 27);
+    builder.add(0xd7, 0xfffff2, 24);
+    builder.add(0xd8, 0x1fffe4, 21);
+    builder.add(0xd9, 0x1fffe5, 21);
+    builder.add(0xda, 0x3ffffe8, 26);
+    builder.add(0xdb, 0x3ffffe9, 26);
+    builder.add(0xdc, 0xffffffd, 28);
+    builder.add(0xdd, 0x7ffffe3, 27);
+    builder.add(0xde, 0x7ffffe4, 27);
+    builder.add(0xdf, 0x7ffffe5, 27);
+
+    builder.add(0xe0, 0xfffec, 20);
+    builder.add(0xe1, 0xfffff3, 24);
+    builder.add(0xe2, 0xfffed, 20);
+    builder.add(0xe3, 0x1fffe6, 21);
+    builder.add(0xe4, 0x3fffe9, 22);
+    builder.add(0xe5, 0x1fffe7, 21);
+    builder.add(0xe6, 0x1fffe8, 21);
+    builder.add(0xe7, 0x7ffff3, 23);
+    builder.add(0xe8, 0x3fffea, 22);
+    builder.add(0xe9, 0x3fffeb, 22);
+    builder.add(0xea, 0x1ffffee, 25);
+    builder.add(0xeb, 0x1ffffef, 25);
+    builder.add(0xec, 0xfffff4, 24);
+    builder.add(0xed, 0xfffff5, 24);
+    builder.add(0xee, 0x3ffffea, 26);
+    builder.add(0xef, 0x7ffff4, 23);
+
+    builder.add(0xf0, 0x3ffffeb, 26);
+    builder.add(0xf1, 0x7ffffe6, 27);
+    builder.add(0xf2, 0x3ffffec, 26);
+    builder.add(0xf3, 0x3ffffed, 26);
+    builder.add(0xf4, 0x7ffffe7, 27);
+    builder.add(0xf5, 0x7ffffe8, 27);
+    builder.add(0xf6, 0x7ffffe9, 27);
+    builder.add(0xf7, 0x7ffffea, 27);
+    builder.add(0xf8, 0x7ffffeb, 27);
+    builder.add(0xf9, 0xffffffe, 28);
+    builder.add(0xfa, 0x7ffffec, 27);
+    builder.add(0xfb, 0x7ffffed, 27);
+    builder.add(0xfc, 0x7ffffee, 27);
+    builder.add(0xfd, 0x7ffffef, 27);
+    builder.add(0xfe, 0x7fffff0, 27);
+    builder.add(0xff, 0x3ffffee, 26);
+    
+    builder.add(HUFFMAN_EOS, 0x3fffffff, 30);
 
     _huffmanEncoding = builder.getEncoder();
-    _huffmanDecodeTable = builder.getDecodeTable();
-    _huffmanDecodeProgram = builder.getDecodeProgram();
+    
+    _huffmanState = new byte[256 * 16];
+    _huffmanSymbol = new byte[256 * 16];
+    _huffmanFlags = new byte[256 * 16];
+    
+    builder.buildDecoder(_huffmanState, _huffmanSymbol, _huffmanFlags);
   }
 }
@@ -53,9 +53,8 @@ public interface Http2Constants
   static final int END_STREAM = 0x01;
   static final int END_SEGMENT = 0x02;
   static final int END_HEADERS = 0x04;
-  static final int PRIORITY = 0x08;
-  static final int PAD_LOW = 0x10;
-  static final int PAD_HIGH = 0x20;
+  static final int PADDED = 0x08;
+  static final int PRIORITY = 0x20;
   
   static final int ACK = 0x01; // settings flag
   
@@ -35,8 +35,25 @@ package com.caucho.v5.http.protocol2;
  */
 public class Http2ProtocolException extends RuntimeException
 {
+  private final int _errorCode;
+  
   public Http2ProtocolException(String msg)
+  {
+    this(Http2Constants.PROTOCOL_ERROR, msg);
+  }
+  
+  public Http2ProtocolException(int errorCode, String msg)
   {
     super(msg);
+    
+    _errorCode = errorCode;
+  }
+  
+  /**
+   * The GOAWAY error code for the failure.
+   */
+  public int errorCode()
+  {
+    return _errorCode;
   }
 }
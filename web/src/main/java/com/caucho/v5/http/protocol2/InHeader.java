@@ -30,29 +30,37 @@
 package com.caucho.v5.http.protocol2;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Objects;
 
+import com.caucho.v5.http.protocol.HeaderIntern;
 import com.caucho.v5.io.ReadStream;
 import com.caucho.v5.util.L10N;
 
 
 /**
- * HeaderOut is the compression for the writer.
+ * HeaderIn is the decompression for the reader.
+ *
+ * The dynamic table is a ring of key and value arrays indexed by
+ * insertion sequence, so decoding allocates nothing per entry. Decoded
+ * names and short values are shared through HeaderIntern.
  */
 public class InHeader extends HeaderCommon implements AutoCloseable
 {
   private static final L10N L = new L10N(InHeader.class);
   
-  private HashMap<String,TableEntry> _tableKeyMap;
-  private HashMap<TableEntry,TableEntry> _tableEntryMap;
-    
-  private int _tableCapacity = 4096;
+  private int _tableCapacity = Http2Constants.INIT_HEADER_TABLE_SIZE;
   private int _tableSize = 0;
   
-  private TableEntry []_entries;
+  // SETTINGS_HEADER_TABLE_SIZE advertised to the peer
+  private int _tableCapacityMax = Http2Constants.INIT_HEADER_TABLE_SIZE;
   
-  private TableEntry _key = new TableEntry();
+  // dynamic table ring, power of two length
+  private String []_tableKeys = new String[64];
+  private String []_tableValues = new String[64];
+  
+  // sequence of the next entry and of the oldest entry
+  private long _sequenceHead;
+  private long _sequenceTail;
   
   private ReadStream _is;
 
@@ -62,34 +70,30 @@ public class InHeader extends HeaderCommon implements AutoCloseable
   
   private int _length;
   
-  private int _streamId;
-  
-  private int _staticTail;
-  
-  private long _sequenceHead;
-  private long _sequenceTail;
-  
-  private long _sequenceReference;
-
-  private int _pad;
+  private int _priorityDependency;
+  private int _priorityWeight;
+  private boolean _isPriorityExclusive;
   
   public InHeader(ReadStream is)
   {
     Objects.requireNonNull(is);
     
-    _tableKeyMap = new HashMap<>();
-    _tableKeyMap.putAll(getTableKeyStatic());
-    
-    _tableEntryMap = new HashMap<>();
-    _tableEntryMap.putAll(tableEntryStatic());
-    
-    _staticTail = _tableEntryMap.size() + 1;
-    
-    _entries = new TableEntry[256];
-    
     _is = is;
   }
   
+  /**
+   * The header table size advertised in SETTINGS_HEADER_TABLE_SIZE.
+   * A dynamic table size update above it is a compression error.
+   */
+  public void tableCapacityMax(int size)
+  {
+    if (size < 0) {
+      throw new IllegalArgumentException(String.valueOf(size));
+    }
+    
+    _tableCapacityMax = size;
+  }
+  
   boolean readHeaders(InRequest request, int length, int flags)
     throws IOException
   {
@@ -97,26 +101,22 @@ public class InHeader extends HeaderCommon implements AutoCloseable
     
     int pad = 0;
     
-    if ((flags & Http2Constants.PAD_HIGH) != 0) {
-      int padHigh = read();
-      int padLow = read();
+    if ((flags & Http2Constants.PADDED) != 0) {
+      pad = read();
       
-      flags &= ~(Http2Constants.PAD_HIGH|Http2Constants.PAD_LOW);
-
-      pad = (padHigh * 256 + padLow);
-    }
-    else if ((flags & Http2Constants.PAD_LOW) != 0) {
-      int padLow = read();
-      
-      flags &= ~Http2Constants.PAD_LOW;
-      
-      pad = padLow;
+      flags &= ~Http2Constants.PADDED;
     }
     
+    _priorityWeight = 0;
+    
     if ((flags & Http2Constants.PRIORITY) != 0) {
       int depend = readInt();
       int weight = read();
       
+      _isPriorityExclusive = depend < 0;
+      _priorityDependency = depend & 0x7fffffff;
+      _priorityWeight = weight + 1;
+      
       flags &= ~Http2Constants.PRIORITY;
     }
     
@@ -144,24 +144,33 @@ public class InHeader extends HeaderCommon implements AutoCloseable
                                           Integer.toHexString(flags)));
     }
     
-    long seqReference = ++_sequenceReference;
-    
-    startHeaders(request);
-    
-    readHeaders(request, seqReference);
-    
-    completeHeaders(request, seqReference);
+    readHeaders(request);
     
     skip(pad);
     
     return true;
   }
   
-  private void startHeaders(InRequest request)
+  /**
+   * Priority weight from the last HEADERS frame, 1 to 256, or 0 if
+   * none was sent.
+   */
+  int priorityWeight()
   {
+    return _priorityWeight;
   }
   
-  private void readHeaders(InRequest request, long seqReference)
+  int priorityDependency()
+  {
+    return _priorityDependency;
+  }
+  
+  boolean isPriorityExclusive()
+  {
+    return _isPriorityExclusive;
+  }
+  
+  private void readHeaders(InRequest request)
     throws IOException
   {
     int op;
@@ -171,23 +180,24 @@ public class InHeader extends HeaderCommon implements AutoCloseable
         readIndex(request, op);
       }
       else if ((op & 0x40) != 0) {
-        readHeader(request, 6, op, true, seqReference);
-      }
-      else if ((op & 0x30) == 0x30) {
-        // clearReferenceSet();
+        readHeader(request, 6, op, true);
       }
-      else if ((op & 0x30) == 0x20) {
-        int capacity = readInt(4, op);
+      else if ((op & 0x20) != 0) {
+        int capacity = readInt(5, op);
+        
+        if (capacity < 0 || _tableCapacityMax < capacity) {
+          throw new Http2ProtocolException(Http2Constants.COMPRESSION_ERROR,
+                                           L.l("header table size update {0} exceeds SETTINGS_HEADER_TABLE_SIZE {1}",
+                                               capacity, _tableCapacityMax));
+        }
         
         _tableCapacity = capacity;
         
-        updateTableSize();
-      }
-      else if ((op & 0x10) != 0) {
-        readHeader(request, 4, op, false, seqReference);
+        updateTableSize(0);
       }
       else {
-        readHeader(request, 4, op, false, seqReference);
+        // without indexing (0x00) or never indexed (0x10)
+        readHeader(request, 4, op, false);
       }
     }
   }
@@ -195,8 +205,7 @@ public class InHeader extends HeaderCommon implements AutoCloseable
   private void readHeader(InRequest request,
                           int bits,
                           int op, 
-                          boolean isUpdateTable,
-                          long seqReference)
+                          boolean isUpdateTable)
     throws IOException
   {
     String key;
@@ -206,7 +215,7 @@ public class InHeader extends HeaderCommon implements AutoCloseable
     if ((op & mask) != 0) {
       int index = readInt(bits, op);
       
-      key = readKeyHeader(index);
+      key = key(index);
     }
     else {
       key = readString();
@@ -217,59 +226,56 @@ public class InHeader extends HeaderCommon implements AutoCloseable
     request.header(key, value);
     
     if (isUpdateTable) {
-      TableEntry entry = new TableEntry();
-      
-      entry.update(0, key, value);
-      
-      addEntry(entry);
+      addEntry(key, value);
     }
   }
 
-  private void addEntry(TableEntry entry)
+  private void addEntry(String key, String value)
   {
-    long head = _sequenceHead;
-    entry.sequence(head);
-    //entry.setReference(_sequenceReference + 1);
-
-    _sequenceHead = head + 1;
-
-    _tableEntryMap.put(entry, entry);
-
-    if (entry.getNext() == null) {
-      _tableKeyMap.put(entry.key(), entry);
+    int size = entrySize(key, value);
+    
+    updateTableSize(size);
+    
+    if (_tableCapacity < size) {
+      // an entry larger than the table empties it
+      return;
     }
+    
+    String []keys = _tableKeys;
+    
+    if (_sequenceHead - _sequenceTail == keys.length) {
+      growTable();
+      keys = _tableKeys;
+    }
+    
+    long head = _sequenceHead++;
+    int slot = (int) head & (keys.length - 1);
+    
+    keys[slot] = key;
+    _tableValues[slot] = value;
 
-    _entries[(int) (head % _entries.length)] = entry;
-
-    _tableSize += entry.getSize();
-
-    updateTableSize();
+    _tableSize += size;
   }
   
-  /*
-  private void clearReferenceSet()
+  private void growTable()
   {
+    String []oldKeys = _tableKeys;
+    String []oldValues = _tableValues;
+    
+    int oldMask = oldKeys.length - 1;
+    
+    String []keys = new String[2 * oldKeys.length];
+    String []values = new String[keys.length];
+    
+    int mask = keys.length - 1;
+    
     for (long i = _sequenceTail; i < _sequenceHead; i++) {
-      TableEntry entry = _entries[(int) (i % _entries.length)];
-      
-      entry.setReference(0);
-    }
-  }
-  */
-  
-  private void completeHeaders(InRequest request,
-                               long reference)
-  {
-    /*
-    for (long ptr = _sequenceTail; ptr < _sequenceHead; ptr++) {
-      TableEntry entry = _entries[(int) (ptr % _entries.length)];
-      
-      if (entry.reference() == reference) {
-        entry.setReference(reference + 1);
-        request.header(entry.key(), entry.getValue());
-      }
+      keys[(int) i & mask] = oldKeys[(int) i & oldMask];
+      values[(int) i & mask] = oldValues[(int) i & oldMask];
     }
-    */
+    
+    _tableKeys = keys;
+    _tableValues = values;
   }
   
   private void readIndex(InRequest request, int op)
@@ -277,90 +283,71 @@ public class InHeader extends HeaderCommon implements AutoCloseable
   {
     int index = readInt(7, op);
     
-    TableEntry entry = getEntry(index);
-    
-    request.header(entry.key(), entry.getValue());
-    /*
-    if (entry.reference() != _sequenceReference) {
-      request.header(entry.getKey(), entry.getValue());
-      
-      if (entry.isStatic()) {
-        TableEntry next = new TableEntry(entry);
-        
-        addEntry(next);
+    if (index < STATIC_TAIL) {
+      if (index == 0) {
+        throw new Http2ProtocolException(L.l("Invalid header index '{0}'", index));
       }
+      
+      TableEntry entry = getEntryArrayStatic()[index];
+      
+      request.header(entry.key(), entry.getValue());
     }
     else {
-      // index entries already in the reference is a deletion.
-      entry.setReference(0);
+      int slot = dynamicSlot(index);
+      
+      request.header(_tableKeys[slot], _tableValues[slot]);
     }
-    */
   }
   
-  private String readKeyHeader(int index)
-    throws IOException
+  private String key(int index)
   {
-    TableEntry entry = getEntry(index);
-
-    return entry.key();
+    if (index < STATIC_TAIL) {
+      return getEntryArrayStatic()[index].key();
+    }
+    else {
+      return _tableKeys[dynamicSlot(index)];
+    }
   }
   
-  private TableEntry getEntry(int index)
+  /**
+   * Returns the ring slot for a dynamic index, where STATIC_TAIL is
+   * the newest entry.
+   */
+  private int dynamicSlot(int index)
   {
-    if (index < _staticTail) {
-      return getEntryArrayStatic()[index];
-    }
+    long seq = _sequenceHead - 1 - (index - STATIC_TAIL);
     
-    index -= _staticTail;
-    
-    int length = (int) (_sequenceHead - _sequenceTail);
-    
-    if (length < index) {
-      index -= length;
-
-      TableEntry []entryArray = getEntryArrayStatic();
-      
-      if (index == 0 || entryArray.length <= index) {
-        throw new Http2ProtocolException(L.l("Invalid header index '{0}'", index));
-      }
-    
-      TableEntry entry = entryArray[index];
-      
-      return entry;
-    }
-    else {
-      TableEntry []entryArray = _entries;
-      
-      long i = _sequenceHead - index;
-      
-      TableEntry entry = entryArray[(int) (i % entryArray.length)];
-      
-      return entry;
+    if (seq < _sequenceTail) {
+      throw new Http2ProtocolException(L.l("Invalid header index '{0}'", index));
     }
+    
+    return (int) seq & (_tableKeys.length - 1);
   }
   
-  private void updateTableSize()
+  /**
+   * Evicts old entries until the new entry size fits.
+   */
+  private void updateTableSize(int newSize)
   {
-    while (_tableCapacity < _tableSize) {
+    while (_tableCapacity < _tableSize + newSize
+           && _sequenceTail < _sequenceHead) {
       removeTableEntry();
     }
   }
   
   private void removeTableEntry()
   {
-    long i = _sequenceTail++;
-    
-    TableEntry entry = _entries[(int) (i % _entries.length)];
-    //entry.setReference(0);
-    
-    _tableEntryMap.remove(entry);
+    int slot = (int) _sequenceTail++ & (_tableKeys.length - 1);
     
-    TableEntry next = entry.getNext();
-    if (next != null) {
-      _tableEntryMap.put(next, next);
-    }
+    _tableSize -= entrySize(_tableKeys[slot], _tableValues[slot]);
     
-    _tableSize -= entry.getSize();
+    _tableKeys[slot] = null;
+    _tableValues[slot] = null;
+  }
+  
+  private static int entrySize(String key, String value)
+  {
+    return 32 + key.length() + value.length();
   }
   
   private int readInt(int bits, int d)
@@ -378,6 +365,10 @@ public class InHeader extends HeaderCommon implements AutoCloseable
     
     do {
       d = read();
+      
+      if (d < 0 || m > 21) {
+        throw new Http2ProtocolException(L.l("Invalid header integer"));
+      }
     
       value += (d & 0x7f) << m;
       
@@ -390,24 +381,31 @@ public class InHeader extends HeaderCommon implements AutoCloseable
   private String readString()
     throws IOException
   {
-    int len = read();
+    int op = read();
+    
+    if (op < 0) {
+      throw new Http2ProtocolException(L.l("Unexpected end of header"));
+    }
+    
+    int len = readInt(7, op);
+    
+    if (_length < len) {
+      throw new Http2ProtocolException(L.l("Header string length {0} exceeds frame",
+                                           len));
+    }
     
     char []buffer = _charBuffer;
     
-    if ((len & 0x80) != 0) {
-      // huffman encoded
-      len &= 0x7f;
-      
-      //System.out.println("HUFF: " + len);
+    if ((op & 0x80) != 0) {
+      // huffman encoded, at most 8/5 chars per byte
       while (buffer.length <= 2 * len) {
         buffer = new char[2 * buffer.length];
         _charBuffer = buffer;
       }
       
       int strlen = huffmanDecode(len, buffer);
-      //System.out.println("HUFF2: " + strlen);
       
-      return new String(buffer, 0, strlen);
+      return HeaderIntern.intern(buffer, 0, strlen);
     }
     else {
       while (buffer.length <= len) {
@@ -419,9 +417,8 @@ public class InHeader extends HeaderCommon implements AutoCloseable
         buffer[i] = (char) read();
       }
       
-      return new String(buffer, 0, len);
+      return HeaderIntern.intern(buffer, 0, len);
     }
-    
   }
   
   protected int readInt()
@@ -465,7 +462,6 @@ public class InHeader extends HeaderCommon implements AutoCloseable
   @Override
   public void close()
   {
-    //_os.write(_buffer, 0, _index);
   }
   
   static enum StateHeaderIn {
@@ -124,7 +124,7 @@ public class InHttp
       
     _openStream.set(1);
     _isGoAway = false;
-    _peerSettings.initialWindowSize(64 * 1024);
+    _peerSettings.initialWindowSize(65535);
   }
   
   public boolean onDataAvailable()
@@ -261,9 +261,23 @@ public class InHttp
       case Http2Constants.SETTINGS_INITIAL_WINDOW_SIZE:
         _peerSettings.initialWindowSize(value);
         break;
+        
+      case Http2Constants.SETTINGS_MAX_FRAME_SIZE:
+        _peerSettings.frameSizeMax(value);
+        break;
+        
+      case Http2Constants.SETTINGS_ENABLE_PUSH:
+        _peerSettings.pushEnabled(value != 0);
+        break;
       }
     }
     
+    OutHttp2 outHttp = _conn.outHttp();
+    
+    if (outHttp != null) {
+      outHttp.updateSettings(_peerSettings);
+    }
+    
     return true;
   }
   
@@ -280,6 +294,10 @@ public class InHttp
     
     int credit = BitsUtil.readInt(is);
     
+    if (_conn.outHttp().scheduler().credit(streamId, credit)) {
+      _inHandler.onWindowUpdate();
+    }
+    
     if (streamId == 0) {
       _conn.channelZero().addSendCredit(credit);
       return true;
@@ -357,6 +375,8 @@ public class InHttp
 
     ChannelHttp2 channel = _conn.getChannel(streamId);
     
+    _conn.outHttp().scheduler().remove(streamId);
+
     if (channel != null) {
       channel.getInChannel().resetStream(errorCode);
  
@@ -374,10 +394,18 @@ public class InHttp
   private boolean readPriority(ReadStream is, int length, int streamId)
     throws IOException
   {
+    if (length != 5) {
+      error("Invalid priority length {0}", length);
+      return false;
+    }
+    
     int streamRef = BitsUtil.readInt(is);
-    int weight = is.read();
+    int weight = is.read() + 1;
     
-    is.skip(length - 5);
+    boolean isExclusive = streamRef < 0;
+    
+    _conn.outHttp().scheduler().priority(streamId, streamRef & 0x7fffffff,
+                                         weight, isExclusive);
     
     return true;
   }
@@ -504,10 +532,26 @@ public class InHttp
     }
     
     // _conn, streamId);
-    if (! _inHeader.readHeaders(request, length, flags)) {
+    try {
+      if (! _inHeader.readHeaders(request, length, flags)) {
+        return false;
+      }
+    } catch (Http2ProtocolException e) {
+      log.log(Level.FINE, e.toString(), e);
+      
+      // header decoding errors are connection errors (RFC 7540 4.3)
+      _conn.outHttp().close(e.errorCode());
+      
       return false;
     }
     
+    if (_inHeader.priorityWeight() > 0) {
+      _conn.outHttp().scheduler().priority(streamId,
+                                           _inHeader.priorityDependency(),
+                                           _inHeader.priorityWeight(),
+                                           _inHeader.isPriorityExclusive());
+    }
+    
     if (channel == null) {
       channel = request.channel(); // new InChannelHttp2(_conn, streamId, request);
       // stream.addReceiveCredit(_settings.getInitialWindowSize());
@@ -40,6 +40,13 @@ public interface InHttpHandler
    * Called when all stream are closed.
    */
   void onGoAway();
+  
+  /**
+   * Called when a WINDOW_UPDATE lets queued data be written.
+   */
+  default void onWindowUpdate()
+  {
+  }
 
   default boolean isHeaderHuffman()
   {
@@ -40,6 +40,18 @@ import com.caucho.v5.io.WriteStream;
  */
 public class MessageGoAway extends MessageHttp
 {
+  private final int _errorCode;
+  
+  public MessageGoAway()
+  {
+    this(Http2Constants.NO_ERROR);
+  }
+  
+  public MessageGoAway(int errorCode)
+  {
+    _errorCode = errorCode;
+  }
+  
   /**
    * Deliver the message
    * 
@@ -50,6 +62,6 @@ public class MessageGoAway extends MessageHttp
   public void deliver(WriteStream os, OutHttp2 outHttp)
     throws IOException
   {
-    outHttp.writeGoAway();
+    outHttp.writeGoAway(_errorCode);
   }
 }
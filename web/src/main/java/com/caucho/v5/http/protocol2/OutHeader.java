@@ -46,7 +46,6 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
   private HashMap<String,TableEntry> _tableKeyMap;
   private HashMap<TableEntry,TableEntry> _tableEntryMap;
     
-  private int _staticTail;
   private int _tableCapacity = 4096;
   
   private TableEntry []_entries;
@@ -75,21 +74,16 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
   
   private int _pad;
   
+  private int _promisedId;
+  
   public OutHeader(WriteStream os)
   {
     Objects.requireNonNull(os);
     
     _tableKeyMap = new HashMap<>();
-    _tableKeyMap.putAll(getTableKeyStatic());
-    
     _tableEntryMap = new HashMap<>();
-    _tableEntryMap.putAll(tableEntryStatic());
-    
-    _staticTail = _tableEntryMap.size() + 1;
-    _sequence = _staticTail;
-    _tailSequence = _sequence;
     
-    _entries = new TableEntry[256];
+    _entries = new TableEntry[64];
     
     _os = os;
   }
@@ -110,7 +104,8 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
   {
     _streamId = streamId;
     
-    _pad = pad;
+    // the pad length is a single byte
+    _pad = Math.min(pad, 256);
     _priorityDependency = priorityDependency;
     _priorityWeight = priorityWeight;
     _isPriorityExclusive = isPriorityExclusive;
@@ -133,6 +128,28 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
     }
   }
   
+  /**
+   * Starts a PUSH_PROMISE header block on the parent stream for the
+   * server stream promisedId.
+   */
+  public void openPushPromise(int streamId, int promisedId)
+    throws IOException
+  {
+    _streamId = streamId;
+    
+    _pad = 0;
+    _priorityDependency = -1;
+    _priorityWeight = -1;
+    _isPriorityExclusive = false;
+    _promisedId = promisedId;
+    
+    ++_seqReference;
+    
+    startChunk();
+    
+    _state = StateHeader.HEADER_PUSH_PROMISE;
+  }
+  
   private void startChunk()
     throws IOException
   {
@@ -154,10 +171,7 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
     
     offset += 9;
     
-    if (_pad >= 256) {
-      offset += 2;
-    }
-    else if (_pad > 0) {
+    if (_pad > 0) {
       offset += 1;
     }
     
@@ -165,6 +179,10 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
       offset += 5;
     }
     
+    if (_promisedId > 0) {
+      offset += 4;
+    }
+    
     _offset = offset;
   }
   
@@ -212,21 +230,11 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
       
       len += fillLen;
       
-      if (_pad >= 256) {
-        flags |= Http2Constants.PAD_HIGH|Http2Constants.PAD_LOW;
-        
-        buffer[startOffset + 0] = (byte) (fillLen / 256);
-        buffer[startOffset + 1] = (byte) fillLen;
-        
-        startOffset += 2;
-      }
-      else {
-        flags |= Http2Constants.PAD_LOW;
-        
-        buffer[startOffset + 0] = (byte) fillLen;
-        
-        startOffset += 1;
-      }
+      flags |= Http2Constants.PADDED;
+      
+      buffer[startOffset + 0] = (byte) fillLen;
+      
+      startOffset += 1;
     }
     
     if (_priorityWeight >= 0) {
@@ -241,6 +249,14 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
       _priorityWeight = -1;
     }
     
+    if (_promisedId > 0) {
+      BitsUtil.writeInt(buffer, startOffset, _promisedId);
+      
+      startOffset += 4;
+      
+      _promisedId = 0;
+    }
+    
     buffer[headerOffset + 0] = (byte) (len >> 16);
     buffer[headerOffset + 1] = (byte) (len >> 8);
     buffer[headerOffset + 2] = (byte) (len);
@@ -265,6 +281,14 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
     // literal header field with incremental indexing
     // i.e. add to index table
     
+    int staticIndex = staticIndex(key, value);
+    
+    if (staticIndex > 0) {
+      writeKeyValue(0x80, staticIndex);
+      
+      return;
+    }
+    
     TableEntry entryKey = _key;
     
     entryKey.update(0, key, value);
@@ -311,29 +335,50 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
   
   private void addEntry(TableEntry entry)
   {
+    if (_sequence - _tailSequence == _entries.length) {
+      growTable();
+    }
+    
     long seq = _sequence++;
     entry.sequence(seq);
-    //entry.setReference(_seqReference + 1);
     
     _tableEntryMap.put(entry, entry);
+    _tableKeyMap.put(entry.key(), entry);
     
-    if (entry.getNext() == null) {
-      _tableKeyMap.put(entry.key(), entry);
-    }
-    
-    _entries[(int) (seq % _entries.length)] = entry;
+    _entries[(int) seq & (_entries.length - 1)] = entry;
     
     _tableSize += entry.getSize();
     
     updateTableSize();
   }
   
+  private void growTable()
+  {
+    TableEntry []oldEntries = _entries;
+    TableEntry []entries = new TableEntry[2 * oldEntries.length];
+    
+    for (long i = _tailSequence; i < _sequence; i++) {
+      entries[(int) i & (entries.length - 1)]
+        = oldEntries[(int) i & (oldEntries.length - 1)];
+    }
+    
+    _entries = entries;
+  }
+  
   public void headerUnique(String key, String value)
     throws IOException
   {
     // literal header field without incremental indexing
     // i.e. don't add to index table
     
+    int staticIndex = staticIndex(key, value);
+    
+    if (staticIndex > 0) {
+      writeKeyValue(0x80, staticIndex);
+      
+      return;
+    }
+    
     TableEntry entryKey = _key;
     
     entryKey.update(0, key, value);
@@ -363,19 +408,6 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
     writeString(value);
   }
   
-  public void clearReferenceSet()
-    throws IOException
-  {
-    write(0x30);
-    
-    /*
-    for (long i = _tailSequence; i < _sequence; i++) {
-      TableEntry entry = _entries[(int) (i % _entries.length)];
-      //entry.setReference(0);
-    }
-    */
-  }
-  
   public void setTableSize(int size)
     throws IOException
   {
@@ -384,7 +416,7 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
     }
     _tableCapacity = size;
     
-    writeInt(0x20, 4, size);
+    writeInt(0x20, 5, size);
     
     updateTableSize();
   }
@@ -400,16 +432,15 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
   {
     long i = _tailSequence++;
     
-    TableEntry entry = _entries[(int) (i % _entries.length)];
-    //entry.setReference(0);
+    int slot = (int) i & (_entries.length - 1);
     
-    _tableEntryMap.remove(entry);
+    TableEntry entry = _entries[slot];
+    _entries[slot] = null;
     
-    TableEntry next = entry.getNext();
+    _tableEntryMap.remove(entry);
     
-    if (next != null) {
-      // restore static
-      _tableEntryMap.put(next, next);
+    if (_tableKeyMap.get(entry.key()) == entry) {
+      _tableKeyMap.remove(entry.key());
     }
     
     _tableSize -= entry.getSize();
@@ -424,13 +455,17 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
   private void writeKey(int opcode, int bits, String key)
     throws IOException
   {
-    TableEntry entry = _tableKeyMap.get(key);
+    int index = staticKeyIndex(key);
     
-    if (entry != null
-        && (entry.isStatic() || _tailSequence <= entry.sequence())) {
-      int index = getIndex(entry);
-      
+    if (index > 0) {
       writeInt(opcode, bits, index);
+      return;
+    }
+    
+    TableEntry entry = _tableKeyMap.get(key);
+    
+    if (entry != null) {
+      writeInt(opcode, bits, getIndex(entry));
     }
     else {
       write((byte) opcode);
@@ -439,14 +474,12 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
     }
   }
   
+  /**
+   * Dynamic index of an entry, where STATIC_TAIL is the newest.
+   */
   private int getIndex(TableEntry entry)
   {
-    if (entry.isStatic()) {
-      return (int) entry.sequence();
-    }
-    else {
-      return (int) (_sequence - entry.sequence()) + _staticTail; // XXX: need mod
-    }
+    return (int) (_sequence - 1 - entry.sequence()) + STATIC_TAIL;
   }
   
   private void writeString(String value)
@@ -472,7 +505,7 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
   {
     int bufferLength = buffer.length;
     
-    buffer[offset++] = (byte) strlen;
+    offset = writeStringLength(buffer, offset, 0, strlen);
     
     int i = 0;
     
@@ -497,7 +530,7 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
   {
     int mask = (1 << bits) - 1;
     
-    if ((mask & value) == value) {
+    if (value < mask) {
       int d = (int) (opcode + value);
         
       write(d);
@@ -617,6 +650,26 @@ public class OutHeader extends HeaderCommon implements AutoCloseable
       }
     },
     
+    HEADER_PUSH_PROMISE {
+      @Override
+      int opcode()
+      { 
+        return Http2Constants.FRAME_PUSH_PROMISE; 
+      }
+      
+      @Override
+      int flagsFlush()
+      {
+        return 0;
+      }
+      
+      @Override
+      int flagsClose()
+      { 
+        return Http2Constants.END_HEADERS;
+      }
+    },
+    
     HEADER_CONT {
       @Override
       int opcode()
@@ -49,6 +49,15 @@ public class OutHeaderHuffman extends OutHeader
                                 String value, int strlen)
     throws IOException
   {
-    return huffmanEncode(buffer, offset, value, getHuffmanTable());
+    HuffmanCode []table = getHuffmanTable();
+    
+    int length = huffmanLength(value, table);
+    
+    if (strlen <= length || buffer.length < offset + 4 + length) {
+      // raw is shorter, or the encoding needs to span frames
+      return super.writeStringImpl(buffer, offset, value, strlen);
+    }
+    
+    return huffmanEncode(buffer, offset, value, table);
   }
 }
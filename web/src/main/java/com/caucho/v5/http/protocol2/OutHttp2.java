@@ -78,6 +78,10 @@ public class OutHttp2 implements AutoCloseable
   private PeerHttp _peer;
 
   private ConnectionHttp2Int _conn;
+  
+  private final SchedulerHttp2 _scheduler;
+  
+  private boolean _isPushEnabled = true;
 
   public OutHttp2(ConnectionHttp2Int conn, 
                  PeerHttp peer)
@@ -88,6 +92,8 @@ public class OutHttp2 implements AutoCloseable
     _peer = peer;
     
     _queue = createQueue();
+    
+    _scheduler = new SchedulerHttp2(this);
   }
   
   /*
@@ -144,6 +150,27 @@ public class OutHttp2 implements AutoCloseable
   void updateSettings(SettingsHttp peerSettings)
   {
     _settings.initialWindowSize(peerSettings.initialWindowSize());
+    
+    _isPushEnabled = peerSettings.isPushEnabled();
+    
+    _scheduler.settings(peerSettings.initialWindowSize(),
+                        peerSettings.frameSizeMax());
+  }
+  
+  /**
+   * The scheduler for response DATA frames.
+   */
+  SchedulerHttp2 scheduler()
+  {
+    return _scheduler;
+  }
+  
+  /**
+   * True if the peer accepts PUSH_PROMISE.
+   */
+  boolean isPushEnabled()
+  {
+    return _isPushEnabled && _peer == PeerHttp.SERVER;
   }
   
   public void writeConnectionHeader()
@@ -166,7 +193,7 @@ public class OutHttp2 implements AutoCloseable
     return builder.build(new WriterServiceImpl());
   }
 
-  public int nextStream(ChannelHttp2 channel)
+  public synchronized int nextStream(ChannelHttp2 channel)
   {
     if (_isClosedPeer.get()) {
       throw new IllegalStateException(L.l("Peer HTTP client is closed"));
@@ -259,15 +286,17 @@ public class OutHttp2 implements AutoCloseable
     
     // ChannelHttp2 channel = _conn.getChannel(streamId);
     
-    if (offset >= 8) {
-      offset -= 8;
+    if (offset >= 9) {
+      // header in place before the payload, so the frame is one write
+      offset -= 9;
       
-      BitsUtil.writeInt16(buffer, offset, length);
-      buffer[offset + 2] = Http2Constants.FRAME_DATA;
-      buffer[offset + 3]= (byte) flags;
-      BitsUtil.writeInt(buffer, offset + 4, streamId);
+      buffer[offset] = (byte) (length >> 16);
+      BitsUtil.writeInt16(buffer, offset + 1, length);
+      buffer[offset + 3] = Http2Constants.FRAME_DATA;
+      buffer[offset + 4] = (byte) flags;
+      BitsUtil.writeInt(buffer, offset + 5, streamId);
       
-      os.write(buffer, offset, length + 8);
+      os.write(buffer, offset, length + 9);
     }
     else {
       os.write((byte) (length >> 16)); 
@@ -290,8 +319,10 @@ public class OutHttp2 implements AutoCloseable
 
   /**
    * data (0)
+   * 
+   * Writes a frame with the first length bytes of the buffer.
    */
-  void writeData(int streamId, Buffer buffer, int flags)
+  void writeData(int streamId, Buffer buffer, int length, int flags)
     throws IOException
   {
     WriteStream os = _os;
@@ -300,32 +331,38 @@ public class OutHttp2 implements AutoCloseable
       return;
     }
     
-    // ChannelHttp2 channel = _conn.getChannel(streamId);
+    os.write((byte) (length >> 16)); 
+    os.write((byte) (length >> 8)); 
+    os.write((byte) (length));
+    os.write(Http2Constants.FRAME_DATA);
+    os.write(flags);
     
-    if (false) {//offset >= 8) {
-      /*
-      offset -= 8;
+    BitsUtil.writeInt(os, streamId);
+    
+    if (length > 0
+        && length == buffer.length()
+        && buffer instanceof TempBuffer) {
+      // the whole buffer: header and payload can share a gathering write
+      os.write(buffer);
+      length = 0;
+    }
+    
+    while (length > 0) {
+      byte []osBuffer = os.buffer();
+      int offset = os.offset();
       
-      BitsUtil.writeInt16(buffer, offset, length);
-      buffer[offset + 2] = Http2Constants.FRAME_DATA;
-      buffer[offset + 3]= (byte) flags;
-      BitsUtil.writeInt(buffer, offset + 4, streamId);
+      if (offset == osBuffer.length) {
+        os.flush();
+        continue;
+      }
       
-      os.write(buffer, offset, length + 8);
-      */
-    }
-    else {
-      int length = buffer.length();
+      int sublen = Math.min(length, osBuffer.length - offset);
       
-      os.write((byte) (length >> 16)); 
-      os.write((byte) (length >> 8)); 
-      os.write((byte) (length));
-      os.write(Http2Constants.FRAME_DATA);
-      os.write(flags);
+      sublen = buffer.read(osBuffer, offset, sublen);
       
-      BitsUtil.writeInt(os, streamId);
+      os.offset(offset + sublen);
       
-      buffer.read(os);
+      length -= sublen;
     }
     
     if ((flags & Http2Constants.END_STREAM) != 0) {
@@ -394,7 +431,7 @@ public class OutHttp2 implements AutoCloseable
     }
   }
 
-  void writeGoAway()
+  void writeGoAway(int errorCode)
     throws IOException
   {
     int lastStream = 0;
@@ -413,8 +450,6 @@ public class OutHttp2 implements AutoCloseable
     
     BitsUtil.writeInt(os, lastStream);
     
-    int errorCode = 0;
-    
     BitsUtil.writeInt(os, errorCode);
     
     os.flush();
@@ -515,7 +550,15 @@ public class OutHttp2 implements AutoCloseable
   @Override
   public void close()
   {
-    _queue.offer(new MessageGoAway());
+    close(Http2Constants.NO_ERROR);
+  }
+  
+  /**
+   * Closes the connection with a GOAWAY carrying the error code.
+   */
+  public void close(int errorCode)
+  {
+    _queue.offer(new MessageGoAway(errorCode));
     _queue.wake();
   }
   
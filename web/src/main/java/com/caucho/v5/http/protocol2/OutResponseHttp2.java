@@ -63,7 +63,8 @@ public class OutResponseHttp2 extends OutHttpApp
   @Override
   public int bufferStart()
   {
-    return 0;//9;
+    // room for the DATA frame header, written in place
+    return ChannelOutHttp2.FRAME_LENGTH;
   }
   
   @Override
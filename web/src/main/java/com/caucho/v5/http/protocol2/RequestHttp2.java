@@ -36,12 +36,14 @@ import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.caucho.v5.health.shutdown.Shutdown;
 import com.caucho.v5.http.container.HttpContainer;
 import com.caucho.v5.http.protocol.ConnectionHttp;
 import com.caucho.v5.http.protocol.OutHttpApp;
+import com.caucho.v5.http.protocol.OutHttpTcp;
 import com.caucho.v5.http.protocol.ProtocolHttp;
 import com.caucho.v5.http.protocol.RequestHttp1;
 import com.caucho.v5.http.protocol.RequestHttpBase;
@@ -115,6 +117,8 @@ public class RequestHttp2
   private final ChannelHttp2 _channel;
 
   private final StringBuilder _cb = new StringBuilder();
+  
+  private boolean _isHeaderSent;
 
   //private ConnectionTcp _connTcp;
 
@@ -464,6 +468,8 @@ public class RequestHttp2
 
     _clientCert.clear();
     
+    _isHeaderSent = false;
+    
     // _isSecure = getConnection().isSecure();
   }
 
@@ -813,19 +819,37 @@ public class RequestHttp2
                        boolean isEnd)
   {
     try {
-      writeHeaders(isEnd && data == null);
+      OutHttp2 out = connHttp().getOut();
       
-      if (data != null) {
-        ConnectionHttp2 conn = connHttp();
-
-        OutHttp2 out = conn.getOut();
+      if (! _isHeaderSent) {
+        _isHeaderSent = true;
+        
+        if (isEnd && data == null) {
+          writeHeaders(true);
+          out.closeWrite(streamId());
+          
+          connTcp().writeStream().flush();
+          
+          logAccess();
+          
+          return false;
+        }
         
-        out.writeData(streamId(), data,
-                      isEnd ? Http2Constants.END_STREAM : 0);
+        writeHeaders(false);
       }
       
+      // data frames are interleaved with other streams by priority
+      SchedulerHttp2 scheduler = out.scheduler();
+      
+      scheduler.offer(streamId(), data, isEnd);
+      scheduler.write(os);
+      
       connTcp().writeStream().flush();
       
+      if (isEnd) {
+        logAccess();
+      }
+      
       return false;
     } catch (IOException e) {
       throw new RuntimeException(e);
@@ -867,6 +891,61 @@ public class RequestHttp2
     return true;
   }
   
+  /**
+   * Pushes a GET for the path as a server stream, sending PUSH_PROMISE on
+   * this stream before the pushed response is dispatched.
+   */
+  @Override
+  public boolean push(String path)
+  {
+    OutHttp2 out = connHttp().getOut();
+    
+    if (! out.isPushEnabled()
+        || (streamId() & 1) == 0
+        || path == null
+        || ! path.startsWith("/")) {
+      return false;
+    }
+    
+    RequestHttp2 push = (RequestHttp2) connHttp().newInRequest();
+    
+    push.header(":method", "GET");
+    push.header(":scheme", _scheme != null ? _scheme : "http");
+    push.header(":authority", _host.toString());
+    push.header(":path", path);
+    
+    String encoding = header("accept-encoding");
+    
+    if (encoding != null) {
+      push.header("accept-encoding", encoding);
+    }
+    
+    ChannelHttp2 channel = push.channel();
+    
+    int promisedId;
+    
+    try {
+      promisedId = out.nextStream(channel);
+    } catch (IllegalStateException e) {
+      log.log(Level.FINER, e.toString(), e);
+      
+      return false;
+    }
+    
+    channel.onHeader(promisedId);
+    
+    out.scheduler().priority(promisedId, streamId(), 16, false);
+    
+    outProxy().write(new PushPromise(streamId(), promisedId, push),
+                     null, false);
+    
+    push.dispatch();
+    
+    channel.closeRead();
+    
+    return true;
+  }
+  
   void writeHeaders(OutHeader out)
     throws IOException
   {
@@ -1006,6 +1085,56 @@ public class RequestHttp2
     return dbgId();
   }
   
+  /**
+   * Writes the PUSH_PROMISE frame from the writer thread, so it's ordered
+   * before the pushed stream's HEADERS.
+   */
+  private class PushPromise implements OutHttpTcp
+  {
+    private final int _streamId;
+    private final int _promisedId;
+    private final RequestHttp2 _push;
+    
+    PushPromise(int streamId, int promisedId, RequestHttp2 push)
+    {
+      _streamId = streamId;
+      _promisedId = promisedId;
+      _push = push;
+    }
+    
+    @Override
+    public boolean canWrite(long sequence)
+    {
+      return true;
+    }
+    
+    @Override
+    public boolean write(WriteStream os, Buffer data, boolean isEnd)
+    {
+      try {
+        OutHeader outHeader = connHttp().getOut().getOutHeader();
+        
+        outHeader.openPushPromise(_streamId, _promisedId);
+        
+        outHeader.header(":method", "GET");
+        outHeader.header(":scheme", _push._scheme);
+        outHeader.header(":authority", _push._host.toString());
+        outHeader.header(":path", _push._uri.toString());
+        
+        outHeader.closeHeaders();
+        
+        return false;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    
+    @Override
+    public void disconnect(WriteStream os)
+    {
+    }
+  }
+  
   private enum StateRequest {
     ACTIVE {
       @Override
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.http.protocol2;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Objects;
+
+import com.caucho.v5.io.WriteStream;
+
+import io.baratine.io.Buffer;
+
+/**
+ * Schedules outgoing DATA frames across the streams of a connection.
+ *
+ * Streams form the HTTP/2 dependency tree. A stream with data is served
+ * before its dependents. Among siblings, the next frame goes to the one
+ * with the smallest virtual time, which advances by the bytes sent
+ * divided by the weight, so siblings share bandwidth in proportion to
+ * their weights and a new small response isn't queued behind a large
+ * download.
+ *
+ * Each frame is limited by the peer's frame size and by the stream and
+ * connection send windows. A stream without window waits for the
+ * peer's WINDOW_UPDATE.
+ */
+class SchedulerHttp2
+{
+  static final int WEIGHT_DEFAULT = 16;
+  
+  // the connection window is not changed by SETTINGS
+  private static final int CONNECTION_WINDOW = 65535;
+  
+  // limit on idle nodes created by PRIORITY frames
+  private static final int NODE_MAX = 1024;
+  
+  private final OutHttp2 _out;
+  
+  private final HashMap<Integer,Node> _nodeMap = new HashMap<>();
+  private final Node _root = new Node(0);
+  
+  private long _connectionCredit = CONNECTION_WINDOW;
+  private int _window;
+  private int _frameMax = Http2Constants.INIT_MAX_FRAME_SIZE;
+  
+  SchedulerHttp2(OutHttp2 out)
+  {
+    Objects.requireNonNull(out);
+    
+    _out = out;
+    _window = out.getWindow();
+  }
+  
+  /**
+   * Updates the initial stream window and frame size from the peer's
+   * settings.
+   */
+  synchronized void settings(int window, int frameMax)
+  {
+    int delta = window - _window;
+    _window = window;
+    
+    if (delta != 0) {
+      for (Node node : _nodeMap.values()) {
+        node._credit += delta;
+      }
+    }
+    
+    if (frameMax > 0) {
+      _frameMax = frameMax;
+    }
+  }
+  
+  /**
+   * Adds window from a WINDOW_UPDATE.
+   * 
+   * @return true if there is data waiting to be written
+   */
+  synchronized boolean credit(int streamId, int credit)
+  {
+    if (streamId == 0) {
+      _connectionCredit += credit;
+    }
+    else {
+      Node node = _nodeMap.get(streamId);
+      
+      if (node == null) {
+        return false;
+      }
+      
+      node._credit += credit;
+    }
+    
+    return isActive(_root);
+  }
+  
+  /**
+   * Reprioritizes a stream from a PRIORITY frame or a HEADERS priority.
+   */
+  synchronized void priority(int streamId, int dependency, 
+                             int weight, boolean isExclusive)
+  {
+    if (streamId <= 0 || streamId == dependency) {
+      return;
+    }
+    
+    Node node = _nodeMap.get(streamId);
+    
+    if (node == null) {
+      if (NODE_MAX <= _nodeMap.size()) {
+        return;
+      }
+      
+      node = node(streamId);
+    }
+    
+    Node parent = _nodeMap.get(dependency);
+    
+    if (parent == null) {
+      parent = _root;
+    }
+    
+    if (parent.isDescendantOf(node)) {
+      // the new parent moves up to the node's old place
+      parent.parent(node._parent);
+    }
+    
+    node._weight = Math.max(1, Math.min(256, weight));
+    
+    if (isExclusive) {
+      for (Node child : new ArrayList<>(parent._children)) {
+        if (child != node) {
+          child.parent(node);
+        }
+      }
+    }
+    
+    node.parent(parent);
+  }
+  
+  /**
+   * Queues response data for a stream.
+   */
+  synchronized void offer(int streamId, Buffer data, boolean isEnd)
+  {
+    Node node = node(streamId);
+    
+    if (data != null && data.length() > 0) {
+      node._queue.add(data);
+    }
+    else if (data != null) {
+      data.free();
+    }
+    
+    if (isEnd) {
+      node._isEnd = true;
+    }
+    
+    for (Node ptr = node; ptr._parent != null; ptr = ptr._parent) {
+      ptr._vtime = Math.max(ptr._vtime, ptr._parent._vtimeBase);
+    }
+  }
+  
+  /**
+   * Drops a reset stream's data.
+   */
+  synchronized void remove(int streamId)
+  {
+    Node node = _nodeMap.get(streamId);
+    
+    if (node != null) {
+      remove(node);
+    }
+  }
+  
+  /**
+   * Writes frames until the queues are empty or the windows are closed.
+   */
+  synchronized void write(WriteStream os)
+    throws IOException
+  {
+    Node node;
+    
+    while ((node = select(_root)) != null) {
+      writeFrame(node);
+    }
+  }
+  
+  private void writeFrame(Node node)
+    throws IOException
+  {
+    Buffer data = node._queue.peek();
+    
+    int length = data != null ? data.length() : 0;
+    
+    int sublen = (int) Math.min(Math.min(length, _frameMax),
+                                Math.min(node._credit, _connectionCredit));
+    
+    boolean isLast = (sublen == length && node._queue.size() <= 1);
+    
+    int flags = isLast && node._isEnd ? Http2Constants.END_STREAM : 0;
+    
+    _out.writeData(node._id, data, sublen, flags);
+    
+    node._credit -= sublen;
+    _connectionCredit -= sublen;
+    
+    for (Node ptr = node; ptr._parent != null; ptr = ptr._parent) {
+      ptr._parent._vtimeBase = ptr._vtime;
+      ptr._vtime += (Math.max(sublen, 1) * 256L) / ptr._weight;
+    }
+    
+    if (data != null && data.length() == 0) {
+      node._queue.poll();
+      data.free();
+    }
+    
+    if (flags != 0) {
+      remove(node);
+    }
+  }
+  
+  /**
+   * Returns the stream to write next below the parent, or null if
+   * nothing can be written.
+   */
+  private Node select(Node parent)
+  {
+    Node best = null;
+    Node bestTarget = null;
+    
+    for (Node child : parent._children) {
+      if (best != null && best._vtime <= child._vtime) {
+        continue;
+      }
+      
+      Node target = isReady(child) ? child : select(child);
+      
+      if (target != null) {
+        best = child;
+        bestTarget = target;
+      }
+    }
+    
+    return bestTarget;
+  }
+  
+  /**
+   * True if the node can write a frame. An empty end frame doesn't need
+   * any window.
+   */
+  private boolean isReady(Node node)
+  {
+    if (node._queue.isEmpty()) {
+      return node._isEnd;
+    }
+    else {
+      return node._credit > 0 && _connectionCredit > 0;
+    }
+  }
+  
+  private boolean isActive(Node node)
+  {
+    if (node != _root && isReady(node)) {
+      return true;
+    }
+    
+    for (Node child : node._children) {
+      if (isActive(child)) {
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  private Node node(int streamId)
+  {
+    Node node = _nodeMap.get(streamId);
+    
+    if (node == null) {
+      node = new Node(streamId);
+      node._credit = _window;
+      node.parent(_root);
+      
+      _nodeMap.put(streamId, node);
+    }
+    
+    return node;
+  }
+  
+  /**
+   * Removes a closed stream, giving its children its place in the tree
+   * with its weight shared in proportion to theirs.
+   */
+  private void remove(Node node)
+  {
+    _nodeMap.remove(node._id);
+    
+    for (Buffer data : node._queue) {
+      data.free();
+    }
+    node._queue.clear();
+    
+    Node parent = node._parent;
+    
+    int sum = 0;
+    
+    for (Node child : node._children) {
+      sum += child._weight;
+    }
+    
+    for (Node child : new ArrayList<>(node._children)) {
+      child._weight = Math.max(1, node._weight * child._weight / sum);
+      child.parent(parent);
+    }
+    
+    node.parent(null);
+  }
+  
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _nodeMap.size() + "]";
+  }
+  
+  private static class Node
+  {
+    private final int _id;
+    
+    private Node _parent;
+    private final ArrayList<Node> _children = new ArrayList<>();
+    
+    private int _weight = WEIGHT_DEFAULT;
+    
+    // virtual finish time among siblings
+    private long _vtime;
+    // virtual time of the last child served
+    private long _vtimeBase;
+    
+    private long _credit;
+    
+    private final ArrayDeque<Buffer> _queue = new ArrayDeque<>();
+    private boolean _isEnd;
+    
+    Node(int id)
+    {
+      _id = id;
+    }
+    
+    boolean isDescendantOf(Node node)
+    {
+      for (Node ptr = _parent; ptr != null; ptr = ptr._parent) {
+        if (ptr == node) {
+          return true;
+        }
+      }
+      
+      return false;
+    }
+    
+    void parent(Node parent)
+    {
+      if (_parent != null) {
+        _parent._children.remove(this);
+      }
+      
+      _parent = parent;
+      
+      if (parent != null) {
+        parent._children.add(this);
+      }
+    }
+    
+    @Override
+    public String toString()
+    {
+      return (getClass().getSimpleName() + "[" + _id + ",w=" + _weight
+              + ",queue=" + _queue.size() + "]");
+    }
+  }
+}
@@ -37,6 +37,8 @@ public class SettingsHttp
 {
   private int _streamConcurrentMax = 256;
   private int _initialWindowSize = 256 * 1024;
+  private int _frameSizeMax = Http2Constants.INIT_MAX_FRAME_SIZE;
+  private boolean _isPushEnabled = true;
   
   public int getMaxConcurrentStreams()
   {
@@ -56,4 +58,28 @@ public class SettingsHttp
     
     _initialWindowSize = window;
   }
+  
+  public int frameSizeMax()
+  {
+    return _frameSizeMax;
+  }
+
+  public void frameSizeMax(int size)
+  {
+    if (size < Http2Constants.INIT_MAX_FRAME_SIZE || size > 0xffffff) {
+      throw new IllegalArgumentException(String.valueOf(size));
+    }
+    
+    _frameSizeMax = size;
+  }
+  
+  public boolean isPushEnabled()
+  {
+    return _isPushEnabled;
+  }
+  
+  public void pushEnabled(boolean isEnabled)
+  {
+    _isPushEnabled = isEnabled;
+  }
 }
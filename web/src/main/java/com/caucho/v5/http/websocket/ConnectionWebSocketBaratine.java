@@ -98,6 +98,12 @@ public class ConnectionWebSocketBaratine implements ConnectionProtocol
     return _wsConn.service();
   }
 
+  @Override
+  public void onClose()
+  {
+    _wsConn.onConnectionClose();
+  }
+
   @Override
   public String toString()
   {
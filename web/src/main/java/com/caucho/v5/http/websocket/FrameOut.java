@@ -29,12 +29,17 @@
 
 package com.caucho.v5.http.websocket;
 
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 import com.caucho.v5.io.TempBuffer;
 import com.caucho.v5.util.L10N;
 import com.caucho.v5.util.Utf8Util;
+import com.caucho.v5.websocket.io.FramePrepared;
 import com.caucho.v5.websocket.io.MessageState;
+import com.caucho.v5.websocket.io.PerMessageDeflate;
+import com.caucho.v5.websocket.io.WebSocketConstants;
 
 import io.baratine.io.Buffer;
 import io.baratine.web.WebSocketClose;
@@ -50,13 +55,32 @@ public class FrameOut<T,S>
   private TempBuffer _payload = TempBuffer.create();
   private MessageState _state = MessageState.IDLE;
 
+  private PerMessageDeflate _deflate;
+  private boolean _isDeflate;
+  private byte []_deflateTail = new byte[4];
+
   public FrameOut(WebSocketBase<T,S> ws)
   {
     _ws = ws;
   }
 
+  /**
+   * Enables permessage-deflate for outgoing messages.
+   */
+  public void deflate(PerMessageDeflate deflate)
+  {
+    _deflate = deflate;
+  }
+
   public void write(byte[] buffer, int offset, int length, boolean isFinal)
   {
+    if (isDeflate(length, isFinal)) {
+      _state = _state.toBinary();
+
+      writeDeflate(buffer, offset, length, isFinal);
+      return;
+    }
+
     int end = offset + length;
 
     do {
@@ -81,6 +105,16 @@ public class FrameOut<T,S>
   {
     int offset = 0;
     int len = buffer.length();
+
+    if (isDeflate(len, isFinal)) {
+      _state = _state.toBinary();
+
+      byte []data = new byte[len];
+      buffer.get(0, data, 0, len);
+
+      writeDeflate(data, 0, len, isFinal);
+      return;
+    }
     int end = offset + len;
 
     do {
@@ -108,6 +142,15 @@ public class FrameOut<T,S>
     int offset = 0;
     int end = data.length();
 
+    if (isDeflate(end, isFinal)) {
+      _state = _state.toText();
+
+      byte []bytes = data.getBytes(StandardCharsets.UTF_8);
+
+      writeDeflate(bytes, 0, bytes.length, isFinal);
+      return;
+    }
+
     do {
       offset += writeString(data, offset, end - offset, isFinal);
 
@@ -149,6 +192,114 @@ public class FrameOut<T,S>
     return writeLen;
   }
 
+  /**
+   * Writes a frame prepared once for many sockets.
+   */
+  public void write(FramePrepared frame)
+  {
+    if (_state != MessageState.IDLE) {
+      throw new IllegalStateException(L.l("prepared frame cannot interrupt a partial message in {0}",
+                                          _state));
+    }
+
+    PerMessageDeflate deflate = _deflate;
+
+    // the payload buffer isn't used, so broadcasts don't touch it
+    if (deflate != null && deflate.isServerNoContextTakeover()) {
+      _ws.send(frame.buffer(deflate));
+    }
+    else {
+      _ws.send(frame.buffer(null));
+    }
+  }
+
+  /**
+   * Decides compression at the first chunk of a message. Later chunks
+   * follow the message's decision.
+   */
+  private boolean isDeflate(int length, boolean isFinal)
+  {
+    PerMessageDeflate deflate = _deflate;
+
+    if (deflate == null) {
+      return false;
+    }
+
+    if (_state == MessageState.IDLE) {
+      _isDeflate = deflate.isCompress(length, isFinal);
+    }
+
+    return _isDeflate;
+  }
+
+  /**
+   * Compresses a message chunk into frames. Each chunk ends with a sync
+   * flush; the flush marker is held back until the next chunk, because
+   * the final frame must omit it.
+   */
+  private void writeDeflate(byte []buffer, int offset, int length,
+                            boolean isFinal)
+  {
+    Deflater deflater = _deflate.deflater();
+
+    deflater.setInput(buffer, offset, length);
+
+    while (true) {
+      TempBuffer payload = _payload;
+      int payloadLength = payload.length();
+      int avail = payload.capacity() - payloadLength;
+
+      int sublen = deflater.deflate(payload.buffer(), payloadLength, avail,
+                                    Deflater.SYNC_FLUSH);
+
+      payload.length(payloadLength + sublen);
+
+      if (sublen < avail && deflater.needsInput()) {
+        break;
+      }
+      else if (sublen < avail) {
+        continue;
+      }
+
+      sendDeflatePart();
+    }
+
+    if (isFinal) {
+      int tailLength = _deflateTail.length;
+      _payload.length(Math.max(0, _payload.length() - tailLength));
+
+      Buffer b = completeFrame(true);
+      send(b);
+
+      _deflate.deflateEnd();
+    }
+    else {
+      sendDeflatePart();
+    }
+  }
+
+  /**
+   * Sends a continued compressed frame, carrying the possible flush
+   * marker over to the next frame.
+   */
+  private void sendDeflatePart()
+  {
+    byte []tail = _deflateTail;
+    int length = _payload.length() - tail.length;
+
+    if (length <= 0) {
+      return;
+    }
+
+    System.arraycopy(_payload.buffer(), length, tail, 0, tail.length);
+    _payload.length(length);
+
+    Buffer b = completeFrame(false);
+    send(b);
+
+    _payload.write(tail, 0, tail.length);
+  }
+
   public void pong(String data)
   {
     MessageState state = _state;
@@ -217,7 +368,17 @@ public class FrameOut<T,S>
       _state = _state.toFinal();
     }
 
-    byte[] header = createHeader(_state.code(), isFinal);
+    int code = _state.code();
+
+    int op = code & 0x0f;
+
+    if (_isDeflate
+        && (op == WebSocketConstants.OP_TEXT
+            || op == WebSocketConstants.OP_BINARY)) {
+      code |= PerMessageDeflate.FLAG_RSV1;
+    }
+
+    byte[] header = createHeader(code, isFinal);
 
     if (isFinal) {
       _state = _state.toIdle();
@@ -239,7 +400,7 @@ public class FrameOut<T,S>
       header = new byte[2];
       header[1] = (byte) (len);
     }
-    else if (len <= 1024 * 64) {
+    else if (len <= 0xffff) {
       header = new byte[4];
 
       header[1] = (byte) (0x7e);
@@ -34,6 +34,7 @@ import static io.baratine.web.HttpStatus.METHOD_NOT_ALLOWED;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +47,7 @@ import com.caucho.v5.util.L10N;
 import com.caucho.v5.web.webapp.RequestBaratine;
 import com.caucho.v5.web.webapp.RequestBaratineImpl;
 import com.caucho.v5.websocket.io.FrameIn;
+import com.caucho.v5.websocket.io.PerMessageDeflate;
 import com.caucho.v5.websocket.io.WebSocketBaratine;
 import com.caucho.v5.websocket.io.WebSocketConstants;
 
@@ -88,6 +90,10 @@ public class WebSocketBaratineImpl<T,S>
   //private int _frameLength;
   private OutHttpProxy _outProxy;
   private OutWebSocketWriter _outWriter;
+
+  // bytes queued to the connection but not yet written
+  private final AtomicLong _pendingBytes = new AtomicLong();
+  private final ArrayList<WebSocketGroupImpl> _groups = new ArrayList<>();
   //private int _opMessage;
 
   public WebSocketBaratineImpl(WebSocketManager manager,
@@ -216,6 +222,13 @@ public class WebSocketBaratineImpl<T,S>
       serverExtensionList.add("x-unmasked");
     }
 
+    PerMessageDeflate deflate
+      = PerMessageDeflate.negotiate(extensions, req.config());
+
+    if (deflate != null) {
+      serverExtensionList.add(deflate.header());
+    }
+
     req.status(HttpStatus.SWITCHING_PROTOCOLS);//, "Switching Protocols");
     req.header("Upgrade", "websocket");
     req.header("Connection", "Upgrade");
@@ -249,6 +262,10 @@ public class WebSocketBaratineImpl<T,S>
 
     frameInput(fIs);
 
+    if (deflate != null) {
+      deflate(deflate);
+    }
+
     // Endpoint endpoint = _endpointSkeleton.newEndpoint(_factory, paths);
     // Endpoint endpoint = wsCxt.getFactory().get();
 
@@ -312,15 +329,56 @@ public class WebSocketBaratineImpl<T,S>
   @Override
   public void send(Buffer buffer)
   {
+    _pendingBytes.addAndGet(buffer.length());
+
     _outProxy.write(_outWriter, buffer, false);
   }
 
   @Override
   public void sendEnd(Buffer buffer)
   {
+    _pendingBytes.addAndGet(buffer.length());
+
     _outProxy.write(_outWriter, buffer, true);
   }
 
+  /**
+   * Bytes queued for the connection and not yet written, used by groups
+   * to detect slow consumers.
+   */
+  long pendingBytes()
+  {
+    return _pendingBytes.get();
+  }
+
+  void joinGroup(WebSocketGroupImpl group)
+  {
+    synchronized (_groups) {
+      _groups.add(group);
+    }
+  }
+
+  void leaveGroup(WebSocketGroupImpl group)
+  {
+    synchronized (_groups) {
+      _groups.remove(group);
+    }
+  }
+
+  private void leaveGroups()
+  {
+    ArrayList<WebSocketGroupImpl> groups;
+
+    synchronized (_groups) {
+      groups = new ArrayList<>(_groups);
+      _groups.clear();
+    }
+
+    for (WebSocketGroupImpl group : groups) {
+      group.onClose(this);
+    }
+  }
+
   //
   // impl
   //
@@ -394,6 +452,10 @@ public class WebSocketBaratineImpl<T,S>
   @Override
   protected void disconnect()
   {
+    super.disconnect();
+
+    leaveGroups();
+
     ConnectionHttp conn = _request.connHttp();
     
     if (conn != null) {
@@ -407,6 +469,12 @@ public class WebSocketBaratineImpl<T,S>
     }
   }
 
+  @Override
+  protected void onConnectionClose()
+  {
+    leaveGroups();
+  }
+
   @Override
   public String toString()
   {
@@ -667,6 +735,8 @@ public class WebSocketBaratineImpl<T,S>
                          Buffer data,
                          boolean isEnd)
     {
+      int length = data.length();
+
       if (out != null) {
         try {
           out.write(data);
@@ -676,6 +746,8 @@ public class WebSocketBaratineImpl<T,S>
         }
       }
 
+      _pendingBytes.addAndGet(-length);
+
       return false;
     }
 
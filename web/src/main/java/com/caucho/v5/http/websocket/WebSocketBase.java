@@ -33,6 +33,7 @@ import static com.caucho.v5.websocket.io.WebSocketConstants.OP_BINARY;
 import static com.caucho.v5.websocket.io.WebSocketConstants.OP_TEXT;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,6 +48,8 @@ import com.caucho.v5.websocket.io.Frame.FramePing;
 import com.caucho.v5.websocket.io.Frame.FramePong;
 import com.caucho.v5.websocket.io.Frame.FrameText;
 import com.caucho.v5.websocket.io.FrameIn;
+import com.caucho.v5.websocket.io.FramePrepared;
+import com.caucho.v5.websocket.io.PerMessageDeflate;
 import com.caucho.v5.websocket.io.WebSocketBaratine;
 import com.caucho.v5.websocket.io.WebSocketConstants;
 
@@ -93,6 +96,7 @@ abstract public class WebSocketBase<T,S> implements WebSocketBaratine<S>
   private RequestBaratine _request;
 
   private FrameOut<T,S> _frameOut = new FrameOut<>(this);
+  private PerMessageDeflate _deflate;
   //private TempBuffer _tBuf;
 
   private int _opMessage;
@@ -131,6 +135,21 @@ abstract public class WebSocketBase<T,S> implements WebSocketBaratine<S>
     _fIs = fIs;
   }
 
+  /**
+   * Enables the negotiated permessage-deflate extension for both
+   * directions.
+   */
+  protected void deflate(PerMessageDeflate deflate)
+  {
+    Objects.requireNonNull(deflate);
+    Objects.requireNonNull(_fIs);
+
+    _deflate = deflate;
+
+    _fIs.deflate(deflate);
+    _frameOut.deflate(deflate);
+  }
+
   @Override
   public RequestWeb request()
   {
@@ -201,6 +220,27 @@ abstract public class WebSocketBase<T,S> implements WebSocketBaratine<S>
     _frameOut.write(buffer, offset, length, isFinal);
   }
 
+  /**
+   * Write a message prepared once for many sockets.
+   */
+  @Override
+  public void write(FramePrepared frame)
+  {
+    Objects.requireNonNull(frame);
+
+    _frameOut.write(frame);
+  }
+
+  /**
+   * Binary stream for a single message. The bytes are collected and sent
+   * as a final binary frame when the stream is closed.
+   */
+  @Override
+  public OutputStream outputStream()
+  {
+    return new OutputStreamWebSocket();
+  }
+
   /**
    * Write a final text chunk.
    */
@@ -252,6 +292,20 @@ abstract public class WebSocketBase<T,S> implements WebSocketBaratine<S>
   {
     //_fIs.// asdf
     //_frameOut.dis
+
+    PerMessageDeflate deflate = _deflate;
+
+    if (deflate != null) {
+      deflate.close();
+    }
+  }
+
+  /**
+   * Called when the underlying connection closes, with or without a
+   * close handshake.
+   */
+  protected void onConnectionClose()
+  {
   }
 
   @Override
@@ -515,6 +569,7 @@ abstract public class WebSocketBase<T,S> implements WebSocketBaratine<S>
             System.out.println("UNKNOWN: " + _opMessage);
             return false;
           }
+          break;
 
         case WebSocketConstants.OP_CLOSE:
           readClose(_fIs);
@@ -614,6 +669,54 @@ abstract public class WebSocketBase<T,S> implements WebSocketBaratine<S>
     }
   }
 
+  /**
+   * Message output stream, sending the buffered bytes on close.
+   */
+  private class OutputStreamWebSocket extends OutputStream
+  {
+    private final byte []_byte = new byte[1];
+    private Buffer _buffer = Buffers.factory().create();
+
+    @Override
+    public void write(int value)
+      throws IOException
+    {
+      _byte[0] = (byte) value;
+
+      buffer().write(_byte, 0, 1);
+    }
+
+    @Override
+    public void write(byte []data, int offset, int length)
+      throws IOException
+    {
+      buffer().write(data, offset, length);
+    }
+
+    private Buffer buffer()
+      throws IOException
+    {
+      Buffer buffer = _buffer;
+
+      if (buffer == null) {
+        throw new IOException(L.l("websocket output stream is closed"));
+      }
+
+      return buffer;
+    }
+
+    @Override
+    public void close()
+    {
+      Buffer buffer = _buffer;
+      _buffer = null;
+
+      if (buffer != null) {
+        WebSocketBase.this.write(buffer);
+      }
+    }
+  }
+
   /**
    * Read to Frame entries for binary data
    */
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.http.websocket;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.util.L10N;
+import com.caucho.v5.websocket.io.FramePrepared;
+
+import io.baratine.web.WebSocket;
+import io.baratine.web.WebSocketClose.WebSocketCloses;
+import io.baratine.web.WebSocketGroup;
+
+/**
+ * Broadcast group of server websockets.
+ *
+ * A message is framed once as a {@link FramePrepared}; each member
+ * receives a private view of the shared, immutable frame, so the frame is
+ * released when the last member's connection has written it. Each write
+ * is queued on the member's connection, which flushes once per batch.
+ *
+ * A member whose queued output exceeds the pending limit is a slow
+ * consumer. Depending on the policy, the message is dropped for that
+ * member or the member is closed and removed.
+ */
+class WebSocketGroupImpl implements WebSocketGroup
+{
+  private static final L10N L = new L10N(WebSocketGroupImpl.class);
+  private static final Logger log
+    = Logger.getLogger(WebSocketGroupImpl.class.getName());
+
+  private final String _name;
+  private final long _maxPending;
+  private final boolean _isSlowClose;
+
+  private final Set<WebSocketBaratineImpl<?,?>> _members
+    = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong _sendCount = new AtomicLong();
+  private final AtomicLong _dropCount = new AtomicLong();
+  private final AtomicLong _slowCloseCount = new AtomicLong();
+
+  WebSocketGroupImpl(String name, long maxPending, boolean isSlowClose)
+  {
+    Objects.requireNonNull(name);
+
+    _name = name;
+    _maxPending = maxPending;
+    _isSlowClose = isSlowClose;
+  }
+
+  @Override
+  public String name()
+  {
+    return _name;
+  }
+
+  @Override
+  public void join(WebSocket<?> ws)
+  {
+    WebSocketBaratineImpl<?,?> wsImpl = member(ws);
+
+    if (wsImpl.isClosed()) {
+      return;
+    }
+
+    if (_members.add(wsImpl)) {
+      wsImpl.joinGroup(this);
+    }
+  }
+
+  @Override
+  public void leave(WebSocket<?> ws)
+  {
+    WebSocketBaratineImpl<?,?> wsImpl = member(ws);
+
+    if (_members.remove(wsImpl)) {
+      wsImpl.leaveGroup(this);
+    }
+  }
+
+  /**
+   * Called when a member closes.
+   */
+  void onClose(WebSocketBaratineImpl<?,?> ws)
+  {
+    _members.remove(ws);
+  }
+
+  @Override
+  public int size()
+  {
+    return _members.size();
+  }
+
+  public long sendCount()
+  {
+    return _sendCount.get();
+  }
+
+  public long dropCount()
+  {
+    return _dropCount.get();
+  }
+
+  public long slowCloseCount()
+  {
+    return _slowCloseCount.get();
+  }
+
+  @Override
+  public void write(String data)
+  {
+    Objects.requireNonNull(data);
+
+    write(FramePrepared.text(data));
+  }
+
+  @Override
+  public void write(byte []buffer, int offset, int length)
+  {
+    Objects.requireNonNull(buffer);
+
+    write(FramePrepared.binary(buffer, offset, length));
+  }
+
+  /**
+   * Queues the shared frame to every member that can take it.
+   */
+  public void write(FramePrepared frame)
+  {
+    for (WebSocketBaratineImpl<?,?> ws : _members) {
+      if (ws.isClosed()) {
+        _members.remove(ws);
+      }
+      else if (_maxPending < ws.pendingBytes()) {
+        slowConsumer(ws);
+      }
+      else {
+        try {
+          ws.write(frame);
+
+          _sendCount.incrementAndGet();
+        } catch (RuntimeException e) {
+          // a member in the middle of its own partial message
+          _dropCount.incrementAndGet();
+
+          log.log(Level.FINER, e.toString(), e);
+        }
+      }
+    }
+  }
+
+  private void slowConsumer(WebSocketBaratineImpl<?,?> ws)
+  {
+    if (! _isSlowClose) {
+      _dropCount.incrementAndGet();
+      return;
+    }
+
+    if (! _members.remove(ws)) {
+      return;
+    }
+
+    _slowCloseCount.incrementAndGet();
+
+    if (log.isLoggable(Level.FINE)) {
+      log.fine(L.l("{0} closing slow consumer {1} with {2} pending bytes",
+                   this, ws, ws.pendingBytes()));
+    }
+
+    ws.leaveGroup(this);
+    ws.close(WebSocketCloses.TRY_AGAIN_LATER, "slow consumer");
+  }
+
+  private WebSocketBaratineImpl<?,?> member(WebSocket<?> ws)
+  {
+    Objects.requireNonNull(ws);
+
+    if (! (ws instanceof WebSocketBaratineImpl)) {
+      throw new IllegalArgumentException(L.l("{0} cannot join websocket group '{1}' because only server websockets can be group members",
+                                             ws, _name));
+    }
+
+    return (WebSocketBaratineImpl<?,?>) ws;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _name + ",size=" + size() + "]";
+  }
+}
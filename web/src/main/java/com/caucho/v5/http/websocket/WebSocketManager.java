@@ -30,15 +30,60 @@
 package com.caucho.v5.http.websocket;
 
 import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+import io.baratine.config.Config;
 import io.baratine.web.ServiceWebSocket;
 import io.baratine.web.WebSocket;
+import io.baratine.web.WebSocketGroups;
 
 /**
  * websocket server container
  */
-public class WebSocketManager
+public class WebSocketManager implements WebSocketGroups
 {
+  private final ConcurrentHashMap<String,WebSocketGroupImpl> _groupMap
+    = new ConcurrentHashMap<>();
+
+  private long _groupMaxPending = 256 * 1024;
+  private boolean _isGroupSlowClose;
+
+  /**
+   * Configures the broadcast groups' slow-consumer policy.
+   */
+  public void config(Config config)
+  {
+    Objects.requireNonNull(config);
+
+    _groupMaxPending = config.get("server.websocket.group.max-pending",
+                                  long.class, _groupMaxPending);
+
+    String policy = config.get("server.websocket.group.slow-policy", "drop");
+
+    _isGroupSlowClose = "close".equalsIgnoreCase(policy);
+  }
+
+  @Override
+  public WebSocketGroupImpl group(String name)
+  {
+    Objects.requireNonNull(name);
+
+    WebSocketGroupImpl group = _groupMap.get(name);
+
+    if (group == null) {
+      group = new WebSocketGroupImpl(name, _groupMaxPending, _isGroupSlowClose);
+
+      WebSocketGroupImpl oldGroup = _groupMap.putIfAbsent(name, group);
+
+      if (oldGroup != null) {
+        group = oldGroup;
+      }
+    }
+
+    return group;
+  }
+
   public <S> void serialize(WebSocket<S> ws, S value)
     throws IOException
   {
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.util.L10N;
+
+import io.baratine.io.Buffer;
+
+/**
+ * Read-only buffer for a region of a file.
+ *
+ * Socket streams that expose a channel send the region with
+ * FileChannel.transferTo, which uses sendfile where the OS supports it,
+ * so the file data never passes through a heap buffer. Other streams
+ * read it like any other buffer.
+ *
+ * The buffer owns the channel, and closes it when freed.
+ */
+public class FileRegionBuffer implements Buffer
+{
+  private static final L10N L = new L10N(FileRegionBuffer.class);
+  private static final Logger log
+    = Logger.getLogger(FileRegionBuffer.class.getName());
+
+  private final FileChannel _channel;
+  private final long _start;
+  private final long _end;
+
+  // read position
+  private long _position;
+
+  public FileRegionBuffer(FileChannel channel, long start, int length)
+  {
+    if (start < 0 || length < 0) {
+      throw new IllegalArgumentException(start + " " + length);
+    }
+
+    _channel = channel;
+    _start = start;
+    _end = start + length;
+    _position = start;
+  }
+
+  @Override
+  public int length()
+  {
+    return (int) (_end - _position);
+  }
+
+  /**
+   * Sends the remaining region to the channel.
+   *
+   * If the channel stops accepting data, the transfer returns instead of
+   * spinning, and the remainder is left for the caller to write by
+   * copying.
+   *
+   * @return true if the whole region was sent
+   */
+  public boolean transferTo(WritableByteChannel out)
+    throws IOException
+  {
+    while (_position < _end) {
+      long sublen = _channel.transferTo(_position, _end - _position, out);
+
+      if (sublen <= 0) {
+        if (_channel.size() <= _position) {
+          throw new IOException(L.l("{0} file truncated while sending", this));
+        }
+
+        return false;
+      }
+
+      _position += sublen;
+    }
+
+    return true;
+  }
+
+  /**
+   * Reads from the remaining region, like length().
+   */
+  @Override
+  public Buffer get(int pos, byte []buffer, int offset, int length)
+  {
+    if (pos < 0 || length < 0 || length() < pos + length) {
+      throw new IndexOutOfBoundsException(L.l("{0} get({1}, {2})",
+                                              this, pos, length));
+    }
+
+    try {
+      readFully(_position + pos, ByteBuffer.wrap(buffer, offset, length));
+
+      return this;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public int read(byte []buffer, int offset, int length)
+  {
+    int sublen = Math.min(length, length());
+
+    if (sublen <= 0) {
+      return -1;
+    }
+
+    try {
+      readFully(_position, ByteBuffer.wrap(buffer, offset, sublen));
+
+      _position += sublen;
+
+      return sublen;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void read(ByteBuffer buffer)
+  {
+    int sublen = Math.min(buffer.remaining(), length());
+
+    if (sublen <= 0) {
+      return;
+    }
+
+    ByteBuffer slice = buffer.duplicate();
+    slice.limit(slice.position() + sublen);
+
+    try {
+      readFully(_position, slice);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    buffer.position(buffer.position() + sublen);
+    _position += sublen;
+  }
+
+  @Override
+  public void read(OutputStream os)
+    throws IOException
+  {
+    TempBuffer tBuf = TempBuffer.create();
+
+    try {
+      byte []buffer = tBuf.buffer();
+
+      int sublen;
+
+      while ((sublen = read(buffer, 0, buffer.length)) > 0) {
+        os.write(buffer, 0, sublen);
+      }
+    } finally {
+      tBuf.free();
+    }
+  }
+
+  private void readFully(long position, ByteBuffer buffer)
+    throws IOException
+  {
+    while (buffer.hasRemaining()) {
+      int sublen = _channel.read(buffer, position);
+
+      if (sublen < 0) {
+        throw new IOException(L.l("{0} unexpected end of file", this));
+      }
+
+      position += sublen;
+    }
+  }
+
+  @Override
+  public Buffer set(int pos, byte []buffer, int offset, int length)
+  {
+    throw new UnsupportedOperationException(getClass().getName());
+  }
+
+  @Override
+  public Buffer set(int pos, Buffer buffer, int offset, int length)
+  {
+    throw new UnsupportedOperationException(getClass().getName());
+  }
+
+  @Override
+  public Buffer write(byte []buffer, int offset, int length)
+  {
+    throw new UnsupportedOperationException(getClass().getName());
+  }
+
+  @Override
+  public Buffer write(InputStream is)
+  {
+    throw new UnsupportedOperationException(getClass().getName());
+  }
+
+  @Override
+  public void free()
+  {
+    try {
+      _channel.close();
+    } catch (IOException e) {
+      log.log(Level.FINER, e.toString(), e);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[" + _start + "," + (_end - _start) + "]");
+  }
+}
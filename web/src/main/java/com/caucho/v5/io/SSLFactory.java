@@ -64,5 +64,13 @@ public interface SSLFactory {
   {
     throw new UnsupportedOperationException(getClass().getName());
   }
+
+  /**
+   * Configures the stream for a new secure connection, e.g. its
+   * record sizes.
+   */
+  default void initStream(SocketStream stream)
+  {
+  }
 }
 
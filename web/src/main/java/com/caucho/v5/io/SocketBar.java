@@ -174,6 +174,15 @@ abstract public class SocketBar implements Closeable
     return false;
   }
 
+  /**
+   * Returns true if the secure connection resumed a cached session
+   * instead of a full handshake.
+   */
+  public boolean isSecureResumed()
+  {
+    return false;
+  }
+
   /**
    * Returns any selectable channel.
    */
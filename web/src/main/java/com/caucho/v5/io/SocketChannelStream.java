@@ -52,16 +52,19 @@ public class SocketChannelStream extends StreamImpl
   
   private static byte []UNIX_NEWLINE = new byte[] { (byte) '\n' };
   
-  private static final int SIZE = 16 * 1024;
-
   private SocketChannel _s;
   //private InputStream _is;
   //private OutputStream _os;
   private boolean _needsFlush;
   private byte []_newline = UNIX_NEWLINE;
   
-  private ByteBuffer _readBuffer;
-  private ByteBuffer _writeBuffer;
+  private static final int GATHER_MAX = 16;
+
+  // segments of the current gathering write
+  private final ByteBuffer []_gather = new ByteBuffer[GATHER_MAX];
+  private final boolean []_isGatherPooled = new boolean[GATHER_MAX];
+  private int _gatherCount;
+  private long _gatherLength;
 
   private boolean _throwReadInterrupts = false;
   private boolean _isCloseWrite;
@@ -71,8 +74,6 @@ public class SocketChannelStream extends StreamImpl
 
   public SocketChannelStream()
   {
-    _readBuffer = ByteBuffer.allocateDirect(SIZE);
-    _writeBuffer = ByteBuffer.allocateDirect(SIZE);
   }
 
   public SocketChannelStream(SocketChannel s)
@@ -99,9 +100,6 @@ public class SocketChannelStream extends StreamImpl
     //_is = null;
     //_os = null;
     _needsFlush = false;
-    
-    _readBuffer.clear().flip();
-    _writeBuffer.clear();
   }
 
   /**
@@ -208,31 +206,29 @@ public class SocketChannelStream extends StreamImpl
         return -1;
       }
       
-      int remaining = _readBuffer.remaining();
-      if (remaining <= 0) {
-        _readBuffer.clear();
-        
-        if (s.read(_readBuffer) < 0) {
-          _readBuffer.flip();
+      // the pooled buffer is no larger than the request, so a read
+      // never leaves bytes behind in it
+      ByteBuffer readBuffer = DirectBuffers.allocateFloor(length);
+
+      try {
+        readBuffer.limit(Math.min(length, readBuffer.capacity()));
+
+        if (s.read(readBuffer) < 0) {
           return -1;
         }
-        
-        _readBuffer.flip();
-        
-        remaining = _readBuffer.remaining();
-      }
-      
-      int sublen = Math.min(remaining, length); 
 
-      _readBuffer.get(buf, offset, sublen);
-      
-      int readLength = sublen;
+        readBuffer.flip();
+
+        int readLength = readBuffer.remaining();
+
+        readBuffer.get(buf, offset, readLength);
 
-      if (readLength >= 0) {
         _totalReadBytes += readLength;
-      }
 
-      return readLength;
+        return readLength;
+      } finally {
+        DirectBuffers.free(readBuffer);
+      }
     } catch (InterruptedIOException e) {
       if (_throwReadInterrupts)
         throw e;
@@ -313,7 +309,8 @@ public class SocketChannelStream extends StreamImpl
       return -1;
     }
 
-    return _readBuffer.remaining(); // XXX:
+    // reads don't buffer in the stream
+    return 0;
   }
 
   @Override
@@ -340,23 +337,27 @@ public class SocketChannelStream extends StreamImpl
       return;
     }
     
+    ByteBuffer writeBuffer = DirectBuffers.allocate(length);
+
     try {
       _needsFlush = true;
+
+      _totalWriteBytes += length;
       
       while (length > 0) {
-        _writeBuffer.clear();
-        int sublen = Math.min(length, _writeBuffer.remaining());
+        writeBuffer.clear();
+        int sublen = Math.min(length, writeBuffer.remaining());
         
-        _writeBuffer.put(buf, offset, sublen);
-        _writeBuffer.flip();
+        writeBuffer.put(buf, offset, sublen);
+        writeBuffer.flip();
         
-        _s.write(_writeBuffer);
+        while (writeBuffer.hasRemaining()) {
+          _s.write(writeBuffer);
+        }
         
         length -= sublen;
         offset += sublen;
       }
-
-      _totalWriteBytes += length;
     } catch (IOException e) {
       IOException exn = ClientDisconnectException.create(this + ":" + e, e);
       
@@ -366,6 +367,8 @@ public class SocketChannelStream extends StreamImpl
       }
 
       throw exn;
+    } finally {
+      DirectBuffers.free(writeBuffer);
     }
   }
 
@@ -377,28 +380,61 @@ public class SocketChannelStream extends StreamImpl
     throws IOException
   {
     if (_s == null) {
-      buffer.free();
+      free(buffer);
       return;
     }
     
+    ByteBuffer writeBuffer = null;
+    
     try {
       _needsFlush = true;
       
       if (buffer.isDirect()) {
-        _totalWriteBytes += buffer.length(); 
-        _s.write(buffer.direct());
+        _totalWriteBytes += buffer.length();
+
+        ByteBuffer direct = buffer.direct();
+
+        while (direct.hasRemaining()) {
+          _s.write(direct);
+        }
+        return;
+      }
+      
+      if (buffer instanceof FileRegionBuffer) {
+        int length = buffer.length();
+        
+        boolean isComplete = ((FileRegionBuffer) buffer).transferTo(_s);
+        
+        _totalWriteBytes += length - buffer.length();
+        
+        if (isComplete) {
+          return;
+        }
+        
+        // a stalled transfer sends the remainder by copying
+      }
+      
+      if (buffer instanceof TempBuffer
+          && ((TempBuffer) buffer).next() != null) {
+        gather(buffer);
+        gatherWrite();
         return;
       }
       
-      _totalWriteBytes += buffer.length();
+      int length = buffer.length();
+      _totalWriteBytes += length;
+      
+      writeBuffer = DirectBuffers.allocate(length);
       
       while (buffer.length() > 0) {
-        _writeBuffer.clear();
+        writeBuffer.clear();
         
-        buffer.read(_writeBuffer);
-        _writeBuffer.flip();
+        buffer.read(writeBuffer);
+        writeBuffer.flip();
         
-        _s.write(_writeBuffer);
+        while (writeBuffer.hasRemaining()) {
+          _s.write(writeBuffer);
+        }
       }
     } catch (IOException e) {
       IOException exn = ClientDisconnectException.create(this + ":" + e, e);
@@ -410,10 +446,193 @@ public class SocketChannelStream extends StreamImpl
 
       throw exn;
     } finally {
+      gatherFree();
+      free(buffer);
+      DirectBuffers.free(writeBuffer);
+    }
+  }
+
+  /**
+   * Writes both arrays with a single gathering write.
+   */
+  @Override
+  public boolean write(byte []buf1, int off1, int len1,
+                       byte []buf2, int off2, int len2,
+                       boolean isEnd)
+    throws IOException
+  {
+    if (_s == null) {
+      return true;
+    }
+
+    try {
+      _needsFlush = true;
+
+      gather(buf1, off1, len1);
+      gather(buf2, off2, len2);
+      gatherWrite();
+
+      return true;
+    } catch (IOException e) {
+      throw disconnect(e);
+    } finally {
+      gatherFree();
+    }
+  }
+
+  /**
+   * Writes the leading bytes and the buffer, including a TempBuffer chain,
+   * with a single gathering write.
+   */
+  @Override
+  public boolean write(byte []buf, int offset, int length,
+                       Buffer buffer,
+                       boolean isEnd)
+    throws IOException
+  {
+    if (buffer instanceof FileRegionBuffer) {
+      return false;
+    }
+
+    if (_s == null) {
+      free(buffer);
+      return true;
+    }
+
+    try {
+      _needsFlush = true;
+
+      gather(buf, offset, length);
+      gather(buffer);
+      gatherWrite();
+
+      return true;
+    } catch (IOException e) {
+      throw disconnect(e);
+    } finally {
+      gatherFree();
+      free(buffer);
+    }
+  }
+
+  private void gather(byte []buf, int offset, int length)
+    throws IOException
+  {
+    while (length > 0) {
+      ByteBuffer segment = DirectBuffers.allocate(length);
+
+      int sublen = Math.min(length, segment.remaining());
+      segment.put(buf, offset, sublen);
+      segment.flip();
+
+      gatherAdd(segment, true);
+
+      offset += sublen;
+      length -= sublen;
+    }
+  }
+
+  private void gather(Buffer buffer)
+    throws IOException
+  {
+    if (buffer.isDirect()) {
+      gatherAdd(buffer.direct(), false);
+      return;
+    }
+
+    if (buffer instanceof TempBuffer) {
+      TempBuffer ptr = ((TempBuffer) buffer).next();
+
+      gatherBuffer(buffer);
+
+      for (; ptr != null; ptr = ptr.next()) {
+        gatherBuffer(ptr);
+      }
+    }
+    else {
+      gatherBuffer(buffer);
+    }
+  }
+
+  private void gatherBuffer(Buffer buffer)
+    throws IOException
+  {
+    int length;
+
+    while ((length = buffer.length()) > 0) {
+      ByteBuffer segment = DirectBuffers.allocate(length);
+
+      buffer.read(segment);
+      segment.flip();
+
+      gatherAdd(segment, true);
+    }
+  }
+
+  private void gatherAdd(ByteBuffer segment, boolean isPooled)
+    throws IOException
+  {
+    if (_gatherCount == GATHER_MAX) {
+      gatherWrite();
+    }
+
+    int index = _gatherCount++;
+
+    _gather[index] = segment;
+    _isGatherPooled[index] = isPooled;
+    _gatherLength += segment.remaining();
+  }
+
+  private void gatherWrite()
+    throws IOException
+  {
+    long length = _gatherLength;
+
+    while (length > 0) {
+      length -= _s.write(_gather, 0, _gatherCount);
+    }
+
+    _totalWriteBytes += _gatherLength;
+
+    gatherFree();
+  }
+
+  private void gatherFree()
+  {
+    for (int i = 0; i < _gatherCount; i++) {
+      if (_isGatherPooled[i]) {
+        DirectBuffers.free(_gather[i]);
+      }
+
+      _gather[i] = null;
+    }
+
+    _gatherCount = 0;
+    _gatherLength = 0;
+  }
+
+  private static void free(Buffer buffer)
+  {
+    if (buffer instanceof TempBuffer) {
+      TempBuffer.freeAll((TempBuffer) buffer);
+    }
+    else {
       buffer.free();
     }
   }
 
+  private IOException disconnect(IOException e)
+  {
+    IOException exn = ClientDisconnectException.create(this + ":" + e, e);
+
+    try {
+      close();
+    } catch (IOException e1) {
+    }
+
+    return exn;
+  }
+
   /**
    * Flushes the socket.
    */
@@ -64,6 +64,8 @@ public class SocketChannelWrapperBar extends SocketBar
   
   private SocketChannel _channel;
   private SSLSocket _sslSocket;
+  private SSLFactory _sslFactory;
+  private boolean _isSecureResumed;
   
   private SocketChannelStream _channelStream;
   private SocketStream _sslStream;
@@ -85,6 +87,8 @@ public class SocketChannelWrapperBar extends SocketBar
   {
     _channel = s;
     _sslSocket = null;
+    _sslFactory = null;
+    _isSecureResumed = false;
     _streamImpl = null;
   }
   
@@ -164,8 +168,17 @@ public class SocketChannelWrapperBar extends SocketBar
       SocketChannel channel = _channel;
       Objects.requireNonNull(channel);
     
+      long startTime = System.currentTimeMillis();
+      
       _sslSocket = sslFactory.ssl(channel);
+      _sslFactory = sslFactory;
       _sslSocket.startHandshake();
+      
+      // a resumed session was created by an earlier handshake
+      SSLSession session = _sslSocket.getSession();
+      
+      _isSecureResumed = (session != null
+                          && session.getCreationTime() < startTime);
     } catch (IOException e) {
       e.printStackTrace();
       throw new RuntimeException(e);
@@ -307,6 +320,15 @@ public class SocketChannelWrapperBar extends SocketBar
   {
     return _sslSocket != null;
   }
+
+  /**
+   * Returns true if the handshake resumed a cached session.
+   */
+  @Override
+  public boolean isSecureResumed()
+  {
+    return _isSecureResumed;
+  }
   
   /**
    * Returns the secure cipher algorithm.
@@ -413,6 +435,7 @@ public class SocketChannelWrapperBar extends SocketBar
       }
       
       _sslStream.init(_sslSocket);
+      _sslFactory.initStream(_sslStream);
       _streamImpl = _sslStream;
     }
 
@@ -69,6 +69,12 @@ public class SocketStream extends StreamImpl
   private long _totalReadBytes;
   private long _totalWriteBytes;
 
+  // small records at the start of a connection, see recordSize()
+  private int _recordSize;
+  private long _recordBoostBytes;
+  private long _recordWriteBytes;
+  private RecordOutputStream _recordOs;
+
   public SocketStream()
   {
   }
@@ -90,6 +96,7 @@ public class SocketStream extends StreamImpl
     _is = null;
     _os = null;
     _needsFlush = false;
+    _recordWriteBytes = 0;
   }
 
   /**
@@ -122,6 +129,19 @@ public class SocketStream extends StreamImpl
     return _throwReadInterrupts;
   }
 
+  /**
+   * Writes the first bytes of a connection in records of at most
+   * {@code size} bytes, so a TLS client can decrypt a response as it
+   * arrives instead of waiting for a full 16k record. After
+   * {@code boostBytes} the stream writes full records for throughput.
+   * A zero size always writes full records.
+   */
+  public void recordSize(int size, long boostBytes)
+  {
+    _recordSize = size;
+    _recordBoostBytes = size > 0 ? boostBytes : 0;
+  }
+
   public void setNewline(byte []newline)
   {
     _newline = newline;
@@ -315,7 +335,14 @@ public class SocketStream extends StreamImpl
     
     try {
       _needsFlush = true;
-      _os.write(buf, offset, length);
+      
+      if (_recordWriteBytes < _recordBoostBytes) {
+        writeRecords(buf, offset, length);
+      }
+      else {
+        _os.write(buf, offset, length);
+      }
+      
       _totalWriteBytes += length;
     } catch (IOException e) {
       IOException exn = ClientDisconnectException.create(this + ":" + e, e);
@@ -345,7 +372,18 @@ public class SocketStream extends StreamImpl
     try {
       _needsFlush = true;
       int length = buffer.length();
-      buffer.read(_os);
+      
+      if (_recordWriteBytes < _recordBoostBytes) {
+        if (_recordOs == null) {
+          _recordOs = new RecordOutputStream();
+        }
+        
+        buffer.read(_recordOs);
+      }
+      else {
+        buffer.read(_os);
+      }
+      
       _totalWriteBytes += length;
     } catch (IOException e) {
       IOException exn = ClientDisconnectException.create(this + ":" + e, e);
@@ -361,6 +399,30 @@ public class SocketStream extends StreamImpl
     }
   }
 
+  /**
+   * Writes a chunk as a sequence of small records while the connection
+   * is still in its initial boost.
+   */
+  private void writeRecords(byte []buf, int offset, int length)
+    throws IOException
+  {
+    OutputStream os = _os;
+    
+    while (length > 0) {
+      int sublen = length;
+      
+      if (_recordWriteBytes < _recordBoostBytes) {
+        sublen = Math.min(sublen, _recordSize);
+      }
+      
+      os.write(buf, offset, sublen);
+      
+      _recordWriteBytes += sublen;
+      offset += sublen;
+      length -= sublen;
+    }
+  }
+
   /**
    * Flushes the socket.
    */
@@ -474,5 +536,22 @@ public class SocketStream extends StreamImpl
   {
     return getClass().getSimpleName() + "[" + _s + "]";
   }
-}
 
+  private class RecordOutputStream extends OutputStream
+  {
+    @Override
+    public void write(int ch)
+      throws IOException
+    {
+      _os.write(ch);
+      _recordWriteBytes++;
+    }
+    
+    @Override
+    public void write(byte []buf, int offset, int length)
+      throws IOException
+    {
+      writeRecords(buf, offset, length);
+    }
+  }
+}
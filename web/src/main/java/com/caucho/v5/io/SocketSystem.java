@@ -42,6 +42,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.caucho.v5.config.ConfigException;
+import com.caucho.v5.jni.ServerSocketJni;
 import com.caucho.v5.loader.EnvironmentLocal;
 import com.caucho.v5.util.CurrentTime;
 import com.caucho.v5.util.L10N;
@@ -211,6 +212,19 @@ abstract public class SocketSystem
                                                  boolean isJni)
     throws IOException;
 
+  /**
+   * Opens a server socket with SO_REUSEPORT for multiple acceptors.
+   *
+   * @return the server socket, or null if SO_REUSEPORT isn't supported
+   */
+  public ServerSocketBar openServerSocketReusePort(InetAddress address,
+                                                   int port,
+                                                   int backlog)
+    throws IOException
+  {
+    return ServerSocketJni.createReusePort(address, port, backlog);
+  }
+
   public ServerSocketBar openUnixServerSocket(Path unixPath)
     throws IOException
   {
@@ -236,6 +236,27 @@ public class StreamImpl
       return false;
   }
 
+  /**
+   * Writes a byte array followed by a buffer as a single write when the
+   * stream supports gathering writes. The buffer is freed when the write
+   * is handled.
+   *
+   * @param buf the leading bytes, e.g. buffered headers
+   * @param offset the offset into the byte array.
+   * @param length the number of bytes to write.
+   * @param buffer the following data
+   * @param isEnd true when the write is flushing a close.
+   *
+   * @return false if the caller must write the two parts itself
+   */
+  public boolean write(byte []buf, int offset, int length,
+                       Buffer buffer,
+                       boolean isEnd)
+    throws IOException
+  {
+    return false;
+  }
+
   /**
    * Clears any buffered values in the write.
    */
@@ -328,6 +328,16 @@ public class WriteStream extends OutputStreamWithBuffer
         }
       }
 
+      // buffered bytes and a large array go out in one gathering write
+      if (bufferLength <= length
+          && source != null
+          && source.write(buffer, 0, writeLength, buf, offset, length, false)) {
+        _writeLength = 0;
+        _position += writeLength + length;
+        _isFlushRequired = true;
+        return;
+      }
+
       final int sublen = Math.min(length, bufferLength - writeLength);
       
       System.arraycopy(buf, offset, buffer, writeLength, sublen);
@@ -460,12 +470,20 @@ public class WriteStream extends OutputStreamWithBuffer
       int sublen = buffer.read(_writeBuffer, writeLength, buffer.length());
       _writeLength = writeLength + sublen;
     }
+    else if (writeLength > 0
+             && _source.write(_writeBuffer, 0, writeLength, buffer, false)) {
+      // buffered headers and the data go out in one gathering write
+      _writeLength = 0;
+      _position += writeLength + length;
+      _isFlushRequired = true;
+    }
     else {
       if (_writeLength > 0) {
         flush();
       }
       
       _source.write(buffer, false);
+      _position += length;
     }
   }
   
@@ -124,6 +124,9 @@ public class OpenSSLFactory extends ServerSocketBar implements SSLFactory
     
     nextProtocols(protocol.nextProtocols());
     
+    _sessionCacheTimeout = cfg.get(portName + ".ssl.session-cache.timeout",
+                                   int.class, _sessionCacheTimeout);
+    
     initConfig();
   }
 
@@ -34,6 +34,7 @@ import java.net.BindException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.SocketOption;
 import java.net.StandardSocketOptions;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.file.Path;
@@ -48,6 +49,9 @@ import com.caucho.v5.util.L10N;
 public class ServerSocketFactoryBar
 {
   private static final L10N L = new L10N(ServerSocketFactoryBar.class);
+  
+  // SO_REUSEPORT is only in JDK 9 and later
+  private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
 
   public ServerSocketBar create(InetAddress host, 
                               int port, 
@@ -98,6 +102,57 @@ public class ServerSocketFactoryBar
     }
   }
   
+  /**
+   * Creates a server socket with SO_REUSEPORT, so several sockets can
+   * bind to the same port and the kernel spreads accepts across them.
+   * 
+   * @return the server socket, or null if SO_REUSEPORT isn't supported
+   */
+  public ServerSocketBar createReusePort(InetAddress host, 
+                                         int port, 
+                                         int listenBacklog)
+    throws IOException
+  {
+    if (SO_REUSEPORT == null) {
+      return null;
+    }
+    
+    ServerSocketChannel ss = ServerSocketChannel.open();
+    
+    try {
+      if (! ss.supportedOptions().contains(SO_REUSEPORT)) {
+        ss.close();
+        
+        return null;
+      }
+      
+      ss.setOption(SO_REUSEPORT, true);
+      ss.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      
+      ss.bind(new InetSocketAddress(host, port), listenBacklog);
+      
+      return new ServerSocketChannelWrapper(ss);
+    } catch (BindException e) {
+      ss.close();
+      
+      throw new BindException(L.l("{0}\nCan't bind SO_REUSEPORT socket to {1}:{2}.",
+                                  e.getMessage(), 
+                                  host != null ? host : "*",
+                                  String.valueOf(port)));
+    }
+  }
+  
+  @SuppressWarnings("unchecked")
+  private static SocketOption<Boolean> reusePortOption()
+  {
+    try {
+      return (SocketOption<Boolean>) StandardSocketOptions.class
+          .getField("SO_REUSEPORT").get(null);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+  
   public ServerSocketBar bindPath(Path path)
     throws IOException
   {
@@ -107,6 +107,18 @@ public class ServerSocketJni {
     return currentFactory().create(host, port, listenBacklog, isEnableJni);
   }
 
+  /**
+   * Creates a java ServerSocket with SO_REUSEPORT, or returns null if
+   * the JDK doesn't support it.
+   */
+  public static ServerSocketBar createReusePort(InetAddress host, int port,
+                                                int listenBacklog)
+    throws IOException
+  {
+    return new ServerSocketFactoryBar().createReusePort(host, port,
+                                                        listenBacklog);
+  }
+
   /**
    * Creates the SSL ServerSocket.
    */
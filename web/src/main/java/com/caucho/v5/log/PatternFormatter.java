@@ -43,6 +43,7 @@ import java.util.logging.LogRecord;
 
 import javax.annotation.PostConstruct;
 
+import com.caucho.v5.log.impl.LogRecordAsync;
 import com.caucho.v5.log.impl.MdcManager;
 import com.caucho.v5.log.impl.MdcManager.MdcService;
 import com.caucho.v5.util.CurrentTime;
@@ -119,6 +120,17 @@ public class PatternFormatter extends Formatter
     
     return sb.toString();
   }
+
+  /**
+   * Saves the logging thread's context the pattern uses, for a record
+   * formatted on another thread.
+   */
+  public void capture(LogRecordAsync record)
+  {
+    for (FormatItem item : _formatList) {
+      item.capture(record);
+    }
+  }
    
   private FormatItem []parsePattern(String pattern)
   {
@@ -828,6 +840,10 @@ public class PatternFormatter extends Formatter
     protected void formatImpl(StringBuilder sb, LogRecord log)
     {
     }
+
+    protected void capture(LogRecordAsync log)
+    {
+    }
   }
 
   private static class TextItem extends FormatItem
@@ -1009,6 +1025,14 @@ public class PatternFormatter extends Formatter
         highlight(sb, 0);
       }
     }
+
+    @Override
+    protected void capture(LogRecordAsync log)
+    {
+      for (FormatItem format : _format) {
+        format.capture(log);
+      }
+    }
     
     private void highlight(StringBuilder sb, int code)
     {
@@ -1153,6 +1177,15 @@ public class PatternFormatter extends Formatter
     @Override
     public void formatImpl(StringBuilder sb, LogRecord log)
     {
+      if (log instanceof LogRecordAsync) {
+        LogRecordAsync logAsync = (LogRecordAsync) log;
+
+        sb.append(logAsync.getThreadName());
+        sb.append('@');
+        sb.append(logAsync.getThreadId());
+        return;
+      }
+
       Thread thread = Thread.currentThread();
       
       sb.append(thread.getName());
@@ -1163,19 +1196,32 @@ public class PatternFormatter extends Formatter
 
   private static class MdcItem extends FormatItem
   {
+    private final String _key;
     private final MdcService _mdcEntry ;
 
     MdcItem(PadItem padItem, String key)
     {
       super(padItem);
       
+      _key = key;
       _mdcEntry  = MdcManager.get(key);
     }
     
     @Override
     public void formatImpl(StringBuilder sb, LogRecord log)
     {
-      sb.append(_mdcEntry.get());
+      if (log instanceof LogRecordAsync) {
+        sb.append(((LogRecordAsync) log).getMdc(_key));
+      }
+      else {
+        sb.append(_mdcEntry.get());
+      }
+    }
+
+    @Override
+    protected void capture(LogRecordAsync log)
+    {
+      log.putMdc(_key, _mdcEntry.get());
     }
   }
 
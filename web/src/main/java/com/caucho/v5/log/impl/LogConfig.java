@@ -193,6 +193,26 @@ public class LogConfig
     _logHandlerConfig.setFormatter(formatter);
   }
 
+  /**
+   * Formats and writes records on the handler's writer thread.
+   */
+  public LogConfig setAsync(boolean isAsync)
+  {
+    _logHandlerConfig.setAsync(isAsync);
+
+    return this;
+  }
+
+  /**
+   * Sets the full-queue policy for async logging: block or drop.
+   */
+  public LogConfig setOverflow(String overflow)
+  {
+    _logHandlerConfig.setOverflow(overflow);
+
+    return this;
+  }
+
   /**
    * Adds a handler
    */
@@ -34,25 +34,47 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Filter;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
 import com.caucho.v5.amp.deliver.Deliver;
 import com.caucho.v5.amp.deliver.Outbox;
 import com.caucho.v5.amp.deliver.QueueDeliver;
 import com.caucho.v5.amp.deliver.QueueDeliverBuilderImpl;
+import com.caucho.v5.log.PatternFormatter;
 import com.caucho.v5.util.L10N;
 
 /**
  * Configures a log handler
+ *
+ * Formatted messages are written by the handler's queue worker. In async
+ * mode, the caller only copies the record into the queue, and the worker
+ * formats a batch of records, writes them, and flushes once per batch.
+ * When the queue is full, the overflow policy either blocks the caller
+ * or drops the record, counting it as lost.
  */
 abstract public class LogHandlerBase extends Handler
 {
-  private QueueDeliver<LogItem<?>> _logQueue;
+  private static final L10N L = new L10N(LogHandlerBase.class);
+
+  private static final int OFF_VALUE = Level.OFF.intValue();
+
+  private QueueDeliver<LogItem<? super LogQueue>> _logQueue;
 
   private Filter _filter;
+
+  private volatile int _levelValue = Level.ALL.intValue();
+
+  private volatile boolean _isAsync;
+  private volatile Overflow _overflow = Overflow.BLOCK;
+  private int _queueSize = 16 * 1024;
+
+  private final AtomicLong _lostCount = new AtomicLong();
+  private long _lostCountReported;
   
   protected LogHandlerBase()
   {
@@ -71,6 +93,89 @@ abstract public class LogHandlerBase extends Handler
   {
     return _filter;
   }
+
+  /**
+   * Sets the level, cached for the unsynchronized isLoggable.
+   */
+  @Override
+  public void setLevel(Level level)
+  {
+    super.setLevel(level);
+
+    _levelValue = level.intValue();
+  }
+
+  @Override
+  public boolean isLoggable(LogRecord record)
+  {
+    if (record == null) {
+      return false;
+    }
+
+    int levelValue = _levelValue;
+
+    return (levelValue != OFF_VALUE
+            && levelValue <= record.getLevel().intValue());
+  }
+
+  /**
+   * Formats records on the queue's writer thread instead of the caller's.
+   */
+  public void setAsync(boolean isAsync)
+  {
+    _isAsync = isAsync;
+  }
+
+  public boolean isAsync()
+  {
+    return _isAsync;
+  }
+
+  /**
+   * Sets the policy when the queue is full: block or drop.
+   */
+  public void setOverflow(Overflow overflow)
+  {
+    Objects.requireNonNull(overflow);
+
+    _overflow = overflow;
+  }
+
+  public Overflow getOverflow()
+  {
+    return _overflow;
+  }
+
+  /**
+   * Sets the maximum queue size before the overflow policy applies.
+   */
+  public void setQueueSize(int size)
+  {
+    if (_logQueue != null) {
+      throw new IllegalStateException(L.l("queue size for {0} must be set before init",
+                                          this));
+    }
+
+    _queueSize = Math.max(256, size);
+  }
+
+  /**
+   * Records dropped because the queue was full.
+   */
+  public long getLostCount()
+  {
+    return _lostCount.get();
+  }
+
+  /**
+   * Records waiting in the queue.
+   */
+  public int getQueueDepth()
+  {
+    QueueDeliver<LogItem<? super LogQueue>> queue = _logQueue;
+
+    return queue != null ? queue.size() : 0;
+  }
   
   protected void init()
   {
@@ -84,7 +189,7 @@ abstract public class LogHandlerBase extends Handler
     QueueDeliverBuilderImpl builder
       = new QueueDeliverBuilderImpl();
     builder.size(256);
-    builder.sizeMax(16 * 1024);
+    builder.sizeMax(_queueSize);
     
     return builder.build(new LogQueue());
   }
@@ -137,6 +242,11 @@ abstract public class LogHandlerBase extends Handler
 
   protected void processPublish(LogRecord record)
   {
+    if (_isAsync) {
+      publishAsync(record);
+      return;
+    }
+
     String msg = format(record);
     
     if (msg == null) {
@@ -149,6 +259,66 @@ abstract public class LogHandlerBase extends Handler
     
     _logQueue.wake();
   }
+
+  /**
+   * Copies the record for the writer thread, which formats it.
+   */
+  private void publishAsync(LogRecord record)
+  {
+    LogRecordAsync recordAsync = new LogRecordAsync(record);
+
+    Formatter formatter = getFormatter();
+
+    if (formatter instanceof PatternFormatter) {
+      ((PatternFormatter) formatter).capture(recordAsync);
+    }
+
+    LogItemRecord item = new LogItemRecord(recordAsync);
+
+    QueueDeliver<LogItem<? super LogQueue>> queue = _logQueue;
+
+    boolean isOffer;
+
+    if (_overflow == Overflow.DROP) {
+      isOffer = queue.offer(item);
+    }
+    else {
+      isOffer = queue.offer(item, 10, TimeUnit.SECONDS);
+    }
+
+    if (! isOffer) {
+      _lostCount.incrementAndGet();
+    }
+
+    queue.wake();
+  }
+
+  /**
+   * Writes a warning for records dropped since the last report.
+   */
+  private void reportLost()
+  {
+    long lostCount = _lostCount.get();
+    long lostDelta = lostCount - _lostCountReported;
+
+    if (lostDelta <= 0) {
+      return;
+    }
+
+    _lostCountReported = lostCount;
+
+    LogRecord record
+      = new LogRecord(Level.WARNING,
+                      L.l("{0} log records were lost because the log queue was full ({1} total)",
+                          lostDelta, lostCount));
+    record.setLoggerName(LogHandlerBase.class.getName());
+
+    String msg = format(record);
+
+    if (msg != null) {
+      deliverLog(msg);
+    }
+  }
   
   protected boolean isNullDelimited()
   {
@@ -273,11 +443,18 @@ abstract public class LogHandlerBase extends Handler
   {
     long timeout = 10000;
     long expires = System.currentTimeMillis() + timeout;
+
+    QueueDeliver<LogItem<? super LogQueue>> queue = _logQueue;
+
+    if (queue == null) {
+      return;
+    }
     
-    if (_logQueue.size() > 0 && System.currentTimeMillis() < expires) {
-      _logQueue.wake();
+    // async records are only formatted by the writer, so drain the queue
+    while (queue.size() > 0 && System.currentTimeMillis() < expires) {
+      queue.wake();
       
-      //try { Thread.sleep(1); } catch (Exception e) {}
+      try { Thread.sleep(1); } catch (Exception e) {}
     }
   }
 
@@ -287,16 +464,35 @@ abstract public class LogHandlerBase extends Handler
     return getClass().getSimpleName() + "[]";
   }
 
+  /**
+   * Policy for a record published to a full queue.
+   */
+  public enum Overflow
+  {
+    /**
+     * Waits for space in the queue, for up to 10s.
+     */
+    BLOCK,
+
+    /**
+     * Drops the record and counts it as lost.
+     */
+    DROP;
+  }
+
+  /**
+   * Queue items are typed by a handler interface LogQueue implements,
+   * so each item is delivered to this visitor without a cast.
+   */
   private class LogQueue
-    implements LogItemStringHandler, Deliver<LogItemString>
+    implements LogItemStringHandler, LogItemRecordHandler,
+               Deliver<LogItem<? super LogQueue>>
   {
     @Override
-    public void deliver(LogItemString value, Outbox outbox)
+    public void deliver(LogItem<? super LogQueue> value, Outbox outbox)
       throws Exception
     {
-      // value.deliver(this);
-      
-      deliverLog(value.getLog());
+      value.deliver(this);
     }
     
     @Override
@@ -304,6 +500,16 @@ abstract public class LogHandlerBase extends Handler
     {
       deliverLog(msg);
     }
+
+    @Override
+    public void onRecord(LogRecord record)
+    {
+      String msg = format(record);
+
+      if (msg != null) {
+        deliverLog(msg);
+      }
+    }
     
     @Override
     public void flush()
@@ -314,6 +520,8 @@ abstract public class LogHandlerBase extends Handler
     @Override
     public void afterBatch()
     {
+      reportLost();
+
       processFlush();
     }
 
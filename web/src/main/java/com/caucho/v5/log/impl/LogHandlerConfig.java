@@ -70,6 +70,10 @@ public class LogHandlerConfig
   
   private boolean _isSkipInit;
 
+  private boolean _isAsync;
+  private LogHandlerBase.Overflow _overflow;
+  private int _queueSize;
+
   public LogHandlerConfig()
   {
   }
@@ -259,6 +263,31 @@ public class LogHandlerConfig
   {
     _filter = filter;
   }
+
+  /**
+   * Formats and writes records on the handler's writer thread.
+   */
+  public void setAsync(boolean isAsync)
+  {
+    _isAsync = isAsync;
+  }
+
+  /**
+   * Sets the full-queue policy for async logging: block or drop.
+   */
+  public void setOverflow(String overflow)
+    throws ConfigException
+  {
+    _overflow = toOverflow(overflow);
+  }
+
+  /**
+   * Sets the maximum queue size for the handler.
+   */
+  public void setQueueSize(int size)
+  {
+    _queueSize = size;
+  }
   
   // @Configurable
   public void add(Handler handler)
@@ -306,6 +335,10 @@ public class LogHandlerConfig
     }
     
     if (_pathHandler != null) {
+      if (_queueSize > 0) {
+        _pathHandler.setQueueSize(_queueSize);
+      }
+
       _pathHandler.init();
 
       _handler = _pathHandler;
@@ -334,6 +367,18 @@ public class LogHandlerConfig
     if (_filter != null) {
       _handler.setFilter(_filter);
     }
+
+    if (_handler instanceof LogHandlerBase) {
+      LogHandlerBase handlerBase = (LogHandlerBase) _handler;
+
+      if (_isAsync) {
+        handlerBase.setAsync(true);
+      }
+
+      if (_overflow != null) {
+        handlerBase.setOverflow(_overflow);
+      }
+    }
     
     if (_names.size() == 0) {
       _names.add("");
@@ -352,6 +397,17 @@ public class LogHandlerConfig
     }
   }
 
+  public static LogHandlerBase.Overflow toOverflow(String overflow)
+    throws ConfigException
+  {
+    try {
+      return LogHandlerBase.Overflow.valueOf(overflow.trim().toUpperCase());
+    } catch (Exception e) {
+      throw new ConfigException(L.l("'{0}' is an unknown log overflow policy.  Policies are:\nblock - wait for space in the queue\ndrop - drop the record and count it as lost",
+                                    overflow));
+    }
+  }
+
   static Level toLevel(String level)
     throws ConfigException
   {
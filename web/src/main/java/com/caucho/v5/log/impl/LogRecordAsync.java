@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.log.impl;
+
+import java.util.Arrays;
+import java.util.logging.LogRecord;
+
+/**
+ * Copy of a log record captured on the caller's thread, for formatting
+ * on a handler's writer thread.
+ *
+ * The source class and method are inferred from the caller's stack
+ * before the copy, the thread name and any MDC values a formatter uses
+ * are saved, and mutable message parameters are converted to strings,
+ * so the formatted message matches a synchronous log.
+ */
+public class LogRecordAsync extends LogRecord
+{
+  private static final long serialVersionUID = 1L;
+
+  private final String _threadName;
+  private final long _threadId;
+
+  private String []_mdcKeys;
+  private String []_mdcValues;
+  private int _mdcSize;
+
+  public LogRecordAsync(LogRecord record)
+  {
+    super(record.getLevel(), record.getMessage());
+
+    // source inference walks the stack, so it must run on the caller
+    setSourceClassName(record.getSourceClassName());
+    setSourceMethodName(record.getSourceMethodName());
+
+    setLoggerName(record.getLoggerName());
+    setResourceBundle(record.getResourceBundle());
+    setResourceBundleName(record.getResourceBundleName());
+    setSequenceNumber(record.getSequenceNumber());
+    setMillis(record.getMillis());
+    setThreadID(record.getThreadID());
+    setThrown(record.getThrown());
+    setParameters(capture(record.getParameters()));
+
+    Thread thread = Thread.currentThread();
+
+    _threadName = thread.getName();
+    _threadId = thread.getId();
+  }
+
+  private static Object []capture(Object []params)
+  {
+    if (params == null || params.length == 0) {
+      return params;
+    }
+
+    Object []copy = new Object[params.length];
+
+    for (int i = 0; i < params.length; i++) {
+      Object param = params[i];
+
+      if (param == null
+          || param instanceof String
+          || param instanceof Number
+          || param instanceof Boolean
+          || param instanceof Character
+          || param instanceof Enum) {
+        copy[i] = param;
+      }
+      else {
+        copy[i] = String.valueOf(param);
+      }
+    }
+
+    return copy;
+  }
+
+  /**
+   * The name of the thread that logged the record.
+   */
+  public String getThreadName()
+  {
+    return _threadName;
+  }
+
+  /**
+   * The id of the thread that logged the record.
+   */
+  public long getThreadId()
+  {
+    return _threadId;
+  }
+
+  /**
+   * Saves an MDC value of the logging thread.
+   */
+  public void putMdc(String key, String value)
+  {
+    if (_mdcKeys == null) {
+      _mdcKeys = new String[2];
+      _mdcValues = new String[2];
+    }
+    else if (_mdcKeys.length <= _mdcSize) {
+      _mdcKeys = Arrays.copyOf(_mdcKeys, 2 * _mdcSize);
+      _mdcValues = Arrays.copyOf(_mdcValues, 2 * _mdcSize);
+    }
+
+    _mdcKeys[_mdcSize] = key;
+    _mdcValues[_mdcSize] = value;
+    _mdcSize++;
+  }
+
+  /**
+   * Returns a saved MDC value.
+   */
+  public String getMdc(String key)
+  {
+    for (int i = 0; i < _mdcSize; i++) {
+      if (_mdcKeys[i].equals(key)) {
+        return _mdcValues[i];
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[" + getLevel() + "," + getLoggerName()
+            + "," + _threadName + "]");
+  }
+}
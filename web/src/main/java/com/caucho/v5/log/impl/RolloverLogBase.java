@@ -36,6 +36,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.concurrent.atomic.AtomicLong;
@@ -830,7 +833,9 @@ public class RolloverLogBase extends OutputStream // implements Closeable
       time = CurrentTime.currentTime();
     }
     
-    if (true) throw new UnsupportedOperationException();
+    if (format != null) {
+      return formatLocal(time, format);
+    }
 
     /*
     if (format != null)
@@ -843,7 +848,66 @@ public class RolloverLogBase extends OutputStream // implements Closeable
       return _rolloverPrefix + "." + QDate.formatLocal(time, "%Y%m%d.%H");
       */
     
-    return _rolloverPrefix + ".date";
+    return _rolloverPrefix + "." + formatLocal(time, "%Y%m%d.%H");
+  }
+
+  /**
+   * Formats the strftime-style fields used by archive names:
+   * %Y, %m, %d, %H, %M and %S.
+   */
+  private static String formatLocal(long time, String format)
+  {
+    LocalDateTime date
+      = LocalDateTime.ofInstant(Instant.ofEpochMilli(time),
+                                ZoneId.systemDefault());
+
+    StringBuilder sb = new StringBuilder();
+
+    int len = format.length();
+
+    for (int i = 0; i < len; i++) {
+      char ch = format.charAt(i);
+
+      if (ch != '%' || i + 1 == len) {
+        sb.append(ch);
+        continue;
+      }
+
+      switch (ch = format.charAt(++i)) {
+      case 'Y':
+        sb.append(date.getYear());
+        break;
+      case 'm':
+        pad2(sb, date.getMonthValue());
+        break;
+      case 'd':
+        pad2(sb, date.getDayOfMonth());
+        break;
+      case 'H':
+        pad2(sb, date.getHour());
+        break;
+      case 'M':
+        pad2(sb, date.getMinute());
+        break;
+      case 'S':
+        pad2(sb, date.getSecond());
+        break;
+      default:
+        sb.append(ch);
+        break;
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private static void pad2(StringBuilder sb, int value)
+  {
+    if (value < 10) {
+      sb.append('0');
+    }
+
+    sb.append(value);
   }
 
   /**
@@ -858,6 +922,8 @@ public class RolloverLogBase extends OutputStream // implements Closeable
   {
     if (_rolloverCron != null)
       return _rolloverCron.nextTime(time);
+    else if (INFINITE <= getRolloverPeriod())
+      return Long.MAX_VALUE;
     else
       return PeriodUtil.periodEnd(time, getRolloverPeriod());
   }
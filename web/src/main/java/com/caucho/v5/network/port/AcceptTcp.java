@@ -49,17 +49,19 @@ class AcceptTcp implements Runnable
 
   private final PortTcp _port;
   private final ServerSocketBar _serverSocket;
+  private final int _index;
 
   /**
    * Creates a new accept thread
    */
-  AcceptTcp(PortTcp port, ServerSocketBar serverSocket)
+  AcceptTcp(PortTcp port, ServerSocketBar serverSocket, int index)
   {
     Objects.requireNonNull(port);
     Objects.requireNonNull(serverSocket);
 
     _port = port;
     _serverSocket = serverSocket;
+    _index = index;
   }
 
   /**
@@ -142,7 +144,7 @@ class AcceptTcp implements Runnable
     String oldName = thread.getName();
     
     try {
-      thread.setName("accept-" + _port.port());
+      thread.setName("accept-" + _port.port() + "-" + _index);
 
       while (accept()) {
       }
@@ -595,6 +595,7 @@ public class ConnectionTcp implements ConnectionTcpApi, ConnectionTcpProxy
       while (! _port.isClosed()) {
         switch (state) {
         case IDLE:
+          ServiceRef.flushOutbox();
           tailState = state;
           return tailState;
 
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.network.port;
+
+/**
+ * Snapshot of the statistics for a single poll selector.
+ */
+public class PollSelectorStats
+{
+  private final int _index;
+  private final int _registerCount;
+  private final long _lifetimeRegisterCount;
+  private final long _lifetimeWakeCount;
+  private final long _lifetimeTimeoutCount;
+  private final long _lifetimeSelectCount;
+
+  PollSelectorStats(int index,
+                    int registerCount,
+                    long lifetimeRegisterCount,
+                    long lifetimeWakeCount,
+                    long lifetimeTimeoutCount,
+                    long lifetimeSelectCount)
+  {
+    _index = index;
+    _registerCount = registerCount;
+    _lifetimeRegisterCount = lifetimeRegisterCount;
+    _lifetimeWakeCount = lifetimeWakeCount;
+    _lifetimeTimeoutCount = lifetimeTimeoutCount;
+    _lifetimeSelectCount = lifetimeSelectCount;
+  }
+
+  /**
+   * Index of the selector thread.
+   */
+  public int getIndex()
+  {
+    return _index;
+  }
+
+  /**
+   * Connections currently registered with the selector.
+   */
+  public int getRegisterCount()
+  {
+    return _registerCount;
+  }
+
+  public long getLifetimeRegisterCount()
+  {
+    return _lifetimeRegisterCount;
+  }
+
+  /**
+   * Connections woken because data arrived.
+   */
+  public long getLifetimeWakeCount()
+  {
+    return _lifetimeWakeCount;
+  }
+
+  /**
+   * Connections woken after their keepalive expired.
+   */
+  public long getLifetimeTimeoutCount()
+  {
+    return _lifetimeTimeoutCount;
+  }
+
+  public long getLifetimeSelectCount()
+  {
+    return _lifetimeSelectCount;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[" + _index
+            + ",registered=" + _registerCount
+            + ",wake=" + _lifetimeWakeCount
+            + ",timeout=" + _lifetimeTimeoutCount + "]");
+  }
+}
@@ -28,6 +28,9 @@
 
 package com.caucho.v5.network.port;
 
+import java.util.Collections;
+import java.util.List;
+
 import com.caucho.v5.util.ModulePrivate;
 
 
@@ -96,6 +99,14 @@ abstract public class PollTcpManagerBase implements PollTcpManager {
   {
   }
 
+  /**
+   * Returns statistics for each selector thread.
+   */
+  public List<PollSelectorStats> selectorStats()
+  {
+    return Collections.emptyList();
+  }
+
   /**
    * Stops the manager.
    */
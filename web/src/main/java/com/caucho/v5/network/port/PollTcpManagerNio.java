@@ -11,18 +11,18 @@ import java.io.InterruptedIOException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.caucho.v5.amp.deliver.Deliver;
-import com.caucho.v5.amp.deliver.Outbox;
-import com.caucho.v5.amp.deliver.QueueDeliverBuilderImpl;
-import com.caucho.v5.amp.queue.QueueRingFixed;
 import com.caucho.v5.health.meter.ActiveMeter;
 import com.caucho.v5.health.meter.MeterService;
 import com.caucho.v5.health.shutdown.ExitCode;
@@ -32,64 +32,70 @@ import com.caucho.v5.lifecycle.Lifecycle;
 import com.caucho.v5.util.CurrentTime;
 
 /**
- * Represents a protocol connection.
+ * Polls keepalive connections with NIO selectors.
+ *
+ * Connections are sharded across several selector threads, one per
+ * core by default. Each selector has its own lock-free registration
+ * queue, so registration doesn't contend on a shared lock or hand off
+ * through a single thread.
  */
 public class PollTcpManagerNio
-  extends PollTcpManagerBase implements Runnable
+  extends PollTcpManagerBase
 {
   private static final Logger log
     = Logger.getLogger(PollTcpManagerNio.class.getName());
 
   private static final AtomicReference<PollTcpManagerNio> _nioSelectManager
     = new AtomicReference<PollTcpManagerNio>();
-  
+
   private static final ActiveMeter _keepaliveAsyncMeter
     = MeterService.createActiveMeter("Caucho|Port|Keepalive Poll");
-  
+
   private static int _gId;
-  
-  private final BlockingQueue<PollController> _registerQueue;
-  private final BlockingQueue<PollController> _newRegisterQueue;
 
-  private int _selectMax;
-  
-  private long _checkInterval = 15000L;
+  private final SelectorNio []_selectors;
 
-  private Thread _thread;
+  private int _selectMax;
 
-  private final Selector _selector;
+  private long _checkInterval = 15000L;
 
   private final AtomicInteger _connectionCount = new AtomicInteger();
 
-  private final AtomicInteger _activeCount = new AtomicInteger();
-
   private final Lifecycle _lifecycle = new Lifecycle();
 
-  private PollTcpManagerNio()
+  private PollTcpManagerNio(int selectorCount)
   {
-    try {
-      _selector = Selector.open();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    if (selectorCount <= 0) {
+      selectorCount = Runtime.getRuntime().availableProcessors();
+    }
+
+    _selectors = new SelectorNio[selectorCount];
+
+    for (int i = 0; i < selectorCount; i++) {
+      _selectors[i] = new SelectorNio(i);
     }
-    
-    QueueDeliverBuilderImpl builder
-      = new QueueDeliverBuilderImpl<>();
-    builder.sizeMax(8 * 1024);
-    
-    _registerQueue = builder.build(new RegisterProcessor());
-    _newRegisterQueue = new QueueRingFixed<>(8 * 1024);
   }
 
   /**
-   * Returns a jni select manager.
+   * Returns the nio select manager with a selector per core.
    */
   public static PollTcpManagerNio create()
+  {
+    return create(0);
+  }
+
+  /**
+   * Returns the nio select manager.
+   *
+   * @param selectorCount number of selector threads, or 0 for one per core.
+   * Only the first call creates the manager.
+   */
+  public static PollTcpManagerNio create(int selectorCount)
   {
     synchronized (_nioSelectManager) {
       if (_nioSelectManager.get() == null) {
-        PollTcpManagerNio selectManager = new PollTcpManagerNio();
-          
+        PollTcpManagerNio selectManager = new PollTcpManagerNio(selectorCount);
+
         if (selectManager.start()) {
           _nioSelectManager.set(selectManager);
         }
@@ -143,7 +149,7 @@ public class PollTcpManagerNio
   {
     // _maxSelectTime = timeout;
   }
-  
+
   /**
    * Returns the check interface.
    */
@@ -151,7 +157,7 @@ public class PollTcpManagerNio
   {
     return _checkInterval;
   }
-  
+
   /**
    * Sets the check interval.
    */
@@ -159,12 +165,20 @@ public class PollTcpManagerNio
   {
     _checkInterval = checkInterval;
   }
-  
+
   public boolean isActive()
   {
     return _lifecycle.isActive();
   }
 
+  /**
+   * Returns the number of selector threads.
+   */
+  public int selectorCount()
+  {
+    return _selectors.length;
+  }
+
   /**
    * Starts the manager.
    */
@@ -175,21 +189,17 @@ public class PollTcpManagerNio
       return false;
     }
 
-    log.isLoggable(Level.FINER);
-
-    String name = "resin-nio-select-manager-" + _gId++;
-    _thread = new Thread(this, name);
-    _thread.setDaemon(true);
-
-    _thread.start();
+    for (SelectorNio selector : _selectors) {
+      selector.start();
+    }
 
-    _lifecycle.waitForActive(2000);
+    _lifecycle.toActive();
 
     if (log.isLoggable(Level.FINER))
       log.finer(this + " active");
 
     log.fine("Non-blocking keepalive enabled with max sockets = "
-             + _selectMax);
+             + _selectMax + " selectors = " + _selectors.length);
 
     return true;
   }
@@ -228,171 +238,61 @@ public class PollTcpManagerNio
 
     _connectionCount.incrementAndGet();
 
-    _activeCount.incrementAndGet();
+    selector(conn).register(conn);
 
-    _registerQueue.offer(conn);
-    
     return PollResult.START;
   }
 
-  private void registerItem(PollController conn)
+  @Override
+  public void closePoll(PollController conn)
   {
-    try {
-      SelectableChannel selChannel = conn.getSocket().selectableChannel();
-
-      SelectionKey key = selChannel.register(_selector, 
-                                             SelectionKey.OP_READ,
-                                             conn);
-
-      if (key == null) {
-        log.warning(this + " selection failed for " + conn);
-
-        return;
-      }
-
-      if (! _lifecycle.isActive()) {
-        return;
-      }
-
-      if (_activeCount.decrementAndGet() == 0 && _lifecycle.isDestroyed()) {
-        destroy();
-      }
-
-      if (log.isLoggable(Level.FINER)) {
-        log.finer(conn + " add keepalive (select fd=" + key + 
-                  ",timeout=" + (conn.getIdleExpireTime() - CurrentTime.currentTime()) + "ms)");
-      }
-
-      _keepaliveAsyncMeter.start();
-    } catch (Exception e) {
-      _lifecycle.toError();
-      log.log(Level.WARNING, e.toString(), e);
+    if (conn != null) {
+      selector(conn).remove(conn);
     }
   }
-  
+
   @Override
-  public void closePoll(PollController conn)
+  public void onPortClose(PortSocket port)
   {
-    removeConnection(conn);
+    for (SelectorNio selector : _selectors) {
+      selector.wakeConnections(port);
+    }
   }
 
   /**
-   * Running process accepting connections.
+   * Returns the statistics for each selector.
    */
   @Override
-  public void run()
-  {
-    if (! _lifecycle.toActive()) {
-      log.fine(this + " cannot start because an instance is active");
-      return;
-    }
-    
-    // Thread thread = Thread.currentThread();
-    // int priority = thread.getPriority();
-    
-    try {
-      // thread.setPriority(Thread.MAX_PRIORITY - 1);
-      
-      runImpl();
-    } finally {
-      // thread.setPriority(priority);
-    }
-  }
-  
-  private void addNewItems()
-  {
-    PollController conn;
-    
-    while ((conn = _newRegisterQueue.poll()) != null) {
-      registerItem(conn);
-    }
-  }
-  
-  private void runImpl()
+  public List<PollSelectorStats> selectorStats()
   {
-    log.finer(this + " active");
+    List<PollSelectorStats> stats = new ArrayList<>();
 
-    int interruptCount = 0;
-    int exceptionCount = 0;
-
-    synchronized (_thread) {
-      _thread.notify();
+    for (SelectorNio selector : _selectors) {
+      stats.add(selector.stats());
     }
 
-    while (_lifecycle.isActive()) {
-      try {
-        long checkInterval = getCheckInterval();
-        long selectWaitTime = 5000L;
-        
-        if (checkInterval < selectWaitTime && checkInterval > 0) {
-          selectWaitTime = checkInterval;
-        }
-        
-        addNewItems();
-
-        int selectCount = _selector.select(selectWaitTime);
-
-        if (selectCount >= 0) {
-          Set<SelectionKey> selectedKeys = _selector.selectedKeys();
-          
-          Iterator<SelectionKey> iter = selectedKeys.iterator();
-          
-          while (iter.hasNext()) {
-            SelectionKey key = iter.next();
-            iter.remove();
-            
-            key.cancel();
-            // key.attach(null);
-            
-            PollController conn = (PollController) key.attachment();
-            
-            wakeConnection(conn);
-          }
-        }
-
-        interruptCount = 0;
-        exceptionCount = 0;
-      } catch (InterruptedIOException e) {
-        log.log(Level.FINER, e.toString(), e);
-
-        Thread.interrupted();
-
-        // If there's some sort of terminal exception, throw it
-        if (interruptCount++ > 100) {
-          log.fine("closing because too many interrupts");
-
-          log.log(Level.FINE, e.toString(), e);
-          close();
-          break;
-        }
-      } catch (Throwable e) {
-        log.log(Level.FINER, e.toString(), e);
-
-        // If there's some sort of terminal exception, throw it
-        if (exceptionCount++ > 100) {
-          String msg = "closing because too many JniSelectManager exceptions\n  " + e;
-          
-          log.log(Level.SEVERE, e.toString(), e);
-
-          Shutdown.shutdownActive(ExitCode.NETWORK, msg);
-          break;
-        }
-      }
-    }
+    return stats;
+  }
 
-    _thread = null;
+  /**
+   * A connection always uses the same selector, so it can be removed
+   * without searching the other selectors.
+   */
+  private SelectorNio selector(PollController conn)
+  {
+    int hash = System.identityHashCode(conn);
 
-    stop();
+    hash ^= hash >>> 16;
 
-    log.finer(this + " stopped");
+    return _selectors[(hash & Integer.MAX_VALUE) % _selectors.length];
   }
-  
+
   private void wakeConnection(PollController conn)
   {
     if (conn != null) {
       _connectionCount.decrementAndGet();
       _keepaliveAsyncMeter.end();
-      
+
       long now = CurrentTime.currentTime();
 
       if (conn.getIdleExpireTime() < now) {
@@ -412,12 +312,6 @@ public class PollTcpManagerNio
     }
   }
 
-  @Override
-  public void onPortClose(PortSocket port)
-  {
-    wakeConnections(port);
-  }
-  
   /**
    * Closing the manager.
    */
@@ -429,106 +323,302 @@ public class PollTcpManagerNio
 
     log.finest(this + " stopping");
 
-    closeConnections();
+    for (SelectorNio selector : _selectors) {
+      selector.close();
+    }
 
-    destroy();
+    _lifecycle.toDestroy();
 
     return true;
   }
-  
-  private void closeConnections()
+
+  @Override
+  protected void finalize()
+  {
+    close();
+  }
+
+  @Override
+  public String toString()
   {
-    wakeConnections(null);
+    return (getClass().getSimpleName()
+            + "[max=" + _selectMax
+            + ",selectors=" + _selectors.length + "]");
   }
-  
-  private void wakeConnections(PortSocket port)
+
+  /**
+   * A selector thread polling its share of the connections.
+   */
+  private class SelectorNio implements Runnable
   {
-    for (SelectionKey key : _selector.keys()) {
-      PollController conn = (PollController) key.attachment();
-      
-      if (conn != null && (port == null || conn.getPort() == port)) {
+    private final int _index;
+    private final Selector _selector;
+
+    private final ConcurrentLinkedQueue<PollController> _registerQueue
+      = new ConcurrentLinkedQueue<>();
+
+    // true while the thread is, or is about to be, blocked in select
+    private final AtomicBoolean _isSelecting = new AtomicBoolean();
+
+    private final AtomicInteger _registerCount = new AtomicInteger();
+
+    private final AtomicLong _lifetimeRegisterCount = new AtomicLong();
+    private final AtomicLong _lifetimeWakeCount = new AtomicLong();
+    private final AtomicLong _lifetimeTimeoutCount = new AtomicLong();
+    private final AtomicLong _lifetimeSelectCount = new AtomicLong();
+
+    private volatile Thread _thread;
+
+    SelectorNio(int index)
+    {
+      _index = index;
+
+      try {
+        _selector = Selector.open();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    void start()
+    {
+      String name = "baratine-nio-select-" + _gId++ + "-" + _index;
+
+      Thread thread = new Thread(this, name);
+      thread.setDaemon(true);
+
+      _thread = thread;
+
+      thread.start();
+    }
+
+    /**
+     * Queues the connection for the selector thread, waking the
+     * selector only if it's blocked.
+     */
+    void register(PollController conn)
+    {
+      _registerQueue.offer(conn);
+
+      if (_isSelecting.compareAndSet(true, false)) {
+        _selector.wakeup();
+      }
+    }
+
+    void remove(PollController conn)
+    {
+      SocketBar socket = conn.getSocket();
+
+      if (socket == null) {
+        return;
+      }
+
+      SelectableChannel channel = socket.selectableChannel();
+
+      if (channel == null) {
+        return;
+      }
+
+      SelectionKey key = channel.keyFor(_selector);
+
+      if (key != null && key.isValid()) {
         key.cancel();
-      
-        remove(conn);
 
+        _registerCount.decrementAndGet();
+      }
+    }
+
+    PollSelectorStats stats()
+    {
+      return new PollSelectorStats(_index,
+                                   _registerCount.get(),
+                                   _lifetimeRegisterCount.get(),
+                                   _lifetimeWakeCount.get(),
+                                   _lifetimeTimeoutCount.get(),
+                                   _lifetimeSelectCount.get());
+    }
+
+    @Override
+    public void run()
+    {
+      log.finer(this + " active");
+
+      int interruptCount = 0;
+      int exceptionCount = 0;
+
+      while (! _lifecycle.isAfterStopping()) {
         try {
-          conn.onPollReadClose();
+          long checkInterval = getCheckInterval();
+          long selectWaitTime = 5000L;
+
+          if (checkInterval < selectWaitTime && checkInterval > 0) {
+            selectWaitTime = checkInterval;
+          }
+
+          addNewItems();
+
+          _isSelecting.set(true);
+
+          int selectCount;
+
+          if (_registerQueue.isEmpty()) {
+            selectCount = _selector.select(selectWaitTime);
+          }
+          else {
+            selectCount = _selector.selectNow();
+          }
+
+          _isSelecting.set(false);
+
+          _lifetimeSelectCount.incrementAndGet();
+
+          // selectNow deregisters the cancelled keys, so the woken
+          // channels can register again
+          while (selectCount > 0 && wakeSelected()) {
+            selectCount = _selector.selectNow();
+          }
+
+          interruptCount = 0;
+          exceptionCount = 0;
+        } catch (InterruptedIOException e) {
+          log.log(Level.FINER, e.toString(), e);
+
+          Thread.interrupted();
+
+          // If there's some sort of terminal exception, throw it
+          if (interruptCount++ > 100) {
+            log.fine("closing because too many interrupts");
+
+            log.log(Level.FINE, e.toString(), e);
+            PollTcpManagerNio.this.close();
+            break;
+          }
         } catch (Throwable e) {
-          log.log(Level.WARNING, e.toString(), e);
+          log.log(Level.FINER, e.toString(), e);
+
+          // If there's some sort of terminal exception, throw it
+          if (exceptionCount++ > 100) {
+            String msg = "closing because too many JniSelectManager exceptions\n  " + e;
+
+            log.log(Level.SEVERE, e.toString(), e);
+
+            Shutdown.shutdownActive(ExitCode.NETWORK, msg);
+            break;
+          }
         }
       }
+
+      _thread = null;
+
+      log.finer(this + " stopped");
     }
-  }
-  
-  private boolean removeConnection(PollController conn)
-  {
-    if (conn == null) {
-      return false;
-    }
-    
-    SocketBar socket = conn.getSocket();
-    SelectableChannel channel = socket.selectableChannel();
-    
-    SelectionKey key = channel.keyFor(_selector);
-    
-    if (key != null) {
-      key.cancel();
-    }
-    
-    remove(conn);
-        
-    return true;
-  }
 
-  /**
-   * Removes the connection from the selection.
-   */
-  private void remove(PollController conn)
-  {
-    if (conn == null) {
-      return;
+    /**
+     * Wakes the connections for the selected keys.
+     *
+     * @return true if any keys were cancelled
+     */
+    private boolean wakeSelected()
+    {
+      Set<SelectionKey> selectedKeys = _selector.selectedKeys();
+
+      Iterator<SelectionKey> iter = selectedKeys.iterator();
+
+      boolean isCancel = false;
+
+      while (iter.hasNext()) {
+        SelectionKey key = iter.next();
+        iter.remove();
+
+        key.cancel();
+        isCancel = true;
+
+        PollController conn = (PollController) key.attachment();
+
+        _registerCount.decrementAndGet();
+
+        if (conn.getIdleExpireTime() < CurrentTime.currentTime()) {
+          _lifetimeTimeoutCount.incrementAndGet();
+        }
+        else {
+          _lifetimeWakeCount.incrementAndGet();
+        }
+
+        wakeConnection(conn);
+      }
+
+      return isCancel;
     }
 
-    if (_lifecycle.isDestroyed()) {
-      return;
+    private void addNewItems()
+    {
+      PollController conn;
+
+      while ((conn = _registerQueue.poll()) != null) {
+        registerItem(conn);
+      }
     }
 
-    _activeCount.incrementAndGet();
+    private void registerItem(PollController conn)
+    {
+      try {
+        SelectableChannel selChannel = conn.getSocket().selectableChannel();
+
+        SelectionKey key = selChannel.register(_selector,
+                                               SelectionKey.OP_READ,
+                                               conn);
+
+        if (key == null) {
+          log.warning(this + " selection failed for " + conn);
+
+          return;
+        }
+
+        _registerCount.incrementAndGet();
+        _lifetimeRegisterCount.incrementAndGet();
 
-    if (_activeCount.decrementAndGet() == 0 && _lifecycle.isDestroyed()) {
-      destroy();
+        if (log.isLoggable(Level.FINER)) {
+          log.finer(conn + " add keepalive (select fd=" + key +
+                    ",timeout=" + (conn.getIdleExpireTime() - CurrentTime.currentTime()) + "ms)");
+        }
+
+        _keepaliveAsyncMeter.start();
+      } catch (Exception e) {
+        log.log(Level.WARNING, e.toString(), e);
+      }
     }
-  }
 
-  private void destroy()
-  {
-  }
+    void wakeConnections(PortSocket port)
+    {
+      for (SelectionKey key : _selector.keys()) {
+        PollController conn = (PollController) key.attachment();
 
-  @Override
-  protected void finalize()
-  {
-    close();
-  }
+        if (conn != null && key.isValid()
+            && (port == null || conn.getPort() == port)) {
+          key.cancel();
 
-  @Override
-  public String toString()
-  {
-    return getClass().getSimpleName() + "[max=" + _selectMax + "]";
-  }
-  
-  private class RegisterProcessor
-    implements Deliver<PollController>
-  {
-    @Override
-    public void deliver(PollController item, Outbox outbox)
+          _registerCount.decrementAndGet();
+
+          try {
+            conn.onPollReadClose();
+          } catch (Throwable e) {
+            log.log(Level.WARNING, e.toString(), e);
+          }
+        }
+      }
+    }
+
+    void close()
     {
-      _newRegisterQueue.offer(item);
+      wakeConnections(null);
+
+      _selector.wakeup();
     }
-    
+
     @Override
-    public void afterBatch()
+    public String toString()
     {
-      _selector.wakeup();
+      return getClass().getSimpleName() + "[" + _index + "]";
     }
   }
 }
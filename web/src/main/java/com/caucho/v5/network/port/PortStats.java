@@ -29,11 +29,15 @@
 
 package com.caucho.v5.network.port;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
+import com.caucho.v5.health.meter.AverageTimeMeter;
 import com.caucho.v5.health.meter.CountMeter;
 import com.caucho.v5.health.meter.MeterService;
+import com.caucho.v5.health.meter.MetricRegistry;
 import com.caucho.v5.util.L10N;
 
 /**
@@ -50,6 +54,15 @@ public class PortStats
   private static final CountMeter _keepaliveMeter
     = MeterService.createCountMeter("Caucho|Port|Keepalive Count");
 
+  private static final CountMeter _sslHandshakeMeter
+    = MeterService.createCountMeter("Caucho|Port|SSL Handshake Count");
+
+  private static final CountMeter _sslResumeMeter
+    = MeterService.createCountMeter("Caucho|Port|SSL Resume Count");
+
+  private static final AverageTimeMeter _sslHandshakeTimeMeter
+    = MeterService.createAverageTimeMeter("Caucho|Port|SSL Handshake Time");
+
   // statistics
   
   private final PortTcp _port;
@@ -62,12 +75,87 @@ public class PortStats
   private final AtomicLong _lifetimeReadBytes = new AtomicLong();
   private final AtomicLong _lifetimeWriteBytes = new AtomicLong();
   private final AtomicLong _lifetimeThrottleDisconnectCount = new AtomicLong();
+  
+  private final AtomicLong _lifetimeSslHandshakeCount = new AtomicLong();
+  private final AtomicLong _lifetimeSslResumeCount = new AtomicLong();
+  private final AtomicLong _lifetimeSslHandshakeFailCount = new AtomicLong();
+  private final AtomicLong _lifetimeSslHandshakeTime = new AtomicLong();
+
+  private String _metricPort;
 
   PortStats(PortTcp port)
   {
     _port = port;
   }
 
+  //
+  // metrics
+  //
+
+  /**
+   * Registers the port's statistics as metrics tagged with the port.
+   */
+  void registerMetrics(String port)
+  {
+    MetricRegistry registry = MetricRegistry.current();
+
+    _metricPort = port;
+
+    registry.gauge("baratine_port_connections",
+                   "Active connections",
+                   ()->_port.getConnectionCount(),
+                   "port", port);
+    registry.counter("baratine_port_keepalive_total",
+                     "Keepalive requests",
+                     this::getLifetimeKeepaliveCount,
+                     "port", port);
+    registry.counter("baratine_port_client_disconnect_total",
+                     "Connections closed by the client",
+                     this::getLifetimeClientDisconnectCount,
+                     "port", port);
+    registry.counter("baratine_port_read_bytes_total",
+                     "Bytes read",
+                     this::getLifetimeReadBytes,
+                     "port", port);
+    registry.counter("baratine_port_write_bytes_total",
+                     "Bytes written",
+                     this::getLifetimeWriteBytes,
+                     "port", port);
+    registry.counter("baratine_port_ssl_handshake_total",
+                     "Completed SSL handshakes, including resumed sessions",
+                     this::getLifetimeSslHandshakeCount,
+                     "port", port);
+    registry.counter("baratine_port_ssl_resume_total",
+                     "SSL handshakes that resumed a cached session",
+                     this::getLifetimeSslResumeCount,
+                     "port", port);
+    registry.counter("baratine_port_ssl_handshake_fail_total",
+                     "Failed SSL handshakes",
+                     this::getLifetimeSslHandshakeFailCount,
+                     "port", port);
+  }
+
+  void unregisterMetrics()
+  {
+    String port = _metricPort;
+    _metricPort = null;
+
+    if (port == null) {
+      return;
+    }
+
+    MetricRegistry registry = MetricRegistry.current();
+
+    registry.remove("baratine_port_connections", "port", port);
+    registry.remove("baratine_port_keepalive_total", "port", port);
+    registry.remove("baratine_port_client_disconnect_total", "port", port);
+    registry.remove("baratine_port_read_bytes_total", "port", port);
+    registry.remove("baratine_port_write_bytes_total", "port", port);
+    registry.remove("baratine_port_ssl_handshake_total", "port", port);
+    registry.remove("baratine_port_ssl_resume_total", "port", port);
+    registry.remove("baratine_port_ssl_handshake_fail_total", "port", port);
+  }
+
   //
   // statistics
   //
@@ -143,6 +231,83 @@ public class PortStats
     return _lifetimeWriteBytes.get();
   }
 
+  /**
+   * Adds a completed ssl handshake.
+   *
+   * @param time the handshake time in milliseconds
+   * @param isResumed true if the handshake resumed a cached session
+   */
+  void addLifetimeSslHandshake(long time, boolean isResumed)
+  {
+    _sslHandshakeMeter.start();
+    _sslHandshakeTimeMeter.addData(time);
+    
+    _lifetimeSslHandshakeCount.incrementAndGet();
+    _lifetimeSslHandshakeTime.addAndGet(time);
+    
+    if (isResumed) {
+      _sslResumeMeter.start();
+      _lifetimeSslResumeCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Returns the number of successful handshakes, full or resumed.
+   */
+  public long getLifetimeSslHandshakeCount()
+  {
+    return _lifetimeSslHandshakeCount.get();
+  }
+
+  /**
+   * Returns the number of handshakes resumed from the session cache.
+   */
+  public long getLifetimeSslResumeCount()
+  {
+    return _lifetimeSslResumeCount.get();
+  }
+
+  /**
+   * Returns the number of full handshakes.
+   */
+  public long getLifetimeSslFullHandshakeCount()
+  {
+    return _lifetimeSslHandshakeCount.get() - _lifetimeSslResumeCount.get();
+  }
+
+  /**
+   * Returns the total handshake time in milliseconds.
+   */
+  public long getLifetimeSslHandshakeTime()
+  {
+    return _lifetimeSslHandshakeTime.get();
+  }
+
+  void addLifetimeSslHandshakeFailCount()
+  {
+    _lifetimeSslHandshakeFailCount.incrementAndGet();
+  }
+
+  public long getLifetimeSslHandshakeFailCount()
+  {
+    return _lifetimeSslHandshakeFailCount.get();
+  }
+
+  /**
+   * Returns the statistics for each of the poll manager's selectors.
+   */
+  public List<PollSelectorStats> getSelectorStats()
+  {
+    PollTcpManagerBase pollManager = _port.pollManager();
+
+    if (pollManager != null) {
+      return pollManager.selectorStats();
+    }
+    else {
+      return Collections.emptyList();
+    }
+  }
+
   long getLifetimeThrottleDisconnectCount()
   {
     return _lifetimeThrottleDisconnectCount.get();
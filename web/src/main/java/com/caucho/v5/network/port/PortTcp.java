@@ -159,7 +159,14 @@ public class PortTcp implements PortSocket
   private ConcurrentHashMap<ConnectionTcp,ConnectionTcp> _activeConnectionSet
     = new ConcurrentHashMap<>();
   
-  private AcceptTcp _acceptTask;
+  private AcceptTcp []_acceptTasks;
+  
+  private int _acceptThreads = 1;
+  private boolean _isReusePort;
+  
+  // extra SO_REUSEPORT sockets, one per additional accept thread
+  private final ArrayList<ServerSocketBar> _serverSocketsReuse
+    = new ArrayList<>();
 
   private final AtomicInteger _activeConnectionCount = new AtomicInteger();
 
@@ -224,6 +231,9 @@ public class PortTcp implements PortSocket
     }
     
     _sslFactory = builder.sslFactory();
+    
+    _acceptThreads = Math.max(1, builder.acceptThreads());
+    _isReusePort = builder.isReusePort();
 
     _connectionCount = new AtomicInteger();
     _connectionSequence = builder.getConnectionSequence();
@@ -420,6 +430,10 @@ public class PortTcp implements PortSocket
     //String protocolName = _protocol.name();
     
     String ssl = _sslFactory != null ? "s" : "";
+    
+    if (_serverSocket == null && _isReusePort && _acceptThreads > 1) {
+      bindReusePort(system);
+    }
 
     if (_serverSocket != null) {
       InetAddress address = _serverSocket.getLocalAddress();
@@ -469,6 +483,34 @@ public class PortTcp implements PortSocket
     postBind();
   }
 
+  /**
+   * Opens a SO_REUSEPORT socket for each accept thread, so the kernel
+   * balances new connections across the acceptors.
+   */
+  private void bindReusePort(SocketSystem system)
+    throws IOException
+  {
+    ServerSocketBar ss = system.openServerSocketReusePort(_socketAddress,
+                                                          _port,
+                                                          _acceptListenBacklog);
+    
+    if (ss == null) {
+      log.fine(L.l("{0} SO_REUSEPORT is not supported; accept threads will share one socket",
+                   this));
+      return;
+    }
+    
+    _serverSocket = ss;
+    
+    int port = ss.getLocalPort();
+    
+    for (int i = 1; i < _acceptThreads; i++) {
+      _serverSocketsReuse.add(system.openServerSocketReusePort(_socketAddress,
+                                                               port,
+                                                               _acceptListenBacklog));
+    }
+  }
+
   /**
    * Starts the port listening.
    */
@@ -522,6 +564,14 @@ public class PortTcp implements PortSocket
     _serverSocket.setTcpCork(_isTcpCork);
 
     _serverSocket.setConnectionSocketTimeout((int) getSocketTimeout());
+    
+    for (ServerSocketBar ss : _serverSocketsReuse) {
+      ss.setTcpNoDelay(_isTcpNoDelay);
+      ss.setTcpKeepalive(_isTcpKeepalive);
+      ss.setTcpCork(_isTcpCork);
+
+      ss.setConnectionSocketTimeout((int) getSocketTimeout());
+    }
 
     if (isKeepaliveAsyncEnabled()) {
       if (_serverSocket.isJni()) {
@@ -571,8 +621,25 @@ public class PortTcp implements PortSocket
 
       enable();
 
-      _acceptTask = new AcceptTcp(this, _serverSocket);
-      _threadPool.execute(_acceptTask);
+      if (_unixPath != null) {
+        _stats.registerMetrics(String.valueOf(_unixPath));
+      }
+      else {
+        _stats.registerMetrics(String.valueOf(getLocalPort()));
+      }
+
+      _acceptTasks = new AcceptTcp[_acceptThreads];
+      
+      for (int i = 0; i < _acceptTasks.length; i++) {
+        ServerSocketBar ss = _serverSocket;
+        
+        if (0 < i && i <= _serverSocketsReuse.size()) {
+          ss = _serverSocketsReuse.get(i - 1);
+        }
+        
+        _acceptTasks[i] = new AcceptTcp(this, ss, i);
+        _threadPool.execute(_acceptTasks[i]);
+      }
 
       // _connThreadPool.start();
 
@@ -596,6 +663,10 @@ public class PortTcp implements PortSocket
       if (_serverSocket != null) {
         _serverSocket.listen(_acceptListenBacklog);
       }
+      
+      for (ServerSocketBar ss : _serverSocketsReuse) {
+        ss.listen(_acceptListenBacklog);
+      }
     }
   }
 
@@ -858,7 +929,18 @@ public class PortTcp implements PortSocket
     SSLFactory sslFactory = _sslFactory;
     
     if (sslFactory != null) {
-      socket.ssl(sslFactory);
+      long startTime = CurrentTime.getCurrentTimeActual();
+      
+      try {
+        socket.ssl(sslFactory);
+      } catch (RuntimeException e) {
+        _stats.addLifetimeSslHandshakeFailCount();
+        
+        throw e;
+      }
+      
+      _stats.addLifetimeSslHandshake(CurrentTime.getCurrentTimeActual() - startTime,
+                                     socket.isSecureResumed());
     }
   }
 
@@ -887,6 +969,8 @@ public class PortTcp implements PortSocket
     
     //_connThreadPool.close();
 
+    _stats.unregisterMetrics();
+
     Alarm suspendAlarm = _suspendAlarm;
     _suspendAlarm = null;
 
@@ -903,6 +987,15 @@ public class PortTcp implements PortSocket
       localPort = serverSocket.getLocalPort();
     }
 
+    for (ServerSocketBar ss : _serverSocketsReuse) {
+      try {
+        ss.close();
+      } catch (Throwable e) {
+      }
+    }
+    
+    _serverSocketsReuse.clear();
+
     // close the server socket
     if (serverSocket != null) {
       try {
@@ -132,6 +132,22 @@ public class PortTcpBuilder
     return _env.get(portName() + ".port", int.class, _portDefault);
   }
   
+  /**
+   * Number of accept threads for the port.
+   */
+  int acceptThreads()
+  {
+    return _env.get(portName() + ".accept-threads", int.class, 1);
+  }
+  
+  /**
+   * True if each accept thread should have its own SO_REUSEPORT socket.
+   */
+  boolean isReusePort()
+  {
+    return _env.get(portName() + ".reuse-port", boolean.class, false);
+  }
+  
   /*
   public void serverSocket(ServerSocketBar serverSocket)
   {
@@ -179,6 +195,10 @@ public class PortTcpBuilder
     }
     */
     
+    if (protocol() != null) {
+      sslFactory.nextProtocols(protocol().nextProtocols());
+    }
+    
     sslFactory.init();
 
     return sslFactory;
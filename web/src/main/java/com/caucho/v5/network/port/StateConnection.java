@@ -44,8 +44,10 @@ public enum StateConnection
     public boolean isFree() { return true; }
   },
   
-  // change to the idle state
+  // change to the idle state, e.g. a suspended body read
   IDLE {
+    @Override
+    public StateConnection toWake() { return ACTIVE; }
   },
   
   // accept a new request
@@ -29,8 +29,8 @@
 
 package com.caucho.v5.network.ssl;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -40,25 +40,31 @@ import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyStore;
+import java.security.MessageDigest;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Enumeration;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
 import com.caucho.v5.config.ConfigException;
 import com.caucho.v5.io.SSLFactory;
 import com.caucho.v5.io.ServerSocketBar;
+import com.caucho.v5.io.SocketStream;
 import com.caucho.v5.io.Vfs;
 import com.caucho.v5.jni.ServerSocketWrapper;
 import com.caucho.v5.util.L10N;
@@ -66,7 +72,26 @@ import com.caucho.v5.util.L10N;
 import io.baratine.config.Config;
 
 /**
- * Abstract socket to handle both normal sockets and bin/resin sockets.
+ * JSSE ssl factory for a port.
+ *
+ * <p>Ports with the same key and the same session-cache name share a
+ * single SSLContext, and therefore a single server session cache and
+ * session ticket keys, so a client resumes its session on any of them.
+ * The shared context is replaced when a port starts with different
+ * key store contents, so a renewed certificate is picked up on restart.
+ *
+ * Configuration, relative to the port:
+ * <ul>
+ * <li>ssl.session-cache.name - ports with the same name share the cache
+ *     (defaults to the port name)
+ * <li>ssl.session-cache.size - maximum cached sessions (20480)
+ * <li>ssl.session-cache.timeout - session lifetime in seconds (300)
+ * <li>ssl.alpn - advertise the protocol's next protocols, e.g. h2 (true)
+ * <li>ssl.record-size - record size at the start of a connection,
+ *     0 for full records (1400)
+ * <li>ssl.record-boost - bytes written in small records before switching
+ *     to full records (65536)
+ * </ul>
  */
 public class SSLFactoryJsse implements SSLFactory
 {
@@ -89,11 +114,22 @@ public class SSLFactoryJsse implements SSLFactory
   private String _selfSignedName;
 
   private KeyStore _keyStore;
+  // digest of the key store file contents
+  private String _keyStoreDigest;
   
   private Config _config;
   private String _prefix;
 
   private SSLSocketFactory _sslSocketFactory;
+
+  private String []_nextProtocols;
+  private String []_applicationProtocols;
+  
+  private int _recordSize;
+  private int _recordBoost;
+  
+  private static final ConcurrentHashMap<String,ContextEntry> _contextMap
+    = new ConcurrentHashMap<>();
   
   /**
    * Creates a ServerSocket factory without initializing it.
@@ -255,6 +291,35 @@ public class SSLFactoryJsse implements SSLFactory
     _keyStoreType = keyStore;
   }
 
+  /**
+   * Sets the application protocols offered by ALPN, in order of
+   * preference.
+   */
+  public void nextProtocols(String ...protocols)
+  {
+    if (protocols == null || protocols.length == 0) {
+      _nextProtocols = null;
+    }
+    else {
+      _nextProtocols = protocols;
+    }
+  }
+
+  private String sessionCacheName()
+  {
+    return _config.get(_prefix + ".ssl.session-cache.name", _prefix);
+  }
+
+  private int sessionCacheSize()
+  {
+    return _config.get(_prefix + ".ssl.session-cache.size", int.class, 20480);
+  }
+
+  private int sessionCacheTimeout()
+  {
+    return _config.get(_prefix + ".ssl.session-cache.timeout", int.class, 300);
+  }
+
   /**
    * Sets the protocol
    */
@@ -292,6 +357,15 @@ public class SSLFactoryJsse implements SSLFactory
         keyStore();
       }
       
+      if (_nextProtocols != null
+          && _config.get(_prefix + ".ssl.alpn", boolean.class, true)) {
+        _applicationProtocols = _nextProtocols;
+      }
+      
+      _recordSize = _config.get(_prefix + ".ssl.record-size", int.class, 1400);
+      _recordBoost = _config.get(_prefix + ".ssl.record-boost",
+                                 int.class, 64 * 1024);
+      
       _sslSocketFactory = createFactory();
     } catch (RuntimeException e) {
       throw e;
@@ -313,11 +387,14 @@ public class SSLFactoryJsse implements SSLFactory
     
     KeyStore keyStore = KeyStore.getInstance(_keyStoreType);
     
-    try (InputStream is = Files.newInputStream(keyStoreFile())) {
-      Objects.requireNonNull(is);
-      
-      keyStore.load(is, keyStorePassword().toCharArray());
-    }
+    byte []data = Files.readAllBytes(keyStoreFile());
+    
+    keyStore.load(new ByteArrayInputStream(data),
+                  keyStorePassword().toCharArray());
+    
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    
+    _keyStoreDigest = Base64.getEncoder().encodeToString(digest.digest(data));
     
     String keyAlias = null;
     
@@ -373,76 +450,96 @@ public class SSLFactoryJsse implements SSLFactory
   private SSLSocketFactory createFactory()
     throws Exception
   {
-    SSLSocketFactory ssFactory = null;
-    
-    String host = "localhost";
-    int port = 8086;
-    
-    if (_keyStore == null) {
-      return createAnonymousFactory(null, port);
-    }
-    
-    SSLContext sslContext = SSLContext.getInstance(_sslContext);
-
-    KeyManagerFactory kmf
-    = KeyManagerFactory.getInstance(keyManagerFactory());
-
-    kmf.init(_keyStore, keyStorePassword().toCharArray());
-
-    sslContext.init(kmf.getKeyManagers(), null, null);
+    SSLContext sslContext = sslContext(null);
 
-    /*
-      if (_cipherSuites != null)
-        sslContext.createSSLEngine().setEnabledCipherSuites(_cipherSuites);
-
-     */
     SSLEngine engine = sslContext.createSSLEngine();
     
     _enabledProtocols = enabledProtocols(engine.getEnabledProtocols());
     
-    engine.setEnabledProtocols(_enabledProtocols);
-
-    ssFactory = sslContext.getSocketFactory();
-    
-    return ssFactory;
+    return sslContext.getSocketFactory();
   }
 
   /**
-   * Creates the SSL ServerSocket.
+   * Returns the SSLContext shared by ports with the same key and
+   * session-cache name.
+   *
+   * A self-signed context is keyed by its resolved certificate name,
+   * since the name depends on the host. A key store context is replaced
+   * when the key store contents change.
    */
-  public ServerSocketBar create(InetAddress host, int port)
+  private SSLContext sslContext(InetAddress host)
     throws IOException, GeneralSecurityException
   {
-    SSLServerSocketFactory ssFactory = null;
+    String selfSignedName = null;
     
-    if (_keyStore != null) {
-      SSLContext sslContext = SSLContext.getInstance(_sslContext);
-
-      KeyManagerFactory kmf
-        = KeyManagerFactory.getInstance(keyManagerFactory());
+    if (_keyStore == null) {
+      selfSignedName = selfSignedName(host);
+    }
     
-      kmf.init(_keyStore, keyStorePassword().toCharArray());
+    String key = (sessionCacheName()
+                  + "|" + _sslContext
+                  + "|" + keyStoreFile()
+                  + "|" + alias()
+                  + "|" + selfSignedName);
+    
+    while (true) {
+      ContextEntry entry = _contextMap.get(key);
       
-      sslContext.init(kmf.getKeyManagers(), null, null);
-
-      /*
-      if (_cipherSuites != null)
-        sslContext.createSSLEngine().setEnabledCipherSuites(_cipherSuites);
-
-      if (_protocols != null)
-        sslContext.createSSLEngine().setEnabledProtocols(_protocols);
-      */
+      if (entry != null && entry.isDigest(_keyStoreDigest)) {
+        return entry.context();
+      }
       
-      SSLEngine engine = sslContext.createSSLEngine();
+      ContextEntry newEntry
+        = new ContextEntry(_keyStoreDigest, createContext(selfSignedName));
       
-      engine.setEnabledProtocols(enabledProtocols(engine.getSupportedProtocols()));
+      if (entry == null) {
+        if (_contextMap.putIfAbsent(key, newEntry) == null) {
+          return newEntry.context();
+        }
+      }
+      else if (_contextMap.replace(key, entry, newEntry)) {
+        return newEntry.context();
+      }
+    }
+  }
 
-      ssFactory = sslContext.getServerSocketFactory();
+  private SSLContext createContext(String selfSignedName)
+    throws IOException, GeneralSecurityException
+  {
+    SSLContext sslContext = SSLContext.getInstance(_sslContext);
+    
+    if (_keyStore != null) {
+      KeyManagerFactory kmf
+        = KeyManagerFactory.getInstance(keyManagerFactory());
+
+      kmf.init(_keyStore, keyStorePassword().toCharArray());
+
+      sslContext.init(kmf.getKeyManagers(), null, null);
     }
     else {
-      ssFactory = createAnonymousServerFactory(host, port);
+      sslContext.init(selfSignedCert(selfSignedName).getKeyManagers(),
+                      null, null);
     }
     
+    SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+    
+    if (sessionContext != null) {
+      sessionContext.setSessionCacheSize(sessionCacheSize());
+      sessionContext.setSessionTimeout(sessionCacheTimeout());
+    }
+    
+    return sslContext;
+  }
+
+  /**
+   * Creates the SSL ServerSocket.
+   */
+  public ServerSocketBar create(InetAddress host, int port)
+    throws IOException, GeneralSecurityException
+  {
+    SSLServerSocketFactory ssFactory
+      = sslContext(host).getServerSocketFactory();
+    
     ServerSocket serverSocket;
 
     int listen = 100;
@@ -521,20 +618,9 @@ public class SSLFactoryJsse implements SSLFactory
     return false;
   }
 
-  private SSLServerSocketFactory createAnonymousServerFactory(InetAddress hostAddr,
-                                                        int port)
-    throws IOException, GeneralSecurityException
+  private String selfSignedName(InetAddress hostAddr)
+    throws IOException
   {
-    SSLContext sslContext = SSLContext.getInstance(_sslContext);
-
-    String []cipherSuites = _cipherSuites;
-
-    /*
-    if (cipherSuites == null) {
-      cipherSuites = sslContext.createSSLEngine().getSupportedCipherSuites();
-    }
-    */
-
     String selfSignedName = _selfSignedName;
 
     if (selfSignedName == null
@@ -549,58 +635,18 @@ public class SSLFactoryJsse implements SSLFactory
       }
     }
     
-    SelfSignedCert cert = createSelfSignedCert(selfSignedName, cipherSuites);
-
-    if (cert == null)
-      throw new ConfigException(L.l("Cannot generate anonymous certificate"));
-      
-    sslContext.init(cert.getKeyManagers(), null, null);
-
-    // SSLEngine engine = sslContext.createSSLEngine();
-
-    SSLServerSocketFactory factory = sslContext.getServerSocketFactory();
-
-    return factory;
+    return selfSignedName;
   }
 
-  private SSLSocketFactory createAnonymousFactory(InetAddress hostAddr,
-                                                  int port)
-    throws IOException, GeneralSecurityException
+  private SelfSignedCert selfSignedCert(String selfSignedName)
+    throws IOException
   {
-    SSLContext sslContext = SSLContext.getInstance(_sslContext);
-
-    String []cipherSuites = _cipherSuites;
-
-    /*
-    if (cipherSuites == null) {
-      cipherSuites = sslContext.createSSLEngine().getSupportedCipherSuites();
-    }
-    */
-
-    String selfSignedName = _selfSignedName;
-
-    if (selfSignedName == null
-        || "".equals(selfSignedName)
-        || "*".equals(selfSignedName)) {
-      if (hostAddr != null)
-        selfSignedName = hostAddr.getHostName();
-      else {
-        InetAddress addr = InetAddress.getLocalHost();
-
-        selfSignedName = addr.getHostAddress();
-      }
-    }
-    
-    SelfSignedCert cert = createSelfSignedCert(selfSignedName, cipherSuites);
+    SelfSignedCert cert = createSelfSignedCert(selfSignedName, _cipherSuites);
 
     if (cert == null)
       throw new ConfigException(L.l("Cannot generate anonymous certificate"));
-      
-    sslContext.init(cert.getKeyManagers(), null, null);
-
-    // SSLEngine engine = sslContext.createSSLEngine();
-
-    return sslContext.getSocketFactory();
+    
+    return cert;
   }
   
   private SelfSignedCert createSelfSignedCert(String name, 
@@ -650,10 +696,60 @@ public class SSLFactoryJsse implements SSLFactory
     Socket sock = chan.socket();
     
     SSLSocket sslSock = (SSLSocket) _sslSocketFactory.createSocket(sock, null, false);
+    
+    SSLParameters params = sslSock.getSSLParameters();
 
-    sslSock.setEnabledProtocols(_enabledProtocols);
+    params.setProtocols(_enabledProtocols);
+    
+    if (_applicationProtocols != null) {
+      // the server picks its most preferred protocol the client offers
+      params.setApplicationProtocols(_applicationProtocols);
+    }
+    
+    sslSock.setSSLParameters(params);
     
     return sslSock;
   }
+
+  /**
+   * Starts a connection with small records, which the client can decrypt
+   * as each arrives, before switching to full records for throughput.
+   */
+  @Override
+  public void initStream(SocketStream stream)
+  {
+    stream.recordSize(_recordSize, _recordBoost);
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _prefix + "]";
+  }
+  
+  /**
+   * Shared context with the digest of the key store it was built from.
+   */
+  private static class ContextEntry
+  {
+    private final String _digest;
+    private final SSLContext _context;
+    
+    ContextEntry(String digest, SSLContext context)
+    {
+      _digest = digest;
+      _context = context;
+    }
+    
+    boolean isDigest(String digest)
+    {
+      return Objects.equals(_digest, digest);
+    }
+    
+    SSLContext context()
+    {
+      return _context;
+    }
+  }
 }
 
@@ -253,7 +253,7 @@ public class PeriodUtil {
       //cal.setLocalTime(localTime);
 
       //return cal.getGMTTime();
-      return cal.toEpochSecond(ZoneOffset.UTC) * 1000;
+      return localTime;
     }
 
     if (period % (30 * DAY) == 0) {
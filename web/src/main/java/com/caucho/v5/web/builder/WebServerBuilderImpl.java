@@ -64,7 +64,9 @@ import com.caucho.v5.config.IncludeOnClass;
 import com.caucho.v5.config.yaml.YamlParser;
 import com.caucho.v5.convert.ConvertStringDefault;
 import com.caucho.v5.deploy2.DeploySystem2;
+import com.caucho.v5.health.inbox.InboxWatchdogSystem;
 import com.caucho.v5.health.shutdown.ShutdownSystem;
+import com.caucho.v5.health.trace.TraceSystem;
 import com.caucho.v5.health.warning.WarningSystem;
 import com.caucho.v5.http.container.HttpContainerBuilder;
 import com.caucho.v5.http.container.HttpSystem;
@@ -77,6 +79,7 @@ import com.caucho.v5.io.SocketSystem;
 import com.caucho.v5.io.Vfs;
 import com.caucho.v5.loader.EnvLoader;
 import com.caucho.v5.log.StreamHandler;
+import com.caucho.v5.log.impl.LogHandlerConfig;
 import com.caucho.v5.network.NetworkSystem;
 import com.caucho.v5.scan.ScanManager;
 import com.caucho.v5.store.temp.TempStoreSystem;
@@ -169,6 +172,8 @@ public class WebServerBuilderImpl implements WebServerBuilder, WebServerFactory
 
   private ArgsBase _args;
 
+  private StreamHandler _logHandler;
+
   public WebServerBuilderImpl()
   {
     _startTime = CurrentTime.currentTime();
@@ -205,6 +210,7 @@ public class WebServerBuilderImpl implements WebServerBuilder, WebServerFactory
 
     StreamHandler streamHandler = new StreamHandler(System.out);
     streamHandler.init();
+    _logHandler = streamHandler;
     //pathHandler.setPath(Vfs.path("stdout:"));
     //streamHandler.init();
 
@@ -213,6 +219,30 @@ public class WebServerBuilderImpl implements WebServerBuilder, WebServerFactory
     Logger.getLogger("java.management").setLevel(Level.INFO);
   }
 
+  /**
+   * Configures the root log handler:
+   * <ul>
+   * <li>log.async - formats on the handler's writer thread (false)
+   * <li>log.async.overflow - block or drop when the queue is full (block)
+   * </ul>
+   */
+  private void configureLogs()
+  {
+    StreamHandler logHandler = _logHandler;
+
+    if (logHandler == null) {
+      return;
+    }
+
+    Config config = config();
+
+    logHandler.setAsync(config.get("log.async", boolean.class, false));
+
+    String overflow = config.get("log.async.overflow", "block");
+
+    logHandler.setOverflow(LogHandlerConfig.toOverflow(overflow));
+  }
+
   public String name()
   {
     return _name;
@@ -934,6 +964,8 @@ public class WebServerBuilderImpl implements WebServerBuilder, WebServerFactory
         logCopyright();
       }
       */
+      configureLogs();
+
       logCopyright();
 
       preConfigureInit();
@@ -1465,6 +1497,10 @@ public class WebServerBuilderImpl implements WebServerBuilder, WebServerFactory
   {
     TempStoreSystem.createAndAddSystem();
 
+    TraceSystem.createAndAddSystem(config());
+
+    InboxWatchdogSystem.createAndAddSystem(config());
+
     // XXX: KrakenSystem.createAndAddSystem(selfServer);
 
     // XXX: BartenderFileSystem.createAndAddSystem();
@@ -70,7 +70,7 @@ public class MimeTypeWeb implements Function<String,String>
       _mimeType.put(suffix, mimeType);
     }
 
-    return mimeType != null ? mimeType : null;
+    return mimeType != NULL ? mimeType : null;
   }
 
   private static void mime(String suffix, String mimeType)
@@ -32,29 +32,54 @@ package com.caucho.v5.web.file;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
+import com.caucho.v5.io.FileRegionBuffer;
 import com.caucho.v5.io.TempBuffer;
 import com.caucho.v5.io.Vfs;
 
 import io.baratine.config.Config;
+import io.baratine.web.HttpStatus;
 import io.baratine.web.RequestWeb;
 import io.baratine.web.ServiceWeb;
 
 /**
  * Static files.
+ *
+ * Small files are served from an LRU memory cache, and larger files are
+ * sent as file regions so the socket can use sendfile. Conditional
+ * (ETag, Last-Modified), single range and precompressed .gz/.br requests
+ * are supported.
  */
 public class StaticFileWeb implements ServiceWeb
 {
+  private static final Logger log
+    = Logger.getLogger(StaticFileWeb.class.getName());
+  
+  // largest region for a single file buffer
+  private static final int REGION_MAX = 1 << 30;
+  
   private @Inject Config _config;
   private @Inject MimeTypeWeb _mimeType;
   
   private boolean _isInit;
   private Path _root;
+  private String _index;
+  
+  private StaticResourceCache _cache;
+  private int _cacheEntryMax;
+  private int _sendfileMin;
   
   @PostConstruct
   private void init()
@@ -67,6 +92,19 @@ public class StaticFileWeb implements ServiceWeb
     String root = _config.get("server.file", "classpath:/public");
     
     _root = Vfs.path(root);
+    _index = _config.get("server.index", "index.html");
+    
+    long cacheSize = _config.get("server.file.cache-size", 
+                                 long.class, 16L * 1024 * 1024);
+    
+    _cache = new StaticResourceCache(cacheSize);
+    
+    _cacheEntryMax = _config.get("server.file.cache-entry-max",
+                                 int.class, 64 * 1024);
+    _cacheEntryMax = (int) Math.min(_cacheEntryMax, cacheSize);
+    
+    _sendfileMin = _config.get("server.file.sendfile-min",
+                               int.class, 32 * 1024);
   }
   
   /**
@@ -83,63 +121,379 @@ public class StaticFileWeb implements ServiceWeb
     String pathInfo = req.pathInfo();
     
     if (pathInfo.isEmpty() || pathInfo.equals("/")) {
-      pathInfo = _config.get("server.index", "index.html");
+      pathInfo = _index;
     } else {
       pathInfo = pathInfo.substring(1);
     }
-
-    Path path = _root.resolve(pathInfo);
-    //PathImpl path = Vfs.lookup(root).lookup("./" + pathInfo);
     
-    if (Files.isDirectory(path)) {
-      path = path.resolve(_config.get("server.index", "index.html"));
+    StaticResource resource = resource(pathInfo);
+    
+    if (resource == null) {
+      req.fail(new FileNotFoundException("file not found: " + req.uri()));
+      return;
     }
     
-    long len;
+    String range = req.header("range");
     
-    try {
-      len = Files.size(path);
-    } catch (IOException e) {
+    if (range != null && ! isIfRange(req, resource)) {
+      range = null;
+    }
+    
+    if (resource.isVariant()) {
+      req.header("vary", "accept-encoding");
       
-      req.fail(new FileNotFoundException("file not found: " + req.uri()));
+      // ranges apply to the identity encoding
+      if (range == null) {
+        resource = resource.variant(req.header("accept-encoding"));
+      }
+    }
+    
+    req.header("etag", resource.etag());
+    req.header("last-modified", resource.lastModifiedHeader());
+    
+    if (isNotModified(req, resource)) {
+      req.status(HttpStatus.NOT_MODIFIED);
+      req.ok();
       return;
     }
     
-    try (InputStream is = Files.newInputStream(path)) {
-      if (is == null) {
-        req.fail(new FileNotFoundException(pathInfo));
-        return;
-      }
-
-      String mimeType = mimeType(pathInfo);
+    String contentType = resource.contentType();
+    
+    if (contentType != null) {
+      req.type(contentType);
+    }
+    else {
+      req.type("text/plain; charset=utf-8");
+    }
+    
+    if (resource.encoding() != null) {
+      req.header("content-encoding", resource.encoding());
+    }
+    
+    req.header("accept-ranges", "bytes");
+    
+    long length = resource.length();
+    long offset = 0;
+    
+    if (range != null) {
+      long []bounds = parseRange(range, length);
       
-      if (mimeType != null) {
-        req.header("content-type", mimeType);
+      if (bounds == null) {
+        // unsupported or multiple ranges send the whole file
+      }
+      else if (bounds.length == 0) {
+        req.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        req.header("content-range", "bytes */" + length);
+        req.ok();
+        return;
       }
       else {
-        req.header("content-type", "text/plain; charset=utf-8");
+        offset = bounds[0];
+        
+        req.status(HttpStatus.PARTIAL_CONTENT);
+        req.header("content-range",
+                   "bytes " + bounds[0] + "-" + bounds[1] + "/" + length);
+        
+        length = bounds[1] - bounds[0] + 1;
+      }
+    }
+    
+    if (length > 0) {
+      req.length(length);
+    }
+    
+    try {
+      write(req, resource, offset, length);
+    } catch (IOException e) {
+      req.fail(e);
+      return;
+    }
+    
+    req.ok();
+  }
+  
+  /**
+   * Returns the cached resource, reloading it if the file has changed.
+   */
+  private StaticResource resource(String pathInfo)
+  {
+    StaticResource resource = _cache.get(pathInfo);
+    
+    if (resource != null && ! resource.isModified()) {
+      return resource;
+    }
+    
+    Path dir = _root;
+    String name = pathInfo;
+    Path path = dir.resolve(name);
+    
+    if (Files.isDirectory(path)) {
+      dir = path;
+      name = _index;
+      path = dir.resolve(name);
+    }
+    
+    resource = StaticResource.open(path,
+                                   dir.resolve(name + ".gz"),
+                                   dir.resolve(name + ".br"),
+                                   mimeType(path.toString()),
+                                   _cacheEntryMax);
+    
+    if (resource != null) {
+      _cache.put(pathInfo, resource);
+    }
+    else {
+      _cache.remove(pathInfo);
+    }
+    
+    return resource;
+  }
+  
+  private void write(RequestWeb req, 
+                     StaticResource resource,
+                     long offset,
+                     long length)
+    throws IOException
+  {
+    byte []data = resource.data();
+    
+    if (data != null) {
+      req.write(data, (int) offset, (int) length);
+    }
+    else if (length < _sendfileMin || ! writeRegions(req, resource, offset, length)) {
+      writeStream(req, resource, offset, length);
+    }
+  }
+  
+  /**
+   * Sends the file as regions the socket can transfer directly.
+   * 
+   * @return false if the file system doesn't support channels
+   */
+  private boolean writeRegions(RequestWeb req,
+                               StaticResource resource,
+                               long offset,
+                               long length)
+    throws IOException
+  {
+    while (length > 0) {
+      FileChannel channel;
+      
+      try {
+        channel = FileChannel.open(resource.path(), StandardOpenOption.READ);
+      } catch (UnsupportedOperationException e) {
+        log.log(Level.FINEST, e.toString(), e);
+        
+        return false;
       }
       
-      // XXX:
-      if (len > 0) {
-        req.length(len);
+      int sublen = (int) Math.min(length, REGION_MAX);
+      
+      req.write(new FileRegionBuffer(channel, offset, sublen));
+      
+      offset += sublen;
+      length -= sublen;
+    }
+    
+    return true;
+  }
+  
+  private void writeStream(RequestWeb req,
+                           StaticResource resource,
+                           long offset,
+                           long length)
+    throws IOException
+  {
+    try (InputStream is = Files.newInputStream(resource.path())) {
+      while (offset > 0) {
+        long sublen = is.skip(offset);
+        
+        if (sublen <= 0) {
+          throw new IOException("unexpected end of file: " + resource.path());
+        }
+        
+        offset -= sublen;
       }
       
       TempBuffer tBuf = TempBuffer.create();
       byte []buffer = tBuf.buffer();
       
-      int sublen;
+      try {
+        while (length > 0) {
+          int sublen = is.read(buffer, 0, (int) Math.min(length, buffer.length));
+          
+          if (sublen <= 0) {
+            break;
+          }
+          
+          req.write(buffer, 0, sublen);
+          
+          length -= sublen;
+        }
+      } finally {
+        tBuf.free();
+      }
+    }
+  }
+  
+  /**
+   * Checks If-None-Match, or If-Modified-Since when there's no ETag match.
+   */
+  private boolean isNotModified(RequestWeb req, StaticResource resource)
+  {
+    String ifNoneMatch = req.header("if-none-match");
+    
+    if (ifNoneMatch != null) {
+      return isEtagMatch(ifNoneMatch, resource.etag());
+    }
+    
+    String ifModifiedSince = req.header("if-modified-since");
+    
+    if (ifModifiedSince == null || resource.lastModified() <= 0) {
+      return false;
+    }
+    
+    long since = parseDate(ifModifiedSince);
+    
+    return since > 0 && resource.lastModified() / 1000 <= since / 1000;
+  }
+  
+  /**
+   * Matches an If-None-Match list against the etag. The comparison is
+   * weak, i.e. a W/ prefix is ignored, but each tag must match exactly.
+   */
+  static boolean isEtagMatch(String ifNoneMatch, String etag)
+  {
+    int length = ifNoneMatch.length();
+    int i = 0;
+    
+    while (i < length) {
+      char ch = ifNoneMatch.charAt(i);
       
-      while ((sublen = is.read(buffer, 0, buffer.length)) > 0) {
-        req.write(buffer, 0, sublen);
+      if (ch == ' ' || ch == '\t' || ch == ',') {
+        i++;
+        continue;
       }
       
-      tBuf.free();
-    } catch (IOException e) {
-      req.fail(e);
+      if (ch == '*') {
+        return true;
+      }
+      
+      if (ifNoneMatch.startsWith("W/", i)) {
+        i += 2;
+      }
+      
+      if (i >= length || ifNoneMatch.charAt(i) != '"') {
+        // malformed list
+        return false;
+      }
+      
+      // a quoted tag may contain commas
+      int end = ifNoneMatch.indexOf('"', i + 1);
+      
+      if (end < 0) {
+        return false;
+      }
+      
+      if (etag.length() == end + 1 - i 
+          && ifNoneMatch.regionMatches(i, etag, 0, etag.length())) {
+        return true;
+      }
+      
+      i = end + 1;
     }
     
-    req.ok();
+    return false;
+  }
+  
+  /**
+   * If-Range only allows the range if the resource is unchanged.
+   */
+  private boolean isIfRange(RequestWeb req, StaticResource resource)
+  {
+    String ifRange = req.header("if-range");
+    
+    if (ifRange == null) {
+      return true;
+    }
+    else if (ifRange.startsWith("\"")) {
+      return ifRange.equals(resource.etag());
+    }
+    else {
+      return ifRange.equals(resource.lastModifiedHeader());
+    }
+  }
+  
+  /**
+   * Parses a single "bytes=" range.
+   * 
+   * @return the inclusive bounds, an empty array if the range can't be
+   *   satisfied, or null if the range isn't supported
+   */
+  static long []parseRange(String range, long length)
+  {
+    range = range.trim();
+    
+    if (! range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+      return null;
+    }
+    
+    String spec = range.substring("bytes=".length()).trim();
+    int p = spec.indexOf('-');
+    
+    if (p < 0) {
+      return null;
+    }
+    
+    try {
+      String head = spec.substring(0, p).trim();
+      String tail = spec.substring(p + 1).trim();
+      
+      long start;
+      long end;
+      
+      if (head.isEmpty()) {
+        // suffix range: the last n bytes
+        long suffix = Long.parseLong(tail);
+        
+        if (suffix <= 0) {
+          return new long[0];
+        }
+        
+        start = Math.max(0, length - suffix);
+        end = length - 1;
+      }
+      else {
+        start = Long.parseLong(head);
+        end = tail.isEmpty() ? Long.MAX_VALUE : Long.parseLong(tail);
+        
+        if (end < start) {
+          return null;
+        }
+        
+        end = Math.min(end, length - 1);
+      }
+      
+      if (length <= start) {
+        return new long[0];
+      }
+      
+      return new long[] { start, end };
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+  
+  private static long parseDate(String value)
+  {
+    try {
+      return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME)
+                          .toInstant().toEpochMilli();
+    } catch (DateTimeParseException e) {
+      log.log(Level.FINEST, e.toString(), e);
+      
+      return -1;
+    }
   }
   
   private String mimeType(String pathInfo)
@@ -158,6 +512,6 @@ public class StaticFileWeb implements ServiceWeb
   @Override
   public String toString()
   {
-    return getClass().getSimpleName() + "[]";
+    return getClass().getSimpleName() + "[" + _root + "]";
   }
 }
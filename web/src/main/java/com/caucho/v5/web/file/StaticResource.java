@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.web.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.util.CurrentTime;
+
+/**
+ * Metadata and optional cached content for a static file.
+ *
+ * The ETag and Last-Modified header values are computed once. Small files
+ * keep their bytes in memory. Precompressed siblings, like "app.js.gz"
+ * and "app.js.br", are attached as encoded variants.
+ */
+class StaticResource
+{
+  private static final Logger log
+    = Logger.getLogger(StaticResource.class.getName());
+
+  private static final long CHECK_INTERVAL = 1000L;
+
+  private final Path _path;
+  private final String _contentType;
+  private final String _encoding;
+
+  private final long _length;
+  private final long _lastModified;
+
+  private final String _etag;
+  private final String _lastModifiedHeader;
+
+  private final byte []_data;
+
+  private final StaticResource _gzip;
+  private final StaticResource _brotli;
+
+  // precompressed sibling paths, checked for changes
+  private final Path _gzipPath;
+  private final Path _brotliPath;
+
+  private volatile long _checkTime;
+
+  private StaticResource(Path path,
+                         String contentType,
+                         String encoding,
+                         long length,
+                         long lastModified,
+                         byte []data,
+                         StaticResource gzip,
+                         StaticResource brotli,
+                         Path gzipPath,
+                         Path brotliPath)
+  {
+    _path = path;
+    _contentType = contentType;
+    _encoding = encoding;
+    _length = length;
+    _lastModified = lastModified;
+    _data = data;
+    _gzip = gzip;
+    _brotli = brotli;
+    _gzipPath = gzipPath;
+    _brotliPath = brotliPath;
+
+    String etag = Long.toHexString(length) + "-" + Long.toHexString(lastModified);
+
+    if (encoding != null) {
+      etag = etag + "-" + encoding;
+    }
+
+    _etag = "\"" + etag + "\"";
+
+    _lastModifiedHeader
+      = DateTimeFormatter.RFC_1123_DATE_TIME
+                         .format(Instant.ofEpochMilli(lastModified)
+                                        .atOffset(ZoneOffset.UTC));
+
+    _checkTime = CurrentTime.currentTime();
+  }
+
+  /**
+   * Opens the resource for a path or returns null if it isn't a file.
+   *
+   * The caller builds the precompressed paths, because some file systems,
+   * like the classpath, can only resolve paths from a directory.
+   *
+   * @param gzipPath the ".gz" sibling, or null
+   * @param brotliPath the ".br" sibling, or null
+   * @param dataMax files up to this length keep their bytes in memory
+   */
+  static StaticResource open(Path path,
+                             Path gzipPath,
+                             Path brotliPath,
+                             String contentType,
+                             int dataMax)
+  {
+    StaticResource gzip = open(gzipPath, contentType, "gzip",
+                               dataMax, null, null, null, null);
+    StaticResource brotli = open(brotliPath, contentType, "br",
+                                 dataMax, null, null, null, null);
+
+    return open(path, contentType, null, dataMax, gzip, brotli,
+                gzipPath, brotliPath);
+  }
+
+  private static StaticResource open(Path path,
+                                     String contentType,
+                                     String encoding,
+                                     int dataMax,
+                                     StaticResource gzip,
+                                     StaticResource brotli,
+                                     Path gzipPath,
+                                     Path brotliPath)
+  {
+    if (path == null) {
+      return null;
+    }
+
+    try {
+      long length = Files.size(path);
+      long lastModified = lastModified(path);
+
+      byte []data = null;
+
+      if (length <= dataMax) {
+        data = readAll(path);
+        length = data.length;
+      }
+
+      return new StaticResource(path, contentType, encoding,
+                                length, lastModified, data,
+                                gzip, brotli, gzipPath, brotliPath);
+    } catch (IOException | UnsupportedOperationException e) {
+      log.log(Level.FINEST, e.toString(), e);
+
+      return null;
+    }
+  }
+
+  /**
+   * Reads the file through a stream, which every file system supports,
+   * unlike the byte channel Files.readAllBytes uses.
+   */
+  private static byte []readAll(Path path)
+    throws IOException
+  {
+    try (InputStream is = Files.newInputStream(path)) {
+      if (is == null) {
+        throw new IOException("cannot open " + path);
+      }
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte []buffer = new byte[8192];
+      int sublen;
+
+      while ((sublen = is.read(buffer, 0, buffer.length)) > 0) {
+        bos.write(buffer, 0, sublen);
+      }
+
+      return bos.toByteArray();
+    }
+  }
+
+  private static long lastModified(Path path)
+  {
+    try {
+      return Files.getLastModifiedTime(path).toMillis();
+    } catch (Exception e) {
+      // classpath resources may not have a time
+      log.log(Level.FINEST, e.toString(), e);
+
+      return 0;
+    }
+  }
+
+  Path path()
+  {
+    return _path;
+  }
+
+  String contentType()
+  {
+    return _contentType;
+  }
+
+  /**
+   * The content-encoding of a precompressed variant, or null.
+   */
+  String encoding()
+  {
+    return _encoding;
+  }
+
+  long length()
+  {
+    return _length;
+  }
+
+  long lastModified()
+  {
+    return _lastModified;
+  }
+
+  String etag()
+  {
+    return _etag;
+  }
+
+  String lastModifiedHeader()
+  {
+    return _lastModifiedHeader;
+  }
+
+  /**
+   * The cached file contents, or null for larger files.
+   */
+  byte []data()
+  {
+    return _data;
+  }
+
+  boolean isVariant()
+  {
+    return _gzip != null || _brotli != null;
+  }
+
+  /**
+   * Returns the best precompressed variant for an Accept-Encoding
+   * header, or this resource.
+   */
+  StaticResource variant(String acceptEncoding)
+  {
+    if (acceptEncoding == null) {
+      return this;
+    }
+    else if (_brotli != null && acceptEncoding.contains("br")) {
+      return _brotli;
+    }
+    else if (_gzip != null && acceptEncoding.contains("gzip")) {
+      return _gzip;
+    }
+    else {
+      return this;
+    }
+  }
+
+  /**
+   * Memory used by the cached contents, including the variants.
+   */
+  long memorySize()
+  {
+    long size = _data != null ? _data.length : 0;
+
+    if (_gzip != null) {
+      size += _gzip.memorySize();
+    }
+
+    if (_brotli != null) {
+      size += _brotli.memorySize();
+    }
+
+    return size;
+  }
+
+  /**
+   * Checks the file for changes, at most once per interval.
+   */
+  boolean isModified()
+  {
+    long now = CurrentTime.currentTime();
+
+    if (now < _checkTime + CHECK_INTERVAL) {
+      return false;
+    }
+
+    _checkTime = now;
+
+    if (isModified(this, _path)
+        || isModified(_gzip, _gzipPath)
+        || isModified(_brotli, _brotliPath)) {
+      return true;
+    }
+
+    return false;
+  }
+
+  private static boolean isModified(StaticResource resource, Path path)
+  {
+    boolean isExists = path != null && Files.exists(path);
+
+    if (resource == null) {
+      return isExists;
+    }
+    else if (! isExists) {
+      return true;
+    }
+
+    try {
+      return (resource._lastModified != lastModified(path)
+              || resource._length != Files.size(path));
+    } catch (IOException e) {
+      log.log(Level.FINEST, e.toString(), e);
+
+      return true;
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _path + "]";
+  }
+}
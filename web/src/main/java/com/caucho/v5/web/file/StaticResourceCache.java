@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.web.file;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of static resources, limited by the bytes of cached content.
+ */
+class StaticResourceCache
+{
+  // charge for an entry's metadata
+  private static final long ENTRY_SIZE = 256;
+
+  private final LinkedHashMap<String,StaticResource> _map
+    = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final long _capacity;
+
+  private long _size;
+
+  StaticResourceCache(long capacity)
+  {
+    _capacity = capacity;
+  }
+
+  synchronized StaticResource get(String key)
+  {
+    return _map.get(key);
+  }
+
+  synchronized void put(String key, StaticResource resource)
+  {
+    StaticResource oldResource = _map.put(key, resource);
+
+    if (oldResource != null) {
+      _size -= size(oldResource);
+    }
+
+    _size += size(resource);
+
+    Iterator<Map.Entry<String,StaticResource>> iter
+      = _map.entrySet().iterator();
+
+    while (_capacity < _size && iter.hasNext()) {
+      Map.Entry<String,StaticResource> entry = iter.next();
+
+      if (entry.getValue() == resource) {
+        continue;
+      }
+
+      _size -= size(entry.getValue());
+      iter.remove();
+    }
+  }
+
+  synchronized void remove(String key)
+  {
+    StaticResource oldResource = _map.remove(key);
+
+    if (oldResource != null) {
+      _size -= size(oldResource);
+    }
+  }
+
+  private static long size(StaticResource resource)
+  {
+    return ENTRY_SIZE + resource.memorySize();
+  }
+
+  @Override
+  public synchronized String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[entries=" + _map.size() + ",size=" + _size + "]");
+  }
+}
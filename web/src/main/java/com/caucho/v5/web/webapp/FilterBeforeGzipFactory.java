@@ -29,35 +29,120 @@
 
 package com.caucho.v5.web.webapp;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
+import io.baratine.config.Config;
 import io.baratine.inject.Priority;
 import io.baratine.io.Buffer;
 import io.baratine.web.RequestWeb;
 import io.baratine.web.RequestWeb.OutFilterWeb;
 import io.baratine.web.ServiceWeb;
 
+import com.caucho.v5.io.FileRegionBuffer;
 import com.caucho.v5.io.TempBuffer;
-import com.caucho.v5.util.BitsUtil;
+import com.caucho.v5.util.FreeRing;
+import com.caucho.v5.util.LruCache;
 
 /**
- * View with associated type meta-data
+ * Gzip response compression.
+ *
+ * Deflaters are pooled. Responses shorter than server.gzip.min-length or
+ * with a content-type outside server.gzip.types are sent as is. The
+ * compressed body of a response with a strong ETag is cached, so repeated
+ * requests for an unchanged resource don't compress it again. A strong
+ * ETag identifies the exact representation, so Vary'd variants can't
+ * share an entry; responses with only a weak ETag or Last-Modified are
+ * compressed every time.
+ *
+ * Clients sending "x-baratine-compress: fast" get a Huffman-only gzip
+ * stream, which skips the LZ77 match search.
  */
 @Priority(-100)
 class FilterBeforeGzipFactory implements FilterFactory<ServiceWeb>
 {
+  static final String FAST_HEADER = "x-baratine-compress";
+  
+  private static final String TYPES_DEFAULT
+    = "text/,application/json,application/javascript,application/xml,"
+      + "image/svg+xml";
+  
+  private final int _level;
+  private final int _minLength;
+  private final String []_types;
+  
+  private final LruCache<String,byte[]> _cache;
+  private final int _cacheEntryMax;
+  
+  private final FreeRing<Deflater> _deflaterPool = new FreeRing<>(64);
+  private final FreeRing<Deflater> _deflaterFastPool = new FreeRing<>(64);
+  
+  FilterBeforeGzipFactory(Config config)
+  {
+    _level = config.get("server.gzip.level", int.class,
+                        Deflater.DEFAULT_COMPRESSION);
+    _minLength = config.get("server.gzip.min-length", int.class, 256);
+    _types = config.get("server.gzip.types", TYPES_DEFAULT).split("\\s*,\\s*");
+    
+    int cacheEntries = config.get("server.gzip.cache-entries", int.class, 1024);
+    
+    _cache = cacheEntries > 0 ? new LruCache<>(cacheEntries) : null;
+    _cacheEntryMax = config.get("server.gzip.cache-entry-max", 
+                                int.class, 256 * 1024);
+  }
+  
   @Override
   public ServiceWeb apply(RouteBuilderAmp builder)
   {
     return new FilterBeforeGzip();
   }
   
-  private static class FilterBeforeGzip implements ServiceWeb
+  private boolean isCompressible(String type)
+  {
+    for (String prefix : _types) {
+      if (! prefix.isEmpty() && type.startsWith(prefix)) {
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  private Deflater allocateDeflater(boolean isFast)
+  {
+    FreeRing<Deflater> pool = isFast ? _deflaterFastPool : _deflaterPool;
+    
+    Deflater deflater = pool.allocate();
+    
+    if (deflater == null) {
+      if (isFast) {
+        deflater = new Deflater(Deflater.BEST_SPEED, true);
+        deflater.setStrategy(Deflater.HUFFMAN_ONLY);
+      }
+      else {
+        deflater = new Deflater(_level, true);
+      }
+    }
+    
+    return deflater;
+  }
+  
+  private void freeDeflater(Deflater deflater, boolean isFast)
+  {
+    FreeRing<Deflater> pool = isFast ? _deflaterFastPool : _deflaterPool;
+    
+    deflater.reset();
+    
+    if (! pool.free(deflater)) {
+      deflater.end();
+    }
+  }
+  
+  private class FilterBeforeGzip implements ServiceWeb
   {
-
     @Override
     public void service(RequestWeb request) throws Exception
     {
@@ -72,15 +157,61 @@ class FilterBeforeGzipFactory implements FilterFactory<ServiceWeb>
     
     protected void pushGzip(RequestWeb request)
     {
-      request.push(new GzipFilter());
+      boolean isFast = "fast".equals(request.header(FAST_HEADER));
+      
+      String uri = request.uri();
+      String query = request.query();
+      
+      if (query != null) {
+        uri = uri + "?" + query;
+      }
+      
+      request.push(new GzipFilter(uri, isFast));
     }
-    
   }
   
-  private static class GzipFilter implements OutFilterWeb
+  private class GzipFilter implements OutFilterWeb
   {
+    private final String _uri;
+    private final boolean _isFast;
+    
     private boolean _isDisable;
+    private long _length = -1;
+    private String _etag;
+    private boolean _isFailed;
+    
+    // body held until it reaches the min length
+    private TempBuffer _pending;
+    
     private GzipOutput _outGzip;
+    private boolean _isCached;
+    
+    GzipFilter(String uri, boolean isFast)
+    {
+      _uri = uri;
+      _isFast = isFast;
+    }
+    
+    @Override
+    public void header(RequestWeb request, String key, String value)
+    {
+      if (key.equalsIgnoreCase("content-encoding")
+          || key.equalsIgnoreCase("content-range")) {
+        // already encoded, like a precompressed static file, or a range
+        _isDisable = true;
+      }
+      else if (key.equalsIgnoreCase("content-type")) {
+        if (! isCompressible(value)) {
+          _isDisable = true;
+        }
+      }
+      else if (key.equalsIgnoreCase("etag")) {
+        // weak tags may be shared by differently-encoded variants
+        _etag = value.startsWith("W/") ? null : value;
+      }
+      
+      request.header(key, value);
+    }
     
     @Override
     public void length(RequestWeb request, long length)
@@ -88,20 +219,19 @@ class FilterBeforeGzipFactory implements FilterFactory<ServiceWeb>
       if (_isDisable) {
         request.length(length);
       }
-      else if (length < 100) {
+      else if (length < _minLength) {
         _isDisable = true;
         request.length(length);
       }
+      else {
+        _length = length;
+      }
     }
     
     @Override
     public void type(RequestWeb request, String type)
     {
-      if (type.startsWith("text/")) {
-      }
-      else if (type.indexOf("json") >= 0) {
-      }
-      else {
+      if (! isCompressible(type)) {
         _isDisable = true;
       }
       
@@ -111,20 +241,48 @@ class FilterBeforeGzipFactory implements FilterFactory<ServiceWeb>
     @Override
     public void write(RequestWeb out, Buffer buffer)
     {
+      if (_isCached) {
+        consume(buffer);
+        return;
+      }
+      
       if (_outGzip == null) {
         if (_isDisable) {
+          writePending(out);
           out.write(buffer);
           return;
         }
         
-        out.header("content-encoding", "gzip");
-        _outGzip = new GzipOutput(out);
+        if (_length < 0 && pendingLength() + buffer.length() < _minLength) {
+          if (_pending == null) {
+            _pending = TempBuffer.create();
+          }
+          
+          buffer.read(_pending.buffer(), _pending.length(), buffer.length());
+          _pending.length(_pending.length() + buffer.length());
+          return;
+        }
+        
+        start(out);
+        
+        if (_isCached) {
+          consume(buffer);
+          return;
+        }
       }
 
       try {
         buffer.read(_outGzip);
       } catch (IOException e) {
+        abort();
+        
         throw new RuntimeException(e);
+      } catch (RuntimeException e) {
+        abort();
+        
+        throw e;
+      } finally {
+        consume(buffer);
       }
     }
     
@@ -132,29 +290,163 @@ class FilterBeforeGzipFactory implements FilterFactory<ServiceWeb>
     public void ok(RequestWeb out)
     {
       if (_outGzip != null) {
-        _outGzip.close();
+        byte []data;
+        
+        try {
+          data = _outGzip.finish();
+        } catch (RuntimeException e) {
+          abort();
+          
+          throw e;
+        }
+        
+        String key = cacheKey();
+        
+        if (data != null && key != null) {
+          _cache.put(key, data);
+        }
+      }
+      else if (! _isCached && _pending != null) {
+        // too short to compress
+        if (! _isDisable) {
+          out.length(_pending.length());
+        }
+        
+        writePending(out);
+      }
+    }
+    
+    /**
+     * The error body of a failed request must not be cached.
+     */
+    @Override
+    public void fail(RequestWeb out, Throwable exn)
+    {
+      _isFailed = true;
+    }
+    
+    /**
+     * Releases the deflater of a response that won't complete.
+     */
+    private void abort()
+    {
+      GzipOutput outGzip = _outGzip;
+      
+      if (outGzip != null) {
+        outGzip.close();
+      }
+      
+      freePending();
+    }
+    
+    private void start(RequestWeb out)
+    {
+      out.header("content-encoding", "gzip");
+      out.header("vary", "accept-encoding");
+      
+      String key = cacheKey();
+      
+      if (key != null) {
+        byte []data = _cache.get(key);
+        
+        if (data != null) {
+          _isCached = true;
+          freePending();
+          
+          out.length(data.length);
+          out.write(data, 0, data.length);
+          return;
+        }
+      }
+      
+      _outGzip = new GzipOutput(out, _isFast, key != null);
+      
+      if (_pending != null) {
+        try {
+          _outGzip.write(_pending.buffer(), 0, _pending.length());
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        
+        freePending();
+      }
+    }
+    
+    private String cacheKey()
+    {
+      if (_cache == null || _etag == null || _isFailed) {
+        return null;
+      }
+      
+      return _uri + "\u0000" + _etag + (_isFast ? "\u0000fast" : "");
+    }
+    
+    private int pendingLength()
+    {
+      return _pending != null ? _pending.length() : 0;
+    }
+    
+    private void writePending(RequestWeb out)
+    {
+      if (_pending != null) {
+        out.write(_pending.buffer(), 0, _pending.length());
+        freePending();
+      }
+    }
+    
+    private void freePending()
+    {
+      if (_pending != null) {
+        _pending.free();
+        _pending = null;
+      }
+    }
+    
+    /**
+     * A file region passed to the filter must be released after its
+     * data is read.
+     */
+    private void consume(Buffer buffer)
+    {
+      if (buffer instanceof FileRegionBuffer) {
+        buffer.free();
       }
     }
   }
   
-  private static class GzipOutput extends OutputStream
+  private class GzipOutput extends OutputStream
   {
-    private static final byte []HEADER = new byte[]
+    private final byte []HEADER = new byte[]
         {
          31, (byte) 139, 8, 0, 0, 0, 0, 0, 0, 0
         };
     
-    private Deflater _deflater =
-      new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final RequestWeb _out;
+    private final boolean _isFast;
+    private Deflater _deflater;
     private final CRC32 _crc = new CRC32();
     private TempBuffer _tBuf = TempBuffer.create();
-    private RequestWeb _out;
     
-    GzipOutput(RequestWeb out)
+    // copy of the compressed body for the cache
+    private ByteArrayOutputStream _cacheOut;
+    
+    GzipOutput(RequestWeb out, boolean isFast, boolean isCache)
     {
       _out = out;
+      _isFast = isFast;
+      _deflater = allocateDeflater(isFast);
       
-      writeHeader(out);
+      if (isCache) {
+        _cacheOut = new ByteArrayOutputStream();
+      }
+      
+      try {
+        writeOut(HEADER, 0, HEADER.length);
+      } catch (RuntimeException e) {
+        close();
+        
+        throw e;
+      }
     }
     
     @Override
@@ -167,6 +459,10 @@ class FilterBeforeGzipFactory implements FilterFactory<ServiceWeb>
     public void write(byte []buffer, int offset, int length)
       throws IOException
     {
+      if (_deflater == null) {
+        throw new IOException("gzip stream is closed");
+      }
+      
       _deflater.setInput(buffer, offset, length);
       _crc.update(buffer, offset, length);
       
@@ -174,12 +470,15 @@ class FilterBeforeGzipFactory implements FilterFactory<ServiceWeb>
       int sublen;
       
       while ((sublen = _deflater.deflate(tBuffer, 0, tBuffer.length)) > 0) {
-        _out.write(tBuffer, 0, sublen);
+        writeOut(tBuffer, 0, sublen);
       }
     }
     
-    @Override
-    public void close()
+    /**
+     * Finishes the stream, returning the compressed body if it should
+     * be cached.
+     */
+    public byte []finish()
     {
       _deflater.finish();
       
@@ -187,27 +486,74 @@ class FilterBeforeGzipFactory implements FilterFactory<ServiceWeb>
       byte []tBuffer = _tBuf.buffer();
       
       while ((sublen = _deflater.deflate(tBuffer, 0, tBuffer.length)) > 0) {
-        _out.write(tBuffer, 0, sublen);
+        writeOut(tBuffer, 0, sublen);
       }
       
-      writeFooter(_out);
+      writeFooter();
+      
+      ByteArrayOutputStream cacheOut = _cacheOut;
       
-      _deflater.end();
+      close();
+      
+      return cacheOut != null ? cacheOut.toByteArray() : null;
     }
     
-    private void writeHeader(RequestWeb out)
+    /**
+     * Returns the deflater to the pool. An unfinished stream is dropped,
+     * since the pool resets the deflater.
+     */
+    @Override
+    public void close()
     {
-      out.write(HEADER, 0, HEADER.length);
+      Deflater deflater = _deflater;
+      _deflater = null;
+      
+      if (deflater != null) {
+        freeDeflater(deflater, _isFast);
+      }
+      
+      TempBuffer tBuf = _tBuf;
+      _tBuf = null;
+      
+      if (tBuf != null) {
+        tBuf.free();
+      }
+      
+      _cacheOut = null;
     }
     
-    private void writeFooter(RequestWeb out)
+    private void writeFooter()
     {
-      try {
-        BitsUtil.writeInt(out.output(), (int) _crc.getValue());
-        BitsUtil.writeInt(out.output(), _deflater.getTotalIn());
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+      byte []footer = new byte[8];
+      
+      writeIntLe(footer, 0, (int) _crc.getValue());
+      writeIntLe(footer, 4, _deflater.getTotalIn());
+      
+      writeOut(footer, 0, footer.length);
+    }
+    
+    private void writeOut(byte []buffer, int offset, int length)
+    {
+      _out.write(buffer, offset, length);
+      
+      ByteArrayOutputStream cacheOut = _cacheOut;
+      
+      if (cacheOut != null) {
+        if (cacheOut.size() + length <= _cacheEntryMax) {
+          cacheOut.write(buffer, offset, length);
+        }
+        else {
+          _cacheOut = null;
+        }
       }
     }
   }
+  
+  private static void writeIntLe(byte []buffer, int offset, int value)
+  {
+    buffer[offset] = (byte) value;
+    buffer[offset + 1] = (byte) (value >> 8);
+    buffer[offset + 2] = (byte) (value >> 16);
+    buffer[offset + 3] = (byte) (value >> 24);
+  }
 }
@@ -34,6 +34,13 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.logging.Logger;
 
+import com.caucho.v5.amp.message.HeadersNull;
+import com.caucho.v5.amp.message.TraceMessage;
+import com.caucho.v5.amp.spi.HeadersAmp;
+import com.caucho.v5.amp.spi.MessageAmp;
+import com.caucho.v5.amp.spi.OutboxAmp;
+import com.caucho.v5.amp.trace.TraceRecorder;
+import com.caucho.v5.amp.trace.TraceSpan;
 import com.caucho.v5.http.dispatch.Invocation;
 import com.caucho.v5.network.port.ConnectionProtocol;
 import com.caucho.v5.network.port.StateConnection;
@@ -187,6 +194,59 @@ public class InvocationBaratine extends Invocation
   {
     RequestBaratine req = (RequestBaratine) request;
     
+    if (TraceRecorder.current().isEnabled()
+        && req instanceof RequestBaratineImpl) {
+      serviceTrace((RequestBaratineImpl) req);
+    }
+    else {
+      serviceImpl(req);
+    }
+  }
+  
+  /**
+   * Starts the request's span, honoring a W3C traceparent header, and
+   * makes it the caller of the routes' service calls. The span ends
+   * when the response completes.
+   */
+  private void serviceTrace(RequestBaratineImpl req)
+  {
+    TraceSpan span = TraceRecorder.current().root(req.method(),
+                                                  TraceSpan.Kind.SERVER,
+                                                  req.header("traceparent"));
+    
+    if (span == null || _webApp == null) {
+      serviceImpl(req);
+      return;
+    }
+    
+    span.tag("http.method", req.method());
+    span.tag("http.path", req.uri());
+    
+    req.traceSpan(span);
+    
+    try (OutboxAmp outbox = OutboxAmp.currentOrCreate(_webApp.services())) {
+      MessageAmp oldMsg = outbox.message();
+      
+      HeadersAmp headers = HeadersNull.NULL;
+      
+      if (oldMsg != null) {
+        headers = oldMsg.getHeaders();
+      }
+      
+      headers = span.contextHeaders(headers);
+      
+      outbox.message(new TraceMessage(span.header(), headers, oldMsg));
+      
+      try {
+        serviceImpl(req);
+      } finally {
+        outbox.message(oldMsg);
+      }
+    }
+  }
+  
+  private void serviceImpl(RequestBaratine req)
+  {
     Thread thread = Thread.currentThread();
     ClassLoader oldLoader = thread.getContextClassLoader();
     
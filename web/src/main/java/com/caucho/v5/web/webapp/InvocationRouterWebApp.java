@@ -29,7 +29,6 @@
 
 package com.caucho.v5.web.webapp;
 
-import java.util.ArrayList;
 import java.util.Objects;
 
 import com.caucho.v5.http.dispatch.InvocationRouter;
@@ -39,9 +38,12 @@ import com.caucho.v5.http.dispatch.InvocationRouter;
  */
 public class InvocationRouterWebApp implements InvocationRouter<InvocationBaratine>
 {
+  private static final RouteBaratine []ROUTES_NOT_FOUND
+    = new RouteBaratine[] { new RouteNotFound() };
+  
   private final WebApp _webApp;
   
-  private final RouteMap []_routeList;
+  private final RouteTree _routeTree;
   
   InvocationRouterWebApp(WebApp webApp,
                          RouteMap[]routeList)
@@ -50,7 +52,7 @@ public class InvocationRouterWebApp implements InvocationRouter<InvocationBarati
     Objects.requireNonNull(routeList);
     
     _webApp = webApp;
-    _routeList = routeList;
+    _routeTree = new RouteTree(routeList);
   }
   
   @Override
@@ -63,33 +65,12 @@ public class InvocationRouterWebApp implements InvocationRouter<InvocationBarati
     String uri = invocation.uri();
     String uriRel = uri.substring(prefix.length());
     
-    ArrayList<RouteBaratine> routeList = new ArrayList<>();
-    
-    String matchPattern = null;
-
-    for (RouteMap routeMap : _routeList) {
-      if (routeMap.match(invocation, uriRel)) {
-        //routeList.add(routeMap.route());
-        matchPattern = routeMap.pattern();
-        break;
-      }
-    }
+    RouteBaratine []routes = _routeTree.route(invocation, uriRel);
     
-    if (matchPattern != null) {
-      for (RouteMap routeMap : _routeList) {
-        if (matchPattern.equals(routeMap.pattern())) {
-          routeList.add(routeMap.route());
-        }
-      }
+    if (routes == null) {
+      routes = ROUTES_NOT_FOUND;
     }
     
-    if (routeList.isEmpty()) {
-      routeList.add(new RouteNotFound());
-    }
-    
-    RouteBaratine []routes = new RouteBaratine[routeList.size()];
-    routeList.toArray(routes);
-    
     invocation.routes(routes);
     
     return invocation;
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.web.webapp;
+
+import com.caucho.v5.health.meter.MetricRegistry;
+
+import io.baratine.web.RequestWeb;
+import io.baratine.web.ServiceWeb;
+
+/**
+ * Scrape endpoint for the metric registry in text exposition format.
+ *
+ * Enabled by setting server.metrics.path, e.g. "/metrics".
+ */
+public class MetricsWeb implements ServiceWeb
+{
+  public static final String CONTENT_TYPE
+    = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final MetricRegistry _registry;
+
+  public MetricsWeb()
+  {
+    this(MetricRegistry.current());
+  }
+
+  public MetricsWeb(MetricRegistry registry)
+  {
+    _registry = registry;
+  }
+
+  @Override
+  public void service(RequestWeb request)
+  {
+    request.type(CONTENT_TYPE);
+    request.write(_registry.text());
+
+    request.ok();
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _registry + "]";
+  }
+}
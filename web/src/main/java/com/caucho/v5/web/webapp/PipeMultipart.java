@@ -0,0 +1,445 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.web.webapp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.caucho.v5.io.TempBuffer;
+import com.caucho.v5.util.L10N;
+
+import io.baratine.io.Buffer;
+import io.baratine.pipe.Credits;
+import io.baratine.pipe.Pipe;
+import io.baratine.service.Result;
+import io.baratine.web.Part;
+
+/**
+ * Incremental multipart/form-data parser for streamed request bodies.
+ *
+ * Body chunks are scanned for the boundary as they arrive. Each part's
+ * headers produce a Part, and the part's data is forwarded to the pipe
+ * returned by the part handler without buffering the complete part.
+ */
+class PipeMultipart implements Pipe<Buffer>
+{
+  private static final L10N L = new L10N(PipeMultipart.class);
+  private static final Logger log
+    = Logger.getLogger(PipeMultipart.class.getName());
+
+  private static final int HEADER_MAX = 16 * 1024;
+
+  private final byte []_delimiter;
+  private final Function<Part,Pipe<Buffer>> _onPart;
+  private final Result<Void> _result;
+
+  private Credits _credits;
+
+  private StateMultipart _state = StateMultipart.PREAMBLE;
+
+  // unparsed bytes: headers or a possible partial delimiter
+  private byte []_data = new byte[TempBuffer.SIZE];
+  private int _length;
+
+  private LinkedHashMap<String,List<String>> _headers = new LinkedHashMap<>();
+  private Pipe<Buffer> _partPipe;
+
+  PipeMultipart(String boundary,
+                Function<Part,Pipe<Buffer>> onPart,
+                Result<Void> result)
+  {
+    Objects.requireNonNull(boundary);
+    Objects.requireNonNull(onPart);
+    Objects.requireNonNull(result);
+
+    // the leading CRLF belongs to the delimiter, see RFC 2046
+    _delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+    _onPart = onPart;
+    _result = result;
+
+    // the first delimiter may start the body without a preceding CRLF
+    _data[0] = '\r';
+    _data[1] = '\n';
+    _length = 2;
+  }
+
+  @Override
+  public void credits(Credits credits)
+  {
+    _credits = credits;
+  }
+
+  @Override
+  public void next(Buffer buffer)
+  {
+    if (_state == StateMultipart.CLOSED) {
+      buffer.free();
+      return;
+    }
+
+    try {
+      int len = buffer.length();
+
+      if (_data.length < _length + len) {
+        byte []data = new byte[Math.max(2 * _data.length, _length + len)];
+        System.arraycopy(_data, 0, data, 0, _length);
+        _data = data;
+      }
+
+      buffer.read(_data, _length, len);
+      _length += len;
+
+      buffer.free();
+
+      parse();
+    } catch (Exception e) {
+      log.log(Level.FINER, e.toString(), e);
+
+      fail(e);
+    }
+  }
+
+  private void parse()
+    throws IOException
+  {
+    byte []data = _data;
+    int length = _length;
+    int offset = 0;
+
+    loop:
+    while (offset < length) {
+      switch (_state) {
+      case PREAMBLE:
+      case DATA: {
+        int delim = indexOf(data, offset, length, _delimiter);
+
+        if (delim < 0) {
+          // keep a tail that might be the start of the delimiter
+          int safe = Math.max(offset, length - _delimiter.length + 1);
+
+          if (_state == StateMultipart.DATA) {
+            writePart(data, offset, safe - offset);
+          }
+
+          offset = safe;
+          break loop;
+        }
+
+        if (_state == StateMultipart.DATA) {
+          writePart(data, offset, delim - offset);
+          closePart();
+        }
+
+        offset = delim + _delimiter.length;
+        _state = StateMultipart.DELIMITER;
+        break;
+      }
+
+      case DELIMITER: {
+        while (offset < length
+               && (data[offset] == ' ' || data[offset] == '\t')) {
+          offset++;
+        }
+
+        if (length - offset < 2) {
+          break loop;
+        }
+
+        if (data[offset] == '-' && data[offset + 1] == '-') {
+          _state = StateMultipart.END;
+        }
+        else if (data[offset] == '\r' && data[offset + 1] == '\n') {
+          _state = StateMultipart.HEADERS;
+          _headers = new LinkedHashMap<>();
+        }
+        else {
+          throw new IOException(L.l("invalid multipart boundary"));
+        }
+
+        offset += 2;
+        break;
+      }
+
+      case HEADERS: {
+        int eol = indexOfCrlf(data, offset, length);
+
+        if (eol < 0) {
+          if (HEADER_MAX < length - offset) {
+            throw new IOException(L.l("multipart header length {0} exceeded",
+                                      HEADER_MAX));
+          }
+
+          break loop;
+        }
+
+        if (eol == offset) {
+          startPart();
+        }
+        else {
+          parseHeader(new String(data, offset, eol - offset,
+                                 StandardCharsets.UTF_8));
+        }
+
+        offset = eol + 2;
+        break;
+      }
+
+      case END:
+      default:
+        // epilogue is ignored
+        offset = length;
+        break;
+      }
+    }
+
+    if (offset > 0) {
+      System.arraycopy(data, offset, data, 0, length - offset);
+      _length = length - offset;
+    }
+  }
+
+  private void parseHeader(String line)
+  {
+    int p = line.indexOf(':');
+
+    if (p <= 0) {
+      return;
+    }
+
+    String key = line.substring(0, p).trim().toLowerCase(Locale.ENGLISH);
+    String value = line.substring(p + 1).trim();
+
+    List<String> values = _headers.get(key);
+
+    if (values == null) {
+      values = new ArrayList<>();
+      _headers.put(key, values);
+    }
+
+    values.add(value);
+  }
+
+  private void startPart()
+  {
+    PartImpl part = new PartImpl();
+
+    String disposition = header("content-disposition");
+
+    part.setName(dispositionParam(disposition, "name"));
+    part.setFileName(dispositionParam(disposition, "filename"));
+    part.setContentType(header("content-type"));
+    part.setHeaders(_headers);
+    part.setSize(-1);
+
+    _partPipe = _onPart.apply(part);
+
+    if (_partPipe != null && _credits != null) {
+      _partPipe.credits(_credits);
+    }
+
+    _state = StateMultipart.DATA;
+  }
+
+  private void writePart(byte []data, int offset, int length)
+  {
+    Pipe<Buffer> pipe = _partPipe;
+
+    if (pipe == null) {
+      return;
+    }
+
+    while (length > 0) {
+      TempBuffer tBuf = TempBuffer.create();
+
+      int sublen = Math.min(length, tBuf.capacity());
+
+      tBuf.write(data, offset, sublen);
+
+      pipe.next(tBuf);
+
+      offset += sublen;
+      length -= sublen;
+    }
+  }
+
+  private void closePart()
+  {
+    Pipe<Buffer> pipe = _partPipe;
+    _partPipe = null;
+
+    if (pipe != null) {
+      pipe.close();
+    }
+  }
+
+  private String header(String key)
+  {
+    List<String> values = _headers.get(key);
+
+    if (values != null && values.size() > 0) {
+      return values.get(0);
+    }
+    else {
+      return null;
+    }
+  }
+
+  /**
+   * Returns a parameter of a Content-Disposition header, e.g. the name
+   * in {@code form-data; name="file"; filename="a.txt"}.
+   */
+  static String dispositionParam(String disposition, String key)
+  {
+    if (disposition == null) {
+      return null;
+    }
+
+    for (String param : disposition.split(";")) {
+      int p = param.indexOf('=');
+
+      if (p < 0 || ! key.equalsIgnoreCase(param.substring(0, p).trim())) {
+        continue;
+      }
+
+      String value = param.substring(p + 1).trim();
+
+      if (value.length() >= 2
+          && (value.charAt(0) == '"' || value.charAt(0) == '\'')
+          && value.charAt(value.length() - 1) == value.charAt(0)) {
+        value = value.substring(1, value.length() - 1);
+      }
+
+      return value;
+    }
+
+    return null;
+  }
+
+  private static int indexOf(byte []data, int offset, int length,
+                             byte []pattern)
+  {
+    int end = length - pattern.length;
+    byte first = pattern[0];
+
+    for (int i = offset; i <= end; i++) {
+      if (data[i] != first) {
+        continue;
+      }
+
+      int j = 1;
+      for (; j < pattern.length && data[i + j] == pattern[j]; j++) {
+      }
+
+      if (j == pattern.length) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static int indexOfCrlf(byte []data, int offset, int length)
+  {
+    for (int i = offset; i + 1 < length; i++) {
+      if (data[i] == '\r' && data[i + 1] == '\n') {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  @Override
+  public void close()
+  {
+    if (_state == StateMultipart.END) {
+      _state = StateMultipart.CLOSED;
+
+      _result.ok(null);
+    }
+    else if (_state != StateMultipart.CLOSED) {
+      fail(new IOException(L.l("multipart body ended before the final boundary")));
+    }
+  }
+
+  @Override
+  public void fail(Throwable exn)
+  {
+    if (_state == StateMultipart.CLOSED) {
+      return;
+    }
+
+    _state = StateMultipart.CLOSED;
+
+    Pipe<Buffer> pipe = _partPipe;
+    _partPipe = null;
+
+    if (pipe != null) {
+      pipe.fail(exn);
+    }
+
+    if (_credits != null) {
+      _credits.cancel();
+    }
+
+    _result.fail(exn);
+  }
+
+  @Override
+  public boolean isClosed()
+  {
+    return _state == StateMultipart.CLOSED;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _state + "]";
+  }
+
+  private enum StateMultipart
+  {
+    PREAMBLE,
+    DELIMITER,
+    HEADERS,
+    DATA,
+    END,
+    CLOSED;
+  }
+}
@@ -39,18 +39,25 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.caucho.v5.amp.ServiceRefAmp;
 import com.caucho.v5.amp.ServicesAmp;
+import com.caucho.v5.amp.trace.TraceSpan;
 import com.caucho.v5.http.protocol.ConnectionHttp;
+import com.caucho.v5.http.protocol.HeaderIntern;
 import com.caucho.v5.http.protocol.RequestHttpBase;
 import com.caucho.v5.http.protocol.RequestHttpWeb;
 import com.caucho.v5.http.websocket.WebSocketBaratineImpl;
 import com.caucho.v5.inject.InjectorAmp;
 import com.caucho.v5.inject.type.TypeRef;
+import com.caucho.v5.io.FileRegionBuffer;
+import com.caucho.v5.io.MultipartStream;
 import com.caucho.v5.io.OutputStreamWithBuffer;
 import com.caucho.v5.io.TempBuffer;
 import com.caucho.v5.io.TempInputStream;
@@ -59,6 +66,7 @@ import com.caucho.v5.network.port.ConnectionProtocol;
 import com.caucho.v5.network.port.ConnectionTcp;
 import com.caucho.v5.network.port.StateConnection;
 import com.caucho.v5.util.Base64Util;
+import com.caucho.v5.util.CharSegment;
 import com.caucho.v5.util.CurrentTime;
 import com.caucho.v5.util.L10N;
 import com.caucho.v5.util.RandomUtil;
@@ -69,11 +77,13 @@ import io.baratine.inject.Injector;
 import io.baratine.io.Buffer;
 import io.baratine.io.Buffers;
 import io.baratine.pipe.Credits;
+import io.baratine.pipe.Pipe;
 import io.baratine.service.Result;
 import io.baratine.service.ServiceException;
 import io.baratine.service.ServiceRef;
 import io.baratine.web.HttpStatus;
 import io.baratine.web.MultiMap;
+import io.baratine.web.Part;
 import io.baratine.web.RequestWeb;
 import io.baratine.web.ServiceWebSocket;
 import io.baratine.web.ViewResolver;
@@ -89,6 +99,10 @@ public final class RequestBaratineImpl extends RequestHttpWeb
   private static final Logger log
     = Logger.getLogger(RequestBaratineImpl.class.getName());
 
+  // body chunks a streaming handler may have in flight before it
+  // takes over the credits
+  private static final int BODY_PREFETCH = 16;
+
   //private List<ViewRef<?>> _views;
   
   //private ViewResolver<Object> _viewResolver;
@@ -107,9 +121,19 @@ public final class RequestBaratineImpl extends RequestHttpWeb
   private Class<?> _bodyType;
   private Result<Object> _bodyResult;
   private Object _bodyValue;
+
+  // streamed body, see bodyStream()
+  private final Object _bodyLock = new Object();
+  private Pipe<Buffer> _bodyPipe;
+  private RequestProxy _bodyProxy;
+  private volatile CreditsBody _bodyCredits;
+  private final AtomicBoolean _isBodySuspend = new AtomicBoolean();
+
   private HashMap<String, Object> _attributeMap;
   private RequestOutputStream _out;
 
+  private TraceSpan _traceSpan;
+
   public RequestBaratineImpl(ConnectionHttp connHttp,
                              RequestHttpBase request)
   {
@@ -173,7 +197,10 @@ public final class RequestBaratineImpl extends RequestHttpWeb
       
       values.add(requestHttp().getHeaderValue(i).toString());
       
-      headerMap.put(requestHttp().getHeaderKey(i).toString(), values);
+      CharSegment key = requestHttp().getHeaderKey(i);
+      
+      headerMap.put(HeaderIntern.intern(key.buffer(), key.offset(), key.length()),
+                    values);
     }
 
     return headerMap;
@@ -346,6 +373,15 @@ public final class RequestBaratineImpl extends RequestHttpWeb
     }
   }
 
+  /**
+   * Pushes a resource on HTTP/2 connections.
+   */
+  @Override
+  public boolean pushResource(String path)
+  {
+    return requestHttp().push(path);
+  }
+
   /**
    * Starts an upgrade of the HTTP request to a protocol on raw TCP.
    */
@@ -549,6 +585,78 @@ public final class RequestBaratineImpl extends RequestHttpWeb
     }
   }
 
+  /**
+   * Streams the body to the pipe. All chunks, including those already
+   * read, are delivered through the request proxy so they arrive on the
+   * service's thread in order.
+   */
+  @Override
+  public void bodyStream(Pipe<Buffer> pipe)
+  {
+    Objects.requireNonNull(pipe);
+
+    RequestProxy proxy = requestProxy();
+    CreditsBody credits = new CreditsBody();
+
+    synchronized (_bodyLock) {
+      if (_bodyPipe != null || _bodyType != null || _bodyValue != null) {
+        throw new IllegalStateException(L.l("body has already been requested"));
+      }
+
+      _bodyPipe = pipe;
+      _bodyCredits = credits;
+      _bodyProxy = proxy;
+
+      pipe.credits(credits);
+
+      TempBuffer head = _bodyHead;
+      _bodyHead = _bodyTail = null;
+
+      // queued before the connection thread can send later chunks
+      while (head != null) {
+        TempBuffer next = head.next();
+        head.next(null);
+
+        credits.onSend();
+        proxy.bodyChunk(this, head);
+
+        head = next;
+      }
+
+      if (_isBodyComplete) {
+        proxy.bodyStreamClose(this);
+      }
+    }
+  }
+
+  @Override
+  public void bodyParts(Function<Part,Pipe<Buffer>> onPart,
+                        Result<Void> result)
+  {
+    Objects.requireNonNull(onPart);
+    Objects.requireNonNull(result);
+
+    String contentType = header("Content-Type");
+
+    if (contentType == null
+        || ! contentType.toLowerCase(Locale.ENGLISH).startsWith("multipart/")) {
+      result.fail(new IllegalStateException(L.l("multipart body expected for content-type '{0}'",
+                                                contentType)));
+      return;
+    }
+
+    String boundary;
+
+    try {
+      boundary = MultipartStream.parseBoundary(contentType);
+    } catch (Exception e) {
+      result.fail(e);
+      return;
+    }
+
+    bodyStream(new PipeMultipart(boundary, onPart, result));
+  }
+
   @Override
   public InputStream inputStream()
   {
@@ -677,7 +785,15 @@ public final class RequestBaratineImpl extends RequestHttpWeb
   @Override
   public RequestWeb push(OutFilterWeb filter)
   {
-    _out = new RequestOutFilter(new RequestBaratineNext(this), filter);
+    RequestOutputStream out = _out;
+
+    // a later filter writes through the earlier ones
+    if (out != null) {
+      _out = new RequestOutFilter(new RequestOutChain(this, out), filter);
+    }
+    else {
+      _out = new RequestOutFilter(new RequestBaratineNext(this), filter);
+    }
     
     return this;
   }
@@ -725,7 +841,17 @@ public final class RequestBaratineImpl extends RequestHttpWeb
   @Override
   public RequestWeb write(Buffer buffer)
   {
-    requestHttp().out().write(buffer);
+    RequestOutputStream out = _out;
+    
+    if (out != null) {
+      out.write(buffer);
+    }
+    else if (buffer instanceof FileRegionBuffer) {
+      requestHttp().out().writeDirect(buffer);
+    }
+    else {
+      requestHttp().out().write(buffer);
+    }
 
     return this;
   }
@@ -843,6 +969,13 @@ public final class RequestBaratineImpl extends RequestHttpWeb
   @Override
   public final void ok()
   {
+    TraceSpan span = _traceSpan;
+    _traceSpan = null;
+
+    if (span != null) {
+      span.tag("http.status_code", String.valueOf(requestHttp().status()));
+    }
+
     try {
       requestHttp().writerClose();
 
@@ -850,6 +983,18 @@ public final class RequestBaratineImpl extends RequestHttpWeb
     } catch (IOException e) {
       log.log(Level.WARNING, e.toString(), e);
     }
+
+    if (span != null) {
+      span.end();
+    }
+  }
+
+  /**
+   * The request's trace span, ended when the response completes.
+   */
+  void traceSpan(TraceSpan span)
+  {
+    _traceSpan = span;
   }
 
   @Override
@@ -857,6 +1002,12 @@ public final class RequestBaratineImpl extends RequestHttpWeb
   {
     log.log(Level.FINE, exn.toString(), exn);
 
+    RequestOutputStream out = _out;
+
+    if (out != null) {
+      out.fail(exn);
+    }
+
     if (exn instanceof FileNotFoundException) {
       status(HttpStatus.NOT_FOUND);
       type("text/plain; charset=utf-8");
@@ -873,11 +1024,7 @@ public final class RequestBaratineImpl extends RequestHttpWeb
       writeTrace(exn);
     }
 
-    try {
-      requestHttp().out().close();
-    } catch (IOException e) {
-      log.log(Level.WARNING, e.toString(), e);
-    }
+    ok();
   }
 
   private void writeTrace(Throwable exn)
@@ -903,6 +1050,11 @@ public final class RequestBaratineImpl extends RequestHttpWeb
   // http response
   //
 
+  boolean isCookieOut()
+  {
+    return _cookieList != null && _cookieList.size() > 0;
+  }
+
   public void writeCookies(WriteStream os) throws IOException
   {
     ArrayList<CookieWeb> cookieList = _cookieList;
@@ -982,6 +1134,16 @@ public final class RequestBaratineImpl extends RequestHttpWeb
   @Override
   public StateConnection onCloseRead()
   {
+    RequestProxy bodyProxy;
+
+    synchronized (_bodyLock) {
+      bodyProxy = _isBodyComplete ? null : _bodyProxy;
+    }
+
+    if (bodyProxy != null) {
+      bodyProxy.bodyStreamFail(this, new IOException(L.l("connection closed before the end of the request body")));
+    }
+
     _state = _state.toCloseRead();
 
     switch (_state) {
@@ -1107,23 +1269,109 @@ public final class RequestBaratineImpl extends RequestHttpWeb
   @Override
   public void onBodyChunk(TempBuffer tBuf)
   {
-    if (_bodyHead == null) {
-      _bodyHead = _bodyTail = tBuf;
+    RequestProxy proxy;
+
+    synchronized (_bodyLock) {
+      proxy = _bodyProxy;
+
+      if (proxy == null) {
+        if (_bodyHead == null) {
+          _bodyHead = _bodyTail = tBuf;
+        }
+        else {
+          _bodyTail.next(tBuf);
+          _bodyTail = tBuf;
+        }
+
+        return;
+      }
     }
-    else {
-      _bodyTail.next(tBuf);
-      _bodyTail = tBuf;
+
+    _bodyCredits.onSend();
+
+    proxy.bodyChunk(this, tBuf);
+  }
+
+  /**
+   * Reading stops when a streaming handler has no credits left, and
+   * resumes when the handler adds credits.
+   */
+  @Override
+  protected boolean isBodyReadable()
+  {
+    CreditsBody credits = _bodyCredits;
+
+    if (credits == null || credits.isReadable()) {
+      return true;
+    }
+
+    _isBodySuspend.set(true);
+
+    // credits added before the suspend flag was set
+    return credits.isReadable() && _isBodySuspend.compareAndSet(true, false);
+  }
+
+  private void wakeBody()
+  {
+    if (_isBodySuspend.compareAndSet(true, false)) {
+      connHttp().connTcp().proxy().requestWake();
+    }
+  }
+
+  void bodyStreamNext(TempBuffer tBuf)
+  {
+    CreditsBody credits = _bodyCredits;
+
+    try {
+      if (credits.isCancelled()) {
+        tBuf.free();
+      }
+      else {
+        _bodyPipe.next(tBuf);
+      }
+    } catch (Throwable e) {
+      log.log(Level.FINER, e.toString(), e);
+
+      bodyStreamFail(e);
+    } finally {
+      credits.onDelivered();
+    }
+  }
+
+  void bodyStreamClose()
+  {
+    if (! _bodyCredits.isCancelled()) {
+      _bodyPipe.close();
+    }
+  }
+
+  void bodyStreamFail(Throwable exn)
+  {
+    CreditsBody credits = _bodyCredits;
+
+    if (! credits.isCancelled()) {
+      credits.cancel();
+
+      _bodyPipe.fail(exn);
     }
   }
 
   //@Override
   public void bodyComplete()
   {
-    _isBodyComplete = true;
+    RequestProxy bodyProxy;
+
+    synchronized (_bodyLock) {
+      _isBodyComplete = true;
+      bodyProxy = _bodyProxy;
+    }
 
     //connHttp().requestComplete();
 
-    if (_bodyResult != null) {
+    if (bodyProxy != null) {
+      bodyProxy.bodyStreamClose(this);
+    }
+    else if (_bodyResult != null) {
       _bodyResult.ok(body(_bodyType));
     }
   }
@@ -1286,6 +1534,96 @@ public final class RequestBaratineImpl extends RequestHttpWeb
     }
   }
 
+  /**
+   * Credits for a streamed body. Until the handler sets its own credit
+   * sequence, credits renew as chunks are delivered, keeping at most
+   * BODY_PREFETCH chunks in flight.
+   */
+  private class CreditsBody implements Credits
+  {
+    // chunks read from the client, written by the connection thread
+    private volatile long _sent;
+    // chunks delivered to the pipe, written by the service thread
+    private volatile long _delivered;
+    // handler's credit sequence, or -1 while prefetching
+    private volatile long _credits = -1;
+    private volatile boolean _isCancel;
+
+    @Override
+    public long get()
+    {
+      long credits = _credits;
+
+      if (credits >= 0) {
+        return credits;
+      }
+      else {
+        return _delivered + BODY_PREFETCH;
+      }
+    }
+
+    @Override
+    public int available()
+    {
+      if (_isCancel) {
+        return 0;
+      }
+
+      return (int) Math.max(0, Math.min(Integer.MAX_VALUE, get() - _sent));
+    }
+
+    @Override
+    public void set(long creditSequence)
+    {
+      _credits = Math.max(0, creditSequence);
+
+      wakeBody();
+    }
+
+    @Override
+    public void cancel()
+    {
+      _isCancel = true;
+
+      wakeBody();
+    }
+
+    boolean isCancelled()
+    {
+      return _isCancel;
+    }
+
+    /**
+     * A cancelled stream still drains the body so the connection
+     * can be reused.
+     */
+    boolean isReadable()
+    {
+      return _isCancel || _sent < get();
+    }
+
+    void onSend()
+    {
+      _sent++;
+    }
+
+    void onDelivered()
+    {
+      _delivered++;
+
+      if (_credits < 0) {
+        wakeBody();
+      }
+    }
+
+    @Override
+    public String toString()
+    {
+      return (getClass().getSimpleName()
+              + "[sent=" + _sent + ",credits=" + get() + "]");
+    }
+  }
+
   private enum StateRequest
   {
     ACCEPT {
@@ -33,7 +33,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import com.caucho.v5.http.protocol.RequestHttpBase;
+import com.caucho.v5.io.FileRegionBuffer;
 
+import io.baratine.io.Buffer;
 import io.baratine.web.HttpStatus;
 import io.baratine.web.RequestWeb;
 
@@ -111,6 +113,19 @@ public final class RequestBaratineNext extends RequestWrapper
     }
   }
   
+  @Override
+  public RequestWeb write(Buffer buffer)
+  {
+    if (buffer instanceof FileRegionBuffer) {
+      _http.out().writeDirect(buffer);
+    }
+    else {
+      _http.out().write(buffer);
+    }
+    
+    return this;
+  }
+  
   @Override
   public OutputStream output()
   {
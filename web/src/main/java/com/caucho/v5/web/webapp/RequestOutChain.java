@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.web.webapp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+import io.baratine.io.Buffer;
+import io.baratine.web.RequestWeb;
+
+/**
+ * Output of a pushed filter that writes to a previously pushed filter.
+ */
+final class RequestOutChain extends RequestWrapper
+{
+  private final RequestBaratineImpl _delegate;
+  private final RequestOutputStream _out;
+
+  RequestOutChain(RequestBaratineImpl delegate,
+                  RequestOutputStream out)
+  {
+    Objects.requireNonNull(delegate);
+    Objects.requireNonNull(out);
+
+    _delegate = delegate;
+    _out = out;
+  }
+
+  @Override
+  public RequestBaratine delegate()
+  {
+    return _delegate;
+  }
+
+  @Override
+  public RequestWeb length(long length)
+  {
+    _out.length(length);
+
+    return this;
+  }
+
+  @Override
+  public RequestWeb header(String key, String value)
+  {
+    _out.header(key, value);
+
+    return this;
+  }
+
+  @Override
+  public RequestWeb type(String contentType)
+  {
+    _out.type(contentType);
+
+    return this;
+  }
+
+  @Override
+  public RequestWeb write(byte []buffer, int offset, int length)
+  {
+    try {
+      _out.write(buffer, offset, length);
+
+      return this;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public RequestWeb write(Buffer buffer)
+  {
+    _out.write(buffer);
+
+    return this;
+  }
+
+  @Override
+  public OutputStream output()
+  {
+    return _out;
+  }
+
+  /**
+   * Passes a failure to the earlier filters.
+   */
+  void failOut(Throwable exn)
+  {
+    _out.fail(exn);
+  }
+
+  @Override
+  public void ok()
+  {
+    try {
+      _out.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
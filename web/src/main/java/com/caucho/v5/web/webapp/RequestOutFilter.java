@@ -35,6 +35,7 @@ import java.util.Objects;
 import com.caucho.v5.http.protocol.RequestOut;
 import com.caucho.v5.io.TempBuffer;
 
+import io.baratine.io.Buffer;
 import io.baratine.web.RequestWeb.OutFilterWeb;
 
 /**
@@ -101,7 +102,7 @@ public class RequestOutFilter extends RequestOutputStream
       int sublen = Math.min(length, _tBuf.available());
         
       if (sublen > 0) {
-        _tBuf.write(buffer, offset, length);
+        _tBuf.write(buffer, offset, sublen);
           
         length -= sublen;
         offset += sublen;
@@ -113,6 +114,27 @@ public class RequestOutFilter extends RequestOutputStream
     }
   }
 
+  @Override
+  public void write(Buffer buffer)
+  {
+    if (_tBuf.length() > 0) {
+      filter().write(delegate(), _tBuf);
+      _tBuf.clear();
+    }
+    
+    filter().write(delegate(), buffer);
+  }
+
+  @Override
+  public void fail(Throwable exn)
+  {
+    filter().fail(delegate(), exn);
+    
+    if (_delegate instanceof RequestOutChain) {
+      ((RequestOutChain) _delegate).failOut(exn);
+    }
+  }
+
   @Override
   public byte[] buffer() throws IOException
   {
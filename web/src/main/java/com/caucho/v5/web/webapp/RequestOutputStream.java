@@ -31,6 +31,8 @@ package com.caucho.v5.web.webapp;
 
 import com.caucho.v5.io.OutputStreamWithBuffer;
 
+import io.baratine.io.Buffer;
+
 /**
  * User facade for baratine http requests.
  */
@@ -41,4 +43,13 @@ abstract public class RequestOutputStream extends OutputStreamWithBuffer
   abstract public void length(long length);
   
   abstract public void type(String type);
+  
+  abstract public void write(Buffer buffer);
+  
+  /**
+   * Notifies output filters that the request failed.
+   */
+  public void fail(Throwable exn)
+  {
+  }
 }
@@ -29,10 +29,21 @@
 
 package com.caucho.v5.web.webapp;
 
+import com.caucho.v5.io.TempBuffer;
+
 /**
  * Proxy for body content 
  */
 public interface RequestProxy
 {
   void bodyComplete(RequestBaratineImpl requestBaratineImpl);
+
+  /**
+   * Delivers a streamed body chunk on the service's thread.
+   */
+  void bodyChunk(RequestBaratineImpl requestBaratineImpl, TempBuffer tBuf);
+
+  void bodyStreamClose(RequestBaratineImpl requestBaratineImpl);
+
+  void bodyStreamFail(RequestBaratineImpl requestBaratineImpl, Throwable exn);
 }
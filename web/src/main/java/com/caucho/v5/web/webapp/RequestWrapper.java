@@ -34,17 +34,20 @@ import java.io.OutputStream;
 import java.io.Writer;
 import java.net.InetSocketAddress;
 import java.util.Map;
+import java.util.function.Function;
 
 import io.baratine.config.Config;
 import io.baratine.inject.Injector;
 import io.baratine.io.Buffer;
 import io.baratine.io.Buffers;
 import io.baratine.pipe.Credits;
+import io.baratine.pipe.Pipe;
 import io.baratine.service.Result;
 import io.baratine.service.ServiceRef;
 import io.baratine.service.Services;
 import io.baratine.web.HttpStatus;
 import io.baratine.web.MultiMap;
+import io.baratine.web.Part;
 import io.baratine.web.RequestWeb;
 
 
@@ -298,6 +301,19 @@ public class RequestWrapper implements RequestWebSpi
     delegate().body(type, result);
   }
 
+  @Override
+  public void bodyStream(Pipe<Buffer> pipe)
+  {
+    delegate().bodyStream(pipe);
+  }
+
+  @Override
+  public void bodyParts(Function<Part,Pipe<Buffer>> onPart,
+                        Result<Void> result)
+  {
+    delegate().bodyParts(onPart, result);
+  }
+
   @Override
   public InputStream inputStream()
   {
@@ -388,6 +404,12 @@ public class RequestWrapper implements RequestWebSpi
     delegate().upgrade(service);
   }
 
+  @Override
+  public boolean pushResource(String path)
+  {
+    return delegate().pushResource(path);
+  }
+
   @Override
   public void ok()
   {
@@ -37,6 +37,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.caucho.v5.amp.ServiceRefAmp;
+import com.caucho.v5.io.TempBuffer;
 
 import io.baratine.web.RequestWeb;
 import io.baratine.web.ServiceWeb;
@@ -108,6 +109,12 @@ public class RouteApply implements RouteBaratine
     return _viewResolver;
   }
   
+  @Override
+  public RequestProxy requestProxy()
+  {
+    return _proxy;
+  }
+  
   /**
    * Service a request.
    *
@@ -180,5 +187,25 @@ public class RouteApply implements RouteBaratine
     {
       requestBaratineImpl.bodyComplete();
     }
+
+    @Override
+    public void bodyChunk(RequestBaratineImpl requestBaratineImpl,
+                          TempBuffer tBuf)
+    {
+      requestBaratineImpl.bodyStreamNext(tBuf);
+    }
+
+    @Override
+    public void bodyStreamClose(RequestBaratineImpl requestBaratineImpl)
+    {
+      requestBaratineImpl.bodyStreamClose();
+    }
+
+    @Override
+    public void bodyStreamFail(RequestBaratineImpl requestBaratineImpl,
+                               Throwable exn)
+    {
+      requestBaratineImpl.bodyStreamFail(exn);
+    }
   }
 }
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.web.webapp;
+
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import com.caucho.v5.io.FileRegionBuffer;
+import com.caucho.v5.util.Murmur64;
+import com.caucho.v5.web.webapp.WebCacheImpl.CacheEntry;
+
+import io.baratine.io.Buffer;
+import io.baratine.web.Cached;
+import io.baratine.web.HttpStatus;
+import io.baratine.web.RequestWeb;
+import io.baratine.web.RequestWeb.OutFilterWeb;
+import io.baratine.web.ViewResolver;
+
+/**
+ * Route for a @Cached GET, answering hits from the response cache before
+ * the request is dispatched to the service.
+ */
+class RouteCache implements RouteBaratine
+{
+  private final RouteApply _route;
+  private final Predicate<RequestWeb> _predicate;
+  private final WebCacheImpl _cache;
+
+  private final long _ttl;
+  private final String []_vary;
+  private final String _varyHeader;
+
+  RouteCache(RouteApply route,
+             Predicate<RequestWeb> predicate,
+             WebCacheImpl cache,
+             Cached cached)
+  {
+    Objects.requireNonNull(route);
+    Objects.requireNonNull(predicate);
+    Objects.requireNonNull(cache);
+
+    _route = route;
+    _predicate = predicate;
+    _cache = cache;
+
+    _ttl = cached.unit().toMillis(cached.value());
+    _vary = cached.vary();
+
+    _varyHeader = _vary.length > 0 ? String.join(", ", _vary) : null;
+  }
+
+  @Override
+  public ViewResolver<Object> viewResolver()
+  {
+    return _route.viewResolver();
+  }
+
+  @Override
+  public RequestProxy requestProxy()
+  {
+    return _route.requestProxy();
+  }
+
+  @Override
+  public boolean service(RequestBaratine request)
+  {
+    if (! "GET".equals(request.method())) {
+      return _route.service(request);
+    }
+
+    if (! _predicate.test(request)) {
+      return false;
+    }
+
+    String key = key(request);
+
+    CacheEntry entry = _cache.get(key);
+
+    if (entry != null) {
+      request.route(_route);
+
+      entry.write(request);
+
+      return true;
+    }
+
+    request.push(new CacheFilter((RequestBaratineImpl) request, key));
+
+    if (_varyHeader != null) {
+      request.header("vary", _varyHeader);
+    }
+
+    return _route.service(request);
+  }
+
+  /**
+   * The key is the uri and query, followed by the variant: whether the
+   * client accepts gzip, and the values of the vary headers.
+   */
+  private String key(RequestWeb request)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append(request.uri());
+
+    String query = request.query();
+
+    if (query != null) {
+      sb.append('?').append(query);
+    }
+
+    sb.append('\u0000');
+
+    String acceptEncoding = request.header("accept-encoding");
+
+    if (acceptEncoding != null && acceptEncoding.indexOf("gzip") >= 0) {
+      sb.append('z');
+    }
+
+    for (String vary : _vary) {
+      sb.append('\u0000');
+
+      String value = request.header(vary);
+
+      if (value != null) {
+        sb.append(value);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + _route + "]";
+  }
+
+  /**
+   * Holds the response body until the service completes, then stores it
+   * in the cache. A body larger than the entry limit is passed through
+   * uncached.
+   */
+  private class CacheFilter implements OutFilterWeb
+  {
+    private final RequestBaratineImpl _request;
+    private final String _key;
+
+    private String _type;
+    private ArrayList<String> _headers = new ArrayList<>();
+    private String _etag;
+    private long _length = -1;
+
+    private byte []_data = new byte[256];
+    private int _dataLength;
+
+    private boolean _isUncached;
+    private boolean _isPassThrough;
+
+    CacheFilter(RequestBaratineImpl request, String key)
+    {
+      _request = request;
+      _key = key;
+    }
+
+    @Override
+    public void header(RequestWeb out, String key, String value)
+    {
+      if (key.equalsIgnoreCase("etag")) {
+        _etag = value;
+      }
+      else if (key.equalsIgnoreCase("set-cookie")
+               || key.equalsIgnoreCase("content-range")) {
+        _isUncached = true;
+      }
+      else {
+        _headers.add(key);
+        _headers.add(value);
+      }
+
+      out.header(key, value);
+    }
+
+    @Override
+    public void type(RequestWeb out, String type)
+    {
+      _type = type;
+
+      out.type(type);
+    }
+
+    @Override
+    public void length(RequestWeb out, long length)
+    {
+      if (_isPassThrough) {
+        out.length(length);
+      }
+      else {
+        _length = length;
+      }
+    }
+
+    @Override
+    public void write(RequestWeb out, Buffer buffer)
+    {
+      if (! _isPassThrough
+          && (buffer instanceof FileRegionBuffer
+              || _cache.entryMax() < _dataLength + buffer.length())) {
+        passThrough(out);
+      }
+
+      if (_isPassThrough) {
+        out.write(buffer);
+        return;
+      }
+
+      int length = buffer.length();
+
+      if (_data.length < _dataLength + length) {
+        byte []data = new byte[Math.max(2 * _data.length, _dataLength + length)];
+        System.arraycopy(_data, 0, data, 0, _dataLength);
+        _data = data;
+      }
+
+      buffer.read(_data, _dataLength, length);
+      _dataLength += length;
+    }
+
+    private void passThrough(RequestWeb out)
+    {
+      _isPassThrough = true;
+
+      if (_length >= 0) {
+        out.length(_length);
+      }
+
+      if (_dataLength > 0) {
+        out.write(_data, 0, _dataLength);
+      }
+
+      _data = null;
+    }
+
+    @Override
+    public void ok(RequestWeb out)
+    {
+      if (_isPassThrough) {
+        return;
+      }
+
+      if (! _isUncached
+          && _request.requestHttp().status() == HttpStatus.OK.code()
+          && ! _request.isCookieOut()) {
+        byte []data = new byte[_dataLength];
+        System.arraycopy(_data, 0, data, 0, _dataLength);
+
+        String etag = _etag;
+
+        if (etag == null) {
+          long hash = Murmur64.generate(Murmur64.SEED, data, 0, data.length);
+
+          etag = "\"" + Long.toHexString(hash) + "\"";
+
+          out.header("etag", etag);
+        }
+
+        String []headers = new String[_headers.size()];
+        _headers.toArray(headers);
+
+        _cache.put(_key, _cache.new CacheEntry(_type, headers, data, etag, _ttl));
+
+        if (WebCacheImpl.isNotModified(_request, etag)) {
+          _request.status(HttpStatus.NOT_MODIFIED);
+          return;
+        }
+      }
+
+      out.length(_dataLength);
+      out.write(_data, 0, _dataLength);
+    }
+  }
+}
@@ -106,7 +106,7 @@ public class RouteMap
     }
   }
 
-  private MultiMap<String,String> parseQuery(String query)
+  static MultiMap<String,String> parseQuery(String query)
   {
     try {
       if (query == null) {
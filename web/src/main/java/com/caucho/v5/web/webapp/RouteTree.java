@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+package com.caucho.v5.web.webapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiled route table for a webapp.
+ *
+ * Patterns are split into path segments and stored in a prefix tree with
+ * literal, single-segment ({name} or *) and trailing "/**" nodes. Routes
+ * sharing a pattern are grouped when the tree is built. Patterns the tree
+ * can't express, like "*.html" or a "**" before the last segment, fall
+ * back to the RouteMap regexp.
+ *
+ * As with the linear scan, the first pattern in route order that matches
+ * wins. Each node records the lowest route index below it, so matching
+ * prunes subtrees that can't improve on the current match and doesn't
+ * allocate.
+ */
+class RouteTree
+{
+  private static final int NONE = Integer.MAX_VALUE;
+
+  private static final String REGEXP_CHARS = "*{}\\[]()?+^$|";
+
+  private final Node _root = new Node();
+
+  private final Group []_groups;
+  private final Group []_regexpGroups;
+
+  RouteTree(RouteMap []routeList)
+  {
+    LinkedHashMap<String,ArrayList<RouteMap>> patternMap
+      = new LinkedHashMap<>();
+
+    for (RouteMap routeMap : routeList) {
+      patternMap.computeIfAbsent(routeMap.pattern(), x->new ArrayList<>())
+                .add(routeMap);
+    }
+
+    _groups = new Group[patternMap.size()];
+
+    ArrayList<Group> regexpGroups = new ArrayList<>();
+
+    int index = 0;
+    for (ArrayList<RouteMap> mapList : patternMap.values()) {
+      Group group = new Group(index, mapList);
+
+      _groups[index++] = group;
+
+      if (group.segments() != null) {
+        add(group);
+      }
+      else {
+        regexpGroups.add(group);
+      }
+    }
+
+    _regexpGroups = new Group[regexpGroups.size()];
+    regexpGroups.toArray(_regexpGroups);
+
+    _root.compile();
+  }
+
+  /**
+   * Matches the webapp-relative uri, filling the invocation's path
+   * parameters, and returns the matching routes or null.
+   */
+  RouteBaratine []route(InvocationBaratine invocation, String uri)
+  {
+    int best = NONE;
+
+    if (uri.isEmpty() || uri.charAt(0) == '/') {
+      best = match(_root, uri, 0, NONE);
+    }
+
+    for (Group group : _regexpGroups) {
+      if (best < group.index()) {
+        break;
+      }
+
+      if (group.routeMap().match(invocation, uri)) {
+        return group.routes();
+      }
+    }
+
+    if (best == NONE) {
+      return null;
+    }
+
+    Group group = _groups[best];
+
+    group.fill(invocation, uri);
+
+    return group.routes();
+  }
+
+  private int match(Node node, String uri, int pos, int best)
+  {
+    if (best <= node.min()) {
+      return best;
+    }
+
+    best = Math.min(best, node.tailGroup());
+
+    int length = uri.length();
+
+    if (pos == length) {
+      return Math.min(best, node.endGroup());
+    }
+
+    // pos is at a '/'
+    int start = pos + 1;
+    int end = uri.indexOf('/', start);
+
+    if (end < 0) {
+      end = length;
+    }
+
+    Node child = node.literal(uri, start, end);
+
+    if (child != null) {
+      best = match(child, uri, end, best);
+    }
+
+    Node segment = node.segment();
+
+    if (segment != null) {
+      best = match(segment, uri, end, best);
+    }
+
+    return best;
+  }
+
+  private void add(Group group)
+  {
+    Node node = _root;
+
+    for (Segment segment : group.segments()) {
+      switch (segment.kind()) {
+      case LITERAL:
+        node = node.addLiteral(segment.name());
+        break;
+
+      case PARAM:
+      case WILDCARD:
+        node = node.addSegment();
+        break;
+
+      case TAIL:
+        node.tailGroup(group.index());
+        return;
+      }
+    }
+
+    node.endGroup(group.index());
+  }
+
+  /**
+   * Splits a pattern into segments, or returns null if the pattern needs
+   * the regexp match.
+   */
+  private static Segment []parse(String pattern)
+  {
+    if (pattern.isEmpty()) {
+      return new Segment[0];
+    }
+    else if (pattern.charAt(0) != '/') {
+      return null;
+    }
+
+    String []names = pattern.substring(1).split("/", -1);
+    Segment []segments = new Segment[names.length];
+
+    for (int i = 0; i < names.length; i++) {
+      String name = names[i];
+
+      if (name.equals("**")) {
+        if (i + 1 < names.length) {
+          return null;
+        }
+
+        segments[i] = new Segment(SegmentKind.TAIL, null);
+      }
+      else if (name.equals("*")) {
+        segments[i] = new Segment(SegmentKind.WILDCARD, null);
+      }
+      else if (name.startsWith("{")
+               && name.endsWith("}")
+               && isLiteral(name.substring(1, name.length() - 1))) {
+        segments[i] = new Segment(SegmentKind.PARAM,
+                                  name.substring(1, name.length() - 1));
+      }
+      else if (isLiteral(name)) {
+        segments[i] = new Segment(SegmentKind.LITERAL, name);
+      }
+      else {
+        return null;
+      }
+    }
+
+    return segments;
+  }
+
+  private static boolean isLiteral(String name)
+  {
+    for (int i = 0; i < name.length(); i++) {
+      if (REGEXP_CHARS.indexOf(name.charAt(i)) >= 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static int hash(String uri, int start, int end)
+  {
+    int hash = 0;
+
+    for (; start < end; start++) {
+      hash = 31 * hash + uri.charAt(start);
+    }
+
+    return hash;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[groups=" + _groups.length
+            + ",regexp=" + _regexpGroups.length + "]");
+  }
+
+  private enum SegmentKind
+  {
+    LITERAL,
+    PARAM,
+    WILDCARD,
+    TAIL;
+  }
+
+  private static final class Segment
+  {
+    private final SegmentKind _kind;
+    private final String _name;
+
+    Segment(SegmentKind kind, String name)
+    {
+      _kind = kind;
+      _name = name;
+    }
+
+    SegmentKind kind()
+    {
+      return _kind;
+    }
+
+    String name()
+    {
+      return _name;
+    }
+  }
+
+  /**
+   * Routes sharing a pattern, in route order.
+   */
+  private static final class Group
+  {
+    private final int _index;
+    private final RouteMap _routeMap;
+    private final RouteBaratine []_routes;
+    private final Segment []_segments;
+    private final boolean _isParam;
+
+    Group(int index, ArrayList<RouteMap> mapList)
+    {
+      _index = index;
+      _routeMap = mapList.get(0);
+
+      _routes = new RouteBaratine[mapList.size()];
+
+      for (int i = 0; i < _routes.length; i++) {
+        _routes[i] = mapList.get(i).route();
+      }
+
+      _segments = parse(_routeMap.pattern());
+
+      boolean isParam = false;
+
+      if (_segments != null) {
+        for (Segment segment : _segments) {
+          isParam |= segment.kind() == SegmentKind.PARAM;
+        }
+      }
+
+      _isParam = isParam;
+    }
+
+    int index()
+    {
+      return _index;
+    }
+
+    RouteMap routeMap()
+    {
+      return _routeMap;
+    }
+
+    RouteBaratine []routes()
+    {
+      return _routes;
+    }
+
+    Segment []segments()
+    {
+      return _segments;
+    }
+
+    /**
+     * Fills the invocation from a uri the tree has matched.
+     */
+    void fill(InvocationBaratine invocation, String uri)
+    {
+      Map<String,String> params = Collections.emptyMap();
+
+      if (_isParam) {
+        params = new HashMap<>();
+      }
+
+      int pos = 0;
+
+      for (Segment segment : _segments) {
+        if (segment.kind() == SegmentKind.TAIL) {
+          invocation.path(uri.substring(0, pos));
+          invocation.pathInfo(uri.substring(pos));
+          break;
+        }
+
+        int start = pos + 1;
+        int end = uri.indexOf('/', start);
+
+        if (end < 0) {
+          end = uri.length();
+        }
+
+        if (segment.kind() == SegmentKind.PARAM) {
+          params.put(segment.name(), uri.substring(start, end));
+        }
+
+        pos = end;
+      }
+
+      invocation.pathMap(params);
+
+      invocation.queryMap(RouteMap.parseQuery(invocation.queryString()));
+    }
+
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + _routeMap.pattern() + "]";
+    }
+  }
+
+  private static final class Node
+  {
+    private HashMap<String,Node> _literalMap = new HashMap<>();
+
+    private int []_hashes;
+    private String []_keys;
+    private Node []_children;
+
+    private Node _segment;
+
+    private int _endGroup = NONE;
+    private int _tailGroup = NONE;
+
+    private int _min = NONE;
+
+    int min()
+    {
+      return _min;
+    }
+
+    int endGroup()
+    {
+      return _endGroup;
+    }
+
+    void endGroup(int index)
+    {
+      _endGroup = Math.min(_endGroup, index);
+    }
+
+    int tailGroup()
+    {
+      return _tailGroup;
+    }
+
+    void tailGroup(int index)
+    {
+      _tailGroup = Math.min(_tailGroup, index);
+    }
+
+    Node segment()
+    {
+      return _segment;
+    }
+
+    Node addLiteral(String name)
+    {
+      return _literalMap.computeIfAbsent(name, x->new Node());
+    }
+
+    Node addSegment()
+    {
+      if (_segment == null) {
+        _segment = new Node();
+      }
+
+      return _segment;
+    }
+
+    /**
+     * Returns the literal child for the uri segment, using a binary
+     * search on the segment's string hash.
+     */
+    Node literal(String uri, int start, int end)
+    {
+      int []hashes = _hashes;
+
+      if (hashes.length == 0) {
+        return null;
+      }
+
+      int hash = hash(uri, start, end);
+      int length = end - start;
+
+      int i = Arrays.binarySearch(hashes, hash);
+
+      if (i < 0) {
+        return null;
+      }
+
+      while (i > 0 && hashes[i - 1] == hash) {
+        i--;
+      }
+
+      for (; i < hashes.length && hashes[i] == hash; i++) {
+        String key = _keys[i];
+
+        if (key.length() == length && uri.regionMatches(start, key, 0, length)) {
+          return _children[i];
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * Builds the literal lookup arrays and the subtree's lowest group.
+     */
+    int compile()
+    {
+      int size = _literalMap.size();
+
+      _keys = new String[size];
+      _literalMap.keySet().toArray(_keys);
+
+      Arrays.sort(_keys, (a,b)->Integer.compare(a.hashCode(), b.hashCode()));
+
+      _hashes = new int[size];
+      _children = new Node[size];
+
+      int min = Math.min(_endGroup, _tailGroup);
+
+      for (int i = 0; i < size; i++) {
+        _hashes[i] = _keys[i].hashCode();
+        _children[i] = _literalMap.get(_keys[i]);
+
+        min = Math.min(min, _children[i].compile());
+      }
+
+      if (_segment != null) {
+        min = Math.min(min, _segment.compile());
+      }
+
+      _literalMap = null;
+      _min = min;
+
+      return min;
+    }
+  }
+}
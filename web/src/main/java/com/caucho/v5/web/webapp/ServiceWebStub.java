@@ -31,6 +31,11 @@ package com.caucho.v5.web.webapp;
 
 import java.util.Objects;
 
+import com.caucho.v5.amp.message.TraceMessage;
+import com.caucho.v5.amp.spi.MessageAmp;
+import com.caucho.v5.amp.spi.OutboxAmp;
+import com.caucho.v5.amp.trace.TraceSpan;
+
 import io.baratine.web.RequestWeb;
 import io.baratine.web.ServiceWeb;
 
@@ -54,6 +59,29 @@ final class ServiceWebStub implements ServiceWeb
 
   @Override
   public void service(RequestWeb request) throws Exception
+  {
+    OutboxAmp outbox = OutboxAmp.current();
+    MessageAmp msg = outbox != null ? outbox.message() : null;
+    Object context = msg != null ? msg.getHeaders().get(TraceSpan.CONTEXT) : null;
+    
+    if (context == null) {
+      serviceImpl(request);
+      return;
+    }
+    
+    // the route's service call is part of the traced request, not a hop
+    outbox.message(new TraceMessage(String.valueOf(context),
+                                    msg.getHeaders(),
+                                    msg));
+    
+    try {
+      serviceImpl(request);
+    } finally {
+      outbox.message(msg);
+    }
+  }
+  
+  private void serviceImpl(RequestWeb request)
   {
     try {
       delegate().service(request);
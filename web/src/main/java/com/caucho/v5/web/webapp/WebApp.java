@@ -145,7 +145,7 @@ public class WebApp
                                         
     _bodyResolver = builder.bodyResolver();
     
-    _wsManager = builder.webSocketManager();
+    _wsManager = builder.wsManager();
   }
   
   public String id()
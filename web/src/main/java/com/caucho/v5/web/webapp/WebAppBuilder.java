@@ -82,6 +82,7 @@ import io.baratine.service.Service;
 import io.baratine.service.ServiceRef;
 import io.baratine.service.Services;
 import io.baratine.vault.Vault;
+import io.baratine.web.Cached;
 import io.baratine.web.HttpMethod;
 import io.baratine.web.IfContentType;
 import io.baratine.web.IncludeWeb;
@@ -90,6 +91,8 @@ import io.baratine.web.ServiceWeb;
 import io.baratine.web.ServiceWebSocket;
 import io.baratine.web.ViewRender;
 import io.baratine.web.ViewResolver;
+import io.baratine.web.WebCache;
+import io.baratine.web.WebSocketGroups;
 import io.baratine.web.WebBuilder;
 import io.baratine.web.WebSocket;
 import io.baratine.web.WebSocketClose;
@@ -132,6 +135,7 @@ public class WebAppBuilder
   private WebAppAutoBind _autoBind;
   private WebApp _webApp;
   private WebSocketManager _wsManager;
+  private WebCacheImpl _webCache;
 
 
   /**
@@ -155,8 +159,10 @@ public class WebAppBuilder
     view(new ViewPrimitive(), Character.class, -1000);
 
     if (factory.config().get("server.gzip", Boolean.class, false)) {
-      before(new FilterBeforeGzipFactory());
+      before(new FilterBeforeGzipFactory(factory.config()));
     }
+
+    _webCache = new WebCacheImpl(factory.config());
   }
 
   public void before(FilterFactory<ServiceWeb> filter)
@@ -236,6 +242,7 @@ public class WebAppBuilder
     }
 
     _wsManager = webSocketManager();
+    _wsManager.config(_factory.config());
   }
 
   protected void addFactories(ServiceManagerBuilderAmp builder)
@@ -253,7 +260,15 @@ public class WebAppBuilder
     }
   }
 
+  /**
+   * Creates the webapp's websocket manager.
+   */
   public WebSocketManager webSocketManager()
+  {
+    return new WebSocketManager();
+  }
+
+  WebSocketManager wsManager()
   {
     return _wsManager;
   }
@@ -294,11 +309,19 @@ public class WebAppBuilder
     //_injectBuilder.provider(()->webApp.config()).to(Config.class);
     _injectBuilder.provider(()->webApp.inject()).to(Injector.class);
     _injectBuilder.provider(()->webApp.services()).to(Services.class);
+    _injectBuilder.provider(()->_webCache).to(WebCache.class);
+    _injectBuilder.provider(()->_wsManager).to(WebSocketGroups.class);
 
     generateFromFactory();
 
     // defaults
 
+    String metricsPath = _factory.config().get("server.metrics.path", "");
+
+    if (! metricsPath.isEmpty()) {
+      get(metricsPath).to(new MetricsWeb());
+    }
+
     get("/**").to(StaticFileWeb.class);
 
     _injectBuilder.get();
@@ -788,6 +811,8 @@ public class WebAppBuilder
 
     private ViewRef<?> _viewRef;
 
+    private Cached _cached;
+
     RoutePath(HttpMethod method, String path)
     {
       _method = method;
@@ -832,6 +857,12 @@ public class WebAppBuilder
         }
       }
 
+      _cached = method.getAnnotation(Cached.class);
+
+      if (_cached == null) {
+        _cached = method.getDeclaringClass().getAnnotation(Cached.class);
+      }
+
       return this;
     }
 
@@ -984,8 +1015,14 @@ public class WebAppBuilder
       routeApply = new RouteApply(service, filtersBefore, filtersAfter,
                                   serviceRef, test, viewMap);
 
+      RouteBaratine route = routeApply;
+
+      if (_cached != null && method == HttpMethod.GET) {
+        route = new RouteCache(routeApply, test, _webCache, _cached);
+      }
+
       List<RouteMap> list = new ArrayList<>();
-      list.add(new RouteMap(_path, routeApply));
+      list.add(new RouteMap(_path, route));
 
       /*
       CrossOrigin crossOrigin = service.getCrossOrigin();
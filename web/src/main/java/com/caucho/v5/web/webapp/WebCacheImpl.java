@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.web.webapp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.caucho.v5.util.CacheListener;
+import com.caucho.v5.util.CurrentTime;
+import com.caucho.v5.util.LruCache;
+
+import io.baratine.config.Config;
+import io.baratine.web.HttpStatus;
+import io.baratine.web.RequestWeb;
+import io.baratine.web.WebCache;
+
+/**
+ * Response cache for @Cached routes.
+ *
+ * The cache is bounded by server.web-cache.entries and by the total body
+ * size in server.web-cache.size. Responses larger than
+ * server.web-cache.entry-max are not cached.
+ */
+class WebCacheImpl implements WebCache
+{
+  private final LruCache<String,CacheEntry> _cache;
+
+  private final long _sizeMax;
+  private final int _entryMax;
+
+  private final AtomicLong _size = new AtomicLong();
+
+  WebCacheImpl(Config config)
+  {
+    int entries = config.get("server.web-cache.entries", int.class, 4096);
+
+    _cache = new LruCache<>(Math.max(entries, 1));
+
+    _sizeMax = config.get("server.web-cache.size", long.class,
+                          16L * 1024 * 1024);
+    _entryMax = config.get("server.web-cache.entry-max", int.class,
+                           256 * 1024);
+  }
+
+  int entryMax()
+  {
+    return _entryMax;
+  }
+
+  long size()
+  {
+    return _size.get();
+  }
+
+  /**
+   * Returns the live entry for the key, dropping an expired one.
+   */
+  CacheEntry get(String key)
+  {
+    CacheEntry entry = _cache.get(key);
+
+    if (entry == null) {
+      return null;
+    }
+    else if (entry.isExpired(CurrentTime.currentTime())) {
+      _cache.remove(key);
+
+      return null;
+    }
+    else {
+      return entry;
+    }
+  }
+
+  void put(String key, CacheEntry entry)
+  {
+    if (_entryMax < entry.length() || _sizeMax < entry.length()) {
+      return;
+    }
+
+    _size.addAndGet(entry.length());
+
+    _cache.put(key, entry);
+
+    while (_sizeMax < _size.get() && _cache.removeTail()) {
+    }
+  }
+
+  @Override
+  public void invalidate(String path)
+  {
+    removeIf(path, true);
+  }
+
+  @Override
+  public void invalidatePrefix(String prefix)
+  {
+    removeIf(prefix, false);
+  }
+
+  @Override
+  public void clear()
+  {
+    _cache.clear();
+  }
+
+  private void removeIf(String path, boolean isExact)
+  {
+    ArrayList<String> keys = new ArrayList<>();
+
+    Iterator<String> iter = _cache.keys();
+
+    while (iter.hasNext()) {
+      String key = iter.next();
+
+      if (isMatch(key, path, isExact)) {
+        keys.add(key);
+      }
+    }
+
+    for (String key : keys) {
+      _cache.remove(key);
+    }
+  }
+
+  /**
+   * Keys are the uri followed by '?' and the query, or by '\0' and
+   * the variant.
+   */
+  private static boolean isMatch(String key, String path, boolean isExact)
+  {
+    if (! key.startsWith(path)) {
+      return false;
+    }
+    else if (! isExact) {
+      return true;
+    }
+    else if (key.length() == path.length()) {
+      return true;
+    }
+
+    char ch = key.charAt(path.length());
+
+    return ch == '?' || ch == '\u0000';
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[entries=" + _cache.size() + ",size=" + _size.get() + "]");
+  }
+
+  /**
+   * Cached response.
+   */
+  class CacheEntry implements CacheListener
+  {
+    private final String _type;
+    private final String []_headers;
+    private final byte []_data;
+    private final String _etag;
+    private final long _expireTime;
+
+    CacheEntry(String type,
+               String []headers,
+               byte []data,
+               String etag,
+               long ttl)
+    {
+      _type = type;
+      _headers = headers;
+      _data = data;
+      _etag = etag;
+      _expireTime = CurrentTime.currentTime() + ttl;
+    }
+
+    int length()
+    {
+      return _data.length;
+    }
+
+    String etag()
+    {
+      return _etag;
+    }
+
+    boolean isExpired(long now)
+    {
+      return _expireTime <= now;
+    }
+
+    boolean isNotModified(RequestWeb request)
+    {
+      return WebCacheImpl.isNotModified(request, _etag);
+    }
+
+    /**
+     * Writes the cached response, or a 304 for a matching validator.
+     */
+    void write(RequestWeb request)
+    {
+      request.header("etag", _etag);
+
+      if (isNotModified(request)) {
+        request.status(HttpStatus.NOT_MODIFIED);
+        request.ok();
+        return;
+      }
+
+      if (_type != null) {
+        request.type(_type);
+      }
+
+      for (int i = 0; i < _headers.length; i += 2) {
+        request.header(_headers[i], _headers[i + 1]);
+      }
+
+      request.length(_data.length);
+      request.write(_data, 0, _data.length);
+      request.ok();
+    }
+
+    @Override
+    public void removeEvent()
+    {
+      _size.addAndGet(- _data.length);
+    }
+
+    @Override
+    public String toString()
+    {
+      return getClass().getSimpleName() + "[" + _etag + "," + _data.length + "]";
+    }
+  }
+
+  static boolean isNotModified(RequestWeb request, String etag)
+  {
+    String ifNoneMatch = request.header("if-none-match");
+
+    return (ifNoneMatch != null
+            && (ifNoneMatch.equals("*")
+                || ifNoneMatch.contains(etag)));
+  }
+}
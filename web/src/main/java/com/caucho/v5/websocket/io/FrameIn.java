@@ -92,6 +92,13 @@ public class FrameIn
   private int _frameOpInit;
   private CloseReason _closeReason;
 
+  // negotiated permessage-deflate, and whether the current message uses it
+  private PerMessageDeflate _deflate;
+  private boolean _isCompressed;
+  private final OutputStreamVisitor _textOut = (b, o, l)->textOut(b, o, l);
+  private byte []_textBuffer;
+  private int _textLength;
+
   public void init(FrameListener listener, ReadStream is)
   {
     Objects.requireNonNull(is);
@@ -106,6 +113,14 @@ public class FrameIn
     */
   }
 
+  /**
+   * Enables permessage-deflate for incoming messages.
+   */
+  public void deflate(PerMessageDeflate deflate)
+  {
+    _deflate = deflate;
+  }
+
   public FrameListener getListener()
   {
     return _listener;
@@ -219,14 +234,26 @@ public class FrameIn
     boolean isFinal = (frame1 & FLAG_FIN) == FLAG_FIN;
     int op = frame1 & 0xf;
 
-    if (op != 0) {
-      _op = op;
-      _frameOp = op;
-    }
+    // continuations report OP_CONT, so a control frame between fragments
+    // doesn't relabel the rest of the message
+    _op = op;
+    _frameOp = op;
 
     int rsv = frame1 & 0x70;
 
-    if (rsv != 0) {
+    if (op == OP_TEXT || op == OP_BINARY) {
+      _isCompressed = false;
+    }
+
+    if (rsv == 0) {
+    }
+    else if (rsv == PerMessageDeflate.FLAG_RSV1
+             && _deflate != null
+             && (op == OP_TEXT || op == OP_BINARY)) {
+      // only the first frame of a message marks it as compressed
+      _isCompressed = true;
+    }
+    else {
       fail(CloseCodes.PROTOCOL_ERROR, "illegal request");
       return false;
     }
@@ -654,6 +681,10 @@ public class FrameIn
   public boolean readBuffer(Buffer buffer)
     throws IOException
   {
+    if (_isCompressed) {
+      return readInflate((b, o, l)->buffer.write(b, o, l));
+    }
+
     byte []frameBuffer = _is.buffer();
     int bufferOffset = _is.offset();
     int bufferLength = _is.length();
@@ -674,6 +705,10 @@ public class FrameIn
           throw new IOException("unexpected eof in websocket");
         }
 
+        _length = frameLength;
+        fillMaskRead();
+
+        frameBuffer = _is.buffer();
         bufferOffset = _is.offset();
         bufferLength = _is.length();
       }
@@ -687,9 +722,75 @@ public class FrameIn
     }
   }
 
+  /**
+   * Inflates the rest of a compressed frame, completing the message when
+   * the frame is final.
+   */
+  private boolean readInflate(OutputStreamVisitor out)
+    throws IOException
+  {
+    byte []frameBuffer = _is.buffer();
+    int bufferOffset = _is.offset();
+    int bufferLength = _is.length();
+    long frameLength = _length;
+
+    while (true) {
+      int sublen = (int) Math.min(bufferLength - bufferOffset, frameLength);
+
+      if (sublen > 0) {
+        _deflate.inflate(frameBuffer, bufferOffset, sublen, out);
+        bufferOffset += sublen;
+        frameLength -= sublen;
+      }
+      else if (frameLength > 0) {
+        _is.offset(bufferOffset);
+
+        if (_is.fillBuffer() <= 0) {
+          throw new IOException("unexpected eof in websocket");
+        }
+
+        _length = frameLength;
+        fillMaskRead();
+
+        frameBuffer = _is.buffer();
+        bufferOffset = _is.offset();
+        bufferLength = _is.length();
+      }
+      else {
+        _is.offset(bufferOffset);
+
+        _length = 0;
+
+        if (_isFinal) {
+          _deflate.inflateEnd(out);
+          _isCompressed = false;
+        }
+
+        return _isFinal;
+      }
+    }
+  }
+
   public boolean readText(StringBuilder sb)
     throws IOException
   {
+    if (_isCompressed) {
+      // decode once, so utf-8 sequences can't split between chunks
+      _textLength = 0;
+
+      boolean isFinal = readInflate(_textOut);
+
+      if (_textLength > 0) {
+        Utf8Util.read(sb, _textBuffer, 0, _textLength);
+      }
+
+      if (_textBuffer != null && _textBuffer.length > 64 * 1024) {
+        _textBuffer = null;
+      }
+
+      return isFinal;
+    }
+
     byte []frameBuffer = _is.buffer();
     int bufferOffset = _is.offset();
     int bufferLength = _is.length();
@@ -711,6 +812,10 @@ public class FrameIn
           throw new IOException("unexpected eof in websocket");
         }
 
+        _length = frameLength;
+        fillMaskRead();
+
+        frameBuffer = _is.buffer();
         bufferOffset = _is.offset();
         bufferLength = _is.length();
       }
@@ -724,6 +829,25 @@ public class FrameIn
     }
   }
 
+  private void textOut(byte []buffer, int offset, int length)
+  {
+    byte []textBuffer = _textBuffer;
+
+    if (textBuffer == null) {
+      textBuffer = _textBuffer = new byte[Math.max(8192, length)];
+    }
+    else if (textBuffer.length < _textLength + length) {
+      int newLength = Math.max(2 * textBuffer.length, _textLength + length);
+
+      byte []newBuffer = new byte[newLength];
+      System.arraycopy(textBuffer, 0, newBuffer, 0, _textLength);
+      textBuffer = _textBuffer = newBuffer;
+    }
+
+    System.arraycopy(buffer, offset, textBuffer, _textLength, length);
+    _textLength += length;
+  }
+
   public long skipBinary(long length)
     throws IOException
   {
@@ -785,7 +909,8 @@ public class FrameIn
         return false;
       }
       else if (! handleFrame()) {
-
+        // the control frame's FIN doesn't end the interrupted message
+        _isFinal = false;
       }
       else if (getOpcode() != OP_CONT) {
         close();
@@ -811,22 +936,23 @@ public class FrameIn
     return true;
   }
 
+  private void fillMaskRead()
+  {
+    if (_isMask) {
+      fillMask();
+    }
+  }
+
   private void fillMask()
   {
     byte []buffer = _is.buffer();
     int byteOffset = _is.offset();
     int byteLength = _is.length();
 
-    int sublen = Math.min((int) _length, byteLength - byteOffset);
-
-    byte []mask = getMask();
-    int maskOffset = _maskOffset;
-
-    for (int i = 0; i < sublen; i++) {
-      buffer[byteOffset + i] ^= mask[(maskOffset + i) & 0x3];
-    }
+    int sublen = (int) Math.min(_length, byteLength - byteOffset);
 
-    _maskOffset = (maskOffset + sublen) & 0x3;
+    _maskOffset = WebSocketMask.unmask(buffer, byteOffset, sublen,
+                                       getMask(), _maskOffset);
   }
 
   private int readShort()
@@ -837,19 +963,19 @@ public class FrameIn
     return ((is.read() << 8) + is.read());
   }
 
-  private int readLong()
+  private long readLong()
     throws IOException
   {
     InputStream is = _is;
 
-    return ((is.read() << 56L)
-        + (is.read() << 48L)
-        + (is.read() << 40L)
-        + (is.read() << 32L)
-        + (is.read() << 24L)
-        + (is.read() << 16L)
-        + (is.read() << 8L)
-        + (is.read() << 0L));
+    return (((long) is.read() << 56)
+        + ((long) is.read() << 48)
+        + ((long) is.read() << 40)
+        + ((long) is.read() << 32)
+        + ((long) is.read() << 24)
+        + ((long) is.read() << 16)
+        + ((long) is.read() << 8)
+        + ((long) is.read()));
   }
 
   public int available()
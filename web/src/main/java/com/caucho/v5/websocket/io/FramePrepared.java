@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.websocket.io;
+
+import static com.caucho.v5.websocket.io.WebSocketConstants.FLAG_FIN;
+import static com.caucho.v5.websocket.io.WebSocketConstants.OP_BINARY;
+import static com.caucho.v5.websocket.io.WebSocketConstants.OP_TEXT;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import io.baratine.io.Buffer;
+
+/**
+ * A complete websocket message encoded once as a server frame, for
+ * sending the same message to many sockets.
+ *
+ * The compressed variant is built on first use, and is only valid for
+ * sockets without server context takeover.
+ */
+public final class FramePrepared
+{
+  private final int _op;
+  private final byte []_data;
+  private final byte []_frame;
+
+  private volatile byte []_frameDeflate;
+
+  private FramePrepared(int op, byte []data)
+  {
+    _op = op;
+    _data = data;
+    _frame = encode(FLAG_FIN | op, data, 0, data.length);
+  }
+
+  public static FramePrepared text(String text)
+  {
+    return new FramePrepared(OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static FramePrepared binary(byte []buffer, int offset, int length)
+  {
+    byte []data = new byte[length];
+    System.arraycopy(buffer, offset, data, 0, length);
+
+    return new FramePrepared(OP_BINARY, data);
+  }
+
+  /**
+   * The message payload length.
+   */
+  public int length()
+  {
+    return _data.length;
+  }
+
+  public boolean isText()
+  {
+    return _op == OP_TEXT;
+  }
+
+  /**
+   * Returns a private read view of the frame.
+   *
+   * @param deflate the socket's deflate context, or null if the socket
+   *   cannot receive the shared compressed frame.
+   */
+  public Buffer buffer(PerMessageDeflate deflate)
+  {
+    if (deflate != null && deflate.isCompress(_data.length, true)) {
+      return new FrameBuffer(frameDeflate());
+    }
+    else {
+      return new FrameBuffer(_frame);
+    }
+  }
+
+  private byte []frameDeflate()
+  {
+    byte []frame = _frameDeflate;
+
+    if (frame == null) {
+      byte []data = PerMessageDeflate.deflate(_data, 0, _data.length);
+
+      frame = encode(FLAG_FIN | PerMessageDeflate.FLAG_RSV1 | _op,
+                     data, 0, data.length);
+
+      _frameDeflate = frame;
+    }
+
+    return frame;
+  }
+
+  private static byte []encode(int code, byte []data, int offset, int length)
+  {
+    int headerLength;
+
+    if (length <= 0x7d) {
+      headerLength = 2;
+    }
+    else if (length <= 0xffff) {
+      headerLength = 4;
+    }
+    else {
+      headerLength = 10;
+    }
+
+    byte []frame = new byte[headerLength + length];
+
+    frame[0] = (byte) code;
+
+    if (length <= 0x7d) {
+      frame[1] = (byte) length;
+    }
+    else if (length <= 0xffff) {
+      frame[1] = (byte) 0x7e;
+      frame[2] = (byte) (length >> 8);
+      frame[3] = (byte) length;
+    }
+    else {
+      frame[1] = (byte) 0x7f;
+      // high four bytes are zero for int lengths
+      frame[6] = (byte) (length >> 24);
+      frame[7] = (byte) (length >> 16);
+      frame[8] = (byte) (length >> 8);
+      frame[9] = (byte) length;
+    }
+
+    System.arraycopy(data, offset, frame, headerLength, length);
+
+    return frame;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (getClass().getSimpleName()
+            + "[" + (isText() ? "text" : "binary")
+            + ",len=" + _data.length + "]");
+  }
+
+  /**
+   * Read-only view of a shared frame with its own position.
+   */
+  private static class FrameBuffer implements Buffer
+  {
+    private final byte []_frame;
+    private int _index;
+
+    FrameBuffer(byte []frame)
+    {
+      _frame = frame;
+    }
+
+    @Override
+    public int length()
+    {
+      return _frame.length - _index;
+    }
+
+    @Override
+    public Buffer get(int pos, byte []buffer, int offset, int length)
+    {
+      System.arraycopy(_frame, _index + pos, buffer, offset, length);
+
+      return this;
+    }
+
+    @Override
+    public int read(byte []buffer, int offset, int length)
+    {
+      int sublen = Math.min(length, _frame.length - _index);
+
+      System.arraycopy(_frame, _index, buffer, offset, sublen);
+
+      _index += sublen;
+
+      return sublen;
+    }
+
+    @Override
+    public void read(ByteBuffer buffer)
+    {
+      int sublen = Math.min(buffer.remaining(), _frame.length - _index);
+
+      buffer.put(_frame, _index, sublen);
+
+      _index += sublen;
+    }
+
+    @Override
+    public void read(OutputStream os) throws IOException
+    {
+      int sublen = _frame.length - _index;
+
+      os.write(_frame, _index, sublen);
+
+      _index += sublen;
+    }
+
+    @Override
+    public Buffer set(int pos, byte []buffer, int offset, int length)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Buffer set(int pos, Buffer buffer, int offset, int length)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Buffer write(byte []buffer, int offset, int length)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Buffer write(InputStream is)
+      throws IOException
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
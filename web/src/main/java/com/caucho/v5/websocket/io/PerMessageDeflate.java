@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.websocket.io;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.caucho.v5.util.FreeRing;
+import com.caucho.v5.util.L10N;
+import com.caucho.v5.websocket.io.FrameIn.OutputStreamVisitor;
+
+import io.baratine.config.Config;
+
+/**
+ * permessage-deflate extension (RFC 7692) for a server websocket.
+ *
+ * With context takeover, the deflater and inflater keep their window for
+ * the life of the connection, which compresses repeated messages best but
+ * holds both for every open socket. With no context takeover they are
+ * taken from a shared pool for each message and returned at its end.
+ *
+ * Configuration:
+ * <ul>
+ * <li>server.websocket.deflate - enables the extension (true)
+ * <li>server.websocket.deflate.level - deflate level (6)
+ * <li>server.websocket.deflate.min-length - smaller messages are sent
+ *     uncompressed (64)
+ * <li>server.websocket.deflate.server-context-takeover (true)
+ * <li>server.websocket.deflate.client-context-takeover (true)
+ * <li>server.websocket.deflate.max-length - limit of an inflated message
+ *     (16m)
+ * </ul>
+ */
+public class PerMessageDeflate
+{
+  private static final L10N L = new L10N(PerMessageDeflate.class);
+
+  public static final String EXTENSION = "permessage-deflate";
+
+  public static final int FLAG_RSV1 = 0x40;
+
+  // sync flush trailer, removed by the sender and restored by the receiver
+  private static final byte []TAIL = new byte[] { 0, 0, (byte) 0xff, (byte) 0xff };
+
+  private static final FreeRing<Deflater> _freeDeflater = new FreeRing<>(256);
+  private static final FreeRing<Inflater> _freeInflater = new FreeRing<>(256);
+
+  private final int _level;
+  private final int _minLength;
+  private final long _maxLength;
+  private final boolean _isServerNoContext;
+  private final boolean _isClientNoContext;
+
+  private Deflater _deflater;
+
+  private Inflater _inflater;
+  private byte []_inflateBuffer;
+  private long _inflateLength;
+
+  PerMessageDeflate(int level,
+                    int minLength,
+                    long maxLength,
+                    boolean isServerNoContext,
+                    boolean isClientNoContext)
+  {
+    _level = level;
+    _minLength = minLength;
+    _maxLength = maxLength;
+    _isServerNoContext = isServerNoContext;
+    _isClientNoContext = isClientNoContext;
+  }
+
+  /**
+   * Accepts the first permessage-deflate offer in the client's
+   * Sec-WebSocket-Extensions header that the server can honor.
+   *
+   * @return the negotiated extension, or null if none was accepted
+   */
+  public static PerMessageDeflate negotiate(String extensions, Config config)
+  {
+    if (extensions == null
+        || extensions.indexOf(EXTENSION) < 0
+        || ! config.get("server.websocket.deflate", boolean.class, true)) {
+      return null;
+    }
+
+    for (String offer : extensions.split(",")) {
+      PerMessageDeflate deflate = negotiateOffer(offer.split(";"), config);
+
+      if (deflate != null) {
+        return deflate;
+      }
+    }
+
+    return null;
+  }
+
+  private static PerMessageDeflate negotiateOffer(String []params,
+                                                  Config config)
+  {
+    if (! EXTENSION.equalsIgnoreCase(params[0].trim())) {
+      return null;
+    }
+
+    boolean isServerNoContext
+      = ! config.get("server.websocket.deflate.server-context-takeover",
+                     boolean.class, true);
+    boolean isClientNoContext
+      = ! config.get("server.websocket.deflate.client-context-takeover",
+                     boolean.class, true);
+
+    for (int i = 1; i < params.length; i++) {
+      String param = params[i].trim();
+      String value = null;
+
+      int p = param.indexOf('=');
+
+      if (p > 0) {
+        value = param.substring(p + 1).trim().replace("\"", "");
+        param = param.substring(0, p).trim();
+      }
+
+      switch (param.toLowerCase()) {
+      case "server_no_context_takeover":
+        isServerNoContext = true;
+        break;
+
+      case "client_no_context_takeover":
+        isClientNoContext = true;
+        break;
+
+      case "client_max_window_bits":
+        // the inflater accepts any window
+        break;
+
+      case "server_max_window_bits":
+        // java.util.zip always uses a 32k window
+        if (! "15".equals(value)) {
+          return null;
+        }
+        break;
+
+      default:
+        return null;
+      }
+    }
+
+    int level = config.get("server.websocket.deflate.level", int.class, 6);
+    int minLength = config.get("server.websocket.deflate.min-length",
+                               int.class, 64);
+    long maxLength = config.get("server.websocket.deflate.max-length",
+                                long.class, 16L * 1024 * 1024);
+
+    return new PerMessageDeflate(level, minLength, maxLength,
+                                 isServerNoContext, isClientNoContext);
+  }
+
+  /**
+   * Sec-WebSocket-Extensions response value.
+   */
+  public String header()
+  {
+    StringBuilder sb = new StringBuilder(EXTENSION);
+
+    if (_isServerNoContext) {
+      sb.append("; server_no_context_takeover");
+    }
+
+    if (_isClientNoContext) {
+      sb.append("; client_no_context_takeover");
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * True when the server's compressor starts each message fresh, which
+   * allows sending a message compressed once for many sockets.
+   */
+  public boolean isServerNoContextTakeover()
+  {
+    return _isServerNoContext;
+  }
+
+  /**
+   * Decides whether an outgoing message is compressed, given its first
+   * chunk.
+   */
+  public boolean isCompress(int length, boolean isFinal)
+  {
+    return ! isFinal || _minLength <= length;
+  }
+
+  //
+  // deflate
+  //
+
+  /**
+   * The deflater for the current outgoing message.
+   */
+  public Deflater deflater()
+  {
+    Deflater deflater = _deflater;
+
+    if (deflater == null) {
+      deflater = allocateDeflater(_level);
+
+      _deflater = deflater;
+    }
+
+    return deflater;
+  }
+
+  /**
+   * Completes an outgoing message.
+   */
+  public void deflateEnd()
+  {
+    if (_isServerNoContext) {
+      Deflater deflater = _deflater;
+      _deflater = null;
+
+      if (deflater != null) {
+        freeDeflater(deflater);
+      }
+    }
+  }
+
+  /**
+   * Compresses a complete message with a fresh deflater, for frames
+   * shared by sockets without server context takeover.
+   */
+  public static byte []deflate(byte []data, int offset, int length)
+  {
+    Deflater deflater = allocateDeflater(Deflater.DEFAULT_COMPRESSION);
+
+    try {
+      deflater.setInput(data, offset, length);
+
+      byte []buffer = new byte[Math.max(64, length + length / 8 + 16)];
+      int bufferLength = 0;
+
+      while (true) {
+        int sublen = deflater.deflate(buffer, bufferLength,
+                                      buffer.length - bufferLength,
+                                      Deflater.SYNC_FLUSH);
+
+        bufferLength += sublen;
+
+        // a pooled deflater may spend its first call on a level change
+        if (bufferLength < buffer.length && deflater.needsInput()) {
+          break;
+        }
+        else if (bufferLength < buffer.length) {
+          continue;
+        }
+
+        byte []newBuffer = new byte[2 * buffer.length];
+        System.arraycopy(buffer, 0, newBuffer, 0, bufferLength);
+        buffer = newBuffer;
+      }
+
+      byte []result = new byte[bufferLength - TAIL.length];
+      System.arraycopy(buffer, 0, result, 0, result.length);
+
+      return result;
+    } finally {
+      freeDeflater(deflater);
+    }
+  }
+
+  private static Deflater allocateDeflater(int level)
+  {
+    Deflater deflater = _freeDeflater.allocate();
+
+    if (deflater == null) {
+      deflater = new Deflater(level, true);
+    }
+    else {
+      deflater.setLevel(level);
+    }
+
+    return deflater;
+  }
+
+  private static void freeDeflater(Deflater deflater)
+  {
+    deflater.reset();
+
+    if (! _freeDeflater.free(deflater)) {
+      deflater.end();
+    }
+  }
+
+  //
+  // inflate
+  //
+
+  /**
+   * Inflates a chunk of a compressed incoming message.
+   */
+  public void inflate(byte []buffer, int offset, int length,
+                      OutputStreamVisitor out)
+    throws IOException
+  {
+    Inflater inflater = _inflater;
+
+    if (inflater == null) {
+      inflater = _freeInflater.allocate();
+
+      if (inflater == null) {
+        inflater = new Inflater(true);
+      }
+
+      _inflater = inflater;
+    }
+
+    if (_inflateBuffer == null) {
+      _inflateBuffer = new byte[8192];
+    }
+
+    byte []outBuffer = _inflateBuffer;
+
+    inflater.setInput(buffer, offset, length);
+
+    try {
+      int sublen;
+
+      while ((sublen = inflater.inflate(outBuffer, 0, outBuffer.length)) > 0) {
+        _inflateLength += sublen;
+
+        if (_maxLength < _inflateLength) {
+          throw new WebSocketProtocolException(L.l("inflated websocket message is larger than {0}",
+                                                   _maxLength));
+        }
+
+        out.write(outBuffer, 0, sublen);
+      }
+    } catch (DataFormatException e) {
+      throw new WebSocketProtocolException(L.l("invalid compressed websocket message: {0}",
+                                               e.getMessage()));
+    }
+  }
+
+  /**
+   * Completes a compressed incoming message.
+   */
+  public void inflateEnd(OutputStreamVisitor out)
+    throws IOException
+  {
+    inflate(TAIL, 0, TAIL.length, out);
+
+    _inflateLength = 0;
+
+    Inflater inflater = _inflater;
+
+    if (inflater == null) {
+    }
+    else if (_isClientNoContext) {
+      _inflater = null;
+
+      freeInflater(inflater);
+    }
+    else if (inflater.finished()) {
+      // a final deflate block ends the client's context
+      inflater.reset();
+    }
+  }
+
+  private static void freeInflater(Inflater inflater)
+  {
+    inflater.reset();
+
+    if (! _freeInflater.free(inflater)) {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Returns the deflater and inflater when the websocket closes.
+   */
+  public void close()
+  {
+    Deflater deflater = _deflater;
+    _deflater = null;
+
+    if (deflater != null) {
+      freeDeflater(deflater);
+    }
+
+    Inflater inflater = _inflater;
+    _inflater = null;
+
+    if (inflater != null) {
+      freeInflater(inflater);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "[" + header() + "]";
+  }
+}
@@ -38,4 +38,9 @@ import io.baratine.web.WebSocket;
 public interface WebSocketBaratine<T> extends WebSocket<T>
 {
   void open();
+
+  /**
+   * Writes a message frame prepared once for many sockets.
+   */
+  void write(FramePrepared frame);
 }
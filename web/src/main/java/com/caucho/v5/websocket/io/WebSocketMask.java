@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 1998-2015 Caucho Technology -- all rights reserved
+ *
+ * This file is part of Baratine(TM)
+ *
+ * Each copy or derived work must preserve the copyright notice and this
+ * notice unmodified.
+ *
+ * Baratine is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * Baratine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, or any warranty
+ * of NON-INFRINGEMENT.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Baratine; if not, write to the
+ *
+ *   Free Software Foundation, Inc.
+ *   59 Temple Place, Suite 330
+ *   Boston, MA 02111-1307  USA
+ *
+ * @author Scott Ferguson
+ */
+
+
+package com.caucho.v5.websocket.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Applies the client frame mask a word at a time.
+ *
+ * The 4-byte mask repeats evenly in a long, so all but the last few bytes
+ * are unmasked with 8-byte loads and stores.
+ */
+public final class WebSocketMask
+{
+  private WebSocketMask()
+  {
+  }
+
+  /**
+   * Unmasks a range of a byte array in place.
+   *
+   * @param maskOffset the mask index of the first byte
+   * @return the mask index following the range
+   */
+  public static int unmask(byte []buffer, int offset, int length,
+                           byte []mask, int maskOffset)
+  {
+    if (length < 8) {
+      return unmaskBytes(buffer, offset, length, mask, maskOffset);
+    }
+
+    return unmask(ByteBuffer.wrap(buffer), offset, length, mask, maskOffset);
+  }
+
+  /**
+   * Unmasks a range of a heap or direct buffer in place, using absolute
+   * positions so the buffer's position and limit are unchanged.
+   *
+   * @param maskOffset the mask index of the first byte
+   * @return the mask index following the range
+   */
+  public static int unmask(ByteBuffer buffer, int offset, int length,
+                           byte []mask, int maskOffset)
+  {
+    int end = offset + length;
+    int i = offset;
+
+    if (length >= 8) {
+      long maskLong = maskLong(mask, maskOffset);
+
+      if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+        maskLong = Long.reverseBytes(maskLong);
+      }
+
+      int wordEnd = end - 7;
+
+      for (; i < wordEnd; i += 8) {
+        buffer.putLong(i, buffer.getLong(i) ^ maskLong);
+      }
+    }
+
+    for (; i < end; i++) {
+      buffer.put(i, (byte) (buffer.get(i) ^ mask[(maskOffset + i - offset) & 0x3]));
+    }
+
+    return (maskOffset + length) & 0x3;
+  }
+
+  private static int unmaskBytes(byte []buffer, int offset, int length,
+                                 byte []mask, int maskOffset)
+  {
+    for (int i = 0; i < length; i++) {
+      buffer[offset + i] ^= mask[(maskOffset + i) & 0x3];
+    }
+
+    return (maskOffset + length) & 0x3;
+  }
+
+  /**
+   * Big-endian long of the mask starting at maskOffset.
+   */
+  private static long maskLong(byte []mask, int maskOffset)
+  {
+    long value = 0;
+
+    for (int i = 0; i < 8; i++) {
+      value = (value << 8) | (mask[(maskOffset + i) & 0x3] & 0xffL);
+    }
+
+    return value;
+  }
+}